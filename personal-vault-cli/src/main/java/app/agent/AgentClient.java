@@ -0,0 +1,111 @@
+package app.agent;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Client of the key agent: every method sends a request over the agent socket and returns the message of the agent.
+ */
+public class AgentClient {
+
+  private static final Set<String> COMMANDS = Set.of(AgentProtocol.UNLOCK, AgentProtocol.ADD, AgentProtocol.EXTRACT,
+                                                     AgentProtocol.VERIFY, AgentProtocol.LOCK, AgentProtocol.STOP);
+
+  private final Path socketPath;
+
+  /**
+   * Create a client of the agent listening on the default socket
+   */
+  public AgentClient() {
+    this(AgentProtocol.defaultSocketPath());
+  }
+
+  public AgentClient(Path socketPath) {
+    if (socketPath == null) {
+      throw new NullPointerException("Socket path is null");
+    }
+    this.socketPath = socketPath;
+  }
+
+  /**
+   * Unlock a vault in the agent; the keys are derived from the password only here
+   *
+   * @param vaultDir The directory in which the vault is stored
+   * @param psw      The vault password
+   */
+  public String unlock(Path vaultDir, String psw) throws IOException, AgentException {
+    return send(AgentProtocol.UNLOCK, absolute(vaultDir), psw);
+  }
+
+  /**
+   * Add a file or a directory to a vault unlocked in the agent
+   */
+  public String add(Path vaultDir, Path source) throws IOException, AgentException {
+    return send(AgentProtocol.ADD, absolute(vaultDir), absolute(source));
+  }
+
+  /**
+   * Reveal the content of a vault unlocked in the agent in the destination folder
+   */
+  public String extract(Path vaultDir, Path destFolder) throws IOException, AgentException {
+    return send(AgentProtocol.EXTRACT, absolute(vaultDir), absolute(destFolder));
+  }
+
+  /**
+   * Verify the encrypted items of a vault unlocked in the agent
+   */
+  public String verify(Path vaultDir) throws IOException, AgentException {
+    return send(AgentProtocol.VERIFY, absolute(vaultDir));
+  }
+
+  /**
+   * Lock a vault in the agent dropping its keys
+   */
+  public String lock(Path vaultDir) throws IOException, AgentException {
+    return send(AgentProtocol.LOCK, absolute(vaultDir));
+  }
+
+  /**
+   * Stop the agent locking all the vaults
+   */
+  public String stop() throws IOException, AgentException {
+    return send(AgentProtocol.STOP);
+  }
+
+  private String send(String command, String... args) throws IOException, AgentException {
+    try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(this.socketPath));
+         DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+         DataInputStream in = new DataInputStream(Channels.newInputStream(channel))) {
+      AgentProtocol.writeRequest(out, command, args);
+      boolean ok = in.readBoolean();
+      String message = AgentProtocol.readString(in);
+      if (!ok) {
+        throw new AgentException(message);
+      }
+      return message;
+    }
+  }
+
+  private static String absolute(Path path) {
+    return path.toAbsolutePath().normalize().toString();
+  }
+
+  /**
+   * Check if a command line argument is an agent command
+   */
+  public static boolean isCommand(String arg) {
+    return COMMANDS.contains(arg);
+  }
+
+  public static class AgentException extends Exception {
+    public AgentException(String message) {
+      super(message);
+    }
+  }
+}
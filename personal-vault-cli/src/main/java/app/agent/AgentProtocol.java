@@ -0,0 +1,75 @@
+package app.agent;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static app.core.Constants.*;
+
+/**
+ * Messages exchanged by the key agent and its clients over the Unix domain socket, one request per connection.
+ * <pre>
+ *   request   command, argument count (int), arguments
+ *   response  ok (boolean), message
+ * </pre>
+ * Every string is written as its UTF-8 length (int) followed by its bytes.
+ */
+final class AgentProtocol {
+
+  static final String UNLOCK = "unlock";
+  static final String ADD = "add";
+  static final String EXTRACT = "extract";
+  static final String VERIFY = "verify";
+  static final String LOCK = "lock";
+  static final String STOP = "stop";
+
+  private AgentProtocol() {}
+
+  /**
+   * Get the default socket path: AGENT_SOCKET_FILE in APP_USER_DIR of the user home
+   */
+  static Path defaultSocketPath() {
+    return Path.of(System.getProperty("user.home"), APP_USER_DIR, AGENT_SOCKET_FILE);
+  }
+
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > AGENT_MAX_MESSAGE) {
+      throw new IOException("Invalid agent message");
+    }
+    return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+  }
+
+  static void writeRequest(DataOutputStream out, String command, String... args) throws IOException {
+    writeString(out, command);
+    out.writeInt(args.length);
+    for (String arg : args) { writeString(out, arg); }
+    out.flush();
+  }
+
+  /**
+   * Read a request
+   *
+   * @return the command followed by its arguments
+   * @throws IOException if the request is not valid
+   */
+  static String[] readRequest(DataInputStream in) throws IOException {
+    String command = readString(in);
+    int argc = in.readInt();
+    if (argc < 0 || argc > 8) {
+      throw new IOException("Invalid agent request");
+    }
+    String[] request = new String[argc + 1];
+    request[0] = command;
+    for (int i = 1; i <= argc; i++) { request[i] = readString(in); }
+    return request;
+  }
+}
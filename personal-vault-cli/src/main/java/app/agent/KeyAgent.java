@@ -0,0 +1,404 @@
+package app.agent;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jdk.net.ExtendedSocketOptions;
+
+import app.core.ScrubReport;
+import app.core.Vault;
+import app.core.Vault.InvalidConfigurationException;
+import app.core.Vault.InvalidMacException;
+import app.core.Vault.VaultLockedException;
+import app.core.Vault.WrongPasswordException;
+
+import static app.core.Constants.*;
+
+/**
+ * Local agent keeping vaults unlocked for a limited time, so that repeated commands on the same vault
+ * do not derive the keys from the password again.
+ * <p>
+ * The agent listens on a Unix domain socket readable only by its owner and serves the connections on
+ * a small pool, one request per connection; the requests on the same vault run one at a time. A vault
+ * is unlocked by the first request with its password and is locked again, dropping its keys, when its
+ * time to live expires, when it is locked explicitly or when the agent stops.
+ */
+public class KeyAgent implements Closeable {
+
+  private final Path socketPath;
+  private final long ttlMillis;
+  private final Map<Path, CachedVault> vaults = new HashMap<>();   // Unlocked vaults by absolute storage path, guarded by this
+  private final ScheduledExecutorService evictor;
+  private final ExecutorService workers;
+
+  private ServerSocketChannel server;
+  private UserPrincipal owner;
+  private volatile boolean running;
+  private volatile boolean stopRequested;
+
+  private static class CachedVault {
+    private final Vault vault;
+    private final long expiresAt;
+
+    private CachedVault(Vault vault, long expiresAt) {
+      this.vault = vault;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * Create an agent listening on the default socket
+   *
+   * @param ttlMillis Milliseconds a vault stays unlocked
+   */
+  public KeyAgent(long ttlMillis) {
+    this(AgentProtocol.defaultSocketPath(), ttlMillis);
+  }
+
+  /**
+   * Create an agent
+   *
+   * @param socketPath The socket file
+   * @param ttlMillis  Milliseconds a vault stays unlocked
+   */
+  public KeyAgent(Path socketPath, long ttlMillis) {
+    if (socketPath == null) {
+      throw new NullPointerException("Socket path is null");
+    }
+    if (ttlMillis <= 0) {
+      throw new IllegalArgumentException("Invalid time to live");
+    }
+    this.socketPath = socketPath.toAbsolutePath().normalize();
+    this.ttlMillis = ttlMillis;
+    this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "key-agent-evictor");
+      t.setDaemon(true);
+      return t;
+    });
+    this.workers = Executors.newFixedThreadPool(AGENT_THREADS, r -> {
+      Thread t = new Thread(r, "key-agent-worker");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Bind the socket; the directory of the socket is made accessible only by the owner before
+   * binding, also if it already exists, so the socket is never reachable by other users
+   *
+   * @throws IOException if the socket cannot be bound or another agent is listening on it
+   */
+  public void start() throws IOException {
+    Path dir = this.socketPath.getParent();
+    Files.createDirectories(dir);
+    // The directory can have been created with the default umask, e.g. by the vault registry
+    setPermissions(dir, "rwx------");
+
+    if (Files.exists(this.socketPath)) {
+      // Replace a stale socket, not the one of a running agent
+      if (isListening(this.socketPath)) {
+        throw new IOException("Agent already running on " + this.socketPath);
+      }
+      Files.delete(this.socketPath);
+    }
+
+    this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    this.server.bind(UnixDomainSocketAddress.of(this.socketPath));
+    setPermissions(this.socketPath, "rw-------");
+    this.owner = Files.getOwner(this.socketPath);
+    this.running = true;
+
+    long period = Math.min(1000, this.ttlMillis);
+    this.evictor.scheduleAtFixedRate(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Serve the requests until the agent is stopped
+   *
+   * @throws IOException if the socket fails
+   */
+  public void serve() throws IOException {
+    while (this.running) {
+      SocketChannel client;
+      try {
+        client = this.server.accept();
+      } catch (ClosedChannelException e) {
+        break;
+      }
+      try {
+        this.workers.execute(() -> handle(client));
+      } catch (RejectedExecutionException e) {
+        closeQuietly(client);   // Stopped meanwhile
+      }
+    }
+  }
+
+  /**
+   * Serve the request of a connection; a client that does not send its request in time is disconnected
+   */
+  private void handle(SocketChannel client) {
+    try (client;
+         DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+         DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client))) {
+      if (!isOwner(client)) {
+        System.err.println("Agent request refused: the client is not the owner of the agent");
+        return;
+      }
+      // The channel has no read timeout: closing it ends the blocked read
+      ScheduledFuture<?> timeout = this.evictor.schedule(() -> closeQuietly(client), AGENT_READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      String[] request;
+      try {
+        request = AgentProtocol.readRequest(in);
+      } finally {
+        timeout.cancel(false);
+      }
+      try {
+        String message = execute(request);
+        out.writeBoolean(true);
+        AgentProtocol.writeString(out, message);
+      } catch (Exception e) {
+        out.writeBoolean(false);
+        AgentProtocol.writeString(out, describe(e));
+      }
+      out.flush();
+    } catch (IOException e) {
+      System.err.println("Error while serving an agent request: " + e.getMessage());
+    }
+
+    if (this.stopRequested) {
+      try {
+        close();
+      } catch (IOException e) {
+        System.err.println("Error while stopping the agent");
+      }
+    }
+  }
+
+  /**
+   * Stop the agent locking all the vaults; a vault is locked once its running request ends
+   */
+  @Override
+  public void close() throws IOException {
+    List<CachedVault> toLock;
+    synchronized (this) {
+      this.running = false;
+      this.evictor.shutdownNow();
+      this.workers.shutdown();
+      toLock = new ArrayList<>(this.vaults.values());
+      this.vaults.clear();
+      if (this.server != null) {
+        this.server.close();
+        Files.deleteIfExists(this.socketPath);
+      }
+    }
+    for (CachedVault cached : toLock) { lockVault(cached.vault); }
+  }
+
+  public Path getSocketPath() {
+    return this.socketPath;
+  }
+
+  /**
+   * Execute a request
+   *
+   * @param request The command followed by its arguments
+   *
+   * @return the message for the client
+   * @throws Exception if the request fails
+   */
+  private String execute(String[] request) throws Exception {
+    switch (request[0]) {
+      case AgentProtocol.UNLOCK: {
+        requireArgs(request, 2);
+        Path dir = vaultPath(request[1]);
+        // The keys are derived without holding the agent: the other requests go on meanwhile
+        Vault vault = Vault.importVault(dir.toFile());
+        vault.unlock(request[2]);
+        CachedVault previous;
+        synchronized (this) {
+          previous = this.vaults.put(dir, new CachedVault(vault, System.currentTimeMillis() + this.ttlMillis));
+        }
+        if (previous != null) { lockVault(previous.vault); }
+        return "Vault " + vault.getName() + " unlocked for " + this.ttlMillis / 1000 + " s";
+      }
+      case AgentProtocol.ADD: {
+        requireArgs(request, 2);
+        Vault vault = getVault(request[1]);
+        Path source = Path.of(request[2]);
+        // The requests on a vault run one at a time; the vault is locked only between them
+        synchronized (vault) {
+          if (Files.isDirectory(source)) {
+            vault.addDirectory(source);
+          } else {
+            vault.addFile(source);
+          }
+        }
+        return "Added " + source;
+      }
+      case AgentProtocol.EXTRACT: {
+        requireArgs(request, 2);
+        Vault vault = getVault(request[1]);
+        Path revealed;
+        synchronized (vault) {
+          revealed = vault.reveal(Path.of(request[2]), null, null);
+        }
+        return revealed != null ? "Revealed in " + revealed : "Vault is empty";
+      }
+      case AgentProtocol.VERIFY: {
+        requireArgs(request, 1);
+        Vault vault = getVault(request[1]);
+        ScrubReport report;
+        synchronized (vault) {
+          report = vault.scrub(SCRUB_THREADS, SCRUB_BYTES_PER_SECOND, null, null);
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(report.getItemsChecked()).append(" items checked, ").append(report.getCorruptItems().size()).append(" corrupt");
+        for (ScrubReport.CorruptItem item : report.getCorruptItems()) { message.append(System.lineSeparator()).append(item); }
+        return message.toString();
+      }
+      case AgentProtocol.LOCK: {
+        requireArgs(request, 1);
+        CachedVault cached;
+        synchronized (this) {
+          cached = this.vaults.remove(vaultPath(request[1]));
+        }
+        if (cached == null) { return "Vault not unlocked"; }
+        lockVault(cached.vault);
+        return "Vault " + cached.vault.getName() + " locked";
+      }
+      case AgentProtocol.STOP: {
+        this.stopRequested = true;
+        return "Agent stopped";
+      }
+      default:
+        throw new IllegalArgumentException("Unknown command " + request[0]);
+    }
+  }
+
+  /**
+   * Get an unlocked vault
+   *
+   * @throws VaultLockedException if the vault is not unlocked in the agent or its time to live expired
+   */
+  private Vault getVault(String dir) throws VaultLockedException {
+    Path path = vaultPath(dir);
+    CachedVault cached;
+    synchronized (this) {
+      cached = this.vaults.get(path);
+      if (cached == null) {
+        throw new VaultLockedException();
+      }
+      if (cached.expiresAt > System.currentTimeMillis()) {
+        return cached.vault;
+      }
+      this.vaults.remove(path);
+    }
+    lockVault(cached.vault);
+    throw new VaultLockedException();
+  }
+
+  /**
+   * Lock the vaults whose time to live expired; a vault is locked once its running request ends
+   */
+  private void evictExpired() {
+    long now = System.currentTimeMillis();
+    List<CachedVault> expired = new ArrayList<>();
+    synchronized (this) {
+      for (Iterator<CachedVault> it = this.vaults.values().iterator(); it.hasNext(); ) {
+        CachedVault cached = it.next();
+        if (cached.expiresAt <= now) {
+          expired.add(cached);
+          it.remove();
+        }
+      }
+    }
+    for (CachedVault cached : expired) { lockVault(cached.vault); }
+  }
+
+  /**
+   * Lock a vault removed from the agent, waiting for its running request
+   */
+  private static void lockVault(Vault vault) {
+    synchronized (vault) {
+      vault.lock();
+    }
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // Already closed
+    }
+  }
+
+  private static Path vaultPath(String dir) {
+    return Path.of(dir).toAbsolutePath().normalize();
+  }
+
+  private static void requireArgs(String[] request, int count) {
+    if (request.length != count + 1) {
+      throw new IllegalArgumentException("Invalid arguments for " + request[0]);
+    }
+  }
+
+  private static String describe(Exception e) {
+    if (e instanceof WrongPasswordException) { return "Wrong password"; }
+    if (e instanceof VaultLockedException) { return "Vault not unlocked"; }
+    if (e instanceof InvalidMacException) { return "Vault integrity check failed"; }
+    if (e instanceof InvalidConfigurationException) { return "Invalid vault configuration"; }
+    return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+  }
+
+  private static boolean isListening(Path socket) {
+    try {
+      SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Check that the peer of a connection runs as the user of the agent
+   */
+  private boolean isOwner(SocketChannel client) throws IOException {
+    try {
+      return client.getOption(ExtendedSocketOptions.SO_PEERCRED).user().equals(this.owner);
+    } catch (UnsupportedOperationException e) {
+      // The credentials are not available on this platform: the permissions of the directory protect the socket
+      return true;
+    }
+  }
+
+  private static void setPermissions(Path path, String permissions) throws IOException {
+    try {
+      Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+    } catch (UnsupportedOperationException e) {
+      // Not a POSIX file system: the default permissions of the user are kept
+    }
+  }
+}
@@ -0,0 +1,425 @@
+package app.cli;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import app.agent.AgentClient;
+import app.agent.KeyAgent;
+import app.core.KeyDerivator.InvalidPasswordException;
+import app.core.ScrubReport;
+import app.core.Vault;
+import app.core.Vault.InvalidConfigurationException;
+import app.core.Vault.InvalidMacException;
+import app.core.Vault.VaultLockedException;
+import app.core.Vault.WrongPasswordException;
+import app.core.VaultDirectory;
+import app.core.VaultItem;
+import app.dav.VaultDavServer;
+
+import static app.core.Constants.*;
+
+/**
+ * Command line interface of the vaults, without JavaFX: every command derives the keys from the password,
+ * runs and exits. With --json every result is printed as one JSON object per line, for batch jobs.
+ * <p>
+ * The passwords are read from the console, or one per line from the standard input if there is no console,
+ * never from the arguments. The exit status is 0 on success, 1 if the command fails or the vault is corrupt,
+ * 2 if the arguments are not valid.
+ * <p>
+ * {@code agent [ttl seconds]} runs the key agent, {@code agent <command> ...} sends a command to it.
+ */
+public class VaultCli {
+
+  static final String CREATE = "create";
+  static final String ADD = "add";
+  static final String EXTRACT = "extract";
+  static final String LIST = "list";
+  static final String VERIFY = "verify";
+  static final String CHANGE_PASSWORD = "change-password";
+  static final String SERVE = "serve";
+  static final String AGENT = "agent";
+  static final String UNLOCK = "unlock";
+  static final String LOCK = "lock";
+  static final String STOP = "stop";
+
+  static final int DEFAULT_DAV_PORT = 4918;
+  private static final int TOKEN_SIZE = 18;
+
+  private static final String JSON_OPTION = "--json";
+  private static final String USAGE = "Usage: [--json] create <parent dir> <name> | add <vault dir> <file or dir>... | extract <vault dir> <dest dir>"
+                                    + " | list <vault dir> | verify <vault dir> | change-password <vault dir> | serve <vault dir> [port]"
+                                    + " | agent [ttl seconds] | agent unlock|verify|lock <vault dir> | agent add <vault dir> <file or dir>"
+                                    + " | agent extract <vault dir> <dest dir> | agent stop";
+
+  private final Console console;
+  private final BufferedReader in;
+  private final PrintStream out;
+  private final PrintStream err;
+  private boolean json;
+
+  /**
+   * Create the interface
+   *
+   * @param console The console to read the passwords (can be null)
+   * @param in      The reader of the passwords without console
+   * @param out     The stream of the results
+   * @param err     The stream of the errors
+   */
+  public VaultCli(Console console, BufferedReader in, PrintStream out, PrintStream err) {
+    this.console = console;
+    this.in = in;
+    this.out = out;
+    this.err = err;
+  }
+
+  /**
+   * Run a command
+   *
+   * @param args The options followed by the command and its arguments
+   *
+   * @return the exit status
+   */
+  public int run(String[] args) {
+    int first = 0;
+    this.json = args.length > 0 && args[0].equals(JSON_OPTION);
+    if (this.json) { first++; }
+    String command = args.length > first ? args[first] : "";
+    String[] params = Arrays.copyOfRange(args, Math.min(first + 1, args.length), args.length);
+
+    try {
+      switch (command) {
+        case CREATE:
+          requireArgs(params, 2, 2);
+          return create(Path.of(params[0]), params[1]);
+        case ADD:
+          requireArgs(params, 2, Integer.MAX_VALUE);
+          return add(Path.of(params[0]), Arrays.stream(params, 1, params.length).map(Path::of).toList());
+        case EXTRACT:
+          requireArgs(params, 2, 2);
+          return extract(Path.of(params[0]), Path.of(params[1]));
+        case LIST:
+          requireArgs(params, 1, 1);
+          return list(Path.of(params[0]));
+        case VERIFY:
+          requireArgs(params, 1, 1);
+          return verify(Path.of(params[0]));
+        case CHANGE_PASSWORD:
+          requireArgs(params, 1, 1);
+          return changePassword(Path.of(params[0]));
+        case SERVE:
+          requireArgs(params, 1, 2);
+          return serve(Path.of(params[0]), params.length > 1 ? parsePort(params[1]) : DEFAULT_DAV_PORT);
+        case AGENT:
+          if (params.length > 0 && AgentClient.isCommand(params[0])) {
+            return agentCommand(params[0], Arrays.copyOfRange(params, 1, params.length));
+          }
+          requireArgs(params, 0, 1);
+          return agent(params.length > 0 ? parseTtl(params[0]) : AGENT_TTL_SECONDS);
+        default:
+          throw new IllegalArgumentException("Unknown command " + command);
+      }
+    } catch (IllegalArgumentException e) {
+      this.err.println(e.getMessage());
+      this.err.println(USAGE);
+      return 2;
+    } catch (Exception e) {
+      if (this.json) {
+        this.out.println(object("ok", false, "command", command, "error", describe(e)));
+      } else {
+        this.err.println(describe(e));
+      }
+      return 1;
+    }
+  }
+
+  private int create(Path parent, String name) throws Exception {
+    String psw = readNewPassword("Password: ");
+    Vault vault = new Vault(name, parent, psw);
+    report(object("ok", true, "command", CREATE, "vid", vault.getVid().toString(), "path", vault.getStoragePath().toAbsolutePath().toString()),
+           "Vault " + vault.getName() + " created in " + vault.getStoragePath().toAbsolutePath());
+    return 0;
+  }
+
+  private int add(Path dir, List<Path> sources) throws Exception {
+    for (Path source : sources) {
+      if (!Files.exists(source)) {
+        throw new IOException("Not found: " + source);
+      }
+    }
+
+    Vault vault = open(dir);
+    for (Path source : sources) {
+      if (Files.isDirectory(source)) {
+        vault.addDirectory(source);
+      } else {
+        vault.addFile(source);
+      }
+      if (!this.json) { this.out.println("Added " + source); }
+    }
+    if (this.json) { this.out.println(object("ok", true, "command", ADD, "added", sources.size(), "items", vault.getVaultItems().size())); }
+    return 0;
+  }
+
+  private int extract(Path dir, Path dest) throws Exception {
+    Vault vault = importVault(dir);
+    Path revealed = vault.unlock(readPassword("Password: "), dest);
+    report(object("ok", true, "command", EXTRACT, "path", revealed != null ? revealed.toAbsolutePath().toString() : null),
+           revealed != null ? "Revealed in " + revealed : "Vault is empty");
+    return 0;
+  }
+
+  private int list(Path dir) throws Exception {
+    Vault vault = open(dir);
+    Map<Path, VaultItem> items = vault.listItems(null, null);
+    for (Map.Entry<Path, VaultItem> item : items.entrySet()) {
+      boolean directory = item.getValue() instanceof VaultDirectory;
+      long size = directory ? 0 : Files.size(item.getValue().getAbsPath());
+      if (this.json) {
+        this.out.println(object("path", item.getKey().toString(), "type", directory ? "directory" : "file", "encryptedSize", size));
+      } else {
+        this.out.println(directory ? item.getKey() + "/" : item.getKey() + "\t" + size);
+      }
+    }
+    if (this.json) { this.out.println(object("ok", true, "command", LIST, "items", items.size())); }
+    return 0;
+  }
+
+  private int verify(Path dir) throws Exception {
+    // The unlock checks the configuration and the file tree, the scrub the tags of every item
+    Vault vault = open(dir);
+    ScrubReport report = vault.scrub(SCRUB_THREADS, 0, null, null);
+
+    if (this.json) {
+      for (ScrubReport.CorruptItem item : report.getCorruptItems()) {
+        this.out.println(object("path", item.getPath().toString(), "headerCorrupt", item.isHeaderCorrupt(), "corruptChunks", item.getChunks()));
+      }
+      this.out.println(object("ok", report.isClean(), "command", VERIFY, "items", report.getItemsChecked(), "bytes", report.getBytesChecked(),
+                              "corrupt", report.getCorruptItems().size()));
+    } else {
+      this.out.println(report.getItemsChecked() + " items checked, " + report.getCorruptItems().size() + " corrupt");
+      for (ScrubReport.CorruptItem item : report.getCorruptItems()) { this.out.println(item); }
+    }
+    return report.isClean() ? 0 : 1;
+  }
+
+  private int changePassword(Path dir) throws Exception {
+    Vault vault = importVault(dir);
+    String oldPsw = readPassword("Current password: ");
+    String newPsw = readNewPassword("New password: ");
+    vault.changePsw(oldPsw, newPsw);
+    report(object("ok", true, "command", CHANGE_PASSWORD), "Password changed");
+    return 0;
+  }
+
+  private int serve(Path dir, int port) throws Exception {
+    Vault vault = open(dir);
+    byte[] random = new byte[TOKEN_SIZE];
+    new SecureRandom().nextBytes(random);
+    String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+
+    VaultDavServer server = new VaultDavServer(vault, token);
+    server.start(port);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.close();
+      vault.lock();
+    }));
+
+    String url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() + "/";
+    report(object("ok", true, "command", SERVE, "url", url, "token", token),
+           "Serving " + vault.getName() + " on " + url + " with password " + token + " (any user name), Ctrl+C to stop");
+    Thread.currentThread().join();
+    return 0;
+  }
+
+  private int agent(long ttlSeconds) throws Exception {
+    KeyAgent agent = new KeyAgent(ttlSeconds * 1000);
+    agent.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        agent.close();
+      } catch (IOException e) {
+        this.err.println("Error while stopping the agent");
+      }
+    }));
+    report(object("ok", true, "command", AGENT, "socket", agent.getSocketPath().toString()),
+           "Key agent listening on " + agent.getSocketPath());
+    agent.serve();
+    return 0;
+  }
+
+  private int agentCommand(String command, String[] params) throws Exception {
+    AgentClient client = new AgentClient();
+    String message;
+    switch (command) {
+      case ADD:
+        requireArgs(params, 2, 2);
+        message = client.add(Path.of(params[0]), Path.of(params[1]));
+        break;
+      case EXTRACT:
+        requireArgs(params, 2, 2);
+        message = client.extract(Path.of(params[0]), Path.of(params[1]));
+        break;
+      case VERIFY:
+        requireArgs(params, 1, 1);
+        message = client.verify(Path.of(params[0]));
+        break;
+      case UNLOCK:
+        requireArgs(params, 1, 1);
+        message = client.unlock(Path.of(params[0]), readPassword("Password: "));
+        break;
+      case LOCK:
+        requireArgs(params, 1, 1);
+        message = client.lock(Path.of(params[0]));
+        break;
+      case STOP:
+        requireArgs(params, 0, 0);
+        message = client.stop();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown command " + command);
+    }
+    report(object("ok", true, "command", AGENT + " " + command, "message", message), message);
+    return 0;
+  }
+
+  private static long parseTtl(String ttl) {
+    try {
+      long value = Long.parseLong(ttl);
+      if (value > 0) { return value; }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("Invalid time to live " + ttl);
+  }
+
+  private static int parsePort(String port) {
+    try {
+      int value = Integer.parseInt(port);
+      if (value >= 0 && value <= 65535) { return value; }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("Invalid port " + port);
+  }
+
+  private Vault open(Path dir) throws Exception {
+    Vault vault = importVault(dir);
+    vault.unlock(readPassword("Password: "));
+    return vault;
+  }
+
+  private static Vault importVault(Path dir) throws Exception {
+    return Vault.importVault(dir.toAbsolutePath().normalize().toFile());
+  }
+
+  private void report(String jsonLine, String text) {
+    this.out.println(this.json ? jsonLine : text);
+  }
+
+  private String readPassword(String prompt) throws IOException {
+    if (this.console != null) {
+      char[] psw = this.console.readPassword(prompt);
+      if (psw == null) { throw new IOException("No password"); }
+      return new String(psw);
+    }
+    String psw = this.in.readLine();
+    if (psw == null) { throw new IOException("No password"); }
+    return psw;
+  }
+
+  /**
+   * Read a new password, asked twice on the console
+   */
+  private String readNewPassword(String prompt) throws IOException {
+    String psw = readPassword(prompt);
+    if (this.console != null && !psw.equals(readPassword("Repeat " + prompt.toLowerCase()))) {
+      throw new IOException("The passwords do not match");
+    }
+    return psw;
+  }
+
+  private static void requireArgs(String[] params, int min, int max) {
+    if (params.length < min || params.length > max) {
+      throw new IllegalArgumentException("Invalid number of arguments");
+    }
+  }
+
+  private static String describe(Exception e) {
+    if (e instanceof WrongPasswordException) { return "Wrong password"; }
+    if (e instanceof VaultLockedException) { return "Vault locked"; }
+    if (e instanceof InvalidMacException) { return "Vault integrity check failed"; }
+    if (e instanceof InvalidConfigurationException) { return "Invalid vault configuration"; }
+    if (e instanceof InvalidPasswordException) { return "Invalid password: " + e.getMessage(); }
+    return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+  }
+
+  /**
+   * Format a JSON object
+   *
+   * @param fields Names and values: strings, numbers, booleans, lists of numbers or null
+   */
+  static String object(Object... fields) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    for (int i = 0; i < fields.length; i += 2) { map.put((String) fields[i], fields[i + 1]); }
+
+    StringBuilder json = new StringBuilder("{");
+    for (Map.Entry<String, Object> field : map.entrySet()) {
+      if (json.length() > 1) { json.append(','); }
+      appendString(json, field.getKey());
+      json.append(':');
+      Object value = field.getValue();
+      if (value instanceof String) {
+        appendString(json, (String) value);
+      } else if (value instanceof List) {
+        json.append(((List<?>) value).stream().map(String::valueOf).reduce((a, b) -> a + "," + b).map(s -> "[" + s + "]").orElse("[]"));
+      } else {
+        json.append(value);
+      }
+    }
+    return json.append('}').toString();
+  }
+
+  private static void appendString(StringBuilder json, String s) {
+    json.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"': json.append("\\\""); break;
+        case '\\': json.append("\\\\"); break;
+        case '\n': json.append("\\n"); break;
+        case '\r': json.append("\\r"); break;
+        case '\t': json.append("\\t"); break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    json.append('"');
+  }
+
+  /**
+   * Run a command reading the passwords from the console, or from the standard input
+   *
+   * @param args The options followed by the command and its arguments
+   */
+  public static void main(String[] args) {
+    BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    System.exit(new VaultCli(System.console(), in, System.out, System.err).run(args));
+  }
+}
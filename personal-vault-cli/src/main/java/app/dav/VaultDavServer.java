@@ -0,0 +1,437 @@
+package app.dav;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.sun.net.httpserver.BasicAuthenticator;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import app.core.Vault;
+import app.core.Vault.InternalException;
+import app.core.Vault.OperationCancelledException;
+import app.core.Vault.VaultLockedException;
+import app.core.VaultDirectory;
+import app.core.VaultFile;
+import app.core.VaultItem;
+
+/**
+ * Local WebDAV server of an unlocked vault, so that file managers and media players can open its content
+ * without revealing it on disk: the listings come from the vault metadata, a download decrypts only the
+ * chunks of the requested range and an upload is encrypted while it is received.
+ * <p>
+ * The server is bound to the loopback address and, with a token, requires it as the Basic password
+ * (any user name). It answers OPTIONS, PROPFIND (depth 0 and 1), GET and HEAD with a single byte range,
+ * PUT and DELETE of files; the directories cannot be created. The lookups share a read lock and the
+ * changes take the write lock, while the content is streamed outside the lock. The vault has a single
+ * operation journal, so the changes are also serialized on a lock of their own, held during the uploads.
+ */
+public class VaultDavServer implements Closeable {
+
+  static final String ALLOW = "OPTIONS, PROPFIND, GET, HEAD, PUT, DELETE";
+  private static final int MAX_THREADS = 64;   // Without virtual threads
+  private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+  private static final long[] UNSATISFIABLE = new long[0];
+
+  private final Vault vault;
+  private final String token;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Lock changeLock = new ReentrantLock();   // One PUT or DELETE at a time
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * Create the server of a vault, decrypting the names of its items
+   *
+   * @param vault The unlocked vault
+   * @param token The password of the clients (can be null to accept any local client)
+   *
+   * @throws VaultLockedException If the vault is locked
+   * @throws InternalException If a name cannot be decrypted
+   */
+  public VaultDavServer(Vault vault, String token) throws VaultLockedException, InternalException {
+    if (vault == null) {
+      throw new NullPointerException("Vault is null");
+    }
+    try {
+      vault.listItems(null, null);
+    } catch (OperationCancelledException e) {
+      // Cannot happen without a cancellation token
+      throw new InternalException();
+    }
+    this.vault = vault;
+    this.token = token;
+  }
+
+  /**
+   * Bind the server to the loopback address and start serving the requests
+   *
+   * @param port The port; 0 for any free port
+   *
+   * @throws IOException if the port cannot be bound
+   */
+  public void start(int port) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    HttpContext context = this.server.createContext("/", this::handle);
+    if (this.token != null) {
+      context.setAuthenticator(new BasicAuthenticator(this.vault.getName()) {
+        @Override
+        public boolean checkCredentials(String user, String psw) {
+          return MessageDigest.isEqual(psw.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+        }
+      });
+    }
+    this.executor = newExecutor();
+    this.server.setExecutor(this.executor);
+    this.server.start();
+  }
+
+  /**
+   * Get the port of the started server
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * Stop the server closing the open connections
+   */
+  @Override
+  public void close() {
+    if (this.server != null) {
+      this.server.stop(0);
+      this.executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Create the executor of the requests: one virtual thread per request if the runtime has them,
+   * a bounded pool of daemon threads otherwise
+   */
+  private static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      AtomicInteger count = new AtomicInteger();
+      return Executors.newFixedThreadPool(MAX_THREADS, r -> {
+        Thread t = new Thread(r, "vault-dav-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      Path path = toClearPath(exchange.getRequestURI().getPath());
+      switch (exchange.getRequestMethod()) {
+        case "OPTIONS":
+          exchange.getResponseHeaders().set("DAV", "1");
+          exchange.getResponseHeaders().set("Allow", ALLOW);
+          exchange.sendResponseHeaders(200, -1);
+          break;
+        case "PROPFIND":
+          propfind(exchange, path);
+          break;
+        case "GET":
+          get(exchange, path, false);
+          break;
+        case "HEAD":
+          get(exchange, path, true);
+          break;
+        case "PUT":
+          put(exchange, path);
+          break;
+        case "DELETE":
+          delete(exchange, path);
+          break;
+        default:
+          exchange.getResponseHeaders().set("Allow", ALLOW);
+          exchange.sendResponseHeaders(405, -1);
+      }
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400);
+    } catch (Exception e) {
+      System.err.println("Error while serving " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + ": " + e.getMessage());
+      sendError(exchange, 500);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void propfind(HttpExchange exchange, Path path) throws IOException, VaultLockedException {
+    exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());   // allprop is assumed
+    boolean children = !"0".equals(exchange.getRequestHeaders().getFirst("Depth"));
+
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<D:multistatus xmlns:D=\"DAV:\">\n");
+    this.lock.readLock().lock();
+    try {
+      VaultItem item = find(path);
+      if (item == null && !isRoot(path)) {
+        sendError(exchange, 404);
+        return;
+      }
+      appendResponse(xml, path, item);
+      if (children && !(item instanceof VaultFile)) {
+        for (VaultItem child : this.vault.getChildren(path)) {
+          appendResponse(xml, path.resolve(child.getName()), child);
+        }
+      }
+    } finally {
+      this.lock.readLock().unlock();
+    }
+    xml.append("</D:multistatus>\n");
+
+    byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+    exchange.sendResponseHeaders(207, body.length);
+    exchange.getResponseBody().write(body);
+  }
+
+  private void appendResponse(StringBuilder xml, Path path, VaultItem item) throws IOException {
+    boolean directory = !(item instanceof VaultFile);
+    Path absPath = item != null ? item.getAbsPath() : this.vault.getStoragePath();
+
+    xml.append("<D:response><D:href>").append(toHref(path, directory)).append("</D:href><D:propstat><D:prop>");
+    xml.append("<D:displayname>").append(escape(item != null ? item.getName() : this.vault.getName())).append("</D:displayname>");
+    if (directory) {
+      xml.append("<D:resourcetype><D:collection/></D:resourcetype>");
+    } else {
+      xml.append("<D:resourcetype/><D:getcontentlength>").append(((VaultFile) item).getPlainSize()).append("</D:getcontentlength>");
+      xml.append("<D:getcontenttype>").append(escape(contentType(item.getName()))).append("</D:getcontenttype>");
+    }
+    xml.append("<D:getlastmodified>").append(HTTP_DATE.format(Files.getLastModifiedTime(absPath).toInstant())).append("</D:getlastmodified>");
+    xml.append("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+  }
+
+  private void get(HttpExchange exchange, Path path, boolean head) throws IOException, VaultLockedException, InternalException {
+    VaultItem item;
+    this.lock.readLock().lock();
+    try {
+      item = find(path);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+    if (item == null && !isRoot(path)) {
+      sendError(exchange, 404);
+      return;
+    }
+    if (!(item instanceof VaultFile)) {
+      exchange.getResponseHeaders().set("Allow", "OPTIONS, PROPFIND, DELETE");
+      sendError(exchange, 405);
+      return;
+    }
+
+    VaultFile file = (VaultFile) item;
+    long size = file.getPlainSize();
+    Headers headers = exchange.getResponseHeaders();
+    headers.set("Accept-Ranges", "bytes");
+    headers.set("Content-Type", contentType(file.getName()));
+    headers.set("Last-Modified", HTTP_DATE.format(Files.getLastModifiedTime(file.getAbsPath()).toInstant()));
+
+    long[] range = parseRange(exchange.getRequestHeaders().getFirst("Range"), size);
+    if (range == UNSATISFIABLE) {
+      headers.set("Content-Range", "bytes */" + size);
+      sendError(exchange, 416);
+      return;
+    }
+    int status = 200;
+    long offset = 0, length = size;
+    if (range != null) {
+      status = 206;
+      offset = range[0];
+      length = range[1] - range[0] + 1;
+      headers.set("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+    }
+
+    if (head) {
+      headers.set("Content-Length", Long.toString(length));
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(status, length > 0 ? length : -1);
+    if (length > 0) {
+      this.vault.readFile(file, offset, length, exchange.getResponseBody());
+    }
+  }
+
+  private void put(HttpExchange exchange, Path path) throws IOException, VaultLockedException, InternalException {
+    if (isRoot(path)) {
+      sendError(exchange, 405);
+      return;
+    }
+    Path parent = path.getParent() != null ? path.getParent() : Path.of("");
+
+    // The upload is encrypted under the change lock only: the lookups go on until the item is registered
+    boolean replaced;
+    this.changeLock.lock();
+    try {
+      VaultItem item = find(path);
+      if (item instanceof VaultDirectory) {
+        sendError(exchange, 405);
+        return;
+      }
+      if (this.vault.getChildren(parent) == null) {
+        sendError(exchange, 409);
+        return;
+      }
+      replaced = item != null;
+      try (InputStream in = exchange.getRequestBody()) {
+        this.vault.addStream(parent, path.getFileName().toString(), in, this.lock.writeLock());
+      }
+      // The old content is removed only once the new one is in the vault: a failed upload keeps it
+      if (replaced) {
+        this.lock.writeLock().lock();
+        try {
+          this.vault.remove(item);
+        } finally {
+          this.lock.writeLock().unlock();
+        }
+      }
+    } finally {
+      this.changeLock.unlock();
+    }
+    exchange.sendResponseHeaders(replaced ? 204 : 201, -1);
+  }
+
+  private void delete(HttpExchange exchange, Path path) throws IOException, VaultLockedException, InternalException {
+    if (isRoot(path)) {
+      sendError(exchange, 403);
+      return;
+    }
+    this.changeLock.lock();
+    this.lock.writeLock().lock();
+    try {
+      if (find(path) == null) {
+        sendError(exchange, 404);
+        return;
+      }
+      this.vault.remove(path);
+    } finally {
+      this.lock.writeLock().unlock();
+      this.changeLock.unlock();
+    }
+    exchange.sendResponseHeaders(204, -1);
+  }
+
+  /**
+   * Find an item given its clear path; null for the vault root or if not found
+   */
+  private VaultItem find(Path path) {
+    return isRoot(path) ? null : this.vault.getVaultFileByClearPath(path);
+  }
+
+  private static boolean isRoot(Path path) {
+    return path.toString().isEmpty();
+  }
+
+  /**
+   * Convert the decoded path of a request to a clear path relative to the vault root
+   *
+   * @throws IllegalArgumentException if the path leaves the vault
+   */
+  static Path toClearPath(String uriPath) {
+    List<String> names = new ArrayList<>();
+    for (String name : uriPath.split("/")) {
+      if (name.isEmpty() || name.equals(".")) { continue; }
+      if (name.equals("..") || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0) {
+        throw new IllegalArgumentException("Invalid path " + uriPath);
+      }
+      names.add(name);
+    }
+    return names.isEmpty() ? Path.of("") : Path.of(names.get(0), names.subList(1, names.size()).toArray(new String[0]));
+  }
+
+  /**
+   * Encode a clear path as the absolute href of a response; the collections end with a slash
+   */
+  static String toHref(Path path, boolean collection) {
+    StringBuilder href = new StringBuilder();
+    for (Path name : path) {
+      href.append('/');
+      for (byte b : name.toString().getBytes(StandardCharsets.UTF_8)) {
+        char c = (char) (b & 0xff);
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "-._~".indexOf(c) >= 0) {
+          href.append(c);
+        } else {
+          href.append(String.format("%%%02X", (int) c));
+        }
+      }
+    }
+    if (collection || href.length() == 0) { href.append('/'); }
+    return href.toString();
+  }
+
+  /**
+   * Parse a Range header with a single range of bytes
+   *
+   * @param header The header (can be null)
+   * @param size   The size of the content
+   *
+   * @return the first and the last byte; null to send the whole content, if there is no range or it is not
+   *         supported; UNSATISFIABLE if the range is outside the content
+   */
+  static long[] parseRange(String header, long size) {
+    if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) { return null; }
+    String spec = header.substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) { return null; }
+
+    try {
+      if (dash == 0) {
+        // Suffix: the last n bytes
+        long n = Long.parseLong(spec.substring(1));
+        if (n <= 0 || size == 0) { return UNSATISFIABLE; }
+        return new long[] { Math.max(0, size - n), size - 1 };
+      }
+      long first = Long.parseLong(spec.substring(0, dash));
+      long last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+      if (first < 0 || last < first) { return null; }
+      if (first >= size) { return UNSATISFIABLE; }
+      return new long[] { first, Math.min(last, size - 1) };
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static String contentType(String name) {
+    String type = URLConnection.guessContentTypeFromName(name);
+    return type != null ? type : "application/octet-stream";
+  }
+
+  private static String escape(String s) {
+    return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+  }
+
+  /**
+   * Send a status without body, unless the response has already started
+   */
+  private static void sendError(HttpExchange exchange, int status) throws IOException {
+    if (exchange.getResponseCode() == -1) {
+      exchange.sendResponseHeaders(status, -1);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import app.agent.AgentClient;
+import app.agent.AgentClient.AgentException;
+import app.agent.KeyAgent;
+import app.core.Vault;
+
+public class KeyAgentTest {
+
+  private static final String PSW = "SecretP@ssword1234";
+  private static final String NAME = "AgentVault";
+
+  private Path root;
+  private Path socket;
+  private Path vaultDir;
+  private KeyAgent agent;
+  private Thread serving;
+
+  @Before
+  public void createVault() throws Exception {
+    this.root = Files.createTempDirectory("agent-test");
+    this.socket = this.root.resolve("sock").resolve("agent.sock");
+    Vault v = new Vault(NAME, this.root, PSW);
+    this.vaultDir = v.getStoragePath();
+
+    Path source = Files.createDirectory(this.root.resolve("source"));
+    Files.write(source.resolve("file1"), new byte[100000]);
+    Files.createDirectory(source.resolve("subDir"));
+    Files.writeString(source.resolve("subDir").resolve("file2"), "content");
+  }
+
+  @After
+  public void deleteAll() throws IOException {
+    if (this.agent != null) { this.agent.close(); }
+    try (Stream<Path> paths = Files.walk(this.root)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  private AgentClient startAgent(long ttlMillis) throws IOException {
+    this.agent = new KeyAgent(this.socket, ttlMillis);
+    this.agent.start();
+    this.serving = new Thread(() -> {
+      try {
+        this.agent.serve();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    this.serving.start();
+    return new AgentClient(this.socket);
+  }
+
+  @Test
+  public void testCommands() throws Exception {
+    AgentClient client = startAgent(60000);
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(this.socket)));
+
+    try {
+      client.unlock(this.vaultDir, "WrongP@ssword1234");
+      fail("AgentException not thrown");
+    } catch (AgentException e) {
+      assertEquals("Wrong password", e.getMessage());
+    }
+
+    // The password is sent once; the following commands use the cached keys
+    client.unlock(this.vaultDir, PSW);
+    client.add(this.vaultDir, this.root.resolve("source"));
+    assertTrue(client.verify(this.vaultDir).startsWith("4 items checked, 0 corrupt"));
+
+    Path dest = Files.createDirectory(this.root.resolve("dest"));
+    client.extract(this.vaultDir, dest);
+    Path revealed = dest.resolve(NAME + "-unlocked");
+    assertEquals("content", Files.readString(revealed.resolve("source").resolve("subDir").resolve("file2")));
+    assertEquals(100000, Files.size(revealed.resolve("source").resolve("file1")));
+
+    client.lock(this.vaultDir);
+    try {
+      client.verify(this.vaultDir);
+      fail("AgentException not thrown");
+    } catch (AgentException e) {
+      assertEquals("Vault not unlocked", e.getMessage());
+    }
+
+    client.stop();
+    this.serving.join(5000);
+    assertFalse(this.serving.isAlive());
+    assertFalse(Files.exists(this.socket));
+  }
+
+  @Test
+  public void testSocketDirectoryPermissions() throws Exception {
+    // The directory already exists with the default umask, e.g. created by the vault registry
+    Files.createDirectories(this.socket.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxr-xr-x")));
+    AgentClient client = startAgent(60000);
+    assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(this.socket.getParent())));
+    client.unlock(this.vaultDir, PSW);
+  }
+
+  @Test
+  public void testIdleClient() throws Exception {
+    AgentClient client = startAgent(60000);
+    // A client that connects and never sends its request does not hold the others
+    try (SocketChannel idle = SocketChannel.open(UnixDomainSocketAddress.of(this.socket))) {
+      long start = System.currentTimeMillis();
+      client.unlock(this.vaultDir, PSW);
+      assertTrue(client.verify(this.vaultDir).endsWith(" 0 corrupt"));
+      assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+  }
+
+  @Test
+  public void testExpiredVault() throws Exception {
+    AgentClient client = startAgent(200);
+    client.unlock(this.vaultDir, PSW);
+    Thread.sleep(600);
+
+    try {
+      client.verify(this.vaultDir);
+      fail("AgentException not thrown");
+    } catch (AgentException e) {
+      assertEquals("Vault not unlocked", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import app.cli.VaultCli;
+
+public class VaultCliTest {
+
+  private static final String PSW = "SecretP@ssword1234", NEW_PSW = "OtherP@ssword5678";
+  private static final String NAME = "CliVault";
+
+  private Path root;
+  private Path source;
+  private Path vaultDir;
+  private ByteArrayOutputStream out;
+  private ByteArrayOutputStream err;
+
+  @Before
+  public void createSource() throws IOException {
+    this.root = Files.createTempDirectory("cli-test");
+    this.source = Files.createDirectory(this.root.resolve("source"));
+    Files.write(this.source.resolve("file1"), new byte[100000]);
+    Files.createDirectory(this.source.resolve("subDir"));
+    Files.writeString(this.source.resolve("subDir").resolve("file2"), "content \"quoted\"");
+    this.vaultDir = this.root.resolve(NAME);
+  }
+
+  @After
+  public void deleteAll() throws IOException {
+    try (Stream<Path> paths = Files.walk(this.root)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  /**
+   * Run a command without console, the passwords being the lines of the standard input;
+   * what the vault prints on System.out is captured with the results
+   */
+  private int run(String stdin, String... args) {
+    this.out = new ByteArrayOutputStream();
+    this.err = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(this.out, true, StandardCharsets.UTF_8);
+    VaultCli cli = new VaultCli(null, new BufferedReader(new StringReader(stdin)), out, new PrintStream(this.err, true, StandardCharsets.UTF_8));
+    PrintStream stdout = System.out;
+    System.setOut(out);
+    try {
+      return cli.run(args);
+    } finally {
+      System.setOut(stdout);
+    }
+  }
+
+  /**
+   * Run a command with --json checking that every line of the output is a JSON value
+   */
+  private int runJson(String stdin, String... args) {
+    String[] jsonArgs = new String[args.length + 1];
+    jsonArgs[0] = "--json";
+    System.arraycopy(args, 0, jsonArgs, 1, args.length);
+    int status = run(stdin, jsonArgs);
+    for (String line : outLines()) {
+      assertTrue("Not JSON: " + line, isJson(line));
+    }
+    return status;
+  }
+
+  /**
+   * Check the JSON syntax of a line holding objects, arrays, strings, numbers, booleans and null
+   */
+  private static boolean isJson(String line) {
+    int[] pos = { 0 };
+    return parseValue(line, pos) && pos[0] == line.length();
+  }
+
+  private static boolean parseValue(String s, int[] pos) {
+    if (pos[0] >= s.length()) { return false; }
+    char c = s.charAt(pos[0]);
+    if (c == '{' || c == '[') {
+      char end = c == '{' ? '}' : ']';
+      pos[0]++;
+      if (pos[0] < s.length() && s.charAt(pos[0]) == end) { pos[0]++; return true; }
+      while (true) {
+        if (c == '{' && !(parseString(s, pos) && pos[0] < s.length() && s.charAt(pos[0]++) == ':')) { return false; }
+        if (!parseValue(s, pos) || pos[0] >= s.length()) { return false; }
+        char next = s.charAt(pos[0]++);
+        if (next == end) { return true; }
+        if (next != ',') { return false; }
+      }
+    }
+    if (c == '"') { return parseString(s, pos); }
+    for (String literal : new String[] { "true", "false", "null" }) {
+      if (s.startsWith(literal, pos[0])) { pos[0] += literal.length(); return true; }
+    }
+    int start = pos[0];
+    while (pos[0] < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos[0])) >= 0) { pos[0]++; }
+    try {
+      Double.parseDouble(s.substring(start, pos[0]));
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static boolean parseString(String s, int[] pos) {
+    if (pos[0] >= s.length() || s.charAt(pos[0]) != '"') { return false; }
+    for (pos[0]++; pos[0] < s.length(); pos[0]++) {
+      char c = s.charAt(pos[0]);
+      if (c == '"') { pos[0]++; return true; }
+      if (c < 0x20) { return false; }
+      if (c == '\\') { pos[0]++; }
+    }
+    return false;
+  }
+
+  private List<String> outLines() {
+    return this.out.toString(StandardCharsets.UTF_8).lines().toList();
+  }
+
+  @Test
+  public void testCommands() throws Exception {
+    assertEquals(0, runJson(PSW + "\n", "create", this.root.toString(), NAME));
+    assertTrue(outLines().get(0).startsWith("{\"ok\":true,\"command\":\"create\",\"vid\":"));
+
+    assertEquals(0, runJson(PSW + "\n", "add", this.vaultDir.toString(), this.source.toString()));
+    assertEquals("{\"ok\":true,\"command\":\"add\",\"added\":1,\"items\":4}", outLines().get(0));
+
+    // One object per item, then the result
+    assertEquals(0, runJson(PSW + "\n", "list", this.vaultDir.toString()));
+    List<String> lines = outLines();
+    assertEquals(5, lines.size());
+    assertTrue(lines.contains("{\"path\":\"source\",\"type\":\"directory\",\"encryptedSize\":0}"));
+    assertTrue(lines.stream().anyMatch(l -> l.startsWith("{\"path\":\"source/file1\",\"type\":\"file\",\"encryptedSize\":")));
+    assertEquals("{\"ok\":true,\"command\":\"list\",\"items\":4}", lines.get(4));
+
+    assertEquals(0, run(PSW + "\n", "verify", this.vaultDir.toString()));
+    assertEquals("4 items checked, 0 corrupt", outLines().get(0));
+
+    assertEquals(0, run(PSW + "\n" + NEW_PSW + "\n", "change-password", this.vaultDir.toString()));
+    assertEquals(1, runJson(PSW + "\n", "list", this.vaultDir.toString()));
+    assertEquals("{\"ok\":false,\"command\":\"list\",\"error\":\"Wrong password\"}", outLines().get(0));
+
+    Path dest = Files.createDirectory(this.root.resolve("dest"));
+    assertEquals(0, run(NEW_PSW + "\n", "extract", this.vaultDir.toString(), dest.toString()));
+    assertEquals("content \"quoted\"", Files.readString(dest.resolve(NAME + "-unlocked").resolve("source").resolve("subDir").resolve("file2")));
+  }
+
+  @Test
+  public void testCorruptVault() throws Exception {
+    assertEquals(0, run(PSW + "\n", "create", this.root.toString(), NAME));
+    assertEquals(0, run(PSW + "\n", "add", this.vaultDir.toString(), this.source.resolve("file1").toString()));
+
+    // Flip a byte of the content: the tree is intact but a chunk tag is not
+    Path encrypted;
+    try (Stream<Path> files = Files.list(this.vaultDir)) {
+      encrypted = files.filter(p -> { try { return Files.size(p) > 100000; } catch (IOException e) { return false; } }).findFirst().get();
+    }
+    byte[] content = Files.readAllBytes(encrypted);
+    content[content.length - 100] ^= 1;
+    Files.write(encrypted, content);
+
+    assertEquals(1, runJson(PSW + "\n", "verify", this.vaultDir.toString()));
+    List<String> lines = outLines();
+    assertTrue(lines.get(0).endsWith("\"headerCorrupt\":false,\"corruptChunks\":[1]}"));
+    assertTrue(lines.get(1).startsWith("{\"ok\":false,\"command\":\"verify\",\"items\":1,"));
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    assertEquals(2, run("", "unknown"));
+    assertEquals(2, run("", "add", this.vaultDir.toString()));
+    assertEquals(2, run(""));
+    assertEquals(2, run("", "agent", "0"));
+    assertEquals(2, run("", "agent", "unlock"));
+    assertEquals(2, run("", "agent", "stop", this.vaultDir.toString()));
+    assertTrue(this.err.toString(StandardCharsets.UTF_8).contains("Usage:"));
+
+    // No password on the standard input
+    assertEquals(1, run("", "list", this.vaultDir.toString()));
+  }
+}
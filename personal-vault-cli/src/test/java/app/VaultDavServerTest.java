@@ -0,0 +1,189 @@
+package app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import app.core.Vault;
+import app.dav.VaultDavServer;
+
+public class VaultDavServerTest {
+
+  private static final String PSW = "SecretP@ssword1234";
+  private static final String TOKEN = "token";
+
+  private Path root;
+  private Vault vault;
+  private VaultDavServer server;
+  private HttpClient client;
+  private byte[] content;
+
+  @Before
+  public void startServer() throws Exception {
+    this.root = Files.createTempDirectory("dav-test");
+    Path source = Files.createDirectories(this.root.resolve("source").resolve("sub dir"));
+    this.content = new byte[150000];   // Three chunks
+    new Random(1).nextBytes(this.content);
+    Files.write(source.resolve("movie.mp4"), this.content);
+
+    this.vault = new Vault("DavVault", this.root, PSW);
+    this.vault.addDirectory(this.root.resolve("source"));
+    this.server = new VaultDavServer(this.vault, TOKEN);
+    this.server.start(0);
+    this.client = HttpClient.newHttpClient();
+  }
+
+  @After
+  public void stopServer() throws IOException {
+    this.server.close();
+    try (Stream<Path> paths = Files.walk(this.root)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  private HttpRequest.Builder request(String path) {
+    String auth = Base64.getEncoder().encodeToString(("user:" + TOKEN).getBytes(StandardCharsets.UTF_8));
+    return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + this.server.getPort() + path)).header("Authorization", "Basic " + auth);
+  }
+
+  @Test
+  public void testPropfind() throws Exception {
+    HttpResponse<String> response = this.client.send(request("/source/").method("PROPFIND", BodyPublishers.noBody()).header("Depth", "1").build(),
+                                                     BodyHandlers.ofString());
+    assertEquals(207, response.statusCode());
+    assertTrue(response.body().contains("<D:href>/source/</D:href>"));
+    assertTrue(response.body().contains("<D:href>/source/sub%20dir/</D:href>"));
+
+    response = this.client.send(request("/source/sub%20dir/movie.mp4").method("PROPFIND", BodyPublishers.noBody()).header("Depth", "0").build(),
+                                BodyHandlers.ofString());
+    assertEquals(207, response.statusCode());
+    assertTrue(response.body().contains("<D:getcontentlength>150000</D:getcontentlength>"));
+    assertTrue(response.body().contains("<D:getcontenttype>video/mp4</D:getcontenttype>"));
+
+    response = this.client.send(request("/missing").method("PROPFIND", BodyPublishers.noBody()).build(), BodyHandlers.ofString());
+    assertEquals(404, response.statusCode());
+  }
+
+  @Test
+  public void testRangeGet() throws Exception {
+    String file = "/source/sub%20dir/movie.mp4";
+    HttpResponse<byte[]> response = this.client.send(request(file).GET().build(), BodyHandlers.ofByteArray());
+    assertEquals(200, response.statusCode());
+    assertArrayEquals(this.content, response.body());
+
+    // Across the boundary of the first chunk
+    response = this.client.send(request(file).header("Range", "bytes=65000-70000").build(), BodyHandlers.ofByteArray());
+    assertEquals(206, response.statusCode());
+    assertEquals("bytes 65000-70000/150000", response.headers().firstValue("Content-Range").get());
+    assertArrayEquals(Arrays.copyOfRange(this.content, 65000, 70001), response.body());
+
+    response = this.client.send(request(file).header("Range", "bytes=-100").build(), BodyHandlers.ofByteArray());
+    assertArrayEquals(Arrays.copyOfRange(this.content, 149900, 150000), response.body());
+
+    response = this.client.send(request(file).header("Range", "bytes=150000-").build(), BodyHandlers.ofByteArray());
+    assertEquals(416, response.statusCode());
+
+    HttpResponse<Void> head = this.client.send(request(file).method("HEAD", BodyPublishers.noBody()).build(), BodyHandlers.discarding());
+    assertEquals("150000", head.headers().firstValue("Content-Length").get());
+  }
+
+  @Test
+  public void testConcurrentGet() throws Exception {
+    List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      HttpRequest get = request("/source/sub%20dir/movie.mp4").header("Range", "bytes=" + (i * 5000) + "-").build();
+      responses.add(this.client.sendAsync(get, BodyHandlers.ofByteArray()));
+    }
+    for (int i = 0; i < responses.size(); i++) {
+      assertArrayEquals(Arrays.copyOfRange(this.content, i * 5000, this.content.length), responses.get(i).get().body());
+    }
+  }
+
+  @Test
+  public void testPut() throws Exception {
+    byte[] upload = Arrays.copyOf(this.content, 70000);
+    HttpResponse<Void> response = this.client.send(request("/source/upload.bin").PUT(BodyPublishers.ofByteArray(upload)).build(), BodyHandlers.discarding());
+    assertEquals(201, response.statusCode());
+    assertArrayEquals(upload, this.client.send(request("/source/upload.bin").build(), BodyHandlers.ofByteArray()).body());
+
+    // Replaced
+    response = this.client.send(request("/source/upload.bin").PUT(BodyPublishers.ofString("new")).build(), BodyHandlers.discarding());
+    assertEquals(204, response.statusCode());
+    assertEquals("new", this.client.send(request("/source/upload.bin").build(), BodyHandlers.ofString()).body());
+
+    // An interrupted upload keeps the old content
+    try (Socket socket = new Socket("127.0.0.1", this.server.getPort())) {
+      String auth = Base64.getEncoder().encodeToString(("user:" + TOKEN).getBytes(StandardCharsets.UTF_8));
+      String head = "PUT /source/upload.bin HTTP/1.1\r\nHost: localhost\r\nAuthorization: Basic " + auth + "\r\nContent-Length: 1000\r\n\r\n";
+      socket.getOutputStream().write((head + "partial").getBytes(StandardCharsets.UTF_8));
+      socket.setSoTimeout(10000);
+      socket.shutdownOutput();
+      socket.getInputStream().readAllBytes();   // Wait for the server to give up on the request
+    }
+    assertEquals("new", this.client.send(request("/source/upload.bin").build(), BodyHandlers.ofString()).body());
+
+    response = this.client.send(request("/missing/upload.bin").PUT(BodyPublishers.ofString("new")).build(), BodyHandlers.discarding());
+    assertEquals(409, response.statusCode());
+
+    response = this.client.send(request("/source/upload.bin").DELETE().build(), BodyHandlers.discarding());
+    assertEquals(204, response.statusCode());
+    assertEquals(404, this.client.send(request("/source/upload.bin").build(), BodyHandlers.discarding()).statusCode());
+
+    // The vault is consistent after the changes
+    Vault imported = Vault.importVault(this.vault.getStoragePath().toFile());
+    imported.unlock(PSW);
+    assertEquals(3, imported.listItems(null, null).size());
+  }
+
+  @Test
+  public void testGetDuringPut() throws Exception {
+    try (Socket socket = new Socket("127.0.0.1", this.server.getPort())) {
+      String auth = Base64.getEncoder().encodeToString(("user:" + TOKEN).getBytes(StandardCharsets.UTF_8));
+      String head = "PUT /source/upload.bin HTTP/1.1\r\nHost: localhost\r\nAuthorization: Basic " + auth + "\r\nContent-Length: 1000\r\n\r\n";
+      socket.getOutputStream().write((head + "partial").getBytes(StandardCharsets.UTF_8));
+      socket.getOutputStream().flush();
+
+      // The upload in progress does not hold the downloads
+      HttpRequest get = request("/source/sub%20dir/movie.mp4").timeout(Duration.ofSeconds(5)).build();
+      assertArrayEquals(this.content, this.client.send(get, BodyHandlers.ofByteArray()).body());
+
+      socket.getOutputStream().write(new byte[1000 - "partial".length()]);
+      socket.setSoTimeout(10000);
+      String status = new String(socket.getInputStream().readNBytes(12), StandardCharsets.UTF_8);
+      assertEquals("HTTP/1.1 201", status);
+    }
+    assertEquals(1000, this.client.send(request("/source/upload.bin").build(), BodyHandlers.ofByteArray()).body().length);
+  }
+
+  @Test
+  public void testAuthentication() throws Exception {
+    HttpRequest anonymous = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + this.server.getPort() + "/source/")).GET().build();
+    assertEquals(401, this.client.send(anonymous, BodyHandlers.discarding()).statusCode());
+  }
+}
@@ -0,0 +1,226 @@
+package app.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static app.core.Constants.*;
+
+/**
+ * Local set of breached password hashes, memory-mapped for reading, to check the passwords offline.
+ * <p>
+ * The file stores the SHA-1 hashes of the breached passwords sorted in unsigned byte order, so a hash
+ * is looked up with a binary search on the mapped records.
+ * <pre>
+ *   header   MAGIC, format version, count
+ *   records  count SHA-1 hashes (20 bytes)
+ * </pre>
+ * It is built from the "Pwned Passwords" dump of Have I Been Pwned ordered by hash (lines HASH:count).
+ * Files larger than 2 GB are mapped in several segments, each holding whole records.
+ */
+public class BreachedPasswordFile implements Closeable {
+
+  public static final int FORMAT_VERSION = 1;
+
+  private static final int MAGIC = 0x5650574E;   // "VPWN"
+  private static final int HEADER_SIZE = 4 + 4 + 8;
+  private static final int HASH_LENGTH = 20;
+  private static final long SEGMENT_RECORDS = Integer.MAX_VALUE / HASH_LENGTH;
+
+  private final long count;
+  private MappedByteBuffer[] segments;
+
+  private BreachedPasswordFile(long count, MappedByteBuffer[] segments) {
+    this.count = count;
+    this.segments = segments;
+  }
+
+  /**
+   * Open a breached password file mapping it in memory
+   *
+   * @param file The breached password file
+   *
+   * @return the breached password file
+   * @throws IOException if the file cannot be read or is not a breached password file
+   */
+  public static BreachedPasswordFile open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Invalid breached password file");
+      }
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      channel.read(header, 0);
+      if (header.getInt(0) != MAGIC) {
+        throw new IOException("Invalid breached password file");
+      }
+      if (header.getInt(4) != FORMAT_VERSION) {
+        throw new IOException("Unsupported breached password file version " + header.getInt(4));
+      }
+      long count = header.getLong(8);
+      if (count < 0 || HEADER_SIZE + count * HASH_LENGTH != channel.size()) {
+        throw new IOException("Invalid breached password file");
+      }
+
+      MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((count + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+      for (int i = 0; i < segments.length; i++) {
+        long records = Math.min(SEGMENT_RECORDS, count - i * SEGMENT_RECORDS);
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + i * SEGMENT_RECORDS * HASH_LENGTH, records * HASH_LENGTH);
+      }
+      return new BreachedPasswordFile(count, segments);
+    }
+  }
+
+  /**
+   * Get the breached password file of the user: the path in the system property BREACHED_FILE_PROPERTY,
+   * or BREACHED_FILE in APP_USER_DIR of the user home
+   */
+  public static Path defaultPath() {
+    String path = System.getProperty(BREACHED_FILE_PROPERTY);
+    return path != null ? Path.of(path) : Path.of(System.getProperty("user.home"), APP_USER_DIR, BREACHED_FILE);
+  }
+
+  /**
+   * Check if a password is in the set
+   *
+   * @param password The password
+   *
+   * @return true if the password is breached
+   */
+  public boolean contains(String password) {
+    try {
+      return containsHash(MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Check if a SHA-1 hash is in the set
+   *
+   * @param hash The SHA-1 hash
+   *
+   * @return true if the hash is in the set
+   */
+  public boolean containsHash(byte[] hash) {
+    if (hash.length != HASH_LENGTH) {
+      throw new IllegalArgumentException("Invalid SHA-1 hash");
+    }
+    long low = 0, high = this.count - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      int cmp = compareRecord(mid, hash);
+      if (cmp == 0) { return true; }
+      if (cmp < 0) { low = mid + 1; } else { high = mid - 1; }
+    }
+    return false;
+  }
+
+  public long size() {
+    return this.count;
+  }
+
+  /**
+   * Release the mapped file; the mapping is freed by the garbage collector
+   */
+  @Override
+  public void close() {
+    this.segments = null;
+  }
+
+  private int compareRecord(long index, byte[] hash) {
+    MappedByteBuffer segment = this.segments[(int) (index / SEGMENT_RECORDS)];
+    int offset = (int) (index % SEGMENT_RECORDS) * HASH_LENGTH;
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      int cmp = Byte.toUnsignedInt(segment.get(offset + i)) - Byte.toUnsignedInt(hash[i]);
+      if (cmp != 0) { return cmp; }
+    }
+    return 0;
+  }
+
+  /**
+   * Build a breached password file from the Pwned Passwords SHA-1 dump ordered by hash, replaced atomically
+   *
+   * @param dump The text dump: lines of 40 hex characters, optionally followed by ':' and the count
+   * @param out  The breached password file
+   *
+   * @return the number of hashes written
+   * @throws IOException if a line is not valid or the lines are not sorted
+   */
+  public static long build(Path dump, Path out) throws IOException {
+    Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+    long count = 0;
+    try (BufferedReader reader = Files.newBufferedReader(dump, StandardCharsets.US_ASCII);
+         DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+      // The count is rewritten at the end
+      stream.writeInt(MAGIC);
+      stream.writeInt(FORMAT_VERSION);
+      stream.writeLong(0);
+
+      byte[] previous = null;
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.isBlank()) { continue; }
+        int idx = line.indexOf(':');
+        byte[] hash;
+        try {
+          hash = HexFormat.of().parseHex(idx < 0 ? line.strip() : line.substring(0, idx));
+        } catch (IllegalArgumentException e) {
+          throw new IOException("Invalid line " + (count + 1) + " of the breached password dump");
+        }
+        if (hash.length != HASH_LENGTH) {
+          throw new IOException("Invalid line " + (count + 1) + " of the breached password dump");
+        }
+
+        // The binary search requires strictly increasing hashes
+        if (previous != null && Arrays.compareUnsigned(previous, hash) >= 0) {
+          throw new IOException("The breached password dump is not ordered by hash");
+        }
+        stream.write(hash);
+        previous = hash;
+        count++;
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+
+    try (RandomAccessFile file = new RandomAccessFile(tmp.toFile(), "rw")) {
+      file.seek(8);
+      file.writeLong(count);
+      file.getFD().sync();
+    }
+    Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    return count;
+  }
+
+  /**
+   * Build the breached password file of the user from a Pwned Passwords dump
+   *
+   * @param args The dump, optionally followed by the output file
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: BreachedPasswordFile <pwned passwords dump ordered by hash> [output file]");
+      System.exit(2);
+    }
+    Path out = args.length > 1 ? Path.of(args[1]) : defaultPath();
+    if (out.toAbsolutePath().getParent() != null) { Files.createDirectories(out.toAbsolutePath().getParent()); }
+    long count = build(Path.of(args[0]), out);
+    System.out.println(count + " hashes written to " + out);
+  }
+}
@@ -0,0 +1,36 @@
+package app.core;
+
+import java.util.concurrent.CancellationException;
+
+public class CancellationToken {
+
+  private volatile boolean cancelled = false;   // Set once the operation has to stop
+
+  /**
+   * Request the cancellation of the operation using this token;
+   * the operation stops at the next chunk or item boundary
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Check if the cancellation has been requested
+   *
+   * @return true if cancel() has been called, false otherwise
+   */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Method to stop the current operation if the cancellation has been requested
+   *
+   * @throws CancellationException if cancel() has been called
+   */
+  public void throwIfCancelled() {
+    if (this.cancelled) {
+      throw new CancellationException("Operation cancelled");
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package app.core;
+
+public final class Constants {
+
+  private Constants() {}
+
+  public static final int ITERATIONS = 210000;                                // Number of iterations of the vaults without a stored KDF cost
+  public static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA512";          // Key derivation function
+  public static final long KDF_TARGET_MILLIS = 500;                           // Key derivation time targeted by the calibration
+  public static final int KDF_MIN_ITERATIONS = ITERATIONS;                    // The calibration never goes below the default cost
+  public static final int KDF_MAX_ITERATIONS = 10000000;                      // Maximum number of iterations accepted in a configuration
+  public static final int KDF_CALIBRATION_ITERATIONS = 10000;                 // Iterations of a calibration probe
+  public static final int DERIVED_KEY_LENGTH = 512;                           // Master key length
+
+  public static final int MIN_PASSWORD_LENGTH = 12;                           // Minimum password length
+  public static final int MAX_PASSWORD_LENGTH = 64;                           // Maximum password length
+  public static final int SALT_LENGTH = 128 / 8;                              // Salt length
+
+  public static final String ALG_WRAP_KEYS  = "AESWrap";
+  public static final String PROV_WRAP_KEYS = "SunJCE";
+
+  public static final int    MAX_CONF_SIZE = 1024;
+  public static final String ALG_HMAC_TOK  = "HmacSHA512";
+  public static final char   PERIOD = '.';
+
+  public static final String DIR_FILE_EXT    = ".dir";
+  public static final String CHKSUM_FILE_EXT = ".mac";
+  public static final String CONF_FILE_EXT   = ".vault";
+  public static final String JOURNAL_FILE_EXT = ".journal";
+  public static final int    CHKSUM_BATCH_SIZE = 512;                         // Tree checksum lines written together
+  public static final char   CHKSUM_TOMBSTONE = '!';                          // Prefix of the tree checksum lines of removed items
+  public static final String CHKSUM_BASE_FILE_EXT = ".mac.bin";
+  public static final int    CHKSUM_MAC_LENGTH = 512 / 8;                     // HMAC-SHA512 bytes of the tree checksums
+  public static final long   CHKSUM_COMPACT_MIN_SIZE = 128 * 1024;            // Tree checksum log bytes tolerated before compaction
+  public static final String INDEX_FILE_EXT  = ".idx";
+  public static final String TREE_ROOT_FILE_EXT = ".root";
+  public static final String REKEY_FILE_EXT = ".rekey";                       // New keys of a key rotation in progress
+  public static final String REKEY_HEADERS_FILE_EXT = ".rekey.hdr";           // Old item headers of a key rotation in progress
+  public static final int    INDEX_SEGMENT_SIZE = 100000;                     // Item index records sorted in memory
+  public static final int    INDEX_SPARSE_INTERVAL = 64;                      // Item index records between two sparse keys
+  public static final int    SCRUB_THREADS = 2;                               // Worker threads of the integrity scrub
+  public static final long   SCRUB_BYTES_PER_SECOND = 32L * 1024 * 1024;      // Bytes read per second by the integrity scrub
+  public static final String APP_USER_DIR = ".personalvault";                 // Directory of the application files, in the user home
+  public static final String AGENT_SOCKET_FILE = "agent.sock";
+  public static final long   AGENT_TTL_SECONDS = 900;                         // Seconds a vault stays unlocked in the key agent
+  public static final int    AGENT_MAX_MESSAGE = 1024 * 1024;                 // Maximum size of a key agent message string
+  public static final int    AGENT_THREADS = 4;                               // Connections served together by the key agent
+  public static final long   AGENT_READ_TIMEOUT_MILLIS = 10000;               // Milliseconds a key agent client has to send its request
+  public static final String REGISTRY_FILE = "vaults.registry";               // Snapshot of the registered vaults, in APP_USER_DIR
+  public static final String BREACHED_FILE = "breached-passwords.bin";        // Local breached password hashes, in APP_USER_DIR
+  public static final String BREACHED_FILE_PROPERTY = "personalvault.breachedPasswords";  // System property overriding its path
+  public static final int    BREACH_CHECK_TIMEOUT_MILLIS = 3000;              // Timeout of the online breach check
+  public static final String VAULT_NAME_RGX  = "^[a-zA-Z0-9_ ]+$";
+
+  public static final String[] PSW_EXCEPTION = { "(Short)", "(Long)", "(Special)", "(Upper)", "(Lower)", "(Digit)" };
+
+  // File
+  public static final int CHUNK_SIZE = 65536; // bytes 2^16
+  public static final int FILENAME_MAX_SIZE = 256; // bytes
+  public static final int IVLEN = 12; // bytes
+  public static final String KEY_GEN_ALGO = "AES";
+  public static final int KEY_SIZE_BITS = 256; // bits
+  public static final int KEY_SIZE = KEY_SIZE_BITS / 8; // bytes
+  public static final int TAG_LEN_BITS = 128; // bits
+  public static final int TAG_LEN = TAG_LEN_BITS / 8; // bytes
+}
@@ -0,0 +1,372 @@
+package app.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * On-disk sorted index of the vault items, memory-mapped for reading.
+ * <p>
+ * The index maps the encrypted path of every item, relative to the vault root, to its metadata.
+ * Records are sorted by path, so parents precede their content, and every interval-th key is
+ * stored in a sparse index at the end of the file: a lookup is a binary search on the sparse keys
+ * followed by a scan of at most interval records. Only the sparse keys are kept on the heap.
+ * <pre>
+ *   header   MAGIC, version, count, interval, sparse index offset
+ *   records  key length (short), key (UTF-8, '/' separated), directory flag (byte), size (long)
+ *   sparse   count / interval entries of key length (short), key, record offset (long)
+ * </pre>
+ * The index is built with an external merge sort, keeping at most segmentSize records in memory.
+ */
+public class DiskItemIndex implements Closeable {
+
+  private static final int MAGIC = 0x56494458;   // "VIDX"
+  private static final int HEADER_SIZE = 4 + 8 + 8 + 4 + 8;
+
+  /**
+   * Metadata of an indexed item
+   */
+  public static class Entry {
+    private final String key;
+    private final boolean directory;
+    private final long size;
+
+    private Entry(String key, boolean directory, long size) {
+      this.key = key;
+      this.directory = directory;
+      this.size = size;
+    }
+
+    public Path getPath() {
+      return Path.of("", this.key.split("/"));
+    }
+
+    public boolean isDirectory() {
+      return this.directory;
+    }
+
+    public long getSize() {
+      return this.size;
+    }
+  }
+
+  private final long version;
+  private final long count;
+  private final int interval;
+  private final byte[][] sparseKeys;       // Every interval-th key
+  private final int[] sparseOffsets;       // Offset of the record of each sparse key
+  private MappedByteBuffer buffer;
+
+  private DiskItemIndex(MappedByteBuffer buffer) throws IOException {
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("Invalid item index");
+    }
+    this.buffer = buffer;
+    this.version = buffer.getLong(4);
+    this.count = buffer.getLong(12);
+    this.interval = buffer.getInt(20);
+    long sparseOffset = buffer.getLong(24);
+
+    // A damaged header must not size the arrays: every sparse entry takes at least 2 + 8 bytes
+    if (this.interval < 1 || this.count < 0 || this.count > buffer.capacity() || sparseOffset < HEADER_SIZE || sparseOffset > buffer.capacity()
+        || (this.count + this.interval - 1) / this.interval > (buffer.capacity() - sparseOffset) / 10) {
+      throw new IOException("Invalid item index");
+    }
+
+    int sparseCount = (int) ((this.count + this.interval - 1) / this.interval);
+    this.sparseKeys = new byte[sparseCount][];
+    this.sparseOffsets = new int[sparseCount];
+    ByteBuffer in = buffer.duplicate().position((int) sparseOffset);
+    try {
+      for (int i = 0; i < sparseCount; i++) {
+        this.sparseKeys[i] = new byte[in.getShort() & 0xFFFF];
+        in.get(this.sparseKeys[i]);
+        long offset = in.getLong();
+        if (offset < HEADER_SIZE || offset >= sparseOffset) {
+          throw new IOException("Invalid item index");
+        }
+        this.sparseOffsets[i] = (int) offset;
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Invalid item index");
+    }
+  }
+
+  /**
+   * Build the index of the items in a directory tree
+   *
+   * @param root        The vault root
+   * @param file        The index file; it is replaced atomically
+   * @param isItem      Filter of the paths to index
+   * @param version     Version of the vault content stored in the index header
+   * @param segmentSize Maximum number of records sorted in memory
+   * @param interval    Number of records between two sparse keys
+   *
+   * @throws IOException
+   */
+  public static void build(Path root, Path file, Predicate<Path> isItem, long version, int segmentSize, int interval) throws IOException {
+    if (segmentSize < 1 || interval < 1) {
+      throw new IllegalArgumentException("Invalid index parameters");
+    }
+
+    Path tmpDir = Files.createTempDirectory("vault-index");
+    try {
+      // Sort the records in segments of segmentSize records
+      List<Path> segments = new ArrayList<>();
+      List<Entry> entries = new ArrayList<>();
+      try (Stream<Path> walk = Files.walk(root)) {
+        Iterator<Path> it = walk.filter(isItem).iterator();
+        while (it.hasNext()) {
+          Path path = it.next();
+          boolean directory = Files.isDirectory(path);
+          entries.add(new Entry(toKey(root.relativize(path)), directory, directory ? 0 : Files.size(path)));
+          if (entries.size() == segmentSize) {
+            segments.add(writeSegment(tmpDir, segments.size(), entries));
+            entries.clear();
+          }
+        }
+      }
+      if (!entries.isEmpty()) { segments.add(writeSegment(tmpDir, segments.size(), entries)); }
+
+      // Merge the segments in the index file
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      writeIndex(tmp, segments, version, interval);
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      try (Stream<Path> walk = Files.walk(tmpDir)) {
+        for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) { Files.deleteIfExists(path); }
+      }
+    }
+  }
+
+  /**
+   * Open an index file mapping it in memory
+   *
+   * @param file The index file
+   *
+   * @return the index
+   * @throws IOException if the file cannot be read or is not an index
+   */
+  public static DiskItemIndex open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Item index too large");
+      }
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Invalid item index");
+      }
+      return new DiskItemIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Find an item in the index
+   *
+   * @param relPath The encrypted path relative to the vault root
+   *
+   * @return the item metadata; null if not found
+   */
+  public Entry lookup(Path relPath) {
+    if (relPath == null || this.sparseKeys.length == 0) { return null; }
+    byte[] key = toKey(relPath).getBytes(StandardCharsets.UTF_8);
+
+    // Find the last sparse key lower or equal to the key
+    int low = 0, high = this.sparseKeys.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (Arrays.compareUnsigned(this.sparseKeys[mid], key) <= 0) { low = mid; } else { high = mid - 1; }
+    }
+
+    // Scan the records up to the next sparse key
+    ByteBuffer in = this.buffer.duplicate().position(this.sparseOffsets[low]);
+    long remaining = Math.min(this.interval, this.count - (long) low * this.interval);
+    for (long i = 0; i < remaining; i++) {
+      byte[] recordKey = new byte[in.getShort() & 0xFFFF];
+      in.get(recordKey);
+      boolean directory = in.get() != 0;
+      long size = in.getLong();
+
+      int cmp = Arrays.compareUnsigned(recordKey, key);
+      if (cmp == 0) { return new Entry(new String(recordKey, StandardCharsets.UTF_8), directory, size); }
+      if (cmp > 0) { break; }
+    }
+
+    return null;
+  }
+
+  /**
+   * Iterate over the items in path order, i.e. parents before their content
+   *
+   * @return the iterator over the items
+   */
+  public Iterator<Entry> iterator() {
+    ByteBuffer in = this.buffer.duplicate().position(HEADER_SIZE);
+    return new Iterator<>() {
+      private long read = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.read < DiskItemIndex.this.count;
+      }
+
+      @Override
+      public Entry next() {
+        if (!hasNext()) { throw new NoSuchElementException(); }
+        this.read++;
+        return readEntry(in);
+      }
+    };
+  }
+
+  public long size() {
+    return this.count;
+  }
+
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Release the mapped file; the mapping is freed by the garbage collector
+   */
+  @Override
+  public void close() {
+    this.buffer = null;
+  }
+
+  private static String toKey(Path relPath) {
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < relPath.getNameCount(); i++) {
+      if (i > 0) { key.append('/'); }
+      key.append(relPath.getName(i));
+    }
+    return key.toString();
+  }
+
+  private static Path writeSegment(Path dir, int index, List<Entry> entries) throws IOException {
+    entries.sort((e1, e2) -> Arrays.compareUnsigned(e1.key.getBytes(StandardCharsets.UTF_8), e2.key.getBytes(StandardCharsets.UTF_8)));
+
+    Path segment = dir.resolve("segment-" + index);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment)))) {
+      for (Entry entry : entries) { writeEntry(out, entry); }
+    }
+    return segment;
+  }
+
+  private static void writeIndex(Path file, List<Path> segments, long version, int interval) throws IOException {
+    // Open a reader for each segment ordered by its current record
+    PriorityQueue<SegmentReader> queue = new PriorityQueue<>((r1, r2) -> Arrays.compareUnsigned(r1.key, r2.key));
+    List<SegmentReader> readers = new ArrayList<>();
+    try {
+      for (Path segment : segments) {
+        SegmentReader reader = new SegmentReader(segment);
+        readers.add(reader);
+        if (reader.next()) { queue.add(reader); }
+      }
+
+      ByteArrayOutputStream sparse = new ByteArrayOutputStream();
+      DataOutputStream sparseOut = new DataOutputStream(sparse);
+      long count = 0, offset = HEADER_SIZE;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+           DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+        // The header is rewritten when the counts are known
+        out.write(new byte[HEADER_SIZE]);
+
+        while (!queue.isEmpty()) {
+          SegmentReader reader = queue.poll();
+          if (count % interval == 0) {
+            sparseOut.writeShort(reader.key.length);
+            sparseOut.write(reader.key);
+            sparseOut.writeLong(offset);
+          }
+          out.writeShort(reader.key.length);
+          out.write(reader.key);
+          out.writeByte(reader.directory ? 1 : 0);
+          out.writeLong(reader.size);
+          offset += 2 + reader.key.length + 1 + 8;
+          count++;
+
+          if (reader.next()) { queue.add(reader); }
+        }
+        sparse.writeTo(out);
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(version).putLong(count).putInt(interval).putLong(offset).flip();
+        channel.write(header, 0);
+        channel.force(false);
+      }
+    } finally {
+      for (SegmentReader reader : readers) { reader.close(); }
+    }
+  }
+
+  private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+    byte[] key = entry.key.getBytes(StandardCharsets.UTF_8);
+    out.writeShort(key.length);
+    out.write(key);
+    out.writeByte(entry.directory ? 1 : 0);
+    out.writeLong(entry.size);
+  }
+
+  private static Entry readEntry(ByteBuffer in) {
+    byte[] key = new byte[in.getShort() & 0xFFFF];
+    in.get(key);
+    boolean directory = in.get() != 0;
+    return new Entry(new String(key, StandardCharsets.UTF_8), directory, in.getLong());
+  }
+
+  /**
+   * Sequential reader of the records of a sorted segment
+   */
+  private static class SegmentReader implements Closeable {
+    private final DataInputStream in;
+    private byte[] key;
+    private boolean directory;
+    private long size;
+
+    private SegmentReader(Path segment) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)));
+    }
+
+    private boolean next() throws IOException {
+      try {
+        this.key = new byte[this.in.readUnsignedShort()];
+      } catch (EOFException e) {
+        return false;
+      }
+      this.in.readFully(this.key);
+      this.directory = this.in.readByte() != 0;
+      this.size = this.in.readLong();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.in.close();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package app.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.SecretKey;
+
+import app.core.ScrubReport.CorruptItem;
+
+/**
+ * Verifier of the encrypted items of a vault: the header and chunk tags of every file and the
+ * header of every directory are checked in memory, without writing any plaintext.
+ * <p>
+ * The items are verified by a fixed number of worker threads pulling them from a shared cursor,
+ * and the bytes read by all the workers are throttled by a single rate limiter, so that a scrub
+ * can run in the background while the vault is in use.
+ */
+public class IntegrityScrubber {
+
+  private final int threads;
+  private final RateLimiter limiter;          // null if not throttled
+
+  /**
+   * Create a scrubber
+   *
+   * @param threads        Number of worker threads
+   * @param bytesPerSecond Maximum bytes read per second by all the workers; 0 for no limit
+   */
+  public IntegrityScrubber(int threads, long bytesPerSecond) {
+    if (threads < 1 || bytesPerSecond < 0) {
+      throw new IllegalArgumentException("Invalid scrub parameters");
+    }
+    this.threads = threads;
+    this.limiter = bytesPerSecond > 0 ? new RateLimiter(bytesPerSecond) : null;
+  }
+
+  /**
+   * Verify the items; the items deleted while the scrub is running are skipped
+   *
+   * @param items     The items to verify
+   * @param vaultPath The vault root, used to report the relative paths
+   * @param encKey    The vault encryption key
+   * @param tracker   The progress tracker of the operation (can be null); it is notified after every item
+   *
+   * @return the report of the scrub
+   * @throws CancellationException if the operation has been cancelled
+   * @throws IOException if an item cannot be read
+   */
+  public ScrubReport scrub(List<VaultItem> items, Path vaultPath, SecretKey encKey, ProgressTracker tracker) throws IOException {
+    AtomicInteger cursor = new AtomicInteger();
+    AtomicLong itemsChecked = new AtomicLong(), bytesChecked = new AtomicLong();
+    List<CorruptItem> corrupt = new ArrayList<>();
+
+    ExecutorService pool = Executors.newFixedThreadPool(this.threads, r -> {
+      Thread t = new Thread(r, "vault-scrubber");
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      List<Future<Void>> workers = new ArrayList<>();
+      for (int i = 0; i < this.threads; i++) {
+        workers.add(pool.submit(() -> {
+          for (int next = cursor.getAndIncrement(); next < items.size(); next = cursor.getAndIncrement()) {
+            if (tracker != null) { tracker.checkCancelled(); }
+
+            VaultItem item = items.get(next);
+            CorruptItem result;
+            try {
+              result = verify(item, vaultPath, encKey);
+            } catch (NoSuchFileException e) {
+              continue;
+            }
+            long size = item instanceof VaultFile ? Files.size(item.getAbsPath()) : 0;
+            if (result != null) {
+              synchronized (corrupt) { corrupt.add(result); }
+            }
+
+            itemsChecked.incrementAndGet();
+            bytesChecked.addAndGet(size);
+            if (tracker != null) {
+              synchronized (tracker) { tracker.itemDone(size); }
+            }
+          }
+          return null;
+        }));
+      }
+
+      for (Future<Void> worker : workers) { waitFor(worker); }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    corrupt.sort(Comparator.comparing(CorruptItem::getPath));
+    return new ScrubReport(itemsChecked.get(), bytesChecked.get(), corrupt);
+  }
+
+  /**
+   * Verify a single item
+   *
+   * @return the corrupt item; null if the item is intact
+   */
+  private CorruptItem verify(VaultItem item, Path vaultPath, SecretKey encKey) throws IOException {
+    Path relPath = item.getRelPath(vaultPath);
+    try {
+      if (item instanceof VaultDirectory) {
+        if (this.limiter != null) { this.limiter.acquire(Files.size(((VaultDirectory) item).getEncDirFile())); }
+        ((VaultDirectory) item).verify(encKey);
+        return null;
+      }
+
+      List<Integer> chunks = ((VaultFile) item).verify(encKey, this.limiter);
+      return chunks.isEmpty() ? null : new CorruptItem(relPath, false, chunks);
+    } catch (BadPaddingException | IllegalArgumentException e) {
+      // The GCM tag of the header does not match or the header has not the expected size
+      return new CorruptItem(relPath, true, List.of());
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Cannot verify " + relPath, e);
+    }
+  }
+
+  private static void waitFor(Future<Void> worker) throws IOException {
+    try {
+      worker.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Operation interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof CancellationException) { throw (CancellationException) e.getCause(); }
+      if (e.getCause() instanceof IOException) { throw (IOException) e.getCause(); }
+      throw new IOException("Scrub failed", e.getCause());
+    }
+  }
+}
@@ -0,0 +1,399 @@
+package app.core;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Columnar in-memory table of the vault items.
+ * <p>
+ * Every item is a row identified by an int id, assigned in insertion order so that parents precede
+ * their content. The columns are primitive arrays: the id of the parent directory, the offsets of
+ * the encrypted and clear names in a shared byte arena, and two bitsets flagging directories and
+ * removed rows. Children are found through two open-addressing hash tables of ids keyed by
+ * (parent id, encrypted name) and (parent id, clear name), so a path is translated in O(depth)
+ * without a single object per item. The children of each directory are also linked through
+ * first child / sibling columns to enumerate them.
+ * <p>
+ * The clear name of an imported item is known only after its decryption and is set with setClearName.
+ * If some siblings have the same clear name, the clear name refers to the last one added.
+ * <p>
+ * When enabled, a NameIndex of the clear names is kept up to date with the table.
+ */
+public class ItemTable {
+
+  public static final int ROOT = -1;       // Parent id of the items in the vault root
+  public static final int NOT_FOUND = -2;
+
+  public static final int NONE = -3;       // No child or sibling
+
+  private static final int NO_NAME = -1;
+
+  private int rows;                        // Number of rows, removed included
+  private int live;                        // Number of rows not removed
+  private int[] parents = new int[16];
+  private int[] encNames = new int[16];    // Arena offset of the encrypted name
+  private int[] clearNames = new int[16];  // Arena offset of the clear name; NO_NAME if unknown
+  private int[] firstChildren = new int[16]; // First child of a directory; NONE if empty
+  private int[] nextSiblings = new int[16];  // NONE for the last child
+  private int[] prevSiblings = new int[16];  // NONE for the first child
+  private int rootFirstChild = NONE;
+  private final BitSet directories = new BitSet();
+  private final BitSet removed = new BitSet();
+
+  private byte[] arena = new byte[256];    // Names as 2 bytes length + UTF-8 bytes
+  private int arenaSize;
+
+  private final ChildIndex encIndex = new ChildIndex(false);     // Rows by (parent, encrypted name)
+  private final ChildIndex clearIndex = new ChildIndex(true);    // Rows by (parent, clear name)
+  private NameIndex nameIndex;                                    // Null if the names are not searchable
+
+  /**
+   * Open-addressing hash table of the row ids keyed by parent id and name
+   */
+  private class ChildIndex {
+    private final boolean clear;
+    private int[] slots = new int[32];     // id + 1; 0 if empty
+    private int used;
+
+    private ChildIndex(boolean clear) {
+      this.clear = clear;
+    }
+
+    private int[] names() {
+      return this.clear ? clearNames : encNames;
+    }
+
+    private void add(int id) {
+      // Rebuild the table from the rows when more than half full, dropping removed rows and renamed slots
+      if ((this.used + 1) * 2 > this.slots.length) {
+        rebuild();
+      } else {
+        put(id);
+      }
+    }
+
+    private void rebuild() {
+      int count = 0;
+      for (int id = 0; id < rows; id++) {
+        if (!removed.get(id) && names()[id] != NO_NAME) { count++; }
+      }
+
+      this.slots = new int[Math.max(32, Integer.highestOneBit(count * 4 - 1) << 1)];
+      this.used = 0;
+      for (int id = 0; id < rows; id++) {
+        if (!removed.get(id) && names()[id] != NO_NAME) { put(id); }
+      }
+    }
+
+    private void put(int id) {
+      int offset = names()[id], mask = this.slots.length - 1;
+      int slot = hash(parents[id], arena, offset + 2, nameLength(offset)) & mask;
+      while (this.slots[slot] != 0) { slot = (slot + 1) & mask; }
+      this.slots[slot] = id + 1;
+      this.used++;
+    }
+
+    /**
+     * Find the last live child of parent with the given name
+     */
+    private int lookup(int parent, byte[] name) {
+      int mask = this.slots.length - 1, found = NOT_FOUND;
+      for (int slot = hash(parent, name, 0, name.length) & mask; this.slots[slot] != 0; slot = (slot + 1) & mask) {
+        int id = this.slots[slot] - 1, offset = names()[id];
+        if (parents[id] == parent && !removed.get(id) && offset != NO_NAME && nameEquals(offset, name)) {
+          found = Math.max(found, id);
+        }
+      }
+      return found;
+    }
+
+    private void clear() {
+      this.slots = new int[32];
+      this.used = 0;
+    }
+  }
+
+  /**
+   * Add an item to the table
+   *
+   * @param parent    The parent id; ROOT for the items in the vault root
+   * @param encName   The encrypted name
+   * @param directory true if the item is a directory
+   * @param clearName The clear name (can be null if unknown)
+   *
+   * @return the id of the item
+   */
+  public int add(int parent, String encName, boolean directory, String clearName) {
+    if (this.rows == this.parents.length) {
+      int capacity = this.rows * 2;
+      this.parents = Arrays.copyOf(this.parents, capacity);
+      this.encNames = Arrays.copyOf(this.encNames, capacity);
+      this.clearNames = Arrays.copyOf(this.clearNames, capacity);
+      this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+      this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+      this.prevSiblings = Arrays.copyOf(this.prevSiblings, capacity);
+    }
+
+    int id = this.rows++;
+    this.live++;
+    this.parents[id] = parent;
+    this.encNames[id] = addName(encName);
+    this.clearNames[id] = NO_NAME;
+    this.directories.set(id, directory);
+    this.firstChildren[id] = NONE;
+
+    // Link the item as first child of its parent
+    int next = getFirstChild(parent);
+    this.nextSiblings[id] = next;
+    this.prevSiblings[id] = NONE;
+    if (next != NONE) { this.prevSiblings[next] = id; }
+    setFirstChild(parent, id);
+
+    this.encIndex.add(id);
+    setClearName(id, clearName);
+
+    return id;
+  }
+
+  /**
+   * Set the clear name of an item, e.g. after its decryption
+   *
+   * @param id        The item id
+   * @param clearName The clear name (can be null if unknown)
+   */
+  public void setClearName(int id, String clearName) {
+    if (clearName == null || clearName.equals(getClearName(id))) { return; }
+
+    // The old index slot does not match anymore since the row points to the new name
+    this.clearNames[id] = addName(clearName);
+    this.clearIndex.add(id);
+    if (this.nameIndex != null) { this.nameIndex.add(id, this.parents[id], clearName); }
+  }
+
+  /**
+   * Remove an item; its id is not reused
+   *
+   * @param id The item id
+   */
+  public void remove(int id) {
+    if (id < 0 || id >= this.rows || this.removed.get(id)) { return; }
+
+    this.removed.set(id);
+    this.live--;
+    if (this.nameIndex != null) { this.nameIndex.remove(id); }
+
+    // Unlink the item from the children of its parent
+    int prev = this.prevSiblings[id], next = this.nextSiblings[id];
+    if (prev != NONE) { this.nextSiblings[prev] = next; } else { setFirstChild(this.parents[id], next); }
+    if (next != NONE) { this.prevSiblings[next] = prev; }
+  }
+
+  /**
+   * Find an item given its path with encrypted names
+   *
+   * @param encPath The path relative to the vault root
+   *
+   * @return the item id; NOT_FOUND if not found
+   */
+  public int find(Path encPath) {
+    return find(encPath, this.encIndex);
+  }
+
+  /**
+   * Find an item given its path with clear names
+   *
+   * @param clearPath The path relative to the vault root
+   *
+   * @return the item id; NOT_FOUND if not found
+   */
+  public int findClear(Path clearPath) {
+    return find(clearPath, this.clearIndex);
+  }
+
+  /**
+   * Compose the path of an item with encrypted names
+   *
+   * @param id The item id
+   *
+   * @return the path relative to the vault root
+   */
+  public Path getPath(int id) {
+    return getPath(id, this.encNames);
+  }
+
+  /**
+   * Compose the path of an item with clear names
+   *
+   * @param id The item id; ROOT for the vault root
+   *
+   * @return the path relative to the vault root; null if some clear name is unknown
+   */
+  public Path getClearPath(int id) {
+    return getPath(id, this.clearNames);
+  }
+
+  public int getParent(int id) {
+    return this.parents[id];
+  }
+
+  /**
+   * Get the first child of a directory; the others follow through getNextSibling
+   *
+   * @param parent The directory id; ROOT for the vault root
+   *
+   * @return the id of the first child; NONE if the directory is empty
+   */
+  public int getFirstChild(int parent) {
+    return parent == ROOT ? this.rootFirstChild : this.firstChildren[parent];
+  }
+
+  public int getNextSibling(int id) {
+    return this.nextSiblings[id];
+  }
+
+  public String getEncName(int id) {
+    return getName(this.encNames[id]);
+  }
+
+  public String getClearName(int id) {
+    return getName(this.clearNames[id]);
+  }
+
+  public boolean isDirectory(int id) {
+    return this.directories.get(id);
+  }
+
+  public boolean isRemoved(int id) {
+    return this.removed.get(id);
+  }
+
+  /**
+   * Get the ids of the items in insertion order, i.e. parents before their content
+   *
+   * @return the item ids
+   */
+  public int[] ids() {
+    int[] ids = new int[this.live];
+    for (int id = this.removed.nextClearBit(0), i = 0; id < this.rows; id = this.removed.nextClearBit(id + 1)) {
+      ids[i++] = id;
+    }
+    return ids;
+  }
+
+  public int size() {
+    return this.live;
+  }
+
+  /**
+   * Get the number of ids assigned, removed items included: every id is lower than it
+   *
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return this.rows;
+  }
+
+  /**
+   * Remove all the items
+   */
+  public void clear() {
+    this.rows = this.live = this.arenaSize = 0;
+    this.rootFirstChild = NONE;
+    this.directories.clear();
+    this.removed.clear();
+    this.encIndex.clear();
+    this.clearIndex.clear();
+    if (this.nameIndex != null) { this.nameIndex.clear(); }
+  }
+
+  /**
+   * Index the clear names to search them, including the ones already known
+   *
+   * @return the name index, updated with the table from now on
+   */
+  public NameIndex enableNameIndex() {
+    if (this.nameIndex == null) {
+      this.nameIndex = new NameIndex();
+      for (int id : ids()) {
+        if (this.clearNames[id] != NO_NAME) { this.nameIndex.add(id, this.parents[id], getClearName(id)); }
+      }
+    }
+    return this.nameIndex;
+  }
+
+  /**
+   * Drop the name index
+   */
+  public void disableNameIndex() {
+    this.nameIndex = null;
+  }
+
+  /**
+   * @return the name index; null if not enabled
+   */
+  public NameIndex getNameIndex() {
+    return this.nameIndex;
+  }
+
+  private void setFirstChild(int parent, int id) {
+    if (parent == ROOT) { this.rootFirstChild = id; } else { this.firstChildren[parent] = id; }
+  }
+
+  private int find(Path path, ChildIndex index) {
+    int id = ROOT;
+    for (int i = 0; i < path.getNameCount() && id != NOT_FOUND; i++) {
+      id = index.lookup(id, path.getName(i).toString().getBytes(StandardCharsets.UTF_8));
+    }
+    return id;
+  }
+
+  private Path getPath(int id, int[] names) {
+    if (id == ROOT) { return Path.of(""); }
+
+    int depth = 0;
+    for (int p = id; p != ROOT; p = this.parents[p]) { depth++; }
+    String[] elements = new String[depth];
+    for (int p = id; p != ROOT; p = this.parents[p]) {
+      if (names[p] == NO_NAME) { return null; }
+      elements[--depth] = getName(names[p]);
+    }
+    return Path.of(elements[0], Arrays.copyOfRange(elements, 1, elements.length));
+  }
+
+  private int addName(String name) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    if (this.arenaSize + 2 + bytes.length > this.arena.length) {
+      this.arena = Arrays.copyOf(this.arena, Math.max(this.arena.length * 2, this.arenaSize + 2 + bytes.length));
+    }
+
+    int offset = this.arenaSize;
+    this.arena[offset] = (byte) (bytes.length >>> 8);
+    this.arena[offset + 1] = (byte) bytes.length;
+    System.arraycopy(bytes, 0, this.arena, offset + 2, bytes.length);
+    this.arenaSize += 2 + bytes.length;
+
+    return offset;
+  }
+
+  private String getName(int offset) {
+    if (offset == NO_NAME) { return null; }
+    return new String(this.arena, offset + 2, nameLength(offset), StandardCharsets.UTF_8);
+  }
+
+  private int nameLength(int offset) {
+    return ((this.arena[offset] & 0xFF) << 8) | (this.arena[offset + 1] & 0xFF);
+  }
+
+  private boolean nameEquals(int offset, byte[] name) {
+    int length = nameLength(offset);
+    return length == name.length && Arrays.equals(this.arena, offset + 2, offset + 2 + length, name, 0, length);
+  }
+
+  private static int hash(int parent, byte[] bytes, int from, int length) {
+    int h = parent;
+    for (int i = from; i < from + length; i++) { h = 31 * h + bytes[i]; }
+    return h ^ (h >>> 16);
+  }
+}
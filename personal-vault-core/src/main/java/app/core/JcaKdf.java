@@ -0,0 +1,42 @@
+package app.core;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Key derivation function of the installed security providers.
+ */
+public class JcaKdf implements Kdf {
+
+  private final String algorithm;
+
+  /**
+   * @param algorithm The SecretKeyFactory algorithm, e.g. "PBKDF2WithHmacSHA512"
+   */
+  public JcaKdf(String algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  @Override
+  public byte[] derive(char[] password, byte[] salt, int iterations, int keyLength) {
+    try {
+
+      // Generate a new factory for secret keys
+      SecretKeyFactory skf = SecretKeyFactory.getInstance(this.algorithm);
+
+      // Convert the password characters to a PBE key by creating an instance of the appropriate secret-key factory
+      PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, keyLength);
+
+      // Generate a SecretKey object from the provided key specification and convert it to byte[]
+      byte[] res = skf.generateSecret(spec).getEncoded();
+      spec.clearPassword();
+      return res;
+
+    } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
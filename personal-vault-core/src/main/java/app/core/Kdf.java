@@ -0,0 +1,33 @@
+package app.core;
+
+import static app.core.Constants.KDF_ALGORITHM;
+
+/**
+ * Password based key derivation function.
+ */
+public interface Kdf {
+
+  /**
+   * Derive a key from a password
+   *
+   * @param password   The password; it is encoded in UTF-8
+   * @param salt       The salt
+   * @param iterations The number of iterations
+   * @param keyLength  The bit-length of the derived key
+   *
+   * @return the derived key
+   */
+  byte[] derive(char[] password, byte[] salt, int iterations, int keyLength);
+
+  /**
+   * Get the implementation of a key derivation function: the in-house one for KDF_ALGORITHM,
+   * the one of the installed providers otherwise
+   *
+   * @param algorithm The key derivation function name
+   *
+   * @return the implementation
+   */
+  static Kdf forAlgorithm(String algorithm) {
+    return KDF_ALGORITHM.equals(algorithm) ? new Pbkdf2Sha512() : new JcaKdf(algorithm);
+  }
+}
@@ -1,30 +1,30 @@
 package app.core;
 
 import java.io.*;
-import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.spec.InvalidKeySpecException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-
 import static app.core.Constants.*;
 
 public class KeyDerivator {
   private byte[] password;                                              // Byte representation of the input password
   private byte[] salt;                                                  // Password salt
+  private String algorithm = KDF_ALGORITHM;                             // Key derivation function
+  private int iterations = ITERATIONS;                                  // Number of iterations
 
   private Random gen;                                                   // Secure random bytes generator
 
+  private static BreachedPasswordFile breachedFile;                     // Local breached password hashes
+  private static Path breachedFilePath;
+
   /**
    * KeyDerivator class constructor for the first initialization of the salt:
    * set the salt randomly and insert the weak passwords into the list
@@ -55,6 +55,44 @@ public class KeyDerivator {
     this.salt = salt;
   }
 
+  /**
+   * KeyDerivator class constructor specifying stored salt and key derivation cost
+   *
+   * @param salt       byte[]  stored salt
+   * @param algorithm  String  key derivation function
+   * @param iterations int  number of iterations
+   * @throws InvalidSaltException if the salt is not 128 bits length
+   */
+  public KeyDerivator(byte[] salt, String algorithm, int iterations) throws InvalidSaltException {
+    this(salt);
+    setCost(algorithm, iterations);
+  }
+
+  /**
+   * Method for setting the key derivation function and its number of iterations
+   *
+   * @param algorithm  String  key derivation function
+   * @param iterations int  number of iterations
+   */
+  public void setCost(String algorithm, int iterations) {
+    if (!KDF_ALGORITHM.equals(algorithm)) {
+      throw new IllegalArgumentException("Unsupported key derivation function " + algorithm);
+    }
+    if (iterations < 1 || iterations > KDF_MAX_ITERATIONS) {
+      throw new IllegalArgumentException("Invalid number of iterations");
+    }
+    this.algorithm = algorithm;
+    this.iterations = iterations;
+  }
+
+  public String getAlgorithm() {
+    return this.algorithm;
+  }
+
+  public int getIterations() {
+    return this.iterations;
+  }
+
   /**
    * Method for initializing the new password entered, verifying its security
    *
@@ -62,6 +100,18 @@ public class KeyDerivator {
    * @throws InvalidPasswordException
    */
   public void setPsw(String psw) throws InvalidPasswordException {
+    setPsw(psw, true);
+  }
+
+  /**
+   * Method for initializing the password, verifying its security only if required: 
+   * the password of an existing vault is not validated again, it is checked by the key unwrap
+   *
+   * @param psw password
+   * @param validate true to check the password policy and the data breaches
+   * @throws InvalidPasswordException
+   */
+  public void setPsw(String psw, boolean validate) throws InvalidPasswordException {
 
     // If the password is null, generate an IllegalArgumentException
     if(psw == null){
@@ -69,7 +119,7 @@ public class KeyDerivator {
     }
 
     // Validate the inserted password
-    validatePassword(psw);
+    if (validate) { validatePassword(psw); }
 
     // Convert the entered password to bytes[]
     this.password = psw.getBytes(StandardCharsets. UTF_8);
@@ -137,40 +187,54 @@ public class KeyDerivator {
     char[] passwordChars = new String(password, StandardCharsets.UTF_8).toCharArray();
 
     // Method for hashing the password
-    return hashPassword(passwordChars, this.salt, ITERATIONS, DERIVED_KEY_LENGTH);
+    return hashPassword(this.algorithm, passwordChars, this.salt, this.iterations, DERIVED_KEY_LENGTH);
+  }
+
+  /**
+   * Method to compute the number of iterations for which the key derivation takes about the target time on
+   * this machine: a probe with KDF_CALIBRATION_ITERATIONS is timed (best of 3, to skip the warm up) and scaled
+   *
+   * @param algorithm    String  key derivation function
+   * @param targetMillis long  target derivation time in milliseconds
+   *
+   * @return int  number of iterations, between KDF_MIN_ITERATIONS and KDF_MAX_ITERATIONS, rounded to thousands
+   */
+  public static int calibrate(String algorithm, long targetMillis) {
+    if (targetMillis <= 0) {
+      throw new IllegalArgumentException("Invalid target time");
+    }
+
+    char[] probePassword = "calibration".toCharArray();
+    byte[] probeSalt = new byte[SALT_LENGTH];
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      long start = System.nanoTime();
+      hashPassword(algorithm, probePassword, probeSalt, KDF_CALIBRATION_ITERATIONS, DERIVED_KEY_LENGTH);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+
+    double iterations = (double) KDF_CALIBRATION_ITERATIONS * targetMillis * 1000000 / Math.max(best, 1);
+    long rounded = Math.round(iterations / 1000) * 1000;
+    return (int) Math.max(KDF_MIN_ITERATIONS, Math.min(KDF_MAX_ITERATIONS, rounded));
   }
 
   /**
    * Method for compute the PBKDF2 hash of a password: with the pseudorandom function
-   * "PBKDF2WithHmacSHA512", 210000 iterations and with a derived key of 512 bit
+   * of the vault ("PBKDF2WithHmacSHA512"), its iterations and with a derived key of 512 bit;
+   * the result is the same of the SunJCE implementation
    *
+   * @param algorithm String  key derivation function
    * @param password char[]  password in an array of chars
    * @param salt  byte[]  128 bits salt
-   * @param iterations final int number of iteration for PBKDF2 (210000)
+   * @param iterations final int number of iteration for PBKDF2
    * @param keyLength final int  bit-length of the derived key (512 bit)
    *
    * @return byte[]  512 bit master key
    */
-  private byte[] hashPassword( final char[] password, final byte[] salt, final int iterations, final int keyLength ) {
-
-    try {
-
-      // Generate a new factory for secret keys
-      SecretKeyFactory skf = SecretKeyFactory.getInstance( "PBKDF2WithHmacSHA512");
-
-      // Convert the password characters to a PBE key by creating an instance of the appropriate secret-key factory
-      PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, keyLength);
+  private static byte[] hashPassword( final String algorithm, final char[] password, final byte[] salt, final int iterations, final int keyLength ) {
 
-      // Generate a SecretKey object from the provided key specification
-      SecretKey key = skf.generateSecret(spec);
-
-      // Convert SecretKey key to byte[]
-      byte[] res = key.getEncoded( );
-      return res;
-
-    } catch ( NoSuchAlgorithmException | InvalidKeySpecException e ) {
-      throw new RuntimeException( e );
-    }
+    // The in-house PBKDF2 for the vault function, the provider one otherwise
+    return Kdf.forAlgorithm(algorithm).derive(password, salt, iterations, keyLength);
   }
 
   /**
@@ -245,26 +309,33 @@ public class KeyDerivator {
   }
 
   /**
-   * If an Internet connection is working, check if the password appears in some data breaches
-   * via the API provided by "Have I Been Pwned" utility <br>
+   * Check if the password appears in some data breaches: offline in the local breached password file if 
+   * installed, otherwise, if an Internet connection is working, via the API provided by "Have I Been Pwned" utility <br>
    * Reference: <a href="https://haveibeenpwned.com/API/v3#PwnedPasswords">HIBP Pwned Passwords</a>
    *
    * @param password user password
    * @return true if the password already appeared in previous data breaches, false otherwise
    */
   public static boolean isBreached(String password) {
+    BreachedPasswordFile local = getBreachedPasswordFile();
+    if (local != null) {
+      return local.contains(password);
+    }
+
     try {
         MessageDigest crypt = MessageDigest.getInstance("SHA-1");
-        String hash = new BigInteger(1, crypt.digest(password.getBytes(StandardCharsets.UTF_8))).toString(16).toUpperCase();
+        String hash = HexFormat.of().withUpperCase().formatHex(crypt.digest(password.getBytes(StandardCharsets.UTF_8)));
 
         String hashPrefix = hash.substring(0, 5);
         String hashSuffix = hash.substring(5);
 
-        System.out.println("Checking password breach");
+        System.err.println("Checking password breach");
         String urlString = "https://api.pwnedpasswords.com/range/" + hashPrefix;
         URL url = new URL(urlString);
         HttpURLConnection http = (HttpURLConnection) url.openConnection();
         http.setRequestMethod("GET");
+        http.setConnectTimeout(BREACH_CHECK_TIMEOUT_MILLIS);
+        http.setReadTimeout(BREACH_CHECK_TIMEOUT_MILLIS);
 
         int statusCode = http.getResponseCode();
         if (statusCode == 200) {
@@ -276,7 +347,7 @@ public class KeyDerivator {
                     String[] s = line.split(":");
 
                     if (s[0].equals(hashSuffix)) {
-                      System.out.println("The password is breached. Watch out!");
+                      System.err.println("The password is breached. Watch out!");
                       return true;
                     }
                 }
@@ -289,6 +360,29 @@ public class KeyDerivator {
     }
   }
 
+  /**
+   * Get the local breached password file, opened once and kept mapped
+   *
+   * @return the breached password file; null if not installed or not valid
+   */
+  private static synchronized BreachedPasswordFile getBreachedPasswordFile() {
+    Path path = BreachedPasswordFile.defaultPath();
+    if (!path.equals(breachedFilePath)) {
+      if (breachedFile != null) { breachedFile.close(); }
+      breachedFile = null;
+      breachedFilePath = path;
+    }
+
+    if (breachedFile == null && Files.exists(path)) {
+      try {
+        breachedFile = BreachedPasswordFile.open(path);
+      } catch (IOException e) {
+        System.err.println("Invalid breached password file " + path);
+      }
+    }
+    return breachedFile;
+  }
+
   public class InvalidSaltException extends Exception {
     public InvalidSaltException() {
       super("The salt must be " + SALT_LENGTH + " bytes long");
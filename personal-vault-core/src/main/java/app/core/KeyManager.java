@@ -4,6 +4,7 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -59,9 +60,23 @@ public class KeyManager {
    * @throws InvalidSaltException if the salt is not 128 bits length
    */
   public KeyManager(byte[] encKey, byte[] authKey, byte[] salt) throws InvalidSaltException{
+    this(encKey, authKey, salt, KDF_ALGORITHM, ITERATIONS);
+  }
+
+  /**
+   * Class constructor specifying stored encryption and authentication keys, the salt and the key derivation cost
+   * 
+   * @param encKey byte[]  stored encryption key
+   * @param authKey byte[]  stored authentication key
+   * @param salt byte[]  stored salt
+   * @param kdfAlgorithm String  key derivation function
+   * @param kdfIterations int  number of iterations of the key derivation
+   * @throws InvalidSaltException if the salt is not 128 bits length
+   */
+  public KeyManager(byte[] encKey, byte[] authKey, byte[] salt, String kdfAlgorithm, int kdfIterations) throws InvalidSaltException{
 
-    // New KeyDerivator with a given salt
-    this.kd = new KeyDerivator(salt);
+    // New KeyDerivator with a given salt and cost
+    this.kd = new KeyDerivator(salt, kdfAlgorithm, kdfIterations);
 
     // If the salt is null, generate an IllegalArgumentException
     if(encKey == null){
@@ -125,8 +140,8 @@ public class KeyManager {
    */
   public void unwrapSecretKeys(String psw) throws InvalidKeyException, NoSuchAlgorithmException, NoSuchProviderException, NoSuchPaddingException, InvalidPasswordException{
 
-    // Set the password anche check its validity
-    kd.setPsw(psw);
+    // Set the password: its validity has been checked when it was set, the unwrap fails if it is wrong
+    kd.setPsw(psw, false);
     
     // Get the master key based on the setted password and salt
     this.masterKey = kd.getMasterKey();
@@ -145,6 +160,85 @@ public class KeyManager {
     authenticationKey = (SecretKey) cipher.unwrap(wrapAuthKey, "AES", Cipher.SECRET_KEY);
   }
 
+  /**
+   * Method to replace the two secret keys with new random keys, wrapped with the current master key;
+   * the keys must have been unwrapped. The old keys are no longer available afterwards
+   * 
+   * @throws NoSuchAlgorithmException
+   * @throws NoSuchProviderException
+   * @throws NoSuchPaddingException
+   * @throws InvalidKeyException
+   * @throws IllegalBlockSizeException
+   */
+  public void rotateSecretKeys() throws NoSuchAlgorithmException, NoSuchProviderException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException {
+    if (this.masterKey == null) {
+      throw new IllegalStateException("The secret keys are not unwrapped");
+    }
+    if (this.gen == null) { this.gen = new SecureRandom(); }
+
+    // Generate the new 256 bit keys
+    byte[] encKey = new byte[32];
+    byte[] authKey = new byte[32];
+    gen.nextBytes(encKey);
+    gen.nextBytes(authKey);
+    SecretKey newEncKey = new SecretKeySpec(encKey, "AES");
+    SecretKey newAuthKey = new SecretKeySpec(authKey, "AES");
+
+    // Wrap them with the key encryption keys of the master key
+    Cipher cipher = Cipher.getInstance(ALG_WRAP_KEYS, PROV_WRAP_KEYS);
+    cipher.init(Cipher.WRAP_MODE, getEncKEK(this.masterKey));
+    byte[] newWrapEncKey = cipher.wrap(newEncKey);
+    cipher.init(Cipher.WRAP_MODE, getAuthKEK(this.masterKey));
+    byte[] newWrapAuthKey = cipher.wrap(newAuthKey);
+
+    this.encryptionKey = newEncKey;
+    this.authenticationKey = newAuthKey;
+    this.wrapEncKey = newWrapEncKey;
+    this.wrapAuthKey = newWrapAuthKey;
+  }
+
+  /**
+   * Method to replace the two secret keys with keys wrapped with the current master key, 
+   * e.g. the new keys of an interrupted rotation
+   * 
+   * @param encKey byte[]  wrapped encryption key
+   * @param authKey byte[]  wrapped authentication key
+   * 
+   * @throws InvalidKeyException if the keys have not been wrapped with the current master key
+   * @throws NoSuchAlgorithmException
+   * @throws NoSuchProviderException
+   * @throws NoSuchPaddingException
+   */
+  public void setSecretKeys(byte[] encKey, byte[] authKey) throws InvalidKeyException, NoSuchAlgorithmException, NoSuchProviderException, NoSuchPaddingException {
+    if (this.masterKey == null) {
+      throw new IllegalStateException("The secret keys are not unwrapped");
+    }
+
+    Cipher cipher = Cipher.getInstance(ALG_WRAP_KEYS, PROV_WRAP_KEYS);
+    cipher.init(Cipher.UNWRAP_MODE, getEncKEK(this.masterKey));
+    SecretKey newEncKey = (SecretKey) cipher.unwrap(encKey, "AES", Cipher.SECRET_KEY);
+    cipher.init(Cipher.UNWRAP_MODE, getAuthKEK(this.masterKey));
+    SecretKey newAuthKey = (SecretKey) cipher.unwrap(authKey, "AES", Cipher.SECRET_KEY);
+
+    this.encryptionKey = newEncKey;
+    this.authenticationKey = newAuthKey;
+    this.wrapEncKey = encKey;
+    this.wrapAuthKey = authKey;
+  }
+
+  /**
+   * Method to drop the unwrapped secret keys and the master key; 
+   * they can be unwrapped again with the password
+   */
+  public void clearSecretKeys() {
+    if (this.masterKey != null) {
+      Arrays.fill(this.masterKey, (byte) 0);
+      this.masterKey = null;
+    }
+    this.encryptionKey = null;
+    this.authenticationKey = null;
+  }
+
   /**
    * Generate the 256 bit secret key from the first 256 bit of the 512 bit master key
    * 
@@ -186,6 +280,24 @@ public class KeyManager {
     return new SecretKeySpec(this.masterKey, "AES");
   }
 
+  /**
+   * Set the key derivation cost used by the next wrapSecretKeys
+   * 
+   * @param algorithm String  key derivation function
+   * @param iterations int  number of iterations
+   */
+  public void setKdfCost(String algorithm, int iterations) {
+    this.kd.setCost(algorithm, iterations);
+  }
+
+  public String getKdfAlgorithm() {
+    return this.kd.getAlgorithm();
+  }
+
+  public int getKdfIterations() {
+    return this.kd.getIterations();
+  }
+
   /**
    * Get key derivator salt
    * 
@@ -0,0 +1,104 @@
+package app.core;
+
+import java.io.Closeable;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * HMAC engine bound to a key.
+ * <p>
+ * Every message borrows an initialized Mac from a pool, cloned from a prototype so that the provider lookup
+ * and the key schedule are done once; doFinal resets the Mac, so it is returned for the next message. No Mac
+ * stays bound to the caller threads, which can outlive the key, and close drops the pooled ones.
+ */
+public class MacService implements Closeable {
+
+  private static final int PARALLEL_THRESHOLD = 256;   // Messages below which macAll runs on the caller thread
+
+  private final SecretKey key;
+  private final Mac prototype;
+  private final Queue<Mac> idle = new ConcurrentLinkedQueue<>();
+  private volatile boolean closed;
+
+  /**
+   * Create the engine
+   *
+   * @param alg The HMAC algorithm
+   * @param key The key
+   *
+   * @throws NoSuchAlgorithmException
+   * @throws InvalidKeyException
+   */
+  public MacService(String alg, SecretKey key) throws NoSuchAlgorithmException, InvalidKeyException {
+    this.key = key;
+    this.prototype = Mac.getInstance(alg);
+    this.prototype.init(key);
+  }
+
+  /**
+   * Compute the MAC of a message
+   *
+   * @param bytes The message
+   *
+   * @return the mac bytes
+   */
+  public byte[] mac(byte[] bytes) {
+    Mac mac = this.idle.poll();
+    if (mac == null) { mac = newMac(); }
+    try {
+      return mac.doFinal(bytes);
+    } finally {
+      if (!this.closed) { this.idle.offer(mac); }
+    }
+  }
+
+  /**
+   * Compute the MACs of a batch of messages, in parallel if the batch is large
+   *
+   * @param messages The messages
+   *
+   * @return the mac bytes of each message, in the same order
+   */
+  public List<byte[]> macAll(List<byte[]> messages) {
+    byte[][] result = new byte[messages.size()][];
+    IntStream indexes = IntStream.range(0, result.length);
+    if (result.length >= PARALLEL_THRESHOLD) { indexes = indexes.parallel(); }
+    indexes.forEach(i -> result[i] = mac(messages.get(i)));
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Drop the pooled Macs, bound to the key
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    this.idle.clear();
+  }
+
+  private Mac newMac() {
+    try {
+      synchronized (this.prototype) {
+        return (Mac) this.prototype.clone();
+      }
+    } catch (CloneNotSupportedException e) {
+      // The provider does not support cloning: initialize a new instance
+      try {
+        Mac mac = Mac.getInstance(this.prototype.getAlgorithm(), this.prototype.getProvider());
+        mac.init(this.key);
+        return mac;
+      } catch (NoSuchAlgorithmException | InvalidKeyException exc) {
+        // The prototype has been initialized with the same algorithm and key
+        throw new IllegalStateException(exc);
+      }
+    }
+  }
+}
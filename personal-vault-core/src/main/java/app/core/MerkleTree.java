@@ -0,0 +1,169 @@
+package app.core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Merkle tree over the directories of the vault items.
+ * <p>
+ * The hash of a directory covers the entries of its children, sorted by encrypted name: type,
+ * name and, for a subdirectory, its hash. The root hash covers the items in the vault root, so it
+ * authenticates the whole file tree once it is signed with the auth key.
+ * <p>
+ * A change marks dirty the parent directory and its ancestors, in O(depth); the dirty hashes are
+ * recomputed only when the root hash is requested. Directories always have a lower id than their
+ * content, so recomputing them by decreasing id visits the children first.
+ */
+public class MerkleTree {
+
+  private static final String ALG_HASH = "SHA-256";
+  private static final byte FILE = 0, DIRECTORY = 1;
+
+  private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance(ALG_HASH);
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-256 must be supported by every Java platform
+      throw new IllegalStateException(e);
+    }
+  });
+
+  private final ItemTable items;
+  private byte[][] hashes = new byte[0][];   // Hash of each directory by id
+  private final BitSet dirty = new BitSet();
+  private byte[] rootHash;                   // null if dirty
+  private BitSet excluded;                   // Items left out of the hashes; null to hash all the items
+
+  /**
+   * Create the tree of the items; the hashes are computed by computeAll or on demand
+   *
+   * @param items The items table
+   */
+  public MerkleTree(ItemTable items) {
+    this.items = items;
+  }
+
+  /**
+   * Compute the hashes of all the directories, in parallel: the directories at the same depth
+   * are independent subtrees once their children have been hashed
+   */
+  public void computeAll() {
+    int rows = this.items.getRowCount();
+    this.hashes = new byte[rows][];
+
+    // Group the directories by depth
+    int[] depths = new int[rows];
+    List<List<Integer>> levels = new ArrayList<>();
+    for (int id : this.items.ids()) {
+      int parent = this.items.getParent(id);
+      depths[id] = parent == ItemTable.ROOT ? 0 : depths[parent] + 1;
+      if (this.items.isDirectory(id)) {
+        while (levels.size() <= depths[id]) { levels.add(new ArrayList<>()); }
+        levels.get(depths[id]).add(id);
+      }
+    }
+
+    // Hash the deepest directories first
+    for (int depth = levels.size() - 1; depth >= 0; depth--) {
+      levels.get(depth).parallelStream().forEach(id -> this.hashes[id] = hashDirectory(id));
+    }
+
+    this.dirty.clear();
+    this.rootHash = hashDirectory(ItemTable.ROOT);
+  }
+
+  /**
+   * Mark a directory and its ancestors as changed, e.g. after a child has been added or removed
+   *
+   * @param dir The directory id; ROOT for the vault root
+   */
+  public void markDirty(int dir) {
+    this.rootHash = null;
+    for (int id = dir; id != ItemTable.ROOT && !this.dirty.get(id); id = this.items.getParent(id)) {
+      this.dirty.set(id);
+    }
+  }
+
+  /**
+   * Get the root hash, recomputing the changed directories
+   *
+   * @return the hash of the whole file tree
+   */
+  public byte[] getRootHash() {
+    if (this.rootHash == null) {
+      if (this.hashes.length < this.items.getRowCount()) {
+        this.hashes = Arrays.copyOf(this.hashes, this.items.getRowCount());
+      }
+      for (int id = this.dirty.length() - 1; id >= 0; id = this.dirty.previousSetBit(id - 1)) {
+        this.hashes[id] = this.items.isRemoved(id) ? null : hashDirectory(id);
+      }
+      this.dirty.clear();
+      this.rootHash = hashDirectory(ItemTable.ROOT);
+    }
+
+    return this.rootHash.clone();
+  }
+
+  private byte[] hashDirectory(int dir) {
+    // Sort the children by encrypted name
+    List<Integer> children = new ArrayList<>();
+    for (int id = this.items.getFirstChild(dir); id != ItemTable.NONE; id = this.items.getNextSibling(id)) {
+      if (this.excluded == null || !this.excluded.get(id)) { children.add(id); }
+    }
+    String[] names = new String[children.size()];
+    Integer[] order = new Integer[children.size()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = this.items.getEncName(children.get(i));
+      order[i] = i;
+    }
+    Arrays.sort(order, (i1, i2) -> names[i1].compareTo(names[i2]));
+
+    MessageDigest md = DIGEST.get();
+    for (int i : order) {
+      int id = children.get(i);
+      byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+      md.update(this.items.isDirectory(id) ? DIRECTORY : FILE);
+      md.update((byte) (name.length >>> 8));
+      md.update((byte) name.length);
+      md.update(name);
+      if (this.items.isDirectory(id)) { md.update(this.hashes[id]); }
+    }
+    return md.digest();
+  }
+
+  /**
+   * Compute the hashes of all the directories serially, e.g. to compare with computeAll
+   *
+   * @param items The items table
+   *
+   * @return the root hash
+   */
+  public static byte[] computeSerial(ItemTable items) {
+    return computeSerial(items, null);
+  }
+
+  /**
+   * Compute the root hash serially as if some items were not in the table, e.g. the items added 
+   * by an operation that has not completed yet
+   *
+   * @param items    The items table
+   * @param excluded The ids of the items to leave out, with their content (can be null)
+   *
+   * @return the root hash
+   */
+  public static byte[] computeSerial(ItemTable items, BitSet excluded) {
+    MerkleTree tree = new MerkleTree(items);
+    tree.excluded = excluded;
+    tree.hashes = new byte[items.getRowCount()][];
+    int[] ids = items.ids();
+    for (int i = ids.length - 1; i >= 0; i--) {
+      if (items.isDirectory(ids[i])) { tree.hashes[ids[i]] = tree.hashDirectory(ids[i]); }
+    }
+    return tree.hashDirectory(ItemTable.ROOT);
+  }
+}
@@ -0,0 +1,266 @@
+package app.core;
+
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory trigram index of the clear names of the vault items, to search them by substring.
+ * <p>
+ * Every trigram of the lower-cased names maps to the sorted list of the ids of the items containing it.
+ * A query of at least three characters intersects the lists of its trigrams, starting from the shortest,
+ * and checks the candidates against the name; shorter queries scan the names, skipping the ones missing
+ * some of their characters through a 64-bit mask per item. The index keeps the parent and the name of every
+ * item to compose the clear paths, so it is safe to search it from another thread while the items table is
+ * updated. The paths of the results are composed only when read, e.g. for the rows shown by a list view.
+ * <p>
+ * Removed and renamed items stay in the lists of their old trigrams until the lists are rebuilt,
+ * after as many stale entries as indexed names.
+ */
+public class NameIndex {
+
+  private static final int GRAM = 3;
+
+  private int[] parents = new int[16];
+  private String[] names = new String[16];    // Null if the item is not indexed
+  private long[] charMasks = new long[16];     // Bit (c % 64) set for every lower-cased char c of the name
+  private int indexed;                         // Number of names indexed
+  private int stale;                           // Names removed or replaced since the last rebuild
+  private final Map<Long, Postings> postings = new HashMap<>();
+
+  /**
+   * Sorted list of item ids
+   */
+  private static class Postings {
+    private int[] ids = new int[4];
+    private int size;
+
+    private void add(int id) {
+      // The ids are mostly added in increasing order
+      if (this.size > 0 && this.ids[this.size - 1] >= id) {
+        int pos = Arrays.binarySearch(this.ids, 0, this.size, id);
+        if (pos >= 0) { return; }
+        insert(-pos - 1, id);
+      } else {
+        insert(this.size, id);
+      }
+    }
+
+    private void insert(int pos, int id) {
+      if (this.size == this.ids.length) { this.ids = Arrays.copyOf(this.ids, this.size * 2); }
+      System.arraycopy(this.ids, pos, this.ids, pos + 1, this.size - pos);
+      this.ids[pos] = id;
+      this.size++;
+    }
+
+    private boolean contains(int id) {
+      return Arrays.binarySearch(this.ids, 0, this.size, id) >= 0;
+    }
+  }
+
+  /**
+   * Index the name of an item, replacing the previous one
+   *
+   * @param id     The item id
+   * @param parent The parent id; ItemTable.ROOT for the items in the vault root
+   * @param name   The clear name
+   */
+  public synchronized void add(int id, int parent, String name) {
+    if (id >= this.names.length) {
+      int capacity = Math.max(this.names.length * 2, id + 1);
+      this.parents = Arrays.copyOf(this.parents, capacity);
+      this.names = Arrays.copyOf(this.names, capacity);
+      this.charMasks = Arrays.copyOf(this.charMasks, capacity);
+    }
+    if (this.names[id] != null) {
+      this.stale++;
+    } else {
+      this.indexed++;
+    }
+    this.parents[id] = parent;
+    this.names[id] = name;
+    this.charMasks[id] = charMask(name);
+
+    for (int i = 0; i + GRAM <= name.length(); i++) {
+      this.postings.computeIfAbsent(trigram(name, i), k -> new Postings()).add(id);
+    }
+    compactIfStale();
+  }
+
+  /**
+   * Remove an item from the index
+   *
+   * @param id The item id
+   */
+  public synchronized void remove(int id) {
+    if (id < 0 || id >= this.names.length || this.names[id] == null) { return; }
+
+    this.names[id] = null;
+    this.indexed--;
+    this.stale++;
+    compactIfStale();
+  }
+
+  /**
+   * Remove all the items
+   */
+  public synchronized void clear() {
+    this.parents = new int[16];
+    this.names = new String[16];
+    this.charMasks = new long[16];
+    this.indexed = this.stale = 0;
+    this.postings.clear();
+  }
+
+  public synchronized int size() {
+    return this.indexed;
+  }
+
+  /**
+   * Find the items whose clear name contains the query, ignoring the case
+   *
+   * @param query The text to find
+   * @param limit The maximum number of results
+   *
+   * @return the clear paths relative to the vault root, parents before their content;
+   *         a path is null if the item has been removed after the search
+   */
+  public synchronized List<Path> search(String query, int limit) {
+    if (query == null || query.isEmpty() || limit <= 0) { return List.of(); }
+
+    String lower = lowerCase(query);
+    int[] found = new int[Math.min(limit, 64)];
+    int count = 0;
+    if (lower.length() < GRAM) {
+      long mask = charMask(lower);
+      for (int id = 0; id < this.names.length && count < limit; id++) {
+        if ((this.charMasks[id] & mask) == mask && matches(id, lower)) {
+          if (count == found.length) { found = Arrays.copyOf(found, Math.min(limit, count * 2)); }
+          found[count++] = id;
+        }
+      }
+      return new Results(Arrays.copyOf(found, count));
+    }
+
+    // Intersect the lists starting from the shortest one
+    List<Postings> lists = new ArrayList<>();
+    for (int i = 0; i + GRAM <= lower.length(); i++) {
+      Postings list = this.postings.get(trigram(lower, i));
+      if (list == null) { return List.of(); }
+      if (!lists.contains(list)) { lists.add(list); }
+    }
+    lists.sort(Comparator.comparingInt(list -> list.size));
+
+    Postings shortest = lists.get(0);
+    for (int i = 0; i < shortest.size && count < limit; i++) {
+      int id = shortest.ids[i];
+      boolean candidate = true;
+      for (int l = 1; l < lists.size() && candidate; l++) { candidate = lists.get(l).contains(id); }
+      // The trigrams can be in a different order, or belong to a replaced name
+      if (candidate && matches(id, lower)) {
+        if (count == found.length) { found = Arrays.copyOf(found, Math.min(limit, count * 2)); }
+        found[count++] = id;
+      }
+    }
+    return new Results(Arrays.copyOf(found, count));
+  }
+
+  /**
+   * Ids of the items found, composing their paths on access
+   */
+  private class Results extends AbstractList<Path> {
+    private final int[] ids;
+
+    private Results(int[] ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public Path get(int index) {
+      synchronized (NameIndex.this) {
+        return getPath(this.ids[index]);
+      }
+    }
+
+    @Override
+    public int size() {
+      return this.ids.length;
+    }
+  }
+
+  private boolean matches(int id, String lower) {
+    String name = this.names[id];
+    if (name == null || !containsLowerCase(name, lower)) { return false; }
+
+    // Skip the items whose parents are not indexed yet
+    for (int p = this.parents[id]; p != ItemTable.ROOT; p = this.parents[p]) {
+      if (p >= this.names.length || this.names[p] == null) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Compose the clear path of an item
+   *
+   * @return the path; null if the item or one of its parents is not indexed
+   */
+  private Path getPath(int id) {
+    int depth = 0;
+    for (int p = id; p != ItemTable.ROOT; p = this.parents[p]) {
+      if (p >= this.names.length || this.names[p] == null) { return null; }
+      depth++;
+    }
+    String[] elements = new String[depth];
+    for (int p = id; p != ItemTable.ROOT; p = this.parents[p]) { elements[--depth] = this.names[p]; }
+    return Path.of(elements[0], Arrays.copyOfRange(elements, 1, elements.length));
+  }
+
+  private void compactIfStale() {
+    if (this.stale < Math.max(1024, this.indexed)) { return; }
+
+    this.postings.clear();
+    this.stale = 0;
+    for (int id = 0; id < this.names.length; id++) {
+      String name = this.names[id];
+      if (name == null) { continue; }
+      for (int i = 0; i + GRAM <= name.length(); i++) {
+        this.postings.computeIfAbsent(trigram(name, i), k -> new Postings()).add(id);
+      }
+    }
+  }
+
+  private static long trigram(String s, int from) {
+    return ((long) Character.toLowerCase(s.charAt(from)) << 32)
+         | ((long) Character.toLowerCase(s.charAt(from + 1)) << 16)
+         | Character.toLowerCase(s.charAt(from + 2));
+  }
+
+  private static long charMask(String s) {
+    long mask = 0;
+    for (int i = 0; i < s.length(); i++) { mask |= 1L << (Character.toLowerCase(s.charAt(i)) & 63); }
+    return mask;
+  }
+
+  private static String lowerCase(String s) {
+    char[] chars = s.toCharArray();
+    for (int i = 0; i < chars.length; i++) { chars[i] = Character.toLowerCase(chars[i]); }
+    return new String(chars);
+  }
+
+  /**
+   * Check if a name contains a lower-cased text, lower-casing the name char by char as the trigrams
+   */
+  private static boolean containsLowerCase(String name, String lower) {
+    for (int i = 0; i + lower.length() <= name.length(); i++) {
+      int j = 0;
+      while (j < lower.length() && Character.toLowerCase(name.charAt(i + j)) == lower.charAt(j)) { j++; }
+      if (j == lower.length()) { return true; }
+    }
+    return false;
+  }
+}
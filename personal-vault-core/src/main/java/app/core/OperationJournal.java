@@ -0,0 +1,204 @@
+package app.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Write-ahead journal of a bulk vault operation, stored in the vault root.
+ * <p>
+ * The first line records the intended operation and its source, then one line is appended for
+ * every item as soon as it has been encrypted and before its tree checksum is written:
+ * <pre>
+ *   BEGIN  base64(operation)  base64(source path)
+ *   DONE   base64(source relative path)  encrypted relative path  base64(mac)
+ * </pre>
+ * The mac is the one of the tree checksum of the item, so that a repair writes only the checksums
+ * computed while the vault was unlocked; the records written by older versions have no mac.
+ * The journal is deleted when the operation ends, so a journal found when the vault is opened
+ * belongs to an operation interrupted by a crash. Lines are written without fsync: the journal
+ * survives the death of the process but not a crash of the operating system.
+ */
+public class OperationJournal {
+
+  public static final String ADD_DIRECTORY = "ADD_DIRECTORY";
+  public static final String ADD_FILE = "ADD_FILE";       // Source: the file
+  public static final String ADD_STREAM = "ADD_STREAM";   // Source: the relative clear path of the new file
+
+  private static final String BEGIN = "BEGIN", DONE = "DONE", SEP = "\t";
+
+  private final Path file;                          // Journal file in the vault root
+  private final String operation;                   // Journaled operation
+  private final Path source;                        // Source of the operation
+  private final LinkedHashMap<Path, Path> done;     // Source relative path -> encrypted relative path
+  private final HashMap<Path, byte[]> macs;         // Encrypted relative path -> tree checksum mac
+  private FileChannel channel;                      // Open only while items are being appended
+
+  private OperationJournal(Path file, String operation, Path source) {
+    this.file = file;
+    this.operation = operation;
+    this.source = source;
+    this.done = new LinkedHashMap<>();
+    this.macs = new HashMap<>();
+  }
+
+  /**
+   * Create the journal file and record the intended operation
+   *
+   * @param file      The journal file path
+   * @param operation The operation name
+   * @param source    The source path of the operation
+   *
+   * @return the journal, open for appending completed items
+   * @throws IOException if the journal already exists or cannot be written
+   */
+  public static OperationJournal begin(Path file, String operation, Path source) throws IOException {
+    OperationJournal journal = new OperationJournal(file, operation, source);
+    journal.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    journal.append(BEGIN + SEP + encode(operation) + SEP + encode(source.toString()));
+
+    return journal;
+  }
+
+  /**
+   * Read the journal of an interrupted operation
+   *
+   * @param file The journal file path
+   *
+   * @return the journal; 
+   *         null if the BEGIN record is incomplete, i.e. no item has been processed
+   * @throws IOException if the journal cannot be read or is invalid
+   */
+  public static OperationJournal read(Path file) throws IOException {
+    List<String> lines = List.of(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n", -1));
+
+    // The last element is the (possibly partial) line after the last newline: ignore it
+    if (lines.size() < 2) { return null; }
+    
+    String[] begin = lines.get(0).split(SEP);
+    if (begin.length != 3 || !begin[0].equals(BEGIN)) {
+      throw new IOException("Invalid operation journal");
+    }
+
+    // A garbled line can hold invalid base64 or an invalid path
+    OperationJournal journal;
+    try {
+      journal = new OperationJournal(file, decode(begin[1]), Path.of(decode(begin[2])));
+      for (String line : lines.subList(1, lines.size() - 1)) {
+        String[] tok = line.split(SEP);
+        if (tok.length < 3 || tok.length > 4 || !tok[0].equals(DONE)) {
+          throw new IOException("Invalid operation journal");
+        }
+        journal.done.put(Path.of(decode(tok[1])), Path.of(tok[2]));
+        if (tok.length == 4) { journal.macs.put(Path.of(tok[2]), Base64.getDecoder().decode(tok[3])); }
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid operation journal", e);
+    }
+
+    return journal;
+  }
+
+  /**
+   * Record an item as completed
+   *
+   * @param srcRelPath The item path relative to the parent of the source
+   * @param encRelPath The encrypted item path relative to the vault root
+   * @param mac        The mac of the tree checksum of the item
+   *
+   * @throws IOException
+   */
+  public void done(Path srcRelPath, Path encRelPath, byte[] mac) throws IOException {
+    append(DONE + SEP + encode(srcRelPath.toString()) + SEP + encRelPath + SEP + Base64.getEncoder().encodeToString(mac));
+    this.done.put(srcRelPath, encRelPath);
+    this.macs.put(encRelPath, mac);
+  }
+
+  /**
+   * Check if an item has already been completed
+   *
+   * @param srcRelPath The item path relative to the parent of the source
+   *
+   * @return true if the item is recorded as completed
+   */
+  public boolean isDone(Path srcRelPath) {
+    return this.done.containsKey(srcRelPath);
+  }
+
+  /**
+   * Get the encrypted relative paths of the completed items, in order of completion
+   *
+   * @return the encrypted relative paths
+   */
+  public Collection<Path> getDoneItems() {
+    return this.done.values();
+  }
+
+  /**
+   * Get the mac recorded with a completed item
+   *
+   * @param encRelPath The encrypted item path relative to the vault root
+   *
+   * @return the mac of the tree checksum; null if not recorded
+   */
+  public byte[] getMac(Path encRelPath) {
+    return this.macs.get(encRelPath);
+  }
+
+  public String getOperation() {
+    return this.operation;
+  }
+
+  public Path getSource() {
+    return this.source;
+  }
+
+  /**
+   * End the operation deleting the journal
+   *
+   * @throws IOException
+   */
+  public void commit() throws IOException {
+    close();
+    Files.deleteIfExists(this.file);
+  }
+
+  /**
+   * Close the journal file leaving it on the file system
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    if (this.channel != null) {
+      this.channel.close();
+      this.channel = null;
+    }
+  }
+
+  private void append(String line) throws IOException {
+    if (this.channel == null) {
+      this.channel = FileChannel.open(this.file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      this.channel.write(buffer);
+    }
+  }
+
+  private static String encode(String value) {
+    return Base64.getEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decode(String value) {
+    return new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,67 @@
+package app.core;
+
+public class OperationProgress {
+
+  private final long itemsDone;       // Number of items completed
+  private final long itemsTotal;      // Number of items of the operation
+  private final long bytesDone;       // Number of bytes processed
+  private final long bytesTotal;      // Number of bytes of the operation
+  private final double throughput;    // Bytes processed per second
+
+  /**
+   * Snapshot of the progress of a vault operation
+   *
+   * @param itemsDone  Number of items completed
+   * @param itemsTotal Number of items of the operation
+   * @param bytesDone  Number of bytes processed
+   * @param bytesTotal Number of bytes of the operation
+   * @param throughput Bytes processed per second since the start of the operation
+   */
+  public OperationProgress(long itemsDone, long itemsTotal, long bytesDone, long bytesTotal, double throughput) {
+    this.itemsDone = itemsDone;
+    this.itemsTotal = itemsTotal;
+    this.bytesDone = bytesDone;
+    this.bytesTotal = bytesTotal;
+    this.throughput = throughput;
+  }
+
+  public long getItemsDone() {
+    return this.itemsDone;
+  }
+
+  public long getItemsTotal() {
+    return this.itemsTotal;
+  }
+
+  public long getBytesDone() {
+    return this.bytesDone;
+  }
+
+  public long getBytesTotal() {
+    return this.bytesTotal;
+  }
+
+  public double getThroughput() {
+    return this.throughput;
+  }
+
+  /**
+   * Get the completed fraction of the operation based on bytes, or on items if there are no bytes
+   *
+   * @return a value between 0 and 1
+   */
+  public double getFraction() {
+    if (this.bytesTotal > 0) {
+      return Math.min(1.0, (double) this.bytesDone / this.bytesTotal);
+    }
+
+    return this.itemsTotal > 0 ? Math.min(1.0, (double) this.itemsDone / this.itemsTotal) : 1.0;
+  }
+
+  @Override
+  public String toString() {
+    return this.itemsDone + "/" + this.itemsTotal + " items, " +
+           this.bytesDone + "/" + this.bytesTotal + " bytes, " +
+           String.format("%.0f", this.throughput) + " B/s";
+  }
+}
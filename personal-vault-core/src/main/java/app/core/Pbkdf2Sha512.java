@@ -0,0 +1,193 @@
+package app.core;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * PBKDF2 with HMAC-SHA512 (RFC 8018), the same function as SunJCE "PBKDF2WithHmacSHA512".
+ * <p>
+ * The SHA-512 states after the inner and outer padded keys are computed once per derivation; every
+ * iteration then hashes a single 64 byte block from those states with two compressions, on reused
+ * long arrays, without any allocation.
+ */
+public class Pbkdf2Sha512 implements Kdf {
+
+  private static final int BLOCK_BYTES = 128;   // SHA-512 block size
+  private static final int HASH_BYTES = 64;     // SHA-512 output size
+  private static final int HASH_WORDS = 8;
+
+  private static final long[] IV = {
+    0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+    0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+  };
+
+  private static final long[] K = {
+    0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL, 0x3956c25bf348b538L,
+    0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L, 0xd807aa98a3030242L, 0x12835b0145706fbeL,
+    0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L, 0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L,
+    0xc19bf174cf692694L, 0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+    0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L, 0x983e5152ee66dfabL,
+    0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L, 0xc6e00bf33da88fc2L, 0xd5a79147930aa725L,
+    0x06ca6351e003826fL, 0x142929670a0e6e70L, 0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL,
+    0x53380d139d95b3dfL, 0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+    0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L, 0xd192e819d6ef5218L,
+    0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L, 0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L,
+    0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L, 0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L,
+    0x682e6ff3d6b2b8a3L, 0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+    0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL, 0xca273eceea26619cL,
+    0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L, 0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L,
+    0x113f9804bef90daeL, 0x1b710b35131c471bL, 0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL,
+    0x431d67c49c100d4cL, 0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+  };
+
+  @Override
+  public byte[] derive(char[] password, byte[] salt, int iterations, int keyLength) {
+    if (password == null || salt == null) {
+      throw new NullPointerException("Password or salt are null");
+    }
+    if (iterations < 1 || keyLength <= 0 || keyLength % 8 != 0) {
+      throw new IllegalArgumentException("Invalid derivation parameters");
+    }
+
+    // Key of the HMAC: the UTF-8 password, hashed if longer than a block
+    byte[] key = encode(password);
+    if (key.length > BLOCK_BYTES) {
+      byte[] hashed = toBytes(digest(IV, 0, key));
+      Arrays.fill(key, (byte) 0);
+      key = hashed;
+    }
+
+    // States after the inner and outer padded keys
+    long[] inner = padKeyState(key, (byte) 0x36);
+    long[] outer = padKeyState(key, (byte) 0x5c);
+    Arrays.fill(key, (byte) 0);
+
+    byte[] derived = new byte[keyLength / 8];
+    long[] u = new long[HASH_WORDS], t = new long[HASH_WORDS], w = new long[80];
+    byte[] message = Arrays.copyOf(salt, salt.length + 4);
+    for (int block = 1; (block - 1) * HASH_BYTES < derived.length; block++) {
+      // U1 = HMAC(password, salt || INT(block))
+      message[salt.length] = (byte) (block >>> 24);
+      message[salt.length + 1] = (byte) (block >>> 16);
+      message[salt.length + 2] = (byte) (block >>> 8);
+      message[salt.length + 3] = (byte) block;
+      long[] innerHash = digest(inner, BLOCK_BYTES, message);
+      long[] first = digest(outer, BLOCK_BYTES, toBytes(innerHash));
+      System.arraycopy(first, 0, u, 0, HASH_WORDS);
+      System.arraycopy(first, 0, t, 0, HASH_WORDS);
+
+      // Ui = HMAC(password, Ui-1): one padded block from each precomputed state
+      for (int i = 1; i < iterations; i++) {
+        hashHashBlock(inner, u, w);
+        hashHashBlock(outer, u, w);
+        for (int j = 0; j < HASH_WORDS; j++) { t[j] ^= u[j]; }
+      }
+
+      byte[] bytes = toBytes(t);
+      int offset = (block - 1) * HASH_BYTES;
+      System.arraycopy(bytes, 0, derived, offset, Math.min(HASH_BYTES, derived.length - offset));
+      Arrays.fill(bytes, (byte) 0);
+    }
+
+    Arrays.fill(inner, 0);
+    Arrays.fill(outer, 0);
+    Arrays.fill(u, 0);
+    Arrays.fill(t, 0);
+    Arrays.fill(w, 0);
+    return derived;
+  }
+
+  /**
+   * Hash a 64 byte message following a padded key block: u is replaced by the hash
+   */
+  private static void hashHashBlock(long[] state, long[] u, long[] w) {
+    System.arraycopy(u, 0, w, 0, HASH_WORDS);
+    w[8] = 0x8000000000000000L;
+    for (int j = 9; j < 15; j++) { w[j] = 0; }
+    w[15] = (BLOCK_BYTES + HASH_BYTES) * 8L;
+    System.arraycopy(state, 0, u, 0, HASH_WORDS);
+    compress(u, w);
+  }
+
+  private static long[] padKeyState(byte[] key, byte pad) {
+    byte[] block = new byte[BLOCK_BYTES];
+    for (int i = 0; i < BLOCK_BYTES; i++) { block[i] = (byte) ((i < key.length ? key[i] : 0) ^ pad); }
+    long[] state = IV.clone();
+    long[] w = new long[80];
+    ByteBuffer.wrap(block).asLongBuffer().get(w, 0, 16);
+    compress(state, w);
+    Arrays.fill(block, (byte) 0);
+    Arrays.fill(w, 0);
+    return state;
+  }
+
+  /**
+   * Hash a message starting from a state
+   *
+   * @param state  The initial state (not modified)
+   * @param prefix The bytes already hashed into the state, a multiple of the block size
+   * @param bytes  The message
+   */
+  private static long[] digest(long[] state, long prefix, byte[] bytes) {
+    int blocks = (bytes.length + 16) / BLOCK_BYTES + 1;
+    ByteBuffer padded = ByteBuffer.allocate(blocks * BLOCK_BYTES);
+    padded.put(bytes).put((byte) 0x80);
+    padded.putLong(padded.capacity() - 8, (prefix + bytes.length) * 8);
+
+    long[] h = state.clone();
+    long[] w = new long[80];
+    padded.rewind();
+    for (int b = 0; b < blocks; b++) {
+      padded.asLongBuffer().get(w, 0, 16);
+      padded.position(padded.position() + BLOCK_BYTES);
+      compress(h, w);
+    }
+    Arrays.fill(padded.array(), (byte) 0);
+    return h;
+  }
+
+  /**
+   * SHA-512 compression of the block in w[0..15] into the state h; w is used as message schedule
+   */
+  private static void compress(long[] h, long[] w) {
+    for (int i = 16; i < 80; i++) {
+      long s0 = Long.rotateRight(w[i - 15], 1) ^ Long.rotateRight(w[i - 15], 8) ^ (w[i - 15] >>> 7);
+      long s1 = Long.rotateRight(w[i - 2], 19) ^ Long.rotateRight(w[i - 2], 61) ^ (w[i - 2] >>> 6);
+      w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+    }
+
+    long a = h[0], b = h[1], c = h[2], d = h[3], e = h[4], f = h[5], g = h[6], k = h[7];
+    for (int i = 0; i < 80; i++) {
+      long t1 = k + (Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41))
+                  + ((e & f) ^ (~e & g)) + K[i] + w[i];
+      long t2 = (Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39))
+                  + ((a & b) ^ (a & c) ^ (b & c));
+      k = g;
+      g = f;
+      f = e;
+      e = d + t1;
+      d = c;
+      c = b;
+      b = a;
+      a = t1 + t2;
+    }
+    h[0] += a; h[1] += b; h[2] += c; h[3] += d;
+    h[4] += e; h[5] += f; h[6] += g; h[7] += k;
+  }
+
+  private static byte[] toBytes(long[] words) {
+    ByteBuffer buffer = ByteBuffer.allocate(words.length * 8);
+    buffer.asLongBuffer().put(words);
+    return buffer.array();
+  }
+
+  private static byte[] encode(char[] password) {
+    ByteBuffer encoded = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+    byte[] bytes = new byte[encoded.remaining()];
+    encoded.get(bytes);
+    if (encoded.hasArray()) { Arrays.fill(encoded.array(), (byte) 0); }
+    return bytes;
+  }
+}
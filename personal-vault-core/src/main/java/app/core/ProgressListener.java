@@ -0,0 +1,12 @@
+package app.core;
+
+@FunctionalInterface
+public interface ProgressListener {
+
+  /**
+   * Called by a long vault operation every time a chunk or an item has been processed
+   *
+   * @param progress Snapshot of the operation progress
+   */
+  public void onProgress(OperationProgress progress);
+}
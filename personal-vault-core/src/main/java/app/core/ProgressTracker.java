@@ -0,0 +1,99 @@
+package app.core;
+
+import java.util.concurrent.CancellationException;
+
+public class ProgressTracker {
+
+  private final ProgressListener listener;    // Receiver of progress events (can be null)
+  private final CancellationToken token;      // Token checked between chunks (can be null)
+
+  private long itemsTotal;
+  private long bytesTotal;
+  private long itemsDone;
+  private long bytesCompleted;                // Bytes of the completed items
+  private long bytesCurrent;                  // Bytes processed of the current item
+  private long startTime;                     // Operation start in nanoseconds
+
+  /**
+   * Tracker of the progress of a single vault operation
+   *
+   * @param listener Receiver of the progress events (can be null)
+   * @param token    Cancellation token of the operation (can be null)
+   */
+  public ProgressTracker(ProgressListener listener, CancellationToken token) {
+    this.listener = listener;
+    this.token = token;
+    this.startTime = System.nanoTime();
+  }
+
+  /**
+   * Set the totals of the operation and restart the throughput measurement
+   *
+   * @param itemsTotal Number of items to process
+   * @param bytesTotal Number of bytes to process
+   */
+  public void start(long itemsTotal, long bytesTotal) {
+    this.itemsTotal = itemsTotal;
+    this.bytesTotal = bytesTotal;
+    this.itemsDone = 0;
+    this.bytesCompleted = 0;
+    this.bytesCurrent = 0;
+    this.startTime = System.nanoTime();
+    notifyListener();
+  }
+
+  /**
+   * Method called after every processed chunk of the current item
+   *
+   * @param bytes Number of bytes of the chunk
+   *
+   * @throws CancellationException if the operation has been cancelled
+   */
+  public void chunkDone(long bytes) {
+    checkCancelled();
+    this.bytesCurrent += bytes;
+    notifyListener();
+  }
+
+  /**
+   * Method called after an item has been completely processed
+   *
+   * @param bytes Size of the item in bytes
+   */
+  public void itemDone(long bytes) {
+    this.itemsDone++;
+    this.bytesCompleted += bytes;
+    this.bytesCurrent = 0;
+    notifyListener();
+  }
+
+  /**
+   * Method to stop the operation if the cancellation has been requested
+   *
+   * @throws CancellationException if the operation has been cancelled
+   */
+  public void checkCancelled() {
+    if (this.token != null) {
+      this.token.throwIfCancelled();
+    }
+  }
+
+  /**
+   * Get a snapshot of the current progress
+   *
+   * @return the progress of the operation
+   */
+  public OperationProgress getProgress() {
+    long bytesDone = this.bytesCompleted + this.bytesCurrent;
+    double elapsed = (System.nanoTime() - this.startTime) / 1e9;
+    double throughput = elapsed > 0 ? bytesDone / elapsed : 0;
+
+    return new OperationProgress(this.itemsDone, this.itemsTotal, bytesDone, this.bytesTotal, throughput);
+  }
+
+  private void notifyListener() {
+    if (this.listener != null) {
+      this.listener.onProgress(getProgress());
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package app.core;
+
+import java.util.concurrent.CancellationException;
+
+public class RateLimiter {
+
+  private final long bytesPerSecond;
+  private long nextFree;                      // Time in nanoseconds at which the bytes acquired so far are paid
+
+  /**
+   * Limiter of the bytes read per second, shared by the threads of an operation
+   *
+   * @param bytesPerSecond Maximum throughput in bytes per second
+   */
+  public RateLimiter(long bytesPerSecond) {
+    if (bytesPerSecond <= 0) {
+      throw new IllegalArgumentException("Invalid rate");
+    }
+    this.bytesPerSecond = bytesPerSecond;
+    this.nextFree = System.nanoTime();
+  }
+
+  /**
+   * Method called before reading some bytes: it waits until the bytes fit the rate
+   *
+   * @param bytes Number of bytes to read
+   *
+   * @throws CancellationException if the thread is interrupted while waiting
+   */
+  public void acquire(long bytes) {
+    long wait;
+    synchronized (this) {
+      long now = System.nanoTime();
+      // The time not used while idle is not saved up for bursts
+      this.nextFree = Math.max(this.nextFree, now);
+      wait = this.nextFree - now;
+      this.nextFree += (long) (bytes * 1e9 / this.bytesPerSecond);
+    }
+
+    if (wait > 0) {
+      try {
+        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("Operation interrupted");
+      }
+    }
+  }
+
+  public long getBytesPerSecond() {
+    return this.bytesPerSecond;
+  }
+}
@@ -0,0 +1,73 @@
+package app.core;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+public class ScrubReport {
+
+  /**
+   * Item whose encrypted content failed the verification
+   */
+  public static class CorruptItem {
+    private final Path path;                  // Encrypted path relative to the vault root
+    private final boolean headerCorrupt;      // If true the chunks could not be verified
+    private final List<Integer> chunks;       // Indexes of the corrupt chunks
+
+    public CorruptItem(Path path, boolean headerCorrupt, List<Integer> chunks) {
+      this.path = path;
+      this.headerCorrupt = headerCorrupt;
+      this.chunks = Collections.unmodifiableList(chunks);
+    }
+
+    public Path getPath() {
+      return this.path;
+    }
+
+    public boolean isHeaderCorrupt() {
+      return this.headerCorrupt;
+    }
+
+    public List<Integer> getChunks() {
+      return this.chunks;
+    }
+
+    @Override
+    public String toString() {
+      return this.path + (this.headerCorrupt ? " (header)" : " (chunks " + this.chunks + ")");
+    }
+  }
+
+  private final long itemsChecked;
+  private final long bytesChecked;
+  private final List<CorruptItem> corruptItems;
+
+  /**
+   * Result of the verification of the encrypted items of a vault
+   *
+   * @param itemsChecked Number of items verified
+   * @param bytesChecked Number of encrypted bytes read
+   * @param corruptItems The items that failed the verification, sorted by path
+   */
+  public ScrubReport(long itemsChecked, long bytesChecked, List<CorruptItem> corruptItems) {
+    this.itemsChecked = itemsChecked;
+    this.bytesChecked = bytesChecked;
+    this.corruptItems = Collections.unmodifiableList(corruptItems);
+  }
+
+  public long getItemsChecked() {
+    return this.itemsChecked;
+  }
+
+  public long getBytesChecked() {
+    return this.bytesChecked;
+  }
+
+  public List<CorruptItem> getCorruptItems() {
+    return this.corruptItems;
+  }
+
+  public boolean isClean() {
+    return this.corruptItems.isEmpty();
+  }
+}
@@ -0,0 +1,302 @@
+package app.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import static app.core.Constants.*;
+
+/**
+ * Binary tree checksum file, memory-mapped for reading.
+ * <p>
+ * The file stores the MAC of the relative encrypted path of every item, sorted by path, so a path
+ * is looked up with a binary search on the mapped records without creating any object per entry.
+ * <pre>
+ *   header   MAGIC, format version, MAC length, count, table offset
+ *   records  path length (short), path (UTF-8), MAC (MAC length bytes)
+ *   table    count record offsets (int), in path order
+ * </pre>
+ * The file is rewritten as a whole: the checksums of the items added or removed afterwards are
+ * appended to the text log (lines path.base64(mac), tombstones prefixed by CHKSUM_TOMBSTONE) and
+ * merged into a new binary file by compact.
+ */
+public class TreeChecksumFile implements Closeable {
+
+  public static final int FORMAT_VERSION = 1;
+
+  private static final int MAGIC = 0x564D4143;   // "VMAC"
+  private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+
+  private final int macLength;
+  private final int count;
+  private final int tableOffset;
+  private MappedByteBuffer buffer;
+
+  private TreeChecksumFile(MappedByteBuffer buffer) throws IOException {
+    if (buffer.getInt(0) != MAGIC) {
+      throw new IOException("Invalid tree checksum file");
+    }
+    if (buffer.getInt(4) != FORMAT_VERSION) {
+      throw new IOException("Unsupported tree checksum file version " + buffer.getInt(4));
+    }
+    this.buffer = buffer;
+    this.macLength = buffer.getInt(8);
+    this.count = buffer.getInt(12);
+    this.tableOffset = (int) buffer.getLong(16);
+    if (this.tableOffset + 4L * this.count > buffer.capacity()) {
+      throw new IOException("Invalid tree checksum file");
+    }
+  }
+
+  /**
+   * Open a binary tree checksum file mapping it in memory
+   *
+   * @param file The binary tree checksum file
+   *
+   * @return the checksum file
+   * @throws IOException if the file cannot be read or is not a binary tree checksum file
+   */
+  public static TreeChecksumFile open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Tree checksum file too large");
+      }
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Invalid tree checksum file");
+      }
+      return new TreeChecksumFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Find a path
+   *
+   * @param path The relative encrypted path (UTF-8)
+   *
+   * @return the index of the entry; -1 if not found
+   */
+  public int find(byte[] path) {
+    int low = 0, high = this.count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = comparePath(mid, path);
+      if (cmp == 0) { return mid; }
+      if (cmp < 0) { low = mid + 1; } else { high = mid - 1; }
+    }
+    return -1;
+  }
+
+  /**
+   * Compare the MAC of an entry with the given one in constant time
+   *
+   * @param index The entry index
+   * @param mac   The MAC to compare
+   *
+   * @return true if equal
+   */
+  public boolean macEquals(int index, byte[] mac) {
+    if (mac.length != this.macLength) { return false; }
+    int offset = macOffset(index), diff = 0;
+    for (int i = 0; i < this.macLength; i++) { diff |= this.buffer.get(offset + i) ^ mac[i]; }
+    return diff == 0;
+  }
+
+  public byte[] getPath(int index) {
+    int offset = recordOffset(index);
+    byte[] path = new byte[this.buffer.getShort(offset) & 0xFFFF];
+    this.buffer.get(offset + 2, path);
+    return path;
+  }
+
+  public byte[] getMac(int index) {
+    byte[] mac = new byte[this.macLength];
+    this.buffer.get(macOffset(index), mac);
+    return mac;
+  }
+
+  public int size() {
+    return this.count;
+  }
+
+  public int getMacLength() {
+    return this.macLength;
+  }
+
+  /**
+   * Release the mapped file; the mapping is freed by the garbage collector
+   */
+  @Override
+  public void close() {
+    this.buffer = null;
+  }
+
+  private int recordOffset(int index) {
+    return this.buffer.getInt(this.tableOffset + 4 * index);
+  }
+
+  private int macOffset(int index) {
+    int offset = recordOffset(index);
+    return offset + 2 + (this.buffer.getShort(offset) & 0xFFFF);
+  }
+
+  private int comparePath(int index, byte[] path) {
+    int offset = recordOffset(index);
+    int length = this.buffer.getShort(offset) & 0xFFFF;
+    for (int i = 0; i < Math.min(length, path.length); i++) {
+      int cmp = Byte.toUnsignedInt(this.buffer.get(offset + 2 + i)) - Byte.toUnsignedInt(path[i]);
+      if (cmp != 0) { return cmp; }
+    }
+    return length - path.length;
+  }
+
+  /**
+   * Read the text log replaying the tombstones: a path removed and added again is live
+   *
+   * @param log        The text log
+   * @param live       Filled with the path and mac bytes of the items added by the log
+   * @param tombstones Filled with the path and mac bytes of the tombstones
+   *
+   * @return false if a line is not valid
+   * @throws IOException
+   */
+  public static boolean readLog(Path log, Map<String, byte[]> live, Map<String, byte[]> tombstones) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(log)) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        // Each line has 2 fields (path + mac)
+        int idx = line.lastIndexOf(PERIOD);
+        if (idx <= 0 || line.indexOf(PERIOD) != idx) { return false; }
+
+        byte[] mac;
+        try {
+          mac = Base64.getDecoder().decode(line.substring(idx + 1));
+        } catch (IllegalArgumentException e) {
+          return false;
+        }
+        if (line.charAt(0) == CHKSUM_TOMBSTONE) {
+          String path = line.substring(1, idx);
+          tombstones.put(path, mac);
+          live.remove(path);
+        } else {
+          live.put(line.substring(0, idx), mac);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Merge a binary file and a text log in a new binary file, replaced atomically;
+   * the log is not modified
+   *
+   * @param base      The binary file (can be missing)
+   * @param log       The text log (can be missing)
+   * @param out       The new binary file; it can be the base
+   * @param macLength The MAC length in bytes
+   * @param keep      Filter of the paths to keep
+   *
+   * @return the number of entries written
+   * @throws IOException if a file is not valid
+   */
+  public static int compact(Path base, Path log, Path out, int macLength, Predicate<String> keep) throws IOException {
+    // Changes of the log sorted by path; null for a removed path
+    TreeMap<byte[], byte[]> changes = new TreeMap<>(Arrays::compareUnsigned);
+    if (log != null && Files.exists(log)) {
+      Map<String, byte[]> live = new TreeMap<>(), tombstones = new TreeMap<>();
+      if (!readLog(log, live, tombstones)) {
+        throw new IOException("Invalid tree checksum log");
+      }
+      for (String path : tombstones.keySet()) { changes.put(path.getBytes(StandardCharsets.UTF_8), null); }
+      for (Map.Entry<String, byte[]> entry : live.entrySet()) { changes.put(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()); }
+    }
+
+    TreeChecksumFile current = base != null && Files.exists(base) ? open(base) : null;
+    if (current != null && current.macLength != macLength) {
+      throw new IOException("Invalid tree checksum file");
+    }
+
+    Path tmp = out.resolveSibling(out.getFileName() + ".tmp");
+    int written = 0;
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+         DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+      // The header is rewritten when the counts are known
+      stream.write(new byte[HEADER_SIZE]);
+      int[] offsets = new int[16];
+      long offset = HEADER_SIZE;
+
+      // Merge the sorted entries of the base with the sorted changes
+      int i = 0, size = current != null ? current.count : 0;
+      byte[] basePath = i < size ? current.getPath(i) : null;
+      Map.Entry<byte[], byte[]> change = changes.pollFirstEntry();
+      while (basePath != null || change != null) {
+        byte[] path, mac;
+        int cmp = basePath == null ? 1 : change == null ? -1 : Arrays.compareUnsigned(basePath, change.getKey());
+        if (cmp < 0) {
+          path = basePath;
+          mac = current.getMac(i);
+        } else {
+          path = change.getKey();
+          mac = change.getValue();
+        }
+        if (cmp <= 0) { basePath = ++i < size ? current.getPath(i) : null; }
+        if (cmp >= 0) { change = changes.pollFirstEntry(); }
+
+        if (mac == null || !keep.test(new String(path, StandardCharsets.UTF_8))) { continue; }
+        if (mac.length != macLength) {
+          throw new IOException("Invalid tree checksum log");
+        }
+        if (offset + 2 + path.length + macLength > Integer.MAX_VALUE) {
+          throw new IOException("Tree checksum file too large");
+        }
+
+        if (written == offsets.length) { offsets = Arrays.copyOf(offsets, written * 2); }
+        offsets[written++] = (int) offset;
+        stream.writeShort(path.length);
+        stream.write(path);
+        stream.write(mac);
+        offset += 2 + path.length + macLength;
+      }
+
+      for (int j = 0; j < written; j++) { stream.writeInt(offsets[j]); }
+      stream.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).putInt(macLength).putInt(written).putLong(offset).flip();
+      channel.write(header, 0);
+      channel.force(false);
+    } finally {
+      if (current != null) { current.close(); }
+    }
+    Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    return written;
+  }
+
+  /**
+   * Convert a text tree checksum file to the binary format
+   *
+   * @param textFile  The text file (path.base64(mac) lines)
+   * @param binFile   The binary file
+   * @param macLength The MAC length in bytes
+   *
+   * @return the number of entries written
+   * @throws IOException if the text file is not valid
+   */
+  public static int convert(Path textFile, Path binFile, int macLength) throws IOException {
+    return compact(null, textFile, binFile, macLength, path -> true);
+  }
+}
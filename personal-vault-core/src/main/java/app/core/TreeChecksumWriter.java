@@ -0,0 +1,121 @@
+package app.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer of the tree checksum file that keeps a single channel open for the whole operation,
+ * buffers the lines and writes them in groups of batchSize lines.
+ * <p>
+ * The durability of the lines depends on the sync policy. Lines still buffered in memory are lost
+ * if the process dies under any policy: bulk operations record their items in the operation journal
+ * before the checksum, so the missing lines are recomputed when the vault is repaired.
+ */
+public class TreeChecksumWriter implements Closeable {
+
+  public enum SyncPolicy {
+    /** Every line is written and forced to the device before append returns: an acknowledged item survives an OS crash. */
+    PER_ITEM,
+    /** Lines are written and forced every batch: an OS crash loses at most the last batch (batchSize lines). */
+    PER_BATCH,
+    /** Lines are written every batch and forced once when the writer is closed: an OS crash loses the whole operation. */
+    PER_OPERATION
+  }
+
+  private final FileChannel channel;
+  private final SyncPolicy policy;
+  private final int batchSize;
+  private final ByteArrayOutputStream buffer;   // Lines not written yet
+  private int pending;                          // Number of lines in the buffer
+  private boolean unsynced;                     // Lines written but not forced yet
+
+  /**
+   * Open the tree checksum file for appending
+   *
+   * @param file      The tree checksum file
+   * @param policy    When the written lines are forced to the storage device
+   * @param batchSize Number of lines written with a single system call
+   *
+   * @throws IOException
+   */
+  public TreeChecksumWriter(Path file, SyncPolicy policy, int batchSize) throws IOException {
+    if (policy == null) {
+      throw new NullPointerException("Sync policy cannot be null");
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size");
+    }
+
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.policy = policy;
+    this.batchSize = batchSize;
+    this.buffer = new ByteArrayOutputStream();
+  }
+
+  /**
+   * Append a line to the tree checksum file
+   *
+   * @param checksum The line content without the new line
+   *
+   * @throws IOException
+   */
+  public void append(byte[] checksum) throws IOException {
+    this.buffer.write(checksum);
+    this.buffer.write('\n');
+    this.pending++;
+
+    if (this.policy == SyncPolicy.PER_ITEM || this.pending >= this.batchSize) {
+      commit();
+    }
+  }
+
+  /**
+   * Write the buffered lines, forcing them to the device unless the policy is PER_OPERATION
+   *
+   * @throws IOException
+   */
+  public void commit() throws IOException {
+    if (this.pending > 0) {
+      ByteBuffer bytes = ByteBuffer.wrap(this.buffer.toByteArray());
+      while (bytes.hasRemaining()) {
+        this.channel.write(bytes);
+      }
+      this.buffer.reset();
+      this.pending = 0;
+      this.unsynced = true;
+    }
+
+    if (this.unsynced && this.policy != SyncPolicy.PER_OPERATION) {
+      sync();
+    }
+  }
+
+  /**
+   * Write the buffered lines, force them to the device and close the file
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      commit();
+      if (this.unsynced) { sync(); }
+    } finally {
+      this.channel.close();
+    }
+  }
+
+  public SyncPolicy getPolicy() {
+    return this.policy;
+  }
+
+  private void sync() throws IOException {
+    this.channel.force(false);
+    this.unsynced = false;
+  }
+}
@@ -0,0 +1,2542 @@
+package app.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.Lock;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import app.core.KeyDerivator.InvalidPasswordException;
+import app.core.KeyDerivator.InvalidSaltException;
+import app.core.TreeChecksumWriter.SyncPolicy;
+
+import static app.core.Constants.*;
+
+public class Vault {
+
+  private final UUID vid;
+  private String name;
+  private Path storagePath;
+  private Path revealPath;
+  private Path treeChecksumFile;   // Text log of the checksums appended since the last compaction
+  private Path treeChecksumBase;   // Binary sorted checksums
+  private Path journalFile;
+  private Path indexFile;
+  private Path treeRootFile;
+  private Path rekeyFile;
+  private Path rekeyHeadersFile;
+  private boolean locked = true;
+  private byte[] confMac;
+  private byte[] confPayload;                 // Serialized configuration as stored, authenticated by confMac
+
+  private KeyManager km;
+  private MacService authMac;   // HMAC engine of the auth key; null until the keys are unwrapped
+  private VaultConfiguration conf;
+  private ItemTable items;   // Columnar table of the items, parents before children; null if not loaded
+  private DiskItemIndex itemIndex;   // On-disk index queried while the items are not loaded
+  private MerkleTree merkle;   // Hash tree of the items, authenticated through the tree root file; null while locked
+  private volatile NameIndex nameIndex;   // Search index of the clear names of the items; null while locked
+  private OperationJournal journal;   // Journal of the running or interrupted bulk operation
+  private TreeChecksumWriter checksumWriter;   // Open while an operation appends checksums
+  private SyncPolicy checksumSyncPolicy = SyncPolicy.PER_OPERATION;
+  
+  /**
+   * Create a new vault in "path" using "password" for keys derivation
+   * @param name         The name of the vault (can be null); if null name = vid
+   * @param storagePath  The path in which store the vault
+   * @param psw          The password used for key derivation
+   * 
+   * @throws IOException
+   * @throws InternalException
+   * @throws InvalidPasswordException
+   */
+  public Vault(String name, Path storagePath, String psw) throws IOException, InternalException, InvalidPasswordException {
+    if (storagePath == null || psw == null) {
+      throw new NullPointerException("Null vault parameter");
+    }
+
+    if (!(name == null || name.length() == 0 || name.matches(VAULT_NAME_RGX))) {
+      throw new IllegalArgumentException("Invalid vault name");
+    }
+    
+    this.vid = UUID.randomUUID();
+    this.name = (name != null && name.length() != 0) ? name : this.vid.toString();
+    this.locked = false;
+    
+    try {
+      // Create and wrap secret keys
+      this.km = new KeyManager();
+      this.km.setKdfCost(KDF_ALGORITHM, KeyDerivator.calibrate(KDF_ALGORITHM, KDF_TARGET_MILLIS));
+      this.km.wrapSecretKeys(psw);  
+    } catch (InvalidPasswordException e) { 
+      throw e;
+    } catch (Exception e) {
+      throw new InternalException();
+    }
+
+    this.storagePath = storagePath.resolve(this.name).normalize();
+    Files.createDirectory(this.storagePath);
+
+    this.items = new ItemTable();
+    this.nameIndex = this.items.enableNameIndex();
+    this.merkle = new MerkleTree(this.items);
+    this.treeChecksumFile = this.storagePath.resolve(this.vid + CHKSUM_FILE_EXT);
+    this.treeChecksumBase = this.storagePath.resolve(this.vid + CHKSUM_BASE_FILE_EXT);
+    this.journalFile = this.storagePath.resolve(this.vid + JOURNAL_FILE_EXT);
+    this.indexFile = this.storagePath.resolve(this.vid + INDEX_FILE_EXT);
+    this.treeRootFile = this.storagePath.resolve(this.vid + TREE_ROOT_FILE_EXT);
+    this.rekeyFile = this.storagePath.resolve(this.vid + REKEY_FILE_EXT);
+    this.rekeyHeadersFile = this.storagePath.resolve(this.vid + REKEY_HEADERS_FILE_EXT);
+    
+    // Create and save vault configuration
+    this.conf = new VaultConfiguration(this.vid, this.km.getSalt(), this.km.getWrapEncKey(), this.km.getWrapAuthKey(),
+                                       this.km.getKdfAlgorithm(), this.km.getKdfIterations());
+
+    // The empty tree is signed before the configuration requires its root
+    writeTreeRoot();
+    this.conf.setTreeRoot(true);
+    writeConfiguration();
+  }
+
+  /**
+   * Import an existing vault
+   * 
+   * @param vid         vault id
+   * @param name        vault name; if null name = vid
+   * @param storagePath vault storage path
+   * 
+   * @throws InvalidConfigurationException
+   * @throws IOException
+   * @throws InternalException 
+   */
+  public Vault(UUID vid, String name, Path storagePath) throws InvalidConfigurationException, IOException, InternalException {
+    this(vid, name, storagePath, false);
+  }
+
+  /**
+   * Import an existing vault, optionally without loading its items on the heap
+   * 
+   * @param vid         vault id
+   * @param name        vault name; if null name = vid
+   * @param storagePath vault storage path
+   * @param indexed     if true the items are queried through the on-disk item index, built if missing or stale, 
+   *                    and loaded only when the vault is unlocked or modified
+   * 
+   * @throws InvalidConfigurationException
+   * @throws IOException
+   * @throws InternalException 
+   */
+  public Vault(UUID vid, String name, Path storagePath, boolean indexed) throws InvalidConfigurationException, IOException, InternalException {
+    this(vid, name, storagePath, indexed, false);
+  }
+
+  /**
+   * Import an existing vault reading only its configuration; the storage tree is not walked 
+   * until openItems() is called, explicitly or by the first method that needs the items
+   * 
+   * @param vid         vault id
+   * @param name        vault name; if null name = vid
+   * @param storagePath vault storage path
+   * 
+   * @return the vault
+   * @throws InvalidConfigurationException
+   * @throws IOException
+   * @throws InternalException 
+   */
+  public static Vault openDeferred(UUID vid, String name, Path storagePath) throws InvalidConfigurationException, IOException, InternalException {
+    return new Vault(vid, name, storagePath, true, true);
+  }
+
+  private Vault(UUID vid, String name, Path storagePath, boolean indexed, boolean deferred) throws InvalidConfigurationException, IOException, InternalException {
+    if (storagePath == null || vid == null) {
+      throw new NullPointerException("Invalid vault parameters");
+    }
+
+    if (!(name == null || name.length() == 0 || name.matches(VAULT_NAME_RGX))) {
+      throw new IllegalArgumentException("Invalid vault name");
+    }
+    
+    this.vid = vid;
+    this.name = (name != null && name.length() != 0) ? name : this.vid.toString();
+    this.storagePath = storagePath.resolve(this.name);
+    this.treeChecksumFile = this.storagePath.resolve(this.vid + CHKSUM_FILE_EXT);
+    this.treeChecksumBase = this.storagePath.resolve(this.vid + CHKSUM_BASE_FILE_EXT);
+    this.journalFile = this.storagePath.resolve(this.vid + JOURNAL_FILE_EXT);
+    this.indexFile = this.storagePath.resolve(this.vid + INDEX_FILE_EXT);
+    this.treeRootFile = this.storagePath.resolve(this.vid + TREE_ROOT_FILE_EXT);
+    this.rekeyFile = this.storagePath.resolve(this.vid + REKEY_FILE_EXT);
+    this.rekeyHeadersFile = this.storagePath.resolve(this.vid + REKEY_HEADERS_FILE_EXT);
+    
+    try {
+      // Read vault configuration and init key manager
+      readConfiguration();
+      this.km = new KeyManager(this.conf.getEncKey(), this.conf.getAuthKey(), this.conf.getSalt(), 
+                               this.conf.getKdfAlgorithm(), this.conf.getKdfIterations());
+    } catch (InvalidSaltException | IllegalArgumentException e) {
+      throw new InvalidConfigurationException();
+    }
+
+    // Add vault files to the list or open the item index, unless deferred to the first use
+    if (indexed && !deferred) {
+      openItemIndex();
+    } else if (!indexed) {
+      loadItems();
+    }
+
+    // Load the journal of an interrupted operation
+    if (Files.exists(this.journalFile)) {
+      this.journal = OperationJournal.read(this.journalFile);
+      if (this.journal == null) { Files.delete(this.journalFile); }
+    }
+  }
+
+  /**
+   * Add the directory and its content to the vault including all subdirectories
+   * 
+   * @param path The directory path
+   * 
+   * @throws IOException If something in the copy does not work
+   * @throws VaultLockedException If the vault is still locked 
+   * @throws InternalException Error during encryption
+   */
+  public void addDirectory(Path path) throws IOException, VaultLockedException, InternalException {
+    try {
+      addDirectory(path, null, null);
+    } catch (OperationCancelledException e) {
+      // Cannot happen without a cancellation token
+      throw new InternalException();
+    }
+  }
+
+  /**
+   * Add the directory and its content to the vault including all subdirectories,
+   * reporting the progress and stopping if the operation is cancelled
+   * 
+   * @param path     The directory path
+   * @param listener The receiver of the progress events (can be null)
+   * @param token    The cancellation token (can be null); the items already added are kept, 
+   *                 the partially encrypted one is removed
+   * 
+   * @throws IOException If something in the copy does not work
+   * @throws VaultLockedException If the vault is still locked 
+   * @throws InternalException Error during encryption
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public void addDirectory(Path path, ProgressListener listener, CancellationToken token) throws IOException, VaultLockedException, InternalException, OperationCancelledException {
+    if (!(path != null && Files.exists(path))) {
+      throw new IllegalArgumentException("Invalid directory");
+    }
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    checkNoPendingOperation();
+    loadItems();
+    path = path.normalize();
+
+    // Record the intended operation before touching the vault
+    this.journal = OperationJournal.begin(this.journalFile, OperationJournal.ADD_DIRECTORY, path);
+    addJournaledItems(listener, token);
+  }
+
+  /**
+   * Resume the bulk operation interrupted by a crash, skipping the items recorded as completed in the journal
+   * 
+   * @param listener The receiver of the progress events (can be null)
+   * @param token    The cancellation token (can be null)
+   * 
+   * @throws IOException If the source of the operation is not available anymore
+   * @throws VaultLockedException If the vault is still locked 
+   * @throws InternalException Error during encryption
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public void resumePendingOperation(ProgressListener listener, CancellationToken token) throws IOException, VaultLockedException, InternalException, OperationCancelledException {
+    if (this.journal == null) { return; }
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    if (!Files.isDirectory(this.journal.getSource())) {
+      throw new IOException("Source of the pending operation not found: " + this.journal.getSource());
+    }
+    loadItems();
+
+    addJournaledItems(listener, token);
+  }
+
+  /**
+   * Roll back the bulk operation interrupted by a crash deleting all the items it added;
+   * it does not require the vault to be unlocked
+   * 
+   * @throws IOException
+   */
+  public void rollbackPendingOperation() throws IOException {
+    if (this.journal == null) { return; }
+    closeChecksumWriter();
+    loadItems();
+
+    // Delete the completed items and the orphans (items with neither checksum nor journal record)
+    Set<String> toDelete = new HashSet<>();
+    for (Path done : this.journal.getDoneItems()) { toDelete.add(done.toString()); }
+    try (TreeChecksums checksums = readTreeChecksums()) {
+      for (int id : this.items.ids()) {
+        Path relPath = this.items.getPath(id);
+        if (toDelete.contains(relPath.toString()) || !checksums.contains(relPath.toString())) {
+          deleteRecursively(this.storagePath.resolve(relPath));
+          this.items.remove(id);
+          if (this.merkle != null) { this.merkle.markDirty(this.items.getParent(id)); }
+        }
+      }
+    }
+
+    // Keep the checksums of the items not added by the operation, atomically replacing the binary file
+    TreeChecksumFile.compact(this.treeChecksumBase, this.treeChecksumFile, this.treeChecksumBase, CHKSUM_MAC_LENGTH, path -> !toDelete.contains(path));
+    Files.deleteIfExists(this.treeChecksumFile);
+
+    // Without the auth key the tree root is not written again: it already covers the tree without the items of the operation
+    commitJournal();
+  }
+
+  /**
+   * Repair the vault after an interrupted bulk operation: delete the orphans, i.e. items encrypted 
+   * but never recorded in the journal, and write the missing checksums of the recorded ones whose
+   * mac in the journal is valid. After the repair the file tree is consistent and the operation 
+   * can be resumed or rolled back.
+   * 
+   * @throws IOException
+   * @throws InternalException
+   */
+  private void repairPendingOperation() throws IOException, InternalException {
+    Set<Path> done = new HashSet<>();
+    for (Path relPath : this.journal.getDoneItems()) {
+      byte[] mac = this.journal.getMac(relPath);
+      if (mac != null && MessageDigest.isEqual(mac, getAuthMac().mac(relPath.toString().getBytes()))) { done.add(relPath); }
+    }
+
+    try (TreeChecksums checksums = readTreeChecksums()) {
+      for (int id : this.items.ids()) {
+        Path relPath = this.items.getPath(id);
+        if (!(checksums.contains(relPath.toString()) || done.contains(relPath))) {
+          deleteRecursively(this.storagePath.resolve(relPath));
+          this.items.remove(id);
+        }
+      }
+
+      for (Path relPath : done) {
+        if (!checksums.contains(relPath.toString()) && Files.exists(this.storagePath.resolve(relPath))) {
+          computeTreeChecksum(relPath.getParent(), relPath.getFileName().toString());
+        }
+      }
+    }
+    closeChecksumWriter();
+  }
+
+  /**
+   * Add the content of the source of the journaled operation, skipping the items already completed;
+   * the journal is deleted when the operation ends, also if cancelled or failed on an item
+   * 
+   * @param listener The receiver of the progress events (can be null)
+   * @param token    The cancellation token (can be null)
+   */
+  private void addJournaledItems(ProgressListener listener, CancellationToken token) throws IOException, VaultLockedException, InternalException, OperationCancelledException {
+    Path root = this.journal.getSource();
+    List<Path> files = Files.walk(root).toList();
+
+    // Compute the totals of the operation
+    long bytesTotal = 0;
+    for (Path file : files) {
+      if (Files.isRegularFile(file)) { bytesTotal += Files.size(file); }
+    }
+    ProgressTracker tracker = new ProgressTracker(listener, token);
+    tracker.start(files.size(), bytesTotal);
+
+    try {
+      // Loop over the source directory content
+      for (Path file : files) {
+        tracker.checkCancelled();
+        if (!this.journal.isDone(getSourceRelPath(root, file))) {
+          addItem(file, getDestPath(root, file), tracker);
+        }
+        tracker.itemDone(Files.isRegularFile(file) ? Files.size(file) : 0);
+      }
+    } catch (CancellationException e) {
+      commitJournal();
+      throw new OperationCancelledException();
+    } catch (IOException | InternalException | VaultLockedException e) {
+      // The failed item has been rolled back: the vault is consistent
+      commitJournal();
+      throw e;
+    }
+    // On unexpected errors the journal is kept to repair the vault
+
+    commitJournal();
+  }
+
+  private void commitJournal() throws IOException {
+    // The checksums must be on the file system before their journal records are dropped
+    closeChecksumWriter();
+
+    // The tree root covers the items of the operation once the journal is dropped
+    OperationJournal committed = this.journal;
+    this.journal = null;
+    try {
+      writeTreeRoot();
+    } catch (IOException e) {
+      this.journal = committed;
+      throw e;
+    }
+    committed.commit();
+    compactTreeChecksumLog();
+  }
+
+  /**
+   * Compute the path of a file in the source directory relative to the parent of the source
+   * 
+   * @param root The source directory root
+   * @param file The file within the source directory
+   * 
+   * @return the relative path with clear names
+   */
+  private static Path getSourceRelPath(Path root, Path file) {
+    return file.subpath(root.getNameCount() - 1, file.getNameCount());
+  }
+
+  /**
+   * Compute the relative destination path within the vault of a file in the source directory
+   * 
+   * @param root The source directory root
+   * @param file The file within the source directory
+   * 
+   * @return the relative path with encrypted parent directories
+   * @throws IOException if the parent directory has not been added to the vault
+   */
+  private Path getDestPath(Path root, Path file) throws IOException {
+    // Get relative path within the vault
+    Path dest = getSourceRelPath(root, file);
+    // If there are subdirectories compute the path with encrypted names
+    if (dest.getNameCount() > 1) {
+      int parent = this.items.findClear(dest.getParent());
+      if (parent == ItemTable.NOT_FOUND) {
+        throw new IOException("Parent directory not found in the vault: " + dest.getParent());
+      }
+      dest = this.items.getPath(parent).resolve(dest.getFileName());
+    }
+    return dest;
+  }
+
+  /**
+   * Add the file to the vault
+   * 
+   * @param path The directory path
+   * 
+   * @throws IOException If something in the copy does not work
+   * @throws VaultLockedException If the vault is still locked 
+   * @throws InternalException Error during encryption
+   */
+  public void addFile(Path path) throws IOException, VaultLockedException, InternalException {
+    try {
+      addFile(path, null, null);
+    } catch (OperationCancelledException e) {
+      // Cannot happen without a cancellation token
+      throw new InternalException();
+    }
+  }
+
+  /**
+   * Add the file to the vault root reporting the progress and checking the cancellation after every chunk
+   * 
+   * @param path     The file path
+   * @param listener The receiver of the progress events (can be null)
+   * @param token    The cancellation token (can be null); the partially encrypted file is removed
+   * 
+   * @throws IOException If something in the copy does not work
+   * @throws VaultLockedException If the vault is still locked 
+   * @throws InternalException Error during encryption
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public void addFile(Path path, ProgressListener listener, CancellationToken token) throws IOException, VaultLockedException, InternalException, OperationCancelledException {
+    if (!(path != null && Files.exists(path))) {
+      throw new IllegalArgumentException("Invalid file");
+    }
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    checkNoPendingOperation();
+    loadItems();
+    path = path.normalize();
+
+    long size = Files.size(path);
+    ProgressTracker tracker = new ProgressTracker(listener, token);
+    tracker.start(1, size);
+    
+    // Journal the file like a directory: after a crash the partial item is an orphan, not a tampering
+    this.journal = OperationJournal.begin(this.journalFile, OperationJournal.ADD_FILE, path);
+    try {
+      // Copy file directly in the vault (without subdirectories)
+      addItem(path, path.getFileName(), tracker);
+      tracker.itemDone(size);
+    } catch (CancellationException e) {
+      commitJournal();
+      throw new OperationCancelledException();
+    } catch (IOException | InternalException | VaultLockedException e) {
+      // The failed item has been rolled back: the vault is consistent
+      commitJournal();
+      throw e;
+    }
+    commitJournal();
+  }
+
+  /**
+   * Encrypt the file or directory in absSrcPath to storagePath/relDstPath reporting the progress to the tracker
+   * 
+   * @param absSrcPath The source file path
+   * @param relDstPath The destination path
+   * @param tracker    The progress tracker of the operation (can be null)
+   * 
+   * @throws IOException If something in the copy does not work
+   * @throws VaultLockedException If the vault is still locked 
+   * @throws InternalException Error during encryption
+   * @throws CancellationException If the operation has been cancelled; the partial item is removed
+   */
+  private void addItem(Path absSrcPath, Path relDstPath, ProgressTracker tracker) throws IOException, VaultLockedException, InternalException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+
+    Path absDstPath = this.storagePath.resolve(relDstPath);
+    String encName = "";
+    
+    // Encrypt file and add to the vault
+    try {
+      VaultItem file = null;
+      if (Files.isDirectory(absSrcPath)) {
+        file = new VaultDirectory(absDstPath, false);
+      } else {
+        file = new VaultFile(absDstPath, false);
+      }
+      encName = file.encrypt(absSrcPath, this.km.getUnwrapEncKey(), tracker);
+      // Record the item in the journal before its checksum: on crash it is not taken for an orphan
+      if (this.journal != null) {
+        Path relEncPath = relDstPath.resolveSibling(encName);
+        this.journal.done(getSourceRelPath(this.journal.getSource(), absSrcPath), relEncPath, getAuthMac().mac(relEncPath.toString().getBytes()));
+      }
+      computeTreeChecksum(relDstPath.getParent(), encName);
+      addVaultItem(relDstPath.resolveSibling(encName), file instanceof VaultDirectory, file.getName());
+    } catch (CancellationException e) {
+      deletePartialItem(absDstPath, encName);
+      throw e;
+    } catch (Exception e) {
+      deletePartialItem(absDstPath, encName);
+      throw new InternalException();
+    }
+  }
+
+  /**
+   * Delete the encrypted output of an item whose encryption did not complete
+   * 
+   * @param absDstPath The destination path of the item
+   * @param encName    The encrypted name of the item; empty if the encryption did not produce any output
+   * 
+   * @throws IOException
+   */
+  private void deletePartialItem(Path absDstPath, String encName) throws IOException {
+    if (encName.length() != 0) {
+      Path file = absDstPath.getParent().resolve(encName);
+      if (Files.exists(file)) { Files.delete(file); }
+    }
+  }
+
+  /**
+   * Method to remove a directory/file from the vault given the clear relPath
+   * 
+   * @param relPath The clear relative path
+   * @throws IOException
+   * @throws InternalException
+   * @throws VaultLockedException
+   */
+  public void remove(Path relPath) throws IOException, InternalException, VaultLockedException {    
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    checkNoPendingOperation();
+    loadItems();
+    
+    // Construct encrypted path
+    int id = this.items.findClear(relPath);
+    if (id == ItemTable.NOT_FOUND) {
+      throw new IOException("Item not found in the vault: " + relPath);
+    }
+    removeItem(id);
+  }
+
+  /**
+   * Method to remove a given directory/file from the vault, e.g. the older of two items with the same clear path
+   * 
+   * @param item The item, e.g. from getVaultFileByClearPath()
+   * @throws IOException If the item is not in the vault anymore
+   * @throws InternalException
+   * @throws VaultLockedException
+   */
+  public void remove(VaultItem item) throws IOException, InternalException, VaultLockedException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    checkNoPendingOperation();
+    loadItems();
+
+    int id = this.items.find(item.getRelPath(this.storagePath));
+    if (id == ItemTable.NOT_FOUND) {
+      throw new IOException("Item not found in the vault: " + item.getAbsPath());
+    }
+    removeItem(id);
+  }
+
+  private void removeItem(int id) throws IOException, InternalException {
+    Path encPath = this.items.getPath(id);
+
+    this.merkle.markDirty(this.items.getParent(id));
+    List<Path> removed = new ArrayList<>();
+    Files.walk(this.storagePath.resolve(encPath))
+    .sorted(Comparator.reverseOrder())
+    .forEach(path -> { 
+      try {
+        Files.deleteIfExists(path);
+        if (!isDirFile(path)) {
+          Path relPathToDelete = path.subpath(this.storagePath.getNameCount(), path.getNameCount());
+          this.items.remove(this.items.find(relPathToDelete));
+          removed.add(relPathToDelete);
+        }
+      } catch (IOException e) {
+        System.err.println("Error while deleting " + path);
+      }
+    });
+
+    // Append a tombstone for every removed item instead of rewriting the checksums of the remaining ones
+    try {
+      for (Path removedPath : removed) {
+        writeTreeChecksumToFile(computeChecksumLine(CHKSUM_TOMBSTONE + removedPath.toString()));
+      }
+    } finally {
+      closeChecksumWriter();
+      writeTreeRoot();
+    }
+
+    compactTreeChecksumLog();
+  }
+
+  /**
+   * Method to merge the text log of the tree checksums in the binary file, dropping the tombstones 
+   * and the lines they cancel; the binary file is replaced atomically and then the log is deleted
+   * 
+   * @throws IOException
+   */
+  public void compactTreeChecksumFile() throws IOException {
+    closeChecksumWriter();
+    if (!Files.exists(this.treeChecksumFile)) { return; }
+
+    TreeChecksumFile.compact(this.treeChecksumBase, this.treeChecksumFile, this.treeChecksumBase, CHKSUM_MAC_LENGTH, path -> true);
+    // If the log survives a crash it is merged again with the same result
+    Files.delete(this.treeChecksumFile);
+  }
+
+  /**
+   * Method to compact the tree checksums when the text log is larger than the binary file
+   * 
+   * @throws IOException
+   */
+  private void compactTreeChecksumLog() throws IOException {
+    if (!Files.exists(this.treeChecksumFile)) { return; }
+
+    long baseSize = Files.exists(this.treeChecksumBase) ? Files.size(this.treeChecksumBase) : 0;
+    if (Files.size(this.treeChecksumFile) > Math.max(CHKSUM_COMPACT_MIN_SIZE, baseSize)) {
+      compactTreeChecksumFile();
+    }
+  }
+
+  /**
+   * Method to clear the vault content
+   * @throws IOException 
+   * @throws VaultLockedException 
+   */
+  public void clear() throws IOException, VaultLockedException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    closeChecksumWriter();
+    
+    // Delete all files
+    Files.walk(this.storagePath)
+    .sorted(Comparator.reverseOrder())
+    .forEach(path -> {
+      if (!(isConfFile(path) || path.equals(this.storagePath))) {
+        try {
+          Files.deleteIfExists(path);
+        } catch (IOException e) {
+          System.err.println("Error while deleting " + path);
+        }
+      }
+    });
+
+    closeItemIndex();
+    this.items = new ItemTable();
+    this.nameIndex = this.items.enableNameIndex();
+    this.merkle = new MerkleTree(this.items);
+    if (this.journal != null) {
+      this.journal.close();
+      this.journal = null;
+    }
+    writeTreeRoot();
+  }
+
+  /**
+   * Method to delete the vault
+   * @throws IOException
+   * @throws VaultLockedException
+   */
+  public void delete() throws IOException, VaultLockedException {
+    this.clear();
+    Files.deleteIfExists(VaultConfiguration.getPath(this.storagePath, this.vid));
+    Files.deleteIfExists(this.storagePath);
+  }
+
+  /**
+   * Unlock the files in the vault
+   * 
+   * @param psw String: password used for keys derivation
+   * 
+   * @throws InvalidConfigurationException
+   * @throws WrongPasswordException
+   * @throws InternalException
+   * @throws InvalidMacException 
+   * @throws IOException 
+   * @throws InvalidFilesException 
+   */
+  public Path unlock(String psw, Path destFolder) throws InvalidConfigurationException, WrongPasswordException, InternalException, InvalidMacException {    
+    try {
+      return unlock(psw, destFolder, null, null);
+    } catch (OperationCancelledException e) {
+      // Cannot happen without a cancellation token
+      throw new InternalException();
+    }
+  }
+
+  /**
+   * Unlock the files in the vault reporting the progress and stopping if the operation is cancelled
+   * 
+   * @param psw        String: password used for keys derivation
+   * @param destFolder The folder in which reveal the vault content
+   * @param listener   The receiver of the progress events (can be null)
+   * @param token      The cancellation token (can be null); if cancelled the revealed content
+   *                   is deleted and the vault stays locked
+   * 
+   * @throws InvalidConfigurationException
+   * @throws WrongPasswordException
+   * @throws InternalException
+   * @throws InvalidMacException 
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public Path unlock(String psw, Path destFolder, ProgressListener listener, CancellationToken token) throws InvalidConfigurationException, WrongPasswordException, InternalException, InvalidMacException, OperationCancelledException {    
+    if (!(psw != null && destFolder != null)) {
+      throw new NullPointerException("Psw or dstFolder are null");
+    }
+
+    unlock(psw);
+    try {
+      return reveal(destFolder, listener, token);
+    } catch (OperationCancelledException e) {
+      lock();
+      throw e;
+    } catch (VaultLockedException e) {
+      // Cannot happen: the vault has just been unlocked
+      throw new InternalException();
+    }
+  }
+
+  /**
+   * Unlock the vault without revealing its content: the keys are unwrapped and the integrity of the 
+   * configuration and of the file tree is checked; then the content can be added, removed or revealed
+   * 
+   * @param psw String: password used for keys derivation
+   * 
+   * @throws InvalidConfigurationException
+   * @throws WrongPasswordException
+   * @throws InternalException
+   * @throws InvalidMacException 
+   */
+  public void unlock(String psw) throws InvalidConfigurationException, WrongPasswordException, InternalException, InvalidMacException {
+    if (psw == null) {
+      throw new NullPointerException("Psw is null");
+    }
+    
+    try {
+      // Unwrap secret keys through input password
+      this.km.unwrapSecretKeys(psw);
+      dropAuthMac();
+    } catch (InvalidPasswordException | InvalidKeyException e) {
+      this.km.clearSecretKeys();
+      throw new WrongPasswordException();
+    } catch (Exception e) {
+      this.km.clearSecretKeys();
+      throw new InternalException();
+    }
+
+    boolean opened = false;
+    try {
+      openUnwrapped();
+      opened = true;
+    } finally {
+      // Nothing can be decrypted from a vault that failed the checks: its keys are dropped
+      if (!opened) { lock(); }
+    }
+  }
+
+  /**
+   * Check the integrity of the vault once its keys are unwrapped, repairing it after an interrupted 
+   * operation, and complete an interrupted key rotation
+   * 
+   * @throws InvalidConfigurationException
+   * @throws InternalException
+   * @throws InvalidMacException 
+   */
+  private void openUnwrapped() throws InvalidConfigurationException, InternalException, InvalidMacException {
+    // Check configuration file integrity: recompute HMAC of the stored configuration, 
+    // which can have been written by a previous version of the class
+    byte[] encodedConf = encodeToken(this.confPayload);
+    byte[] mac = getHmac(ALG_HMAC_TOK, this.km.getMasterKey(), encodedConf);
+    
+    // Check the two MACs; if not equal the configuration have been tampered
+    if (!MessageDigest.isEqual(this.confMac, mac)) {
+      System.err.println("Configuration integrity check failed");
+      throw new InvalidConfigurationException();
+    }
+    
+    this.locked = false;
+
+    // Write the configurations of the older versions in the current format, now that they can be signed
+    if (this.conf.isLegacyFormat()) {
+      try {
+        writeConfiguration();
+      } catch (IOException e) {
+        throw new InternalException();
+      }
+    }
+
+    boolean repaired = this.journal != null;
+    try {
+      loadItems();
+      // Bring the file tree back to a consistent state after an interrupted operation
+      if (repaired) { repairPendingOperation(); }
+    } catch (IOException e) {
+      throw new InternalException();
+    }
+    // The clear names are indexed as they are decrypted
+    this.nameIndex = this.items.enableNameIndex();
+    this.merkle = new MerkleTree(this.items);
+    this.merkle.computeAll();
+
+    // Check file tree integrity before revealing anything
+    try {
+      byte[][] pendingKeys = Files.exists(this.rekeyFile) ? readRekeyFile() : null;
+      SecretKey oldEncKey = this.km.getUnwrapEncKey();
+
+      boolean intact = this.checkFileTreeIntegrity(repaired);
+      if (!intact && pendingKeys != null) {
+        // An interrupted key rotation can have already signed the tree with the new keys
+        adoptRotatedKeys(pendingKeys);
+        intact = this.checkFileTreeIntegrity(repaired);
+      }
+      if (!intact) { throw new InvalidMacException(); }
+
+      // A single item cannot be resumed: the repair kept it if completed, otherwise removed it
+      if (this.journal != null && !OperationJournal.ADD_DIRECTORY.equals(this.journal.getOperation())) {
+        commitJournal();
+      }
+
+      // Complete the interrupted key rotation
+      if (pendingKeys != null) {
+        adoptRotatedKeys(pendingKeys);
+        completeKeyRotation(oldEncKey, null);
+      }
+    } catch (IOException e) {
+      System.err.println("Error while checking file tree integrity");
+      throw new InvalidMacException();
+    }
+  }
+
+  /**
+   * Reveal the content of the unlocked vault reporting the progress and stopping if the operation is cancelled
+   * 
+   * @param destFolder The folder in which reveal the vault content
+   * @param listener   The receiver of the progress events (can be null)
+   * @param token      The cancellation token (can be null); if cancelled the revealed content is deleted
+   * 
+   * @return the path of the revealed content; null if the vault is empty
+   * @throws VaultLockedException If the vault is still locked
+   * @throws InternalException
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public Path reveal(Path destFolder, ProgressListener listener, CancellationToken token) throws VaultLockedException, InternalException, OperationCancelledException {
+    if (destFolder == null) {
+      throw new NullPointerException("DstFolder is null");
+    }
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+
+    if (this.isEmpty()) { return null; }
+
+    this.revealPath = destFolder.resolve(this.name + "-unlocked");
+
+    // Compute the totals of the operation
+    ProgressTracker tracker = new ProgressTracker(listener, token);
+    long bytesTotal = 0;
+    int[] ids = this.items.ids();
+    try {
+      for (int id : ids) {
+        if (!this.items.isDirectory(id)) { bytesTotal += Files.size(this.storagePath.resolve(this.items.getPath(id))); }
+      }
+    } catch (IOException e) {
+      throw new InternalException();
+    }
+    tracker.start(ids.length, bytesTotal);
+
+    try {
+      Files.createDirectory(this.revealPath);
+      for (int id : ids) {
+        tracker.checkCancelled();
+        VaultItem file = createVaultItem(id);
+        // Compute the destination with decrypted names: the parents precede their content, so their clear names are already known
+        Path dest = this.items.getClearPath(this.items.getParent(id));
+        if (dest == null) {
+          throw new IOException("Parent directory not decrypted: " + this.items.getPath(id).getParent());
+        }
+ 
+        file.decrypt(this.revealPath.resolve(dest), this.km.getUnwrapEncKey(), tracker);
+        this.items.setClearName(id, file.getName());
+        tracker.itemDone(file instanceof VaultFile ? Files.size(file.getAbsPath()) : 0);
+      }
+    } catch (CancellationException e) {
+      // Do not leave a partially revealed vault on the file system
+      try {
+        if (Files.exists(this.revealPath)) {
+          Files.walk(this.revealPath).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+      } catch (IOException exc) {
+        System.err.println("Error while deleting " + this.revealPath);
+      }
+      this.revealPath = null;
+      throw new OperationCancelledException();
+    } catch (Exception e) {
+      throw new InternalException();
+    }
+    
+    return this.revealPath;
+  }
+
+  /**
+   * Lock the vault dropping the unwrapped keys; the revealed content is not deleted
+   */
+  public void lock() {
+    try {
+      closeChecksumWriter();
+    } catch (IOException e) {
+      System.err.println("Error while closing the tree checksum file");
+    }
+    this.km.clearSecretKeys();
+    dropAuthMac();
+    this.merkle = null;
+    this.locked = true;
+    if (this.items != null) { this.items.disableNameIndex(); }
+    this.nameIndex = null;
+  }
+
+  /**
+   * Change the password and set the new configuration; the key derivation cost is re-tuned for KDF_TARGET_MILLIS
+   * 
+   * @param oldPsw String  Old password
+   * @param newPsw String  New password
+   * 
+   * @throws WrongPasswordException
+   * @throws InternalException
+   * @throws IOException
+   * @throws InvalidPasswordException
+   */
+  public void changePsw(String oldPsw, String newPsw) throws WrongPasswordException, InternalException, IOException, InvalidPasswordException {
+    changePsw(oldPsw, newPsw, KDF_TARGET_MILLIS);
+  }
+
+  /**
+   * Change the vault password re-tuning the key derivation cost on this machine
+   * 
+   * @param oldPsw       String: old password
+   * @param newPsw       String: new password
+   * @param targetMillis Target key derivation time in milliseconds; 0 to keep the current cost
+   * 
+   * @throws WrongPasswordException
+   * @throws InternalException
+   * @throws IOException
+   * @throws InvalidPasswordException
+   */
+  public void changePsw(String oldPsw, String newPsw, long targetMillis) throws WrongPasswordException, InternalException, IOException, InvalidPasswordException {
+    if (oldPsw == null || newPsw == null) {
+      throw new NullPointerException("Invalid passwords");
+    }
+    if (targetMillis < 0) {
+      throw new IllegalArgumentException("Invalid target time");
+    }
+    checkNoPendingRotation();
+    
+    try {
+      // Unwrap secret keys through old password
+      this.km.unwrapSecretKeys(oldPsw);
+      dropAuthMac();
+    } catch (InvalidPasswordException | InvalidKeyException e) {
+      throw new WrongPasswordException();
+    } catch (Exception e) {
+      throw new InternalException();
+    } 
+
+    String oldAlgorithm = this.km.getKdfAlgorithm();
+    int oldIterations = this.km.getKdfIterations();
+    try {
+      // Wrap secret keys with new psw and the new cost
+      if (targetMillis > 0) { this.km.setKdfCost(KDF_ALGORITHM, KeyDerivator.calibrate(KDF_ALGORITHM, targetMillis)); }
+      this.km.wrapSecretKeys(newPsw);  
+    } catch (InvalidPasswordException e) { 
+      this.km.setKdfCost(oldAlgorithm, oldIterations);
+      throw e;
+    } catch (Exception e) {
+      this.km.setKdfCost(oldAlgorithm, oldIterations);
+      throw new InternalException();
+    }
+    
+    // Edit and save vault configuration
+    this.conf.setSalt(this.km.getSalt());
+    this.conf.setEncKey(this.km.getWrapEncKey());
+    this.conf.setAuthKey(this.km.getWrapAuthKey());
+    this.conf.setKdfCost(this.km.getKdfAlgorithm(), this.km.getKdfIterations());
+    writeConfiguration();
+  }
+
+  /**
+   * Replace the encryption and authentication keys with new random keys; only the headers of the
+   * items are re-encrypted, since the chunks are encrypted with the per-file keys they hold.
+   * An interrupted rotation is completed at the next unlock
+   * 
+   * @param listener Receiver of the progress events (can be null)
+   * 
+   * @throws VaultLockedException
+   * @throws IOException
+   * @throws InternalException
+   */
+  public void rotateKeys(ProgressListener listener) throws VaultLockedException, IOException, InternalException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    checkNoPendingOperation();
+    loadItems();
+    compactTreeChecksumFile();
+
+    SecretKey oldEncKey = this.km.getUnwrapEncKey();
+    byte[] oldWrapEncKey = this.km.getWrapEncKey();
+    byte[] oldWrapAuthKey = this.km.getWrapAuthKey();
+    try {
+      // The old headers are durable before any header is rewritten
+      writeRekeyHeadersFile();
+      this.km.rotateSecretKeys();
+      writeRekeyFile();
+    } catch (Exception e) {
+      // Nothing has been written yet: go back to the old keys
+      try {
+        this.km.setSecretKeys(oldWrapEncKey, oldWrapAuthKey);
+      } catch (Exception ignored) {}
+      if (e instanceof IOException) { throw (IOException) e; }
+      throw new InternalException();
+    }
+    dropAuthMac();
+
+    completeKeyRotation(oldEncKey, listener);
+  }
+
+  /**
+   * Method to re-encrypt the item headers with the current encryption key, re-sign the file tree
+   * and save the new keys in the configuration; it can be repeated after an interruption
+   * 
+   * @param oldEncKey The encryption key of the headers not yet rotated
+   * @param listener  Receiver of the progress events (can be null)
+   * 
+   * @throws IOException
+   * @throws InternalException
+   */
+  private void completeKeyRotation(SecretKey oldEncKey, ProgressListener listener) throws IOException, InternalException {
+    SecretKey newEncKey = this.km.getUnwrapEncKey();
+    List<VaultItem> toRekey = new ArrayList<>(this.items.size());
+    for (int id : this.items.ids()) { toRekey.add(createVaultItem(id)); }
+    Map<String, byte[]> oldHeaders = readRekeyHeadersFile();
+
+    // Every header is rewritten in place: the items are independent
+    ProgressTracker tracker = new ProgressTracker(listener, null);
+    tracker.start(toRekey.size(), 0);
+    try {
+      toRekey.parallelStream().forEach(item -> {
+        try {
+          try {
+            rekeyItem(item, oldEncKey, newEncKey);
+          } catch (AEADBadTagException e) {
+            // A header torn by a crash during its rewrite: restore the old one and rotate it again
+            byte[] oldHeader = oldHeaders.get(item.getRelPath(this.storagePath).toString());
+            if (oldHeader == null) { throw e; }
+            item.writeEncHeader(oldHeader);
+            rekeyItem(item, oldEncKey, newEncKey);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } catch (Exception e) {
+          throw new UncheckedIOException(new IOException("Cannot rotate the key of " + item.getAbsPath()));
+        }
+        synchronized (tracker) { tracker.itemDone(0); }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    // Sign the file tree with the new auth key before saving the keys
+    dropAuthMac();
+    rebuildTreeChecksumFile();
+    writeTreeRoot();
+
+    this.conf.setEncKey(this.km.getWrapEncKey());
+    this.conf.setAuthKey(this.km.getWrapAuthKey());
+    writeConfiguration();
+    // The new keys are durable in the configuration before their rotation file is deleted
+    syncFile(this.treeRootFile);
+    syncFile(VaultConfiguration.getPath(this.storagePath, this.vid));
+    Files.delete(this.rekeyFile);
+    Files.deleteIfExists(this.rekeyHeadersFile);
+    syncFile(this.storagePath);
+  }
+
+  private static void rekeyItem(VaultItem item, SecretKey oldEncKey, SecretKey newEncKey) throws IOException, GeneralSecurityException {
+    if (item instanceof VaultFile) {
+      ((VaultFile) item).rekey(oldEncKey, newEncKey);
+    } else {
+      ((VaultDirectory) item).rekey(oldEncKey, newEncKey);
+    }
+  }
+
+  /**
+   * Method to replace the tree checksums with the ones of the current items, computed with the 
+   * current auth key; the binary file is replaced atomically
+   * 
+   * @throws IOException
+   * @throws InternalException
+   */
+  private void rebuildTreeChecksumFile() throws IOException, InternalException {
+    closeChecksumWriter();
+
+    int[] ids = this.items.ids();
+    List<byte[]> records = new ArrayList<>(ids.length);
+    for (int id : ids) { records.add(this.items.getPath(id).toString().getBytes()); }
+    List<byte[]> macs = getAuthMac().macAll(records);
+
+    Path log = this.treeChecksumBase.resolveSibling(this.treeChecksumBase.getFileName() + ".log");
+    StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < ids.length; i++) {
+      lines.append(new String(records.get(i))).append(PERIOD)
+           .append(Base64.getEncoder().withoutPadding().encodeToString(macs.get(i))).append('\n');
+    }
+    Files.writeString(log, lines);
+    try {
+      TreeChecksumFile.convert(log, this.treeChecksumBase, CHKSUM_MAC_LENGTH);
+    } finally {
+      Files.deleteIfExists(log);
+    }
+    Files.deleteIfExists(this.treeChecksumFile);
+  }
+
+  /**
+   * Method to save the new wrapped keys of a rotation before rewriting any header; 
+   * the file is replaced atomically
+   * 
+   * @throws IOException
+   */
+  private void writeRekeyFile() throws IOException {
+    writeDurably(this.rekeyFile, (Base64.getEncoder().encodeToString(this.km.getWrapEncKey()) + "\n"
+                                + Base64.getEncoder().encodeToString(this.km.getWrapAuthKey()) + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Method to save a copy of the item headers before a rotation rewrites them in place, 
+   * so that a header torn by a crash can be restored; the file is replaced atomically
+   * 
+   * @throws IOException
+   */
+  private void writeRekeyHeadersFile() throws IOException {
+    StringBuilder lines = new StringBuilder();
+    for (int id : this.items.ids()) {
+      VaultItem item = createVaultItem(id);
+      lines.append(Base64.getEncoder().encodeToString(this.items.getPath(id).toString().getBytes(StandardCharsets.UTF_8))).append('\t')
+           .append(Base64.getEncoder().encodeToString(item.readEncHeader())).append('\n');
+    }
+    writeDurably(this.rekeyHeadersFile, lines.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Method to read the old item headers of an interrupted rotation
+   * 
+   * @return the headers by relative encrypted path; empty if the rotation has no copy of the headers
+   * @throws IOException if the file is not valid
+   */
+  private Map<String, byte[]> readRekeyHeadersFile() throws IOException {
+    Map<String, byte[]> headers = new HashMap<>();
+    if (!Files.exists(this.rekeyHeadersFile)) { return headers; }
+    for (String line : Files.readAllLines(this.rekeyHeadersFile)) {
+      String[] tok = line.split("\t");
+      try {
+        if (tok.length != 2) { throw new IllegalArgumentException(); }
+        headers.put(new String(Base64.getDecoder().decode(tok[0]), StandardCharsets.UTF_8), Base64.getDecoder().decode(tok[1]));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Invalid key rotation file");
+      }
+    }
+    return headers;
+  }
+
+  /**
+   * Method to replace a file atomically with the given content, forcing the content and the
+   * rename to the storage device before returning
+   * 
+   * @throws IOException
+   */
+  private static void writeDurably(Path file, byte[] content) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.wrap(content);
+      while (buffer.hasRemaining()) { channel.write(buffer); }
+      channel.force(true);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    syncFile(file.getParent());
+  }
+
+  /**
+   * Method to force a file, or the entries of a directory, to the storage device
+   * 
+   * @throws IOException
+   */
+  private static void syncFile(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (AccessDeniedException e) {
+      // Directories cannot be opened on Windows, where the rename is durable on its own
+      if (!Files.isDirectory(file)) { throw e; }
+    }
+  }
+
+  /**
+   * Method to read the new wrapped keys of an interrupted rotation
+   * 
+   * @return the wrapped encryption and authentication keys
+   * @throws IOException if the file is not valid
+   */
+  private byte[][] readRekeyFile() throws IOException {
+    List<String> lines = Files.readAllLines(this.rekeyFile);
+    if (lines.size() != 2) {
+      throw new IOException("Invalid key rotation file");
+    }
+    try {
+      return new byte[][] { Base64.getDecoder().decode(lines.get(0)), Base64.getDecoder().decode(lines.get(1)) };
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid key rotation file");
+    }
+  }
+
+  /**
+   * Method to use the given wrapped keys as secret keys
+   * 
+   * @param wrapKeys The wrapped encryption and authentication keys
+   * 
+   * @throws InvalidConfigurationException if the keys have not been wrapped with the vault password
+   * @throws InternalException
+   */
+  private void adoptRotatedKeys(byte[][] wrapKeys) throws InvalidConfigurationException, InternalException {
+    try {
+      this.km.setSecretKeys(wrapKeys[0], wrapKeys[1]);
+      dropAuthMac();
+    } catch (InvalidKeyException e) {
+      throw new InvalidConfigurationException();
+    } catch (Exception e) {
+      throw new InternalException();
+    }
+  }
+
+
+  /**
+   * Verify the encrypted items with the default number of threads and rate
+   * 
+   * @see #scrub(String, int, long, ProgressListener, CancellationToken)
+   */
+  public ScrubReport scrub(String psw, ProgressListener listener, CancellationToken token) throws WrongPasswordException, InternalException, IOException, OperationCancelledException {
+    return scrub(psw, SCRUB_THREADS, SCRUB_BYTES_PER_SECOND, listener, token);
+  }
+
+  /**
+   * Verify the header and chunk tags of all the encrypted items without revealing them; 
+   * it does not require the vault to be unlocked and it can run while the vault is in use
+   * 
+   * @param psw            String: password used for keys derivation
+   * @param threads        Number of worker threads
+   * @param bytesPerSecond Maximum bytes read per second; 0 for no limit
+   * @param listener       The receiver of the progress events (can be null)
+   * @param token          The cancellation token (can be null)
+   * 
+   * @return the report with the corrupt items and their chunk indexes
+   * @throws WrongPasswordException
+   * @throws InternalException
+   * @throws IOException
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public ScrubReport scrub(String psw, int threads, long bytesPerSecond, ProgressListener listener, CancellationToken token) throws WrongPasswordException, InternalException, IOException, OperationCancelledException {
+    if (psw == null) {
+      throw new NullPointerException("Invalid password");
+    }
+
+    try {
+      try {
+        // Unwrap secret keys through input password
+        this.km.unwrapSecretKeys(psw);
+        dropAuthMac();
+      } catch (InvalidPasswordException | InvalidKeyException e) {
+        throw new WrongPasswordException();
+      } catch (Exception e) {
+        throw new InternalException();
+      }
+      loadItems();
+
+      return scrubItems(threads, bytesPerSecond, listener, token);
+    } finally {
+      // The keys of a locked vault are needed only for the scrub
+      if (this.locked) {
+        this.km.clearSecretKeys();
+        dropAuthMac();
+      }
+    }
+  }
+
+  /**
+   * Verify the header and chunk tags of all the encrypted items of the unlocked vault without revealing them
+   * 
+   * @param threads        Number of worker threads
+   * @param bytesPerSecond Maximum bytes read per second; 0 for no limit
+   * @param listener       The receiver of the progress events (can be null)
+   * @param token          The cancellation token (can be null)
+   * 
+   * @return the report with the corrupt items and their chunk indexes
+   * @throws VaultLockedException If the vault is locked
+   * @throws IOException
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public ScrubReport scrub(int threads, long bytesPerSecond, ProgressListener listener, CancellationToken token) throws VaultLockedException, IOException, OperationCancelledException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    return scrubItems(threads, bytesPerSecond, listener, token);
+  }
+
+  private ScrubReport scrubItems(int threads, long bytesPerSecond, ProgressListener listener, CancellationToken token) throws IOException, OperationCancelledException {
+    // The items are taken at the start: those added later are not verified
+    List<VaultItem> toVerify = new ArrayList<>(this.items.size());
+    long bytesTotal = 0;
+    for (int id : this.items.ids()) {
+      VaultItem item = createVaultItem(id);
+      toVerify.add(item);
+      if (item instanceof VaultFile && Files.exists(item.getAbsPath())) { bytesTotal += Files.size(item.getAbsPath()); }
+    }
+    ProgressTracker tracker = new ProgressTracker(listener, token);
+    tracker.start(toVerify.size(), bytesTotal);
+
+    try {
+      return new IntegrityScrubber(threads, bytesPerSecond).scrub(toVerify, this.storagePath, this.km.getUnwrapEncKey(), tracker);
+    } catch (CancellationException e) {
+      throw new OperationCancelledException();
+    }
+  }
+
+  /**
+   * Read the vault configuration from the file system
+   * 
+   * @throws InvalidConfigurationException
+   * @throws IOException
+   */
+  protected void readConfiguration() throws InvalidConfigurationException, IOException {    
+    System.err.print("Reading configuration file... ");
+    
+    try {
+      // Read and decode token from the vault root
+      Path confPath = VaultConfiguration.getPath(this.storagePath, this.vid);
+
+      // Check if configuration file is too large
+      if (Files.size(confPath) > MAX_CONF_SIZE) {
+        System.err.println("Vault configuration file is too large");
+        throw new InvalidConfigurationException();
+      }
+      
+      byte[] token = Files.readAllBytes(confPath);
+      byte[] serializedConf = decodeToken(token); 
+      
+      // Decode VaultConfiguration object
+      this.conf = VaultConfiguration.deserialize(serializedConf);
+      this.confPayload = serializedConf;
+    } catch (IOException e) {
+      System.err.println("Error while reading configuration file");
+      throw e;
+    }
+    
+    System.err.println("DONE");
+  }
+
+ /**
+  * Saves the vault configuration on the file system
+  *
+  * @throws IOException
+  * @throws InternalException
+  */
+  protected void writeConfiguration() throws IOException, InternalException {
+    System.err.print("Writing configuration file... ");
+    
+    try {
+      // Encode the VaultConfiguration object 
+      byte[] serializedConf = VaultConfiguration.serialize(this.conf);
+      
+      // Generate a token with MAC and save it in the vault root
+      byte[] token = encodeSignedToken(serializedConf);
+      Files.write(VaultConfiguration.getPath(this.storagePath, this.vid), token);
+      this.confPayload = serializedConf;
+    } catch (IOException e) {
+      System.err.println("Error while saving configuration file");
+      throw e;
+    }
+    
+    System.err.println("DONE");
+  }
+
+
+  /**
+   * Encodes header and payload in base64
+   * 
+   * @param payload 
+   * 
+   * @return byte[] base64 encoded token (header.payload)
+   */
+  private byte[] encodeToken(byte[] payload) {
+    // Encode header in base64
+    byte[] encodedHeader = Base64.getEncoder().withoutPadding().encode(ALG_HMAC_TOK.getBytes());
+    
+    // Encode payload in base64
+    byte[] encodedPayload = Base64.getEncoder().withoutPadding().encode(payload);
+
+    // Generate token joining encoded payload and encoded MAC
+    byte[] token = new byte[encodedHeader.length + 1 + encodedPayload.length];
+    System.arraycopy(encodedHeader, 0, token, 0, encodedHeader.length);
+    token[encodedHeader.length] = (byte) PERIOD;
+    System.arraycopy(encodedPayload,  0, token, encodedHeader.length + 1, encodedPayload.length);
+
+    return token;
+  }
+
+   /**
+   * Encodes a base64 signed token to save on file system
+   * 
+   * @param payload byte[]: the content to save as array of bytes
+   * 
+   * @return byte[] base64 signed token as array of bytes (header.payload.MAC)
+   * @throws InternalException
+   */
+  private byte[] encodeSignedToken(byte[] payload) throws InternalException {
+    byte[] token = encodeToken(payload);
+
+    // Generate MAC from encoded payload and encode MAC
+    this.confMac = getHmac(ALG_HMAC_TOK, this.km.getMasterKey(), token);
+    byte[] encodedMac = Base64.getEncoder().withoutPadding().encode(this.confMac);
+
+    // Generate token joining encoded payload and encoded MAC
+    byte[] signedToken = new byte[token.length + 1 + encodedMac.length];
+    System.arraycopy(token, 0, signedToken, 0, token.length);
+    signedToken[token.length] = (byte) PERIOD;
+    System.arraycopy(encodedMac,  0, signedToken, token.length + 1, encodedMac.length);
+
+    return signedToken;
+  }
+
+  /**
+   * Extract the payload from a base64 signed token and store the MAC
+   * 
+   * @param token byte[]: the token
+   * 
+   * @return byte[] payload: the content of the token
+   * 
+   * @throws InvalidConfigurationException
+   */
+  private byte[] decodeToken(byte[] token) throws InvalidConfigurationException {
+    String tmp = new String(token);
+    
+    // Check if token has 3 fields (header + payload + MAC)
+    String tok[] = tmp.split("\\" + PERIOD);
+    if (tok.length != 3) {
+      throw new InvalidConfigurationException();
+    }
+
+    // Decode header and check if the algorithm is correct (only HMACSHA512 at the moment)
+    byte[] header  = Base64.getDecoder().decode(tok[0]);
+    if (!MessageDigest.isEqual(header, ALG_HMAC_TOK.getBytes())) {
+      throw new InvalidConfigurationException();
+    }
+
+    // Decode payload and MAC
+    byte[] payload = Base64.getDecoder().decode(tok[1]);
+    this.confMac   = Base64.getDecoder().decode(tok[2]);
+
+    return payload;
+  }
+
+   /**
+   * Computes MAC for an array of bytes and sign it with a key
+   * 
+   * @param alg   String:    MAC algorithm
+   * @param key   SecretKey: key for MAC signature
+   * @param bytes byte[]:    bytes for which compute the MAC
+   * 
+   * @return byte[] MAC array of bytes
+   * @throws InternalException
+   */
+  private static byte[] getHmac(String alg, SecretKey key, byte[] bytes) throws InternalException {
+    byte[] macResult = null;
+    
+    try {
+      Mac mac = Mac.getInstance(alg);
+      mac.init(key);
+      macResult = mac.doFinal(bytes);
+    } catch (Exception e) {   
+      System.err.println("Error while computing HMAC");
+      throw new InternalException();
+    }
+
+    return macResult;
+  }
+
+  /**
+   * Method to compute checksum for a file
+   * 
+   * @param parent The parent directory path (encrypted)
+   * @param encName The encrypted file name 
+   * 
+   * @throws InternalException
+   * @throws IOException
+   */
+  private void computeTreeChecksum(Path parent, String encName) throws InternalException, IOException {
+    // Write on tree checksum file
+    writeTreeChecksumToFile(computeChecksumLine(parent != null ? parent.resolve(encName).toString() : encName));
+  }
+
+  /**
+   * Method to compute a line of the tree checksum file
+   * 
+   * @param record The relative encrypted path, prefixed by CHKSUM_TOMBSTONE for a removed item
+   * 
+   * @return the line (record.mac) without the new line
+   * @throws InternalException
+   */
+  private byte[] computeChecksumLine(String record) throws InternalException {
+    byte[] filename = record.getBytes();
+     
+    // Create the MAC of the dest path with auth key
+    byte[] filenameMac = getAuthMac().mac(filename);
+    byte[] encodedMac = Base64.getEncoder().withoutPadding().encode(filenameMac);
+    
+    // Attach filename and mac using PERIOD (.)
+    byte[] checksum = new byte[filename.length + 1 + encodedMac.length];
+    System.arraycopy(filename, 0, checksum, 0, filename.length);
+    checksum[filename.length] = (byte) PERIOD;
+    System.arraycopy(encodedMac, 0, checksum, filename.length + 1, encodedMac.length);
+
+    return checksum;
+  }
+
+  /**
+   * Method to check file tree integrity in the vault: the root of the hash tree of the items is 
+   * compared with the signed one. After a repair the root covers the tree without the items of the
+   * pending operation. Only the vaults created by older versions, whose configuration does not 
+   * require the tree root, are checked against the tree checksum file and the tree root is then written
+   * 
+   * @param repaired true if the vault has been repaired after an interrupted operation
+   * 
+   * @return a boolean flag which indicates success or failure
+   * 
+   * @throws InternalException
+   * @throws IOException
+   */
+  private boolean checkFileTreeIntegrity(boolean repaired) throws InternalException, IOException {
+    System.err.print("Checking file tree integrity... ");
+    
+    if (Files.exists(this.treeRootFile)) {
+      byte[] storedMac;
+      try {
+        storedMac = Base64.getDecoder().decode(new String(Files.readAllBytes(this.treeRootFile), StandardCharsets.US_ASCII).trim());
+      } catch (IllegalArgumentException e) {
+        System.err.println("Tree root is not valid!");
+        return false;
+      }
+      if (!MessageDigest.isEqual(storedMac, computeTreeRootMac())) {
+        // The operation completed but the process died before its journal was deleted
+        if (!(repaired && MessageDigest.isEqual(storedMac, getAuthMac().mac(this.merkle.getRootHash())))) {
+          System.err.println("Tree root HMAC is not equal!");
+          return false;
+        }
+        this.journal.commit();
+        this.journal = null;
+      }
+      requireTreeRoot();
+      System.err.println("DONE");
+      return true;
+    }
+    if (this.conf.hasTreeRoot()) {
+      System.err.println("Tree root not found!");
+      return false;
+    }
+
+    TreeChecksums checksums;
+    try {
+      checksums = readTreeChecksums();
+    } catch (IOException e) {
+      System.err.println("Error while reading file integrity file");
+      return false; 
+    }
+
+    try (checksums) {
+      List<String> removed = new ArrayList<>(checksums.tombstones.keySet());
+      List<byte[]> records = new ArrayList<>(removed.size());
+      for (String file : removed) { records.add((CHKSUM_TOMBSTONE + file).getBytes()); }
+      List<byte[]> newMacs = getAuthMac().macAll(records);
+      for (int i = 0; i < removed.size(); i++) {
+        if (!MessageDigest.isEqual(checksums.tombstones.get(removed.get(i)), newMacs.get(i))) {
+          System.err.println("HMAC is not equal!");
+          return false;
+        }
+      }
+
+      if (this.items.size() != checksums.size()) {
+        System.err.println("Number of files is different");
+        return false;
+      }
+
+      // Every item has a checksum: with the same number of checksums, they match one to one
+      int[] ids = this.items.ids();
+      records = new ArrayList<>(ids.length);
+      for (int id : ids) {
+        String file = this.items.getPath(id).toString();
+        if (!checksums.contains(file)) {
+          System.err.println("File not found");
+          return false;
+        }
+        records.add(file.getBytes());
+      }
+
+      newMacs = getAuthMac().macAll(records);
+      for (int i = 0; i < ids.length; i++) {
+        if (!checksums.macEquals(new String(records.get(i)), newMacs.get(i))) {
+          System.err.println("HMAC is not equal!");
+          return false;
+        }
+      }
+    }
+    
+    // Convert the tree checksum file of the vaults created by older versions
+    if (!Files.exists(this.treeChecksumBase)) { compactTreeChecksumFile(); }
+    writeTreeRoot();
+    requireTreeRoot();
+    System.err.println("DONE");
+    return true;
+  }
+
+  /**
+   * Record in the signed configuration that the tree root is required, once it has been written
+   * 
+   * @throws InternalException
+   * @throws IOException
+   */
+  private void requireTreeRoot() throws InternalException, IOException {
+    if (this.conf.hasTreeRoot()) { return; }
+    this.conf.setTreeRoot(true);
+    writeConfiguration();
+  }
+
+  /**
+   * Method to compute the MAC of the root hash of the items with the auth key
+   * 
+   * @return the mac bytes
+   * @throws InternalException
+   */
+  private byte[] computeTreeRootMac() throws InternalException {
+    if (this.journal == null) { return getAuthMac().mac(this.merkle.getRootHash()); }
+
+    // While an operation is pending the root covers the tree without its items, so that the repair can be checked
+    BitSet pending = new BitSet();
+    for (Path relPath : this.journal.getDoneItems()) {
+      int id = this.items.find(relPath);
+      if (id != ItemTable.NOT_FOUND) { pending.set(id); }
+    }
+    return getAuthMac().mac(MerkleTree.computeSerial(this.items, pending));
+  }
+
+  /**
+   * Method to get the HMAC engine of the auth key, created once the keys are unwrapped
+   * 
+   * @return the engine
+   * @throws InternalException
+   */
+  private MacService getAuthMac() throws InternalException {
+    if (this.authMac == null) {
+      try {
+        this.authMac = new MacService(ALG_HMAC_TOK, this.km.getUnwrapAuthKey());
+      } catch (Exception e) {
+        System.err.println("Error while computing HMAC");
+        throw new InternalException();
+      }
+    }
+    return this.authMac;
+  }
+
+  /**
+   * Drop the HMAC engine and its Macs, bound to the previous auth key
+   */
+  private void dropAuthMac() {
+    if (this.authMac == null) { return; }
+
+    this.authMac.close();
+    this.authMac = null;
+  }
+
+  /**
+   * Method to write the signed root hash of the items, recomputing only the changed directories;
+   * the file is replaced atomically
+   * 
+   * @throws IOException
+   */
+  private void writeTreeRoot() throws IOException {
+    if (this.merkle == null) { return; }
+
+    String encodedMac;
+    try {
+      encodedMac = Base64.getEncoder().encodeToString(computeTreeRootMac());
+    } catch (InternalException e) {
+      throw new IOException("Cannot sign the tree root");
+    }
+    Path tmp = this.treeRootFile.resolveSibling(this.treeRootFile.getFileName() + ".tmp");
+    Files.writeString(tmp, encodedMac);
+    Files.move(tmp, this.treeRootFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+
+  /**
+   * Method to write a line on tree checksum file; the file is kept open until the end of the operation
+   * @param checksum
+   * 
+   * @throws IOException
+   */
+  private void writeTreeChecksumToFile(byte[] checksum) throws IOException {    
+    if (this.checksumWriter == null) {
+      this.checksumWriter = new TreeChecksumWriter(this.treeChecksumFile, this.checksumSyncPolicy, CHKSUM_BATCH_SIZE);
+    }
+
+    this.checksumWriter.append(checksum);
+  }
+
+  /**
+   * Method to commit the lines of the tree checksum file at the end of an operation
+   * 
+   * @throws IOException
+   */
+  private void closeChecksumWriter() throws IOException {
+    if (this.checksumWriter == null) { return; }
+
+    try {
+      this.checksumWriter.close();
+    } finally {
+      this.checksumWriter = null;
+    }
+  }
+
+  /**
+   * Method to read the tree checksums
+   * 
+   * @return HashMap<Path, byte[]> a hash map with path and mac bytes of the items in the vault
+   * @throws IOException
+   */
+  public HashMap<Path, byte[]> readTreeChecksumFile() throws IOException {
+    HashMap<Path, byte[]> pathMac = new HashMap<>();
+    try (TreeChecksums checksums = readTreeChecksums()) {
+      if (checksums.base != null) {
+        for (int i = 0; i < checksums.base.size(); i++) {
+          String path = new String(checksums.base.getPath(i), StandardCharsets.UTF_8);
+          if (!checksums.isOverridden(path)) { pathMac.put(Path.of(path), checksums.base.getMac(i)); }
+        }
+      }
+      for (String path : checksums.live.keySet()) { pathMac.put(Path.of(path), checksums.live.get(path)); }
+    }
+    return pathMac;
+  }
+
+  /**
+   * Method to open the binary tree checksums and read the text log
+   * 
+   * @return the checksums; they must be closed to release the binary file
+   * @throws IOException if a file cannot be read or is not valid
+   */
+  private TreeChecksums readTreeChecksums() throws IOException {
+    TreeChecksums checksums = new TreeChecksums(Files.exists(this.treeChecksumBase) ? TreeChecksumFile.open(this.treeChecksumBase) : null);
+    if (Files.exists(this.treeChecksumFile) && !TreeChecksumFile.readLog(this.treeChecksumFile, checksums.live, checksums.tombstones)) {
+      checksums.close();
+      throw new IOException("Invalid tree checksum file");
+    }
+    return checksums;
+  }
+
+  /**
+   * Checksums of the items: the binary file overridden by the text log
+   */
+  private static class TreeChecksums implements Closeable {
+    private final TreeChecksumFile base;                               // null if missing
+    private final HashMap<String, byte[]> live = new HashMap<>();         // Paths added by the log
+    private final HashMap<String, byte[]> tombstones = new HashMap<>();   // Paths removed by the log
+
+    private TreeChecksums(TreeChecksumFile base) {
+      this.base = base;
+    }
+
+    private boolean isOverridden(String path) {
+      return this.live.containsKey(path) || this.tombstones.containsKey(path);
+    }
+
+    private boolean contains(String path) {
+      if (isOverridden(path)) { return this.live.containsKey(path); }
+      return this.base != null && this.base.find(path.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    private boolean macEquals(String path, byte[] mac) {
+      if (isOverridden(path)) { return this.live.containsKey(path) && MessageDigest.isEqual(this.live.get(path), mac); }
+      int index = this.base != null ? this.base.find(path.getBytes(StandardCharsets.UTF_8)) : -1;
+      return index >= 0 && this.base.macEquals(index, mac);
+    }
+
+    private int size() {
+      int size = this.live.size();
+      if (this.base != null) {
+        size += this.base.size();
+        for (String path : this.live.keySet()) { if (this.base.find(path.getBytes(StandardCharsets.UTF_8)) >= 0) { size--; } }
+        for (String path : this.tombstones.keySet()) {
+          if (!this.live.containsKey(path) && this.base.find(path.getBytes(StandardCharsets.UTF_8)) >= 0) { size--; }
+        }
+      }
+      return size;
+    }
+
+    @Override
+    public void close() {
+      if (this.base != null) { this.base.close(); }
+    }
+  }
+  
+  /**
+   * Static method to import a vault from a file path: /dir/dir2/vaultName
+   * 
+   * @param dir The directory in which the vault is stored
+   * 
+   * @return The vault object created
+   * 
+   * @throws InvalidConfigurationException
+   * @throws IOException
+   * @throws InternalException
+   */
+  public static Vault importVault(File dir) throws InvalidConfigurationException, IOException, InternalException {
+    return importVault(dir, false);
+  }
+
+  /**
+   * Static method to import a vault from a file path: /dir/dir2/vaultName
+   * 
+   * @param dir      The directory in which the vault is stored
+   * @param deferred if true only the configuration is read, see openDeferred()
+   * 
+   * @return The vault object created
+   * 
+   * @throws InvalidConfigurationException
+   * @throws IOException
+   * @throws InternalException
+   */
+  public static Vault importVault(File dir, boolean deferred) throws InvalidConfigurationException, IOException, InternalException {
+    // Check if a vault configuration file is present
+    List<Path> path = Files.find(Path.of(dir.getAbsolutePath()), 1, (p, attr) -> p.getFileName().toString().endsWith(CONF_FILE_EXT)).toList();
+    
+    // If absent or multiple files throw error
+    if (path.size() != 1) {
+      throw new InvalidConfigurationException();
+    }   
+    
+    // Get UUID from vault
+    String vaultFilename = path.get(0).getFileName().toString();
+    vaultFilename = vaultFilename.substring(0, vaultFilename.length() - CONF_FILE_EXT.length());
+
+    // Create vault with obtained parameters and add to the list view
+    UUID vid = UUID.fromString(vaultFilename);
+    return deferred ? openDeferred(vid, dir.getName(), Path.of(dir.getParent())) : new Vault(vid, dir.getName(), Path.of(dir.getParent()));
+  }
+
+  /**
+   * Method to find a vault item given the relative path inside the vault
+   * 
+   * @param toFind relative path to find
+   * 
+   * @return the vault item
+   */
+  public VaultItem getVaultFile(Path toFind) {
+    if (toFind == null) { return null; }
+    if (this.items != null) {
+      int id = this.items.find(toFind);
+      return id != ItemTable.NOT_FOUND ? createVaultItem(id) : null;
+    }
+    
+    // Instantiate the item from the index
+    openItemsUnchecked();
+    DiskItemIndex.Entry entry = this.itemIndex.lookup(toFind);
+    if (entry == null) { return null; }
+    try {
+      Path absPath = this.storagePath.resolve(entry.getPath());
+      return entry.isDirectory() ? new VaultDirectory(absPath, true) : new VaultFile(absPath, true);
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot instantiate vault item " + toFind);
+    }
+  }
+
+  /**
+   * Method to find a vault item given the relative path with clear names inside the vault
+   * 
+   * @param toFind relative clear path to find
+   * 
+   * @return the vault item, null if not found
+   * @throws IllegalStateException if the items are not loaded
+   */
+  public VaultItem getVaultFileByClearPath(Path toFind) {
+    if (toFind == null) { return null; }
+    if (this.items == null) {
+      throw new IllegalStateException("Vault items not loaded");
+    }
+
+    int id = this.items.findClear(toFind);
+    return id != ItemTable.NOT_FOUND ? createVaultItem(id) : null;
+  }
+
+  /**
+   * Method to search the items of the unlocked vault whose clear name contains a text, ignoring the case;
+   * it can be called while an operation runs on another thread
+   * 
+   * @param query The text to find
+   * @param limit The maximum number of results
+   * 
+   * @return the relative clear paths of the items found, parents before their content
+   * @throws VaultLockedException If the vault is locked
+   */
+  public List<Path> searchItems(String query, int limit) throws VaultLockedException {
+    NameIndex index = this.nameIndex;
+    if (this.locked || index == null) {
+      throw new VaultLockedException();
+    }
+    return index.search(query, limit);
+  }
+
+  /**
+   * Method to list the content of the unlocked vault without revealing it: only the headers
+   * of the items whose clear name is not known yet are decrypted
+   * 
+   * @param listener The receiver of the progress events (can be null)
+   * @param token    The cancellation token (can be null)
+   * 
+   * @return the items by relative clear path, parents before their content
+   * @throws VaultLockedException If the vault is locked
+   * @throws InternalException If a header cannot be decrypted
+   * @throws OperationCancelledException If the operation has been cancelled through the token
+   */
+  public Map<Path, VaultItem> listItems(ProgressListener listener, CancellationToken token) throws VaultLockedException, InternalException, OperationCancelledException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+
+    int[] ids = this.items.ids();
+    ProgressTracker tracker = new ProgressTracker(listener, token);
+    tracker.start(ids.length, 0);
+    Map<Path, VaultItem> list = new LinkedHashMap<>();
+    try {
+      for (int id : ids) {
+        tracker.checkCancelled();
+        VaultItem item = createVaultItem(id);
+        if (item.getName() == null) { this.items.setClearName(id, item.readName(this.km.getUnwrapEncKey())); }
+
+        Path clearPath = this.items.getClearPath(id);
+        if (clearPath == null) {
+          throw new IOException("Parent directory not decrypted: " + this.items.getPath(id).getParent());
+        }
+        list.put(clearPath, createVaultItem(id));
+        tracker.itemDone(0);
+      }
+    } catch (CancellationException e) {
+      throw new OperationCancelledException();
+    } catch (Exception e) {
+      throw new InternalException();
+    }
+    return list;
+  }
+
+  /**
+   * Method to list the children of a directory of the unlocked vault; their clear names are known 
+   * once listItems() has been called
+   * 
+   * @param clearDir The relative clear path of the directory; empty for the vault root
+   * 
+   * @return the items of the directory, null if it is not a directory of the vault
+   * @throws VaultLockedException If the vault is locked
+   */
+  public List<VaultItem> getChildren(Path clearDir) throws VaultLockedException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+
+    int parent = findDirectory(clearDir);
+    if (parent == ItemTable.NOT_FOUND) { return null; }
+    List<VaultItem> children = new ArrayList<>();
+    for (int id = this.items.getFirstChild(parent); id != ItemTable.NONE; id = this.items.getNextSibling(id)) {
+      children.add(createVaultItem(id));
+    }
+    return children;
+  }
+
+  /**
+   * Method to decrypt a range of a file of the unlocked vault to a stream, without revealing it:
+   * only the chunks overlapping the range are read. The item table is not accessed, so the file 
+   * can be streamed while the vault is modified on another thread
+   * 
+   * @param file   The file, e.g. from getVaultFileByClearPath()
+   * @param offset The first byte of the range
+   * @param length The length of the range; it must not exceed the file size
+   * @param out    The stream of the content, not closed
+   * 
+   * @throws VaultLockedException If the vault is locked
+   * @throws IOException If the file has been removed or the stream fails
+   * @throws InternalException If the file cannot be decrypted
+   */
+  public void readFile(VaultFile file, long offset, long length, OutputStream out) throws VaultLockedException, IOException, InternalException {
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+
+    try {
+      file.decryptRange(this.km.getUnwrapEncKey(), offset, length, out);
+    } catch (GeneralSecurityException e) {
+      throw new InternalException();
+    }
+  }
+
+  /**
+   * Add a file to a directory of the vault encrypting the content while it is read from a stream,
+   * e.g. an upload: the plaintext is never written to disk
+   * 
+   * @param clearParent The relative clear path of the directory; empty for the vault root
+   * @param name        The clear name of the file
+   * @param in          The stream of the content, not closed
+   * 
+   * @throws IOException If the directory is not found or the stream fails
+   * @throws VaultLockedException If the vault is locked
+   * @throws InternalException Error during encryption; the partial file is removed
+   */
+  public void addStream(Path clearParent, String name, InputStream in) throws IOException, VaultLockedException, InternalException {
+    addStream(clearParent, name, in, null);
+  }
+
+  /**
+   * Add a file to a directory of the vault encrypting the content while it is read from a stream;
+   * the caller's lock is held only while the encrypted file is registered in the item table,
+   * so that the readers of the items are not blocked by a long upload
+   * 
+   * @param clearParent The relative clear path of the directory; empty for the vault root
+   * @param name        The clear name of the file
+   * @param in          The stream of the content, not closed
+   * @param itemsLock   The lock of the readers of the items (can be null)
+   * 
+   * @throws IOException If the directory is not found or the stream fails
+   * @throws VaultLockedException If the vault is locked
+   * @throws InternalException Error during encryption; the partial file is removed
+   */
+  public void addStream(Path clearParent, String name, InputStream in, Lock itemsLock) throws IOException, VaultLockedException, InternalException {
+    if (name == null || name.isEmpty() || Path.of(name).getNameCount() != 1 || name.equals(".") || name.equals("..")) {
+      throw new IllegalArgumentException("Invalid file name");
+    }
+    if (this.locked) {
+      throw new VaultLockedException();
+    }
+    checkNoPendingOperation();
+    loadItems();
+
+    int parent = findDirectory(clearParent);
+    if (parent == ItemTable.NOT_FOUND) {
+      throw new IOException("Directory not found in the vault: " + clearParent);
+    }
+    Path relDir = parent == ItemTable.ROOT ? null : this.items.getPath(parent);
+    Path absDstPath = relDir == null ? this.storagePath.resolve(name) : this.storagePath.resolve(relDir).resolve(name);
+
+    // A long upload is journaled: after a crash the partial item is an orphan, not a tampering
+    Path clearPath = parent == ItemTable.ROOT ? Path.of(name) : clearParent.resolve(name);
+    this.journal = OperationJournal.begin(this.journalFile, OperationJournal.ADD_STREAM, clearPath);
+    String encName = "";
+    try {
+      VaultFile file = new VaultFile(absDstPath, false);
+      encName = file.encrypt(in, this.km.getUnwrapEncKey(), null);
+      Path relEncPath = relDir == null ? Path.of(encName) : relDir.resolve(encName);
+      this.journal.done(Path.of(name), relEncPath, getAuthMac().mac(relEncPath.toString().getBytes()));
+      if (itemsLock != null) { itemsLock.lock(); }
+      try {
+        computeTreeChecksum(relDir, encName);
+        addVaultItem(relEncPath, false, file.getName());
+      } finally {
+        if (itemsLock != null) { itemsLock.unlock(); }
+      }
+    } catch (IOException e) {
+      deletePartialItem(absDstPath, encName);
+      commitJournal();
+      throw e;
+    } catch (GeneralSecurityException | InternalException e) {
+      deletePartialItem(absDstPath, encName);
+      commitJournal();
+      throw new InternalException();
+    }
+    commitJournal();
+  }
+
+  /**
+   * Find a directory given its relative clear path
+   * 
+   * @return the directory id; ROOT for an empty path, NOT_FOUND if it is not a directory
+   */
+  private int findDirectory(Path clearDir) {
+    if (clearDir == null || clearDir.toString().isEmpty()) { return ItemTable.ROOT; }
+    int id = this.items.findClear(clearDir);
+    return id != ItemTable.NOT_FOUND && this.items.isDirectory(id) ? id : ItemTable.NOT_FOUND;
+  }
+
+  /**
+   * Check if the items are available, on the heap or through the item index, 
+   * i.e. if the vault has not been opened with openDeferred() or openItems() has been called
+   * 
+   * @return true if the items can be queried without walking the storage tree
+   */
+  public boolean isItemsOpen() {
+    return this.items != null || this.itemIndex != null;
+  }
+
+  /**
+   * Method to open the items of a vault opened with openDeferred() through the item index, 
+   * rebuilding it if missing or stale; it can take long for large vaults
+   * 
+   * @throws IOException
+   */
+  public synchronized void openItems() throws IOException {
+    if (isItemsOpen()) { return; }
+
+    openItemIndex();
+  }
+
+  private void openItemsUnchecked() {
+    try {
+      openItems();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Method to load the vault items on the heap, closing the item index; 
+   * the items are loaded automatically when the vault is unlocked or modified
+   * 
+   * @throws IOException
+   */
+  public void loadItems() throws IOException {
+    if (this.items != null) { return; }
+
+    this.items = new ItemTable();
+    try {
+      for (Path file : Files.walk(this.storagePath).toList()) {
+        if (isVaultItem(file)) {
+          addVaultItem(file.subpath(this.storagePath.getNameCount(), file.getNameCount()), Files.isDirectory(file), null);
+        }
+      }
+    } catch (IOException e) {
+      this.items = null;
+      throw e;
+    }
+
+    closeItemIndex();
+  }
+
+  /**
+   * Method to open the on-disk item index, rebuilding it if missing or older than the tree checksum file
+   * 
+   * @throws IOException
+   */
+  private void openItemIndex() throws IOException {
+    long version = 0;
+    for (Path file : List.of(this.treeChecksumBase, this.treeChecksumFile)) {
+      if (Files.exists(file)) { version = version * 31 + Files.getLastModifiedTime(file).toMillis() * 31 + Files.size(file); }
+    }
+
+    if (Files.exists(this.indexFile)) {
+      try {
+        this.itemIndex = DiskItemIndex.open(this.indexFile);
+        if (this.itemIndex.getVersion() == version) { return; }
+        this.itemIndex.close();
+      } catch (IOException e) {
+        System.err.println("Invalid item index, rebuilding it");
+      }
+    }
+
+    DiskItemIndex.build(this.storagePath, this.indexFile, this::isVaultItem, version, INDEX_SEGMENT_SIZE, INDEX_SPARSE_INTERVAL);
+    this.itemIndex = DiskItemIndex.open(this.indexFile);
+  }
+
+  private void closeItemIndex() {
+    if (this.itemIndex == null) { return; }
+
+    this.itemIndex.close();
+    this.itemIndex = null;
+  }
+
+  /**
+   * Check if a path in the storage directory is a vault item, i.e. not the root or a metadata file
+   * 
+   * @param file The path to check
+   * 
+   * @return true if the path is an encrypted file or directory
+   */
+  private boolean isVaultItem(Path file) {
+    return !(isMetadataFile(file) || file.equals(this.storagePath));
+  }
+
+  /**
+   * Method to add an item to the vault items
+   * 
+   * @param relPath   The relative path of the item with encrypted names
+   * @param directory true if the item is a directory
+   * @param clearName The clear name of the item (can be null if unknown)
+   * 
+   * @throws IOException if the parent directory is not a vault item
+   */
+  private void addVaultItem(Path relPath, boolean directory, String clearName) throws IOException {
+    int parent = relPath.getNameCount() > 1 ? this.items.find(relPath.getParent()) : ItemTable.ROOT;
+    if (parent == ItemTable.NOT_FOUND) {
+      throw new IOException("Parent directory not found in the vault: " + relPath.getParent());
+    }
+    int id = this.items.add(parent, relPath.getFileName().toString(), directory, clearName);
+    // A new directory has no hash yet, even if it stays empty
+    if (this.merkle != null) { this.merkle.markDirty(directory ? id : parent); }
+  }
+
+  /**
+   * Method to instantiate a vault item from its row in the items table
+   * 
+   * @param id The item id
+   * 
+   * @return a new item instance, with the clear name if known
+   */
+  private VaultItem createVaultItem(int id) {
+    Path absPath = this.storagePath.resolve(this.items.getPath(id));
+    try {
+      return this.items.isDirectory(id) ? new VaultDirectory(absPath, this.items.getClearName(id)) : new VaultFile(absPath, this.items.getClearName(id));
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot instantiate vault item " + absPath);
+    }
+  }
+
+  /**
+   * Check if a file in the storage directory holds vault metadata rather than an item
+   * 
+   * @param file The path to check
+   * 
+   * @return true for the configuration, checksum, directory, journal, index, root and rotation files
+   */
+  public static boolean isMetadataFile(Path file) {
+    return isConfFile(file) || isMacFile(file) || isDirFile(file) || isJournalFile(file) || isIndexFile(file) || isTreeRootFile(file) || isRekeyFile(file);
+  }
+
+  public static boolean isConfFile(Path file) {
+    if (file == null) {
+      return false;
+    }
+
+    return file.getFileName().toString().contains(CONF_FILE_EXT);
+  }
+
+  public static boolean isMacFile(Path file) {
+    if (file == null) {
+      return false;
+    }
+
+    return file.getFileName().toString().contains(CHKSUM_FILE_EXT);
+  }
+
+  public static boolean isDirFile(Path file) {
+    if (file == null) {
+      return false;
+    }
+
+    return file.getFileName().toString().contains(DIR_FILE_EXT);
+  }
+
+  public static boolean isJournalFile(Path file) {
+    if (file == null) {
+      return false;
+    }
+
+    return file.getFileName().toString().contains(JOURNAL_FILE_EXT);
+  }
+
+  public static boolean isIndexFile(Path file) {
+    if (file == null) {
+      return false;
+    }
+
+    return file.getFileName().toString().contains(INDEX_FILE_EXT);
+  }
+
+  public static boolean isTreeRootFile(Path file) {
+    if (file == null) {
+      return false;
+    }
+
+    return file.getFileName().toString().contains(TREE_ROOT_FILE_EXT);
+  }
+
+  public static boolean isRekeyFile(Path file) {
+    if (file == null) {
+      return false;
+    }
+
+    return file.getFileName().toString().contains(REKEY_FILE_EXT);
+  }
+
+  /**
+   * Check if a bulk operation has been interrupted and has to be resumed or rolled back
+   * 
+   * @return true if an operation journal is pending
+   */
+  public boolean hasPendingOperation() {
+    return this.journal != null;
+  }
+
+  /**
+   * Get the source of the interrupted bulk operation
+   * 
+   * @return the source path or null if no operation is pending
+   */
+  public Path getPendingOperationSource() {
+    return this.journal != null ? this.journal.getSource() : null;
+  }
+
+  /**
+   * Refuse a modification of the vault while an interrupted operation is pending
+   * 
+   * @throws IOException if an operation journal or a key rotation is pending
+   */
+  private void checkNoPendingOperation() throws IOException {
+    if (this.journal != null) {
+      throw new IOException("An interrupted operation must be resumed or rolled back first");
+    }
+    checkNoPendingRotation();
+  }
+
+  /**
+   * Refuse a change of the keys while an interrupted key rotation is pending: the new keys
+   * in the rotation file are wrapped with the current password
+   * 
+   * @throws IOException if a key rotation file is pending
+   */
+  private void checkNoPendingRotation() throws IOException {
+    if (Files.exists(this.rekeyFile)) {
+      throw new IOException("An interrupted key rotation must be completed first by unlocking the vault");
+    }
+  }
+
+  /**
+   * Delete a file or a directory with all its content
+   * 
+   * @param path The path to delete
+   * 
+   * @throws IOException
+   */
+  private static void deleteRecursively(Path path) throws IOException {
+    if (!Files.exists(path)) { return; }
+
+    for (Path toDelete : Files.walk(path).sorted(Comparator.reverseOrder()).toList()) {
+      Files.deleteIfExists(toDelete);
+    }
+  }
+
+  public UUID getVid() {
+    return this.vid;
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public void setName(String name){
+    this.name = name;
+  }
+
+  public Path getStoragePath() {
+    return this.storagePath;
+  }
+
+  public Path getRevealPath() {
+    return this.revealPath;
+  }
+
+  public VaultConfiguration getVaultConfiguration() {
+    return this.conf;
+  }
+
+  /**
+   * Get the vault items
+   * 
+   * @return new instances of the items, parents before their content
+   * @throws IllegalStateException if the vault has been opened with the item index and the items are not loaded
+   */
+  public Collection<VaultItem> getVaultItems() {
+    if (this.items == null) {
+      throw new IllegalStateException("Vault items not loaded");
+    }
+
+    List<VaultItem> list = new ArrayList<>(this.items.size());
+    for (int id : this.items.ids()) { list.add(createVaultItem(id)); }
+    return list;
+  }
+
+  public boolean isLocked() {
+    return this.locked;
+  }
+
+  public SyncPolicy getChecksumSyncPolicy() {
+    return this.checksumSyncPolicy;
+  }
+
+  /**
+   * Set when the tree checksum lines are forced to the storage device; 
+   * it applies from the next operation
+   * 
+   * @param policy The sync policy
+   */
+  public void setChecksumSyncPolicy(SyncPolicy policy) {
+    if (policy == null) {
+      throw new NullPointerException("Sync policy cannot be null");
+    }
+    this.checksumSyncPolicy = policy;
+  }
+
+  public boolean isEmpty() {
+    if (this.items == null) { 
+      openItemsUnchecked();
+      return this.itemIndex.size() == 0; 
+    }
+    return this.items.size() == 0;
+  }
+
+  @Override
+  public String toString() {
+    return this.name + '\n' + this.storagePath.toString();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj != null && obj instanceof Vault)) {
+      return false;
+    }
+
+    return this.getStoragePath().equals(((Vault) obj).getStoragePath());
+  }
+
+  public static class InvalidConfigurationException extends Exception { 
+    public InvalidConfigurationException() { 
+      super("Invalid configuration file"); 
+    }
+  }
+
+  public static class InvalidMacException extends Exception { 
+    public InvalidMacException() { 
+      super("Invalid tree integrity file"); 
+    }
+  }
+
+  public static class InvalidFilesException extends Exception { 
+    public InvalidFilesException() { 
+      super("Invalid file"); 
+    }
+  }
+
+  public static class InternalException extends Exception { 
+    public InternalException() { 
+      super("Internal error"); 
+    }
+  }
+
+  public static class WrongPasswordException extends Exception { 
+    public WrongPasswordException() { 
+      super("The password is wrong"); 
+    }
+  }
+
+  public static class VaultLockedException extends Exception { 
+    public VaultLockedException() { 
+      super("Cannot modify the vault - Vault Locked!"); 
+    }
+  }
+
+  public static class OperationCancelledException extends Exception { 
+    public OperationCancelledException() { 
+      super("Operation cancelled"); 
+    }
+  }
+  
+} 
\ No newline at end of file
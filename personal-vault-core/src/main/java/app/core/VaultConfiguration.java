@@ -0,0 +1,339 @@
+package app.core;
+
+import static app.core.Constants.CONF_FILE_EXT;
+import static app.core.Constants.ITERATIONS;
+import static app.core.Constants.KDF_ALGORITHM;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Configuration of a vault, stored as a list of tagged fields:
+ * <pre>
+ *   header  MAGIC, format version (unsigned short)
+ *   fields  tag (unsigned byte), length (unsigned short), value
+ * </pre>
+ * Fields with an unknown tag are skipped, so that configurations written by newer versions can be read.
+ * The configurations written with Java serialization by older versions are still read, and flagged
+ * to be written again in the current format.
+ */
+public class VaultConfiguration implements Serializable {
+
+  public static final int FORMAT_VERSION = 1;
+
+  // The value computed before the key derivation fields were added, so that the existing configurations can be read
+  private static final long serialVersionUID = -6340577799171839071L;
+
+  private static final int MAGIC = 0x50564346;              // "PVCF"
+  private static final short SERIALIZATION_MAGIC = (short) 0xACED;
+  private static final int TAG_VID = 1;
+  private static final int TAG_SALT = 2;
+  private static final int TAG_ENC_KEY = 3;
+  private static final int TAG_AUTH_KEY = 4;
+  private static final int TAG_KDF_ALGORITHM = 5;
+  private static final int TAG_KDF_ITERATIONS = 6;
+  private static final int TAG_TREE_ROOT = 7;
+  
+  private final String vid;    // Vault ID
+  
+  private byte[] salt;      // Salt used for key derivation
+  private byte[] encKey;    // Encrypted symmetric key for files' header
+  private byte[] authKey;   // Encrypted symmetric key for HMAC
+  private String kdfAlgorithm;  // Key derivation function; null in the configurations written before it was stored
+  private int kdfIterations;    // Key derivation iterations; 0 in the configurations written before it was stored
+  private boolean treeRoot;     // The file tree has a signed root, whose file is then required
+  private transient boolean legacy;  // Read from a Java serialized configuration
+  
+  /**
+   * Constructor used to initialize the vault configuration with the provided 
+   * vault ID, salt, encrypted file header key, and encrypted HMAC key
+   * 
+   * @param vid UUID  vault ID
+   * @param salt byte[]  salt used for key derivation
+   * @param encKey byte[]  encrypted symmetric key for files' header
+   * @param authKey byte[]  encrypted symmetric key for HMAC
+   */
+  public VaultConfiguration(UUID vid, byte[] salt, byte[] encKey, byte[] authKey) {
+    this(vid, salt, encKey, authKey, KDF_ALGORITHM, ITERATIONS);
+  }
+
+  /**
+   * Constructor used to initialize the vault configuration with the provided 
+   * vault ID, salt, encrypted keys and key derivation cost
+   * 
+   * @param vid UUID  vault ID
+   * @param salt byte[]  salt used for key derivation
+   * @param encKey byte[]  encrypted symmetric key for files' header
+   * @param authKey byte[]  encrypted symmetric key for HMAC
+   * @param kdfAlgorithm String  key derivation function
+   * @param kdfIterations int  number of iterations of the key derivation
+   */
+  public VaultConfiguration(UUID vid, byte[] salt, byte[] encKey, byte[] authKey, String kdfAlgorithm, int kdfIterations) {
+    this.vid = vid.toString();
+    this.salt = salt;
+    this.encKey = encKey;
+    this.authKey = authKey;
+    this.kdfAlgorithm = kdfAlgorithm;
+    this.kdfIterations = kdfIterations;
+  }
+
+  /**
+   * Method used to retrieve the salt
+   * 
+   * @return byte[]  salt used for key derivation
+   */
+  public byte[] getSalt() {
+    return this.salt;
+  }
+
+  /**
+   * Method used to retrieve the encrypted symmetric key for files' header
+   * 
+   * @return byte[]  Encrypted symmetric key for files' header
+   */
+  public byte[] getEncKey() {
+    return this.encKey;
+  }
+
+  /**
+   * Method used to retrieve the encrypted symmetric key for HMAC
+   * 
+   * @return byte[]  Encrypted symmetric key for HMAC
+   */
+  public byte[] getAuthKey() {
+    return this.authKey;
+  }
+
+  /**
+   * Method used to retrieve the key derivation function
+   * 
+   * @return String  key derivation function; KDF_ALGORITHM for the configurations without it
+   */
+  public String getKdfAlgorithm() {
+    return this.kdfAlgorithm != null ? this.kdfAlgorithm : KDF_ALGORITHM;
+  }
+
+  /**
+   * Method used to retrieve the number of iterations of the key derivation
+   * 
+   * @return int  number of iterations; ITERATIONS for the configurations without it
+   */
+  public int getKdfIterations() {
+    return this.kdfIterations > 0 ? this.kdfIterations : ITERATIONS;
+  }
+
+  /**
+   * Method used to set the key derivation function and its number of iterations
+   * 
+   * @param kdfAlgorithm String  key derivation function
+   * @param kdfIterations int  number of iterations
+   */
+  public void setKdfCost(String kdfAlgorithm, int kdfIterations) {
+    this.kdfAlgorithm = kdfAlgorithm;
+    this.kdfIterations = kdfIterations;
+  }
+
+  /**
+   * Check if the file tree of the vault has a signed root: once it has, a missing root file
+   * means that the vault has been tampered
+   * 
+   * @return true if the tree root file is required
+   */
+  public boolean hasTreeRoot() {
+    return this.treeRoot;
+  }
+
+  /**
+   * Method used to record that the file tree has a signed root
+   * 
+   * @param treeRoot boolean  true if the tree root file is required
+   */
+  public void setTreeRoot(boolean treeRoot) {
+    this.treeRoot = treeRoot;
+  }
+
+  /**
+   * Check if the configuration has been read from the Java serialized format of the older versions
+   * 
+   * @return true if the configuration has to be written again in the current format
+   */
+  public boolean isLegacyFormat() {
+    return this.legacy;
+  }
+
+  /**
+   * Method used to the set the salt used for key derivation
+   * 
+   * @param salt byte[]  salt used for key derivation
+   */
+  public void setSalt(byte[] salt) {
+    this.salt = salt;
+  }
+
+  /**
+   * Method used to set the encrypted symmetric key for files' header
+   * 
+   * @param encKey byte[]  Encrypted symmetric key for files' header
+   */
+  public void setEncKey(byte[] encKey) {
+    this.encKey = encKey;
+  }
+
+  /**
+   * Method used to set the encrypted symmetric key for HMAC
+   * 
+   * @param authKey byte[]  Encrypted symmetric key for HMAC
+   */
+  public void setAuthKey(byte[] authKey) {
+    this.authKey = authKey;
+  }
+
+  @Override
+  public String toString() {
+    return 
+    "{ \n" +
+      "\tvid: "     + vid + "\n" +
+      "\tsalt: "    + new String(salt)    + "\n" +
+      "\tencKey: "  + new String(encKey)  + "\n" +
+      "\tauthKey: " + new String(authKey) + "\n" + 
+      "\tkdf: "     + getKdfAlgorithm() + " (" + getKdfIterations() + ")\n" + 
+    "}";
+  }
+
+  /**
+   * Method used to generate a path for storing the serialized configuration file 
+   * based on a given directory path and vault ID.
+   * 
+   * @param path Directory path
+   * @param vid  Vault ID
+   * 
+   * @return Path obj
+   */
+  public static Path getPath(Path path, UUID vid) {
+    return path.resolve(vid.toString() + CONF_FILE_EXT);
+  }
+
+  /**
+   * Static method that encodes a VaultConfiguration object into a byte array.
+   * 
+   * @param conf VaultConfiguration  Vault configuration with the provided vault ID, salt, encrypted file header key, and encrypted HMAC key
+   * @return byte[]  byte array of VaultConfiguration
+   * @throws IOException
+   */
+  public static byte[] serialize(VaultConfiguration conf) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bos)) {
+      out.writeInt(MAGIC);
+      out.writeShort(FORMAT_VERSION);
+
+      UUID vid = UUID.fromString(conf.vid);
+      writeField(out, TAG_VID, ByteBuffer.allocate(16).putLong(vid.getMostSignificantBits()).putLong(vid.getLeastSignificantBits()).array());
+      writeField(out, TAG_SALT, conf.salt);
+      writeField(out, TAG_ENC_KEY, conf.encKey);
+      writeField(out, TAG_AUTH_KEY, conf.authKey);
+      writeField(out, TAG_KDF_ALGORITHM, conf.getKdfAlgorithm().getBytes(StandardCharsets.UTF_8));
+      writeField(out, TAG_KDF_ITERATIONS, ByteBuffer.allocate(4).putInt(conf.getKdfIterations()).array());
+      if (conf.treeRoot) { writeField(out, TAG_TREE_ROOT, new byte[] { 1 }); }
+    }
+    conf.legacy = false;
+    return bos.toByteArray();
+  }
+
+  /**
+   * Static method that decodes a byte array into a VaultConfiguration object.
+   * 
+   * @param serialized byte[]  byte array of VaultConfiguration, in the current or in the Java serialized format
+   * @return VaultConfiguration  Vault configuration with the provided vault ID, salt, encrypted file header key, and encrypted HMAC key
+   * @throws IOException if the configuration is not valid
+   */
+  public static VaultConfiguration deserialize(byte[] serialized) throws IOException {
+    if (serialized.length >= 2 && ByteBuffer.wrap(serialized).getShort() == SERIALIZATION_MAGIC) {
+      return deserializeLegacy(serialized);
+    }
+
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Invalid vault configuration");
+      }
+      if (in.readUnsignedShort() < 1) {
+        throw new IOException("Unsupported vault configuration version");
+      }
+
+      byte[] vid = null, salt = null, encKey = null, authKey = null;
+      String kdfAlgorithm = null;
+      int kdfIterations = 0;
+      boolean treeRoot = false;
+      while (in.available() > 0) {
+        int tag = in.readUnsignedByte();
+        byte[] value = in.readNBytes(in.readUnsignedShort());
+        switch (tag) {
+          case TAG_VID: vid = value; break;
+          case TAG_SALT: salt = value; break;
+          case TAG_ENC_KEY: encKey = value; break;
+          case TAG_AUTH_KEY: authKey = value; break;
+          case TAG_KDF_ALGORITHM: kdfAlgorithm = new String(value, StandardCharsets.UTF_8); break;
+          case TAG_KDF_ITERATIONS:
+            if (value.length != 4) { throw new IOException("Invalid vault configuration"); }
+            kdfIterations = ByteBuffer.wrap(value).getInt();
+            break;
+          case TAG_TREE_ROOT: treeRoot = value.length == 1 && value[0] == 1; break;
+          default:
+            // Field of a newer version
+            break;
+        }
+      }
+
+      if (vid == null || vid.length != 16 || salt == null || encKey == null || authKey == null) {
+        throw new IOException("Invalid vault configuration");
+      }
+      ByteBuffer vidBytes = ByteBuffer.wrap(vid);
+      VaultConfiguration conf = new VaultConfiguration(new UUID(vidBytes.getLong(), vidBytes.getLong()), salt, encKey, authKey, kdfAlgorithm, kdfIterations);
+      conf.treeRoot = treeRoot;
+      return conf;
+    } catch (EOFException e) {
+      throw new IOException("Truncated vault configuration");
+    }
+  }
+
+  private static void writeField(DataOutputStream out, int tag, byte[] value) throws IOException {
+    if (value.length > 0xFFFF) {
+      throw new IOException("Vault configuration field too large");
+    }
+    out.writeByte(tag);
+    out.writeShort(value.length);
+    out.write(value);
+  }
+
+  /**
+   * Read a configuration written with Java serialization, accepting only the classes it is made of
+   */
+  private static VaultConfiguration deserializeLegacy(byte[] serialized) throws IOException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+      in.setObjectInputFilter(info -> {
+        Class<?> c = info.serialClass();
+        if (c == null) { return ObjectInputFilter.Status.UNDECIDED; }
+        return c == VaultConfiguration.class || c == byte[].class || c == String.class ? ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED;
+      });
+      VaultConfiguration conf = (VaultConfiguration) in.readObject();
+      if (conf.vid == null || conf.salt == null || conf.encKey == null || conf.authKey == null) {
+        throw new IOException("Invalid vault configuration");
+      }
+      conf.legacy = true;
+      return conf;
+    } catch (ClassNotFoundException | ClassCastException e) {
+      throw new IOException("Invalid vault configuration");
+    }
+  }
+
+}
@@ -5,9 +5,12 @@ import javax.crypto.spec.GCMParameterSpec;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -18,8 +21,8 @@ import static app.core.Constants.*;
 
 public class VaultDirectory implements VaultItem {
 
-    private final SecureRandom gen; // random bytes generator
-    private final Cipher c;
+    private SecureRandom gen; // random bytes generator, created on first use
+    private Cipher c; // created on first use
     private byte[] headerIV; // Initialization Vector of the header
 
     private Path folderPath; // "/dir"
@@ -50,10 +53,38 @@ public class VaultDirectory implements VaultItem {
         } else {
             this.folderName = this.folderNamePath.getFileName().toString();
         }
+    }
+
+    /**
+     * Instantiate an encrypted directory whose clear name is already known
+     *
+     * @param folderNamePath path of the encrypted directory
+     * @param folderName     the clear directory name (can be null if unknown)
+     * @throws IOException The path is not defined
+     */
+    public VaultDirectory(Path folderNamePath, String folderName) throws IOException {
+        if (folderNamePath == null) throw new IOException("path cannot be null");
+
+        this.folderNamePath = folderNamePath.normalize();
+        this.folderPath = this.folderNamePath.getParent() != null ? this.folderNamePath.getParent() : Path.of(".");
+        this.encName = this.folderNamePath.getFileName().toString();
+        this.encDirFile = this.folderNamePath.resolve(this.encName + ".dir");
+        this.folderName = folderName;
+    }
 
+    /**
+     * Create the cipher and the random generator on first use: the items that are only listed do not hold them
+     */
+    private void initCrypto() {
+        if (this.c != null) return;
+        try {
+            this.c = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            // AES/GCM/NoPadding must be supported by every Java platform
+            throw new IllegalStateException(e);
+        }
         this.gen = new SecureRandom();
         this.headerIV = new byte[IVLEN];
-        this.c = Cipher.getInstance("AES/GCM/NoPadding");
     }
 
     /**
@@ -72,6 +103,7 @@ public class VaultDirectory implements VaultItem {
     public String encrypt(Path srcPath, SecretKey encKey) throws InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, IOException {
         if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
 //        if (srcPath == null) throw new IOException("destination folder path cannot be null");
+        this.initCrypto();
 
         byte[] encHeader = this.encryptHeader(encKey);
 
@@ -145,6 +177,7 @@ public class VaultDirectory implements VaultItem {
     public String decrypt(Path dstBaseFolderPath, SecretKey encKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
         if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
         if (dstBaseFolderPath == null) throw new IOException("destination folder path cannot be null");
+        this.initCrypto();
 
         Path directoryName = this.folderNamePath;
         Path directoryFile = Path.of(directoryName.toString(), directoryName.getFileName() + ".dir");
@@ -216,6 +249,95 @@ public class VaultDirectory implements VaultItem {
         return folderStr;
     }
 
+    /**
+     * Public method to decrypt the directory name without creating it
+     *
+     * @param encKey key used to decrypt the header
+     * @return the decrypted directory name
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException                encryption key cannot be null
+     * @throws IOException
+     */
+    @Override
+    public String readName(SecretKey encKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        this.initCrypto();
+
+        Path directoryFile = Path.of(this.folderNamePath.toString(), this.folderNamePath.getFileName() + ".dir");
+        try (InputStream inputData = Files.newInputStream(directoryFile)) {
+            this.folderName = this.decryptHeader(encKey, inputData, (int) Math.min(Files.size(directoryFile), Integer.MAX_VALUE));
+        }
+        return this.folderName;
+    }
+
+    /**
+     * Public method to verify the header tag of the directory without creating it
+     *
+     * @param encKey key used to decrypt the header
+     * @throws IllegalArgumentException           the size of the directory file is not as expected
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException                the header is corrupt
+     * @throws InvalidKeyException                encryption key cannot be null
+     * @throws IOException
+     */
+    public void verify(SecretKey encKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        this.initCrypto();
+
+        Path directoryFile = Path.of(this.folderNamePath.toString(), this.folderNamePath.getFileName() + ".dir");
+        try (InputStream inputData = Files.newInputStream(directoryFile)) {
+            this.decryptHeader(encKey, inputData, (int) Math.min(Files.size(directoryFile), Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Public method to re-encrypt the header of the directory file with a new key, in place, keeping its IV
+     *
+     * @param oldKey key of the current header
+     * @param newKey key of the new header
+     * @return false if the header is already encrypted with the new key
+     * @throws AEADBadTagException                if the header is encrypted with neither key
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException
+     * @throws IOException
+     */
+    public boolean rekey(SecretKey oldKey, SecretKey newKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (oldKey == null || newKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        this.initCrypto();
+
+        Path directoryFile = Path.of(this.folderNamePath.toString(), this.folderNamePath.getFileName() + ".dir");
+        byte[] encrypted = Files.readAllBytes(directoryFile);
+        if (encrypted.length != IVLEN + 1 + FILENAME_MAX_SIZE + TAG_LEN) throw new AEADBadTagException("invalid header size");
+
+        byte[] encHeader = VaultFile.rekeyHeader(encrypted, this.headerIV, this.c, this.gen, oldKey, newKey);
+        if (encHeader == null) return false;
+
+        try (FileChannel channel = FileChannel.open(directoryFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(encHeader), IVLEN);
+            channel.force(false);
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] readEncHeader() throws IOException {
+        return Files.readAllBytes(Path.of(this.folderNamePath.toString(), this.folderNamePath.getFileName() + ".dir"));
+    }
+
+    @Override
+    public void writeEncHeader(byte[] header) throws IOException {
+        Path directoryFile = Path.of(this.folderNamePath.toString(), this.folderNamePath.getFileName() + ".dir");
+        try (FileChannel channel = FileChannel.open(directoryFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(header), 0);
+            channel.force(false);
+        }
+    }
+
     @Override
     public Path getRelPath(Path vaultPath) {
         return this.folderNamePath.subpath(vaultPath.normalize().getNameCount(), this.folderNamePath.getNameCount());
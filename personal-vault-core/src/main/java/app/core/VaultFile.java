@@ -0,0 +1,707 @@
+package app.core;
+
+import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static app.core.Constants.*;
+
+public class VaultFile implements VaultItem {
+
+    private SecureRandom gen; // random bytes generator, created on first use
+    private Cipher c; // created on first use
+    private byte[] headerIV; // Initialization Vector of the header
+    private SecretKey fileKey; // used to encrypt the content
+
+    private Path folderPath; // "./dir/dir2/"
+    private Path filenamePath; // "./dir/dir2/file.txt"
+    private String filename; // "file.txt"
+    private String encFilename; // updated by encryptHeader, it is the encrypted filename
+
+    /**
+     * Instantiate a file operation
+     *
+     * @param filenamePath name of the file to open
+     * @param encrypted    if true instance of Self decryption, if false instance of Self encryption
+     * @throws IOException              The path/filename is not a file or the file is not found
+     * @throws NoSuchPaddingException
+     * @throws NoSuchAlgorithmException
+     */
+    public VaultFile(Path filenamePath, boolean encrypted) throws IOException, NoSuchPaddingException, NoSuchAlgorithmException {
+        if (filenamePath == null) throw new IOException("filename cannot be null");
+        this.filenamePath = filenamePath.normalize();
+//        if (!(this.filenamePath.toFile().isFile())) {
+//            throw new IOException("Path '" + this.filenamePath + "' is not a file or not found");
+//        }
+
+        this.folderPath = this.filenamePath.getParent() != null ? this.filenamePath.getParent() : Path.of(".");
+
+        if (encrypted) {
+            this.encFilename = this.filenamePath.getFileName().toString();
+        } else {
+            this.filename = this.filenamePath.getFileName().toString();
+        }
+    }
+
+    /**
+     * Instantiate an encrypted file whose clear name is already known
+     *
+     * @param filenamePath path of the encrypted file
+     * @param filename     the clear filename (can be null if unknown)
+     * @throws IOException The path is not defined
+     */
+    public VaultFile(Path filenamePath, String filename) throws IOException {
+        if (filenamePath == null) throw new IOException("filename cannot be null");
+        this.filenamePath = filenamePath.normalize();
+        this.folderPath = this.filenamePath.getParent() != null ? this.filenamePath.getParent() : Path.of(".");
+        this.encFilename = this.filenamePath.getFileName().toString();
+        this.filename = filename;
+    }
+
+    /**
+     * Create the cipher and the random generator on first use: the items that are only listed do not hold them
+     */
+    private void initCrypto() {
+        if (this.c != null) return;
+        try {
+            this.c = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            // AES/GCM/NoPadding must be supported by every Java platform
+            throw new IllegalStateException(e);
+        }
+        this.gen = new SecureRandom();
+        this.headerIV = new byte[IVLEN];
+    }
+
+    /**
+     * Public method to encrypt the file
+     *
+     * @param srcPath path of the file to open
+     * @param encKey  key to use to encrypt the header
+     * @return the filename of the encrypted file
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidAlgorithmParameterException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws IOException
+     */
+    public String encrypt(Path srcPath, SecretKey encKey) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, IOException {
+        return this.encrypt(srcPath, encKey, null);
+    }
+
+    /**
+     * Public method to encrypt the file reporting the progress of every chunk
+     *
+     * @param srcPath path of the file to open
+     * @param encKey  key to use to encrypt the header
+     * @param tracker progress tracker of the operation (can be null); if cancelled the encryption stops between chunks
+     * @return the filename of the encrypted file
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidAlgorithmParameterException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws IOException
+     */
+    @Override
+    public String encrypt(Path srcPath, SecretKey encKey, ProgressTracker tracker) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        if (srcPath == null) throw new IOException("input file path cannot be null");
+        this.initCrypto();
+
+        if (!(srcPath.toFile().isFile())) {
+            throw new IOException("Path '" + srcPath + "' is not a file or not found");
+        }
+        srcPath = srcPath.normalize(); // remove redundant elements
+
+        try (InputStream inputData = Files.newInputStream(srcPath)) {
+            return this.encrypt(inputData, encKey, tracker);
+        }
+    }
+
+    /**
+     * Public method to encrypt a stream, e.g. an upload, writing every chunk as soon as it is read:
+     * the content is never held in memory
+     *
+     * @param inputData stream of the plaintext content, not closed
+     * @param encKey    key to use to encrypt the header
+     * @param tracker   progress tracker of the operation (can be null); if cancelled the partial output file is deleted
+     * @return the filename of the encrypted file
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidAlgorithmParameterException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws IOException
+     */
+    public String encrypt(InputStream inputData, SecretKey encKey, ProgressTracker tracker) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        if (inputData == null) throw new IOException("input stream cannot be null");
+        this.initCrypto();
+
+        byte[] encHeader = this.encryptHeader(encKey);
+
+        String encFilenameStr = Path.of(this.encFilename).normalize().getFileName().toString(); // this.encFilename updated in encryptHeader
+        Path encFilePath = Path.of(this.folderPath.toString(), encFilenameStr);
+        try (OutputStream encryptedOutput = new BufferedOutputStream(Files.newOutputStream(encFilePath), IVLEN + CHUNK_SIZE + TAG_LEN)) {
+            encryptedOutput.write(encHeader);
+            this.encryptContent(inputData, encryptedOutput, tracker);
+        } catch (Exception e) {
+            Files.deleteIfExists(encFilePath);
+            throw e;
+        }
+
+        this.filenamePath = this.filenamePath.getParent().resolve(encFilenameStr);
+        return encFilenameStr;
+    }
+
+    /**
+     * function to encrypt the header (called in encrypt())
+     *
+     * @param encKey key to use to encrypt the header
+     * @return encrypted bytes of full header
+     * @throws NoSuchAlgorithmException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidAlgorithmParameterException
+     */
+    private byte[] encryptHeader(SecretKey encKey) throws NoSuchAlgorithmException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        KeyGenerator keygen = KeyGenerator.getInstance(KEY_GEN_ALGO);
+        keygen.init(KEY_SIZE_BITS, this.gen); // bits
+        this.fileKey = keygen.generateKey(); // used to encrypt content later
+        byte[] encodedKey = this.fileKey.getEncoded();
+        if (encodedKey.length != KEY_SIZE) {
+            throw new InvalidKeyException("encodedKey should be " + KEY_SIZE + ", not " + encodedKey.length + "?");
+        }
+
+        this.gen.nextBytes(this.headerIV);
+        GCMParameterSpec spec = new GCMParameterSpec(TAG_LEN_BITS, headerIV);
+        this.c.init(Cipher.ENCRYPT_MODE, encKey, spec, this.gen);
+
+        byte[] toEnc = new byte[KEY_SIZE + 1 + FILENAME_MAX_SIZE];
+        // first part is the fileKey, needed to decrypt content
+        System.arraycopy(encodedKey, 0, toEnc, 0, KEY_SIZE);
+
+        byte[] filenameBytes = this.filename.getBytes();
+        if (filenameBytes.length > FILENAME_MAX_SIZE) {
+            throw new IllegalBlockSizeException("filename should be <= " + FILENAME_MAX_SIZE + " bytes, instead it is" + filenameBytes.length + " bytes long");
+        }
+        // second part is the plain filename length expressed in a single byte
+        toEnc[KEY_SIZE] = (byte) filenameBytes.length;
+
+        // third part is the filename value
+        System.arraycopy(filenameBytes, 0, toEnc, KEY_SIZE + 1, filenameBytes.length);
+
+        byte[] encHeader = this.c.doFinal(toEnc);
+
+        byte[] output = new byte[IVLEN + encHeader.length];
+        System.arraycopy(headerIV, 0, output, 0, IVLEN);
+        System.arraycopy(encHeader, 0, output, IVLEN, encHeader.length);
+
+        String tempEncFilename = Base64.getUrlEncoder().encodeToString(encHeader);
+        tempEncFilename = tempEncFilename.substring(0, Math.min(tempEncFilename.length(), 15));
+        this.encFilename = tempEncFilename;
+
+        return output;
+    }
+
+
+    /**
+     * function to encrypt the content (called in encrypt()); every chunk but the last one holds
+     * exactly CHUNK_SIZE bytes, so that a chunk can be located from a plaintext offset
+     *
+     * @param is      stream of the plaintext content
+     * @param output  stream of the encrypted file, after the header
+     * @param tracker progress tracker of the operation (can be null)
+     * @throws IOException
+     * @throws InvalidAlgorithmParameterException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     */
+    private void encryptContent(InputStream is, OutputStream output, ProgressTracker tracker) throws IOException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        byte[] iv = new byte[IVLEN];
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int bytesRead;
+        int chunkIndex = 0;
+        while ((bytesRead = is.readNBytes(buffer, 0, CHUNK_SIZE)) > 0) {
+            this.gen.nextBytes(iv);
+            GCMParameterSpec spec = new GCMParameterSpec(TAG_LEN_BITS, iv);
+            this.c.init(Cipher.ENCRYPT_MODE, this.fileKey, spec, this.gen);
+
+            this.c.updateAAD(String.format("%d", chunkIndex).getBytes());
+            this.c.updateAAD(this.headerIV);
+
+            byte[] encryptedChunkContent = this.c.doFinal(buffer, 0, bytesRead);
+            output.write(iv); // first part of chuck is iv
+            output.write(encryptedChunkContent); // second part of chuck is the encrypted content
+
+            chunkIndex++;
+            if (tracker != null) {
+                tracker.chunkDone(bytesRead);
+            }
+        }
+    }
+
+
+    /**
+     * Public method to decrypt the file
+     *
+     * @param dstFolderPath destination folder path of the output file
+     * @param encKey        key to use to decrypt the header
+     * @return the original plaintext filename
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException
+     * @throws IOException
+     */
+    public String decrypt(Path dstFolderPath, SecretKey encKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        return this.decrypt(dstFolderPath, encKey, null);
+    }
+
+    /**
+     * Public method to decrypt the file reporting the progress of every chunk
+     *
+     * @param dstFolderPath destination folder path of the output file
+     * @param encKey        key to use to decrypt the header
+     * @param tracker       progress tracker of the operation (can be null); if cancelled the partial output file is deleted
+     * @return the original plaintext filename
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException
+     * @throws IOException
+     */
+    @Override
+    public String decrypt(Path dstFolderPath, SecretKey encKey, ProgressTracker tracker) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        if (dstFolderPath == null) throw new IOException("destination folder path cannot be null");
+        this.initCrypto();
+
+        Path inputFilePath = this.filenamePath;
+        if (Files.size(inputFilePath) >= Integer.MAX_VALUE) {
+            throw new IOException("File '" + inputFilePath + "' is too large");
+        }
+        int dstFileSize = (int) Files.size(inputFilePath); // MAX 2.14 GB !!!
+        InputStream inputData = Files.newInputStream(inputFilePath); // input file stream
+
+        this.filename = this.decryptHeader(encKey, inputData, dstFileSize);
+
+        dstFolderPath = dstFolderPath.normalize(); // remove redundant elements
+        Path dstFilePath = Path.of(dstFolderPath.toString(), this.filename).normalize();
+
+        // if a file with the same name already exists, we append an index to the new one to not overwrite the previous one
+        if (dstFilePath.toFile().exists()) {
+            int index = 0;
+            do {
+                dstFilePath = Path.of(dstFolderPath.toString(), index + "-" + this.filename).normalize();
+                index++;
+            } while (dstFilePath.toFile().exists());
+        }
+
+        try {
+            this.decryptContent(dstFilePath, inputData, dstFileSize, tracker);
+        } catch (Exception e) {
+            Files.deleteIfExists(dstFilePath);
+            throw e;
+        }
+
+        return dstFilePath.getFileName().toString();
+    }
+
+    /**
+     * Public method to decrypt the header only, e.g. to list the vault content without revealing it
+     *
+     * @param encKey key to use to decrypt the header
+     * @return the original plaintext filename
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException
+     * @throws IOException
+     */
+    @Override
+    public String readName(SecretKey encKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        this.initCrypto();
+
+        final int HEADER_FULL_SIZE = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN;
+        try (InputStream inputData = Files.newInputStream(this.filenamePath)) {
+            byte[] header = inputData.readNBytes(HEADER_FULL_SIZE);
+            if (header.length < HEADER_FULL_SIZE) throw new AEADBadTagException("truncated header");
+            this.filename = this.decryptHeader(encKey, new ByteArrayInputStream(header), header.length);
+        }
+        return this.filename;
+    }
+
+    /**
+     * function to decrypt the header (called in decrypt())
+     *
+     * @param encKey    key to use to encrypt the header
+     * @param inputData stream of the encrypted file
+     * @param inputSize size of the encrypted file
+     * @return the original plaintext filename
+     * @throws InvalidAlgorithmParameterException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws IOException
+     */
+    private String decryptHeader(SecretKey encKey, InputStream inputData, int inputSize) throws InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, IOException {
+        int headerFullSize = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN; // last TAG_LEN bytes are GCM authentication tag
+        byte[] encrypted = new byte[headerFullSize];
+        inputData.read(encrypted);
+
+        // first part of the full header data is the IV
+        System.arraycopy(encrypted, 0, this.headerIV, 0, IVLEN);
+        GCMParameterSpec spec = new GCMParameterSpec(TAG_LEN_BITS, this.headerIV);
+        this.c.init(Cipher.DECRYPT_MODE, encKey, spec, this.gen);
+
+        byte[] ciphertext = new byte[headerFullSize - IVLEN];
+        // second part of the full header data is the full ciphertext
+        System.arraycopy(encrypted, IVLEN, ciphertext, 0, ciphertext.length);
+
+        byte[] headerContent = this.c.doFinal(ciphertext);
+
+        byte[] fKey = new byte[KEY_SIZE];
+        // first part of ciphertext is the fileKey
+        System.arraycopy(headerContent, 0, fKey, 0, KEY_SIZE);
+        this.fileKey = new SecretKeySpec(fKey, 0, fKey.length, KEY_GEN_ALGO);
+
+        // second part is the plain filename length expressed in a byte
+        int filenameSize = headerContent[KEY_SIZE];
+
+        // third part is the filename value
+        byte[] filename = new byte[filenameSize];
+        System.arraycopy(headerContent, KEY_SIZE + 1, filename, 0, filenameSize);
+
+        String filenameStr = new String(filename, StandardCharsets.UTF_8);
+        return filenameStr;
+    }
+
+    /**
+     * function to decrypt the content (called in decrypt())
+     *
+     * @param outputFilePath path of the plaintext file to be written
+     * @param fileData       stream of the encrypted file
+     * @param inputSize      size of the encrypted file
+     * @param tracker        progress tracker of the operation (can be null)
+     * @throws IOException
+     * @throws InvalidAlgorithmParameterException
+     * @throws InvalidKeyException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     */
+    private void decryptContent(Path outputFilePath, InputStream fileData, int inputSize, ProgressTracker tracker) throws IOException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        final int HEADER_FULL_SIZE = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN;
+
+        byte[] contentData = new byte[inputSize - HEADER_FULL_SIZE];
+        fileData.read(contentData);
+
+        byte[] iv = new byte[IVLEN];
+        ByteArrayInputStream is = new ByteArrayInputStream(contentData); // input file stream to read chunks
+        OutputStream outputFile = Files.newOutputStream(outputFilePath);
+
+        // chunk: first part is IV, then the actual content plus the TAG_LEN bytes GCM authentication tag
+        byte[] buffer = new byte[IVLEN + CHUNK_SIZE + TAG_LEN];
+        int bytesRead;
+        int chunkIndex = 0;
+        while ((bytesRead = is.read(buffer)) != -1) {
+            // first part is the IV
+            System.arraycopy(buffer, 0, iv, 0, IVLEN);
+            GCMParameterSpec spec = new GCMParameterSpec(TAG_LEN_BITS, iv);
+            this.c.init(Cipher.DECRYPT_MODE, this.fileKey, spec, this.gen);
+
+            // Set AAD for chunk decryption
+            this.c.updateAAD(String.format("%d", chunkIndex).getBytes()); // Chunk ID
+            this.c.updateAAD(this.headerIV); // Header IV
+
+            // second part is the ciphertext
+            byte[] decryptedChunk = this.c.doFinal(buffer, IVLEN, bytesRead - IVLEN); // Decrypt the chunk
+
+            outputFile.write(decryptedChunk);
+
+            chunkIndex++;
+            if (tracker != null) {
+                try {
+                    tracker.chunkDone(bytesRead);
+                } catch (CancellationException e) {
+                    outputFile.close();
+                    throw e;
+                }
+            }
+        }
+
+        is.close();
+        outputFile.close();
+    }
+
+    /**
+     * Compute the plaintext size from the size of the encrypted file, without decrypting it
+     *
+     * @return the size of the content in bytes
+     * @throws IOException if the size is not the one of an encrypted file
+     */
+    public long getPlainSize() throws IOException {
+        final int HEADER_FULL_SIZE = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN;
+        final int CHUNK_FULL_SIZE = IVLEN + CHUNK_SIZE + TAG_LEN;
+
+        long contentSize = Files.size(this.filenamePath) - HEADER_FULL_SIZE;
+        long lastChunk = contentSize % CHUNK_FULL_SIZE;
+        if (contentSize < 0 || (lastChunk > 0 && lastChunk <= IVLEN + TAG_LEN)) {
+            throw new IOException("Invalid encrypted file size: " + this.filenamePath);
+        }
+        return contentSize / CHUNK_FULL_SIZE * CHUNK_SIZE + (lastChunk > 0 ? lastChunk - IVLEN - TAG_LEN : 0);
+    }
+
+    /**
+     * Public method to decrypt a range of the content to a stream: only the header and the chunks
+     * overlapping the range are read and decrypted
+     *
+     * @param encKey key to use to decrypt the header
+     * @param offset first byte of the range in the plaintext
+     * @param length length of the range; it must not exceed the plaintext size
+     * @param output stream of the plaintext range, not closed
+     * @throws AEADBadTagException                if the header or a chunk of the range is corrupt
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException
+     * @throws IOException                        if the range exceeds the content
+     */
+    public void decryptRange(SecretKey encKey, long offset, long length, OutputStream output) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        if (offset < 0 || length < 0) throw new IOException("invalid range");
+        this.initCrypto();
+
+        final int HEADER_FULL_SIZE = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN;
+        final int CHUNK_FULL_SIZE = IVLEN + CHUNK_SIZE + TAG_LEN;
+
+        try (FileChannel channel = FileChannel.open(this.filenamePath, StandardOpenOption.READ)) {
+            byte[] header = new byte[HEADER_FULL_SIZE];
+            if (readFully(channel, header, 0) < HEADER_FULL_SIZE) throw new AEADBadTagException("truncated header");
+            this.filename = this.decryptHeader(encKey, new ByteArrayInputStream(header), header.length);
+
+            byte[] buffer = new byte[CHUNK_FULL_SIZE];
+            byte[] plaintext = new byte[CHUNK_SIZE + TAG_LEN]; // overwritten by every chunk
+            byte[] iv = new byte[IVLEN];
+            long end = offset + length;
+            for (long chunkIndex = offset / CHUNK_SIZE; chunkIndex * CHUNK_SIZE < end; chunkIndex++) {
+                int bytesRead = readFully(channel, buffer, HEADER_FULL_SIZE + chunkIndex * CHUNK_FULL_SIZE);
+                if (bytesRead <= IVLEN + TAG_LEN) throw new IOException("range beyond the end of the file");
+
+                System.arraycopy(buffer, 0, iv, 0, IVLEN);
+                this.c.init(Cipher.DECRYPT_MODE, this.fileKey, new GCMParameterSpec(TAG_LEN_BITS, iv), this.gen);
+                this.c.updateAAD(String.format("%d", chunkIndex).getBytes()); // Chunk ID
+                this.c.updateAAD(this.headerIV); // Header IV
+
+                int plainLength;
+                try {
+                    plainLength = this.c.doFinal(buffer, IVLEN, bytesRead - IVLEN, plaintext);
+                } catch (ShortBufferException e) {
+                    // the plaintext buffer holds a whole chunk
+                    throw new IllegalStateException(e);
+                }
+
+                int from = (int) Math.max(0, offset - chunkIndex * CHUNK_SIZE);
+                int to = (int) Math.min(plainLength, end - chunkIndex * CHUNK_SIZE);
+                if (to < end - chunkIndex * CHUNK_SIZE && plainLength < CHUNK_SIZE) throw new IOException("range beyond the end of the file");
+                output.write(plaintext, from, to - from);
+            }
+        }
+    }
+
+    /**
+     * Read from a position until the buffer is full or the end of the file
+     *
+     * @return the number of bytes read
+     */
+    private static int readFully(FileChannel channel, byte[] buffer, long position) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) break;
+        }
+        return target.position();
+    }
+
+    /**
+     * Public method to verify the header and chunk tags of the file without writing the plaintext;
+     * the file is streamed one chunk at a time
+     *
+     * @param encKey  key to use to decrypt the header
+     * @param limiter limiter of the bytes read per second (can be null)
+     * @return the indexes of the chunks whose tag is not valid; empty if the file is intact
+     * @throws AEADBadTagException                if the header is corrupt: the chunks cannot be verified
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException
+     * @throws IOException
+     */
+    public List<Integer> verify(SecretKey encKey, RateLimiter limiter) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (encKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        this.initCrypto();
+
+        final int HEADER_FULL_SIZE = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN;
+        List<Integer> corruptChunks = new ArrayList<>();
+
+        try (InputStream inputData = Files.newInputStream(this.filenamePath)) {
+            byte[] header = inputData.readNBytes(HEADER_FULL_SIZE);
+            if (header.length < HEADER_FULL_SIZE) throw new AEADBadTagException("truncated header");
+            if (limiter != null) limiter.acquire(header.length);
+            this.decryptHeader(encKey, new ByteArrayInputStream(header), header.length);
+
+            // chunk: first part is IV, then the actual content plus the TAG_LEN bytes GCM authentication tag
+            byte[] buffer = new byte[IVLEN + CHUNK_SIZE + TAG_LEN];
+            byte[] plaintext = new byte[CHUNK_SIZE + TAG_LEN]; // overwritten by every chunk
+            byte[] iv = new byte[IVLEN];
+            int bytesRead;
+            int chunkIndex = 0;
+            while ((bytesRead = inputData.readNBytes(buffer, 0, buffer.length)) > 0) {
+                if (limiter != null) limiter.acquire(bytesRead);
+
+                if (bytesRead < IVLEN + TAG_LEN) {
+                    corruptChunks.add(chunkIndex); // truncated chunk
+                    break;
+                }
+                System.arraycopy(buffer, 0, iv, 0, IVLEN);
+                this.c.init(Cipher.DECRYPT_MODE, this.fileKey, new GCMParameterSpec(TAG_LEN_BITS, iv), this.gen);
+                this.c.updateAAD(String.format("%d", chunkIndex).getBytes()); // Chunk ID
+                this.c.updateAAD(this.headerIV); // Header IV
+
+                try {
+                    this.c.doFinal(buffer, IVLEN, bytesRead - IVLEN, plaintext);
+                } catch (AEADBadTagException e) {
+                    corruptChunks.add(chunkIndex);
+                } catch (ShortBufferException e) {
+                    // the plaintext buffer holds a whole chunk
+                    throw new IllegalStateException(e);
+                }
+                chunkIndex++;
+            }
+        }
+
+        return corruptChunks;
+    }
+
+    /**
+     * Public method to re-encrypt the header with a new key, in place: the content is neither read nor written.
+     * The header IV is kept because it authenticates the chunks; GCM only requires an IV to be unique per key
+     *
+     * @param oldKey key of the current header
+     * @param newKey key of the new header
+     * @return false if the header is already encrypted with the new key
+     * @throws AEADBadTagException                if the header is encrypted with neither key
+     * @throws InvalidAlgorithmParameterException
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException
+     * @throws InvalidKeyException
+     * @throws IOException
+     */
+    public boolean rekey(SecretKey oldKey, SecretKey newKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        if (oldKey == null || newKey == null) throw new InvalidKeyException("encryption key cannot be null");
+        this.initCrypto();
+
+        final int HEADER_FULL_SIZE = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN;
+        try (FileChannel channel = FileChannel.open(this.filenamePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_FULL_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+            if (header.hasRemaining()) throw new AEADBadTagException("truncated header");
+
+            byte[] encHeader = rekeyHeader(header.array(), this.headerIV, this.c, this.gen, oldKey, newKey);
+            if (encHeader == null) return false;
+
+            channel.write(ByteBuffer.wrap(encHeader), IVLEN);
+            channel.force(false);
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] readEncHeader() throws IOException {
+        final int HEADER_FULL_SIZE = IVLEN + KEY_SIZE + 1 + FILENAME_MAX_SIZE + TAG_LEN;
+        try (InputStream in = Files.newInputStream(this.filenamePath)) {
+            byte[] header = in.readNBytes(HEADER_FULL_SIZE);
+            if (header.length < HEADER_FULL_SIZE) throw new IOException("truncated header");
+            return header;
+        }
+    }
+
+    @Override
+    public void writeEncHeader(byte[] header) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.filenamePath, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(header), 0);
+            channel.force(false);
+        }
+    }
+
+    /**
+     * function to re-encrypt a header keeping its IV (called in rekey())
+     *
+     * @param encrypted the full header: IV and ciphertext with the GCM tag
+     * @param iv        filled with the IV of the header
+     * @return the new ciphertext with the GCM tag; null if the header is already encrypted with the new key
+     * @throws AEADBadTagException if the header is encrypted with neither key
+     */
+    static byte[] rekeyHeader(byte[] encrypted, byte[] iv, Cipher c, SecureRandom gen, SecretKey oldKey, SecretKey newKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException {
+        System.arraycopy(encrypted, 0, iv, 0, IVLEN);
+        GCMParameterSpec spec = new GCMParameterSpec(TAG_LEN_BITS, iv);
+
+        // An interrupted rotation can have already rewritten the header
+        try {
+            c.init(Cipher.DECRYPT_MODE, newKey, spec, gen);
+            c.doFinal(encrypted, IVLEN, encrypted.length - IVLEN);
+            return null;
+        } catch (AEADBadTagException e) {
+            // Still encrypted with the old key
+        }
+
+        c.init(Cipher.DECRYPT_MODE, oldKey, spec, gen);
+        byte[] headerContent = c.doFinal(encrypted, IVLEN, encrypted.length - IVLEN);
+        c.init(Cipher.ENCRYPT_MODE, newKey, spec, gen);
+        byte[] encHeader = c.doFinal(headerContent);
+        Arrays.fill(headerContent, (byte) 0);
+        return encHeader;
+    }
+
+    @Override
+    public Path getRelPath(Path vaultPath) {
+        return this.filenamePath.subpath(vaultPath.normalize().getNameCount(), this.filenamePath.getNameCount());
+    }
+
+    @Override
+    public Path getAbsPath() {
+        return this.filenamePath;
+    }
+
+    @Override
+    public String getName() {
+        return this.filename;
+    }
+
+    @Override
+    public String getEncName() {
+        return this.encFilename;
+    }
+
+}
\ No newline at end of file
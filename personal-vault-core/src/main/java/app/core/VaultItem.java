@@ -0,0 +1,63 @@
+package app.core;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+
+public interface VaultItem {
+    public String encrypt(Path srcPath, SecretKey encKey) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, IOException;
+
+    public String decrypt(Path dstPath, SecretKey encKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException;
+
+    public default String encrypt(Path srcPath, SecretKey encKey, ProgressTracker tracker) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, IOException {
+        return encrypt(srcPath, encKey);
+    }
+
+    public default String decrypt(Path dstPath, SecretKey encKey, ProgressTracker tracker) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException {
+        return decrypt(dstPath, encKey);
+    }
+
+    /**
+     * Decrypt only the header to read the original name, without writing anything
+     *
+     * @param encKey key used to decrypt the header
+     * @return the original plaintext name
+     */
+    public String readName(SecretKey encKey) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException, IOException;
+
+    /**
+     * Read the encrypted header as stored, e.g. to keep a copy before rewriting it in place
+     *
+     * @return the header bytes, IV included
+     */
+    public byte[] readEncHeader() throws IOException;
+
+    /**
+     * Write back an encrypted header read by readEncHeader() and force it to the storage device
+     *
+     * @param header the header bytes, IV included
+     */
+    public void writeEncHeader(byte[] header) throws IOException;
+
+    public Path getRelPath(Path vaultPath);
+
+    public Path getAbsPath();
+
+    public String getName();
+
+    public String getEncName();
+
+    public static class VaultItemComparator implements Comparator<VaultItem> {
+        @Override
+        public int compare(VaultItem vaultItem1, VaultItem vaultItem2) {
+            return -vaultItem1.getAbsPath().compareTo(vaultItem2.getAbsPath());
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package app.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static app.core.Constants.*;
+
+/**
+ * Snapshot of the registered vaults and of their statistics, read with a single file at startup.
+ * <pre>
+ *   header  HEADER, format version
+ *   lines   vid, configuration mtime, checksums mtime, items, bytes, last verified, storage path (tab separated)
+ * </pre>
+ * A snapshot is stale when the modification time of the configuration or of the tree checksum files
+ * changed, since every operation on the items rewrites the checksums. Unknown statistics are -1.
+ */
+public class VaultRegistry {
+
+  public static final int FORMAT_VERSION = 1;
+
+  private static final String HEADER = "PersonalVault registry";
+  private static final String SEPARATOR = "\t";
+  private static final int FIELDS = 7;
+
+  private final Path file;
+  private final Map<Path, Entry> entries;   // By absolute storage path, in registration order
+  private Runnable listener;
+  private final Object saveLock = new Object();   // The saves share the temporary file: one at a time
+
+  public static class Entry {
+    private final UUID vid;
+    private final Path storagePath;
+    private final long confModified;
+    private final long treeModified;
+    private final long items;
+    private final long bytes;
+    private final long lastVerified;
+
+    Entry(UUID vid, Path storagePath, long confModified, long treeModified, long items, long bytes, long lastVerified) {
+      this.vid = vid;
+      this.storagePath = storagePath;
+      this.confModified = confModified;
+      this.treeModified = treeModified;
+      this.items = items;
+      this.bytes = bytes;
+      this.lastVerified = lastVerified;
+    }
+
+    public UUID getVid() {
+      return this.vid;
+    }
+
+    public Path getStoragePath() {
+      return this.storagePath;
+    }
+
+    /**
+     * @return the number of items, -1 if unknown
+     */
+    public long getItems() {
+      return this.items;
+    }
+
+    /**
+     * @return the total size of the encrypted items in bytes, -1 if unknown
+     */
+    public long getBytes() {
+      return this.bytes;
+    }
+
+    /**
+     * @return the time of the last successful integrity check in milliseconds, 0 if never
+     */
+    public long getLastVerified() {
+      return this.lastVerified;
+    }
+
+    public boolean hasStats() {
+      return this.items >= 0;
+    }
+  }
+
+  private VaultRegistry(Path file) {
+    this.file = file;
+    this.entries = new LinkedHashMap<>();
+  }
+
+  /**
+   * Create an empty registry, replacing the file at the first save
+   *
+   * @param file The registry file
+   */
+  public static VaultRegistry create(Path file) {
+    return new VaultRegistry(file);
+  }
+
+  /**
+   * Read the registry; without it, the vaults are taken from the list of storage paths of the
+   * older versions, if present, and their statistics are unknown
+   *
+   * @param file       The registry file
+   * @param legacyFile The list of storage paths, one per line (can be null)
+   *
+   * @return the registry
+   * @throws IOException if the registry cannot be read
+   */
+  public static VaultRegistry load(Path file, Path legacyFile) throws IOException {
+    VaultRegistry registry = new VaultRegistry(file);
+
+    if (Files.exists(file)) {
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      if (lines.isEmpty() || !lines.get(0).equals(HEADER + " " + FORMAT_VERSION)) {
+        throw new IOException("Invalid vault registry");
+      }
+      for (String line : lines.subList(1, lines.size())) {
+        Entry entry = parse(line);
+        if (entry == null) {
+          System.err.println("Invalid vault registry line, skipped");
+          continue;
+        }
+        registry.entries.put(entry.storagePath, entry);
+      }
+    } else if (legacyFile != null && Files.exists(legacyFile)) {
+      for (String path : Files.readAllLines(legacyFile)) {
+        if (path.isBlank()) { continue; }
+        Path storagePath = Path.of(path).toAbsolutePath();
+        UUID vid = findVid(storagePath);
+        if (vid != null) { registry.entries.put(storagePath, new Entry(vid, storagePath, 0, 0, -1, -1, 0)); }
+      }
+    }
+    return registry;
+  }
+
+  private static Entry parse(String line) {
+    String[] fields = line.split(SEPARATOR, FIELDS);
+    if (fields.length != FIELDS) { return null; }
+    try {
+      return new Entry(UUID.fromString(fields[0]), Path.of(fields[6]), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                       Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the vault id from the name of the configuration file in a storage directory
+   *
+   * @return the id, null if there is not a single configuration file
+   */
+  private static UUID findVid(Path storagePath) {
+    try (Stream<Path> files = Files.list(storagePath)) {
+      List<Path> confs = files.filter(p -> p.getFileName().toString().endsWith(CONF_FILE_EXT)).toList();
+      if (confs.size() != 1) { return null; }
+      String name = confs.get(0).getFileName().toString();
+      return UUID.fromString(name.substring(0, name.length() - CONF_FILE_EXT.length()));
+    } catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Set the action run after every save of the registry (can be null); it runs on the saving thread
+   */
+  public synchronized void setListener(Runnable listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @return the entries in registration order
+   */
+  public synchronized List<Entry> getEntries() {
+    return new ArrayList<>(this.entries.values());
+  }
+
+  /**
+   * @return the entry of a storage path, null if the vault is not registered
+   */
+  public synchronized Entry get(Path storagePath) {
+    return this.entries.get(storagePath.toAbsolutePath());
+  }
+
+  /**
+   * Register exactly the given vaults, keeping the snapshot of the ones already registered
+   *
+   * @param vaults The vaults
+   */
+  public synchronized void retain(Collection<Vault> vaults) {
+    Map<Path, Entry> retained = new LinkedHashMap<>();
+    for (Vault vault : vaults) {
+      Path storagePath = vault.getStoragePath().toAbsolutePath();
+      Entry entry = this.entries.get(storagePath);
+      retained.put(storagePath, entry != null ? entry : new Entry(vault.getVid(), storagePath, 0, 0, -1, -1, 0));
+    }
+    this.entries.clear();
+    this.entries.putAll(retained);
+  }
+
+  /**
+   * Record a successful integrity check of a registered vault
+   *
+   * @param vault The vault
+   * @param time  The time of the check in milliseconds
+   */
+  public synchronized void markVerified(Vault vault, long time) {
+    Entry entry = this.entries.get(vault.getStoragePath().toAbsolutePath());
+    if (entry == null) { return; }
+    this.entries.put(entry.storagePath, new Entry(entry.vid, entry.storagePath, entry.confModified, entry.treeModified, entry.items, entry.bytes, time));
+  }
+
+  /**
+   * Recompute the statistics of the stale entries, walking their storage trees;
+   * it runs without holding the registry, so it can be called from a background thread
+   *
+   * @return true if an entry changed
+   */
+  public boolean revalidate() {
+    boolean changed = false;
+    for (Entry entry : getEntries()) {
+      Entry scanned;
+      try {
+        long confModified = modifiedTime(entry.storagePath.resolve(entry.vid + CONF_FILE_EXT));
+        long treeModified = treeModifiedTime(entry.storagePath, entry.vid);
+        if (entry.hasStats() && confModified == entry.confModified && treeModified == entry.treeModified) { continue; }
+        scanned = scan(entry, confModified, treeModified);
+      } catch (IOException e) {
+        System.err.println("Cannot read vault " + entry.storagePath);
+        continue;
+      }
+
+      synchronized (this) {
+        // Skip the vaults removed in the meantime
+        Entry current = this.entries.get(entry.storagePath);
+        if (current == null) { continue; }
+        this.entries.put(entry.storagePath, new Entry(current.vid, current.storagePath, scanned.confModified, scanned.treeModified,
+                                                      scanned.items, scanned.bytes, current.lastVerified));
+      }
+      changed = true;
+    }
+    return changed;
+  }
+
+  private static Entry scan(Entry entry, long confModified, long treeModified) throws IOException {
+    long[] stats = new long[2];
+    try (Stream<Path> files = Files.walk(entry.storagePath)) {
+      files.forEach(path -> {
+        if (path.equals(entry.storagePath) || Vault.isMetadataFile(path)) { return; }
+        try {
+          BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+          stats[0]++;
+          if (attrs.isRegularFile()) { stats[1] += attrs.size(); }
+        } catch (IOException e) {
+          // Removed during the walk
+        }
+      });
+    }
+    return new Entry(entry.vid, entry.storagePath, confModified, treeModified, stats[0], stats[1], entry.lastVerified);
+  }
+
+  private static long treeModifiedTime(Path storagePath, UUID vid) throws IOException {
+    return Math.max(modifiedTime(storagePath.resolve(vid + CHKSUM_FILE_EXT)), modifiedTime(storagePath.resolve(vid + CHKSUM_BASE_FILE_EXT)));
+  }
+
+  private static long modifiedTime(Path file) throws IOException {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (NoSuchFileException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Save the registry replacing the file atomically, and notify the listener; 
+   * it can be called from any thread
+   *
+   * @throws IOException
+   */
+  public void save() throws IOException {
+    Runnable toNotify;
+    // The snapshot is taken under the save lock too: a later snapshot is never overwritten by an older one
+    synchronized (this.saveLock) {
+      StringBuilder content = new StringBuilder(HEADER + " " + FORMAT_VERSION + "\n");
+      synchronized (this) {
+        for (Entry e : this.entries.values()) {
+          content.append(e.vid).append(SEPARATOR).append(e.confModified).append(SEPARATOR).append(e.treeModified).append(SEPARATOR)
+                 .append(e.items).append(SEPARATOR).append(e.bytes).append(SEPARATOR).append(e.lastVerified).append(SEPARATOR)
+                 .append(e.storagePath).append('\n');
+        }
+        toNotify = this.listener;
+      }
+
+      if (this.file.toAbsolutePath().getParent() != null) { Files.createDirectories(this.file.toAbsolutePath().getParent()); }
+      Path tmp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+      Files.writeString(tmp, content, StandardCharsets.UTF_8);
+      Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    if (toNotify != null) { toNotify.run(); }
+  }
+}
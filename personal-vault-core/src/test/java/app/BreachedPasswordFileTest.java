@@ -0,0 +1,90 @@
+package app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import app.core.BreachedPasswordFile;
+import app.core.KeyDerivator;
+
+import static app.core.Constants.BREACHED_FILE_PROPERTY;
+
+public class BreachedPasswordFileTest {
+
+  private final Path dump = Path.of("./breached-test.txt");
+  private final Path bin = Path.of("./breached-test.bin");
+
+  @After
+  public void deleteFiles() throws IOException {
+    System.clearProperty(BREACHED_FILE_PROPERTY);
+    Files.deleteIfExists(dump);
+    Files.deleteIfExists(bin);
+  }
+
+  private static String sha1(String password) throws Exception {
+    byte[] hash = MessageDigest.getInstance("SHA-1").digest(password.getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().withUpperCase().formatHex(hash);
+  }
+
+  private void writeDump(String... passwords) throws Exception {
+    List<String> lines = new ArrayList<>();
+    for (String password : passwords) { lines.add(sha1(password) + ":" + password.length()); }
+    lines.sort(null);
+    Files.write(dump, lines);
+  }
+
+  @Test
+  public void testContains() throws Exception {
+    List<String> passwords = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) { passwords.add("password" + i); }
+    writeDump(passwords.toArray(new String[0]));
+
+    assertEquals(1000, BreachedPasswordFile.build(dump, bin));
+    try (BreachedPasswordFile file = BreachedPasswordFile.open(bin)) {
+      assertEquals(1000, file.size());
+      for (String password : passwords) { assertTrue(file.contains(password)); }
+      assertFalse(file.contains("password1000"));
+      assertFalse(file.contains("SecretP@ssword1234"));
+    }
+  }
+
+  @Test
+  public void testOfflineCheck() throws Exception {
+    writeDump("ciao", "Qwerty@123456");
+    BreachedPasswordFile.build(dump, bin);
+    System.setProperty(BREACHED_FILE_PROPERTY, bin.toString());
+
+    // The local file is used instead of the online API
+    assertTrue(KeyDerivator.isBreached("ciao"));
+    assertFalse(KeyDerivator.isBreached("SecretP@ssword1234"));
+    try {
+      KeyDerivator.validatePassword("Qwerty@123456");
+      Assert.fail("InvalidPasswordException not thrown");
+    } catch (KeyDerivator.InvalidPasswordException e) {}
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnsortedDump() throws Exception {
+    Files.write(dump, List.of(sha1("b"), sha1("a")).stream().sorted((x, y) -> y.compareTo(x)).toList());
+    BreachedPasswordFile.build(dump, bin);
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidFile() throws Exception {
+    Files.write(bin, new byte[100]);
+    BreachedPasswordFile.open(bin);
+  }
+}
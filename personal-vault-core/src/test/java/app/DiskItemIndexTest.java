@@ -0,0 +1,132 @@
+package app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import app.core.DiskItemIndex;
+import app.core.DiskItemIndex.Entry;
+
+public class DiskItemIndexTest {
+
+  private final Path root = Path.of("./index-test");
+  private final Path file = Path.of("./index-test.idx");
+  private final List<Path> items = new ArrayList<>();
+
+  @Before
+  public void createTree() throws IOException {
+    // 3 directories with 10 files each, created in non sorted order
+    for (int d = 2; d >= 0; d--) {
+      Path dir = root.resolve("d" + d);
+      Files.createDirectories(dir);
+      this.items.add(Path.of("d" + d));
+      for (int f = 9; f >= 0; f--) {
+        Files.write(dir.resolve("f" + f), new byte[f]);
+        this.items.add(Path.of("d" + d, "f" + f));
+      }
+    }
+  }
+
+  @After
+  public void deleteTree() throws IOException {
+    Files.walk(root).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    Files.deleteIfExists(file);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidParams() throws Exception {
+    DiskItemIndex.build(root, file, p -> true, 0, 0, 1);
+  }
+
+  @Test
+  public void testLookup() throws Exception {
+    // Small segments and interval: the records are merged from several segments
+    DiskItemIndex.build(root, file, p -> !p.equals(root), 42, 7, 4);
+    DiskItemIndex index = DiskItemIndex.open(file);
+
+    assertEquals(42, index.getVersion());
+    assertEquals(this.items.size(), index.size());
+    for (Path item : this.items) {
+      Entry entry = index.lookup(item);
+      assertEquals(item, entry.getPath());
+      assertEquals(Files.isDirectory(root.resolve(item)), entry.isDirectory());
+      assertEquals(Files.isDirectory(root.resolve(item)) ? 0 : Files.size(root.resolve(item)), entry.getSize());
+    }
+
+    assertNull(index.lookup(Path.of("d3")));
+    assertNull(index.lookup(Path.of("d0", "f10")));
+    assertNull(index.lookup(Path.of("a")));
+    assertNull(index.lookup(Path.of("z")));
+    index.close();
+  }
+
+  @Test
+  public void testIterator() throws Exception {
+    DiskItemIndex.build(root, file, p -> !p.equals(root), 0, 5, 3);
+    DiskItemIndex index = DiskItemIndex.open(file);
+
+    // Sorted by path: each directory precedes its content
+    Iterator<Entry> it = index.iterator();
+    String previous = "";
+    for (int i = 0; i < this.items.size(); i++) {
+      Entry entry = it.next();
+      assertTrue(previous.compareTo(entry.getPath().toString()) < 0);
+      assertTrue(entry.getPath().getParent() == null || previous.startsWith(entry.getPath().getParent().toString()));
+      previous = entry.getPath().toString();
+    }
+    assertFalse(it.hasNext());
+    index.close();
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    DiskItemIndex.build(root, file, p -> false, 0, 5, 3);
+    DiskItemIndex index = DiskItemIndex.open(file);
+
+    assertEquals(0, index.size());
+    assertNull(index.lookup(Path.of("d0")));
+    assertFalse(index.iterator().hasNext());
+    index.close();
+  }
+
+  @Test
+  public void testDamagedHeader() throws Exception {
+    DiskItemIndex.build(root, file, p -> true, 0, 5, 3);
+    byte[] valid = Files.readAllBytes(file);
+
+    // Interval, count and sparse index offset out of range
+    assertInvalid(valid, 20, ByteBuffer.allocate(4).putInt(0).array());
+    assertInvalid(valid, 12, ByteBuffer.allocate(8).putLong(Long.MAX_VALUE).array());
+    assertInvalid(valid, 12, ByteBuffer.allocate(8).putLong(1000).array());
+    assertInvalid(valid, 24, ByteBuffer.allocate(8).putLong(valid.length + 1).array());
+    assertInvalid(valid, 24, ByteBuffer.allocate(8).putLong(-1).array());
+  }
+
+  private void assertInvalid(byte[] valid, int offset, byte[] field) throws IOException {
+    byte[] damaged = valid.clone();
+    System.arraycopy(field, 0, damaged, offset, field.length);
+    Files.write(file, damaged);
+    try {
+      DiskItemIndex.open(file).close();
+      fail("IOException not thrown");
+    } catch (IOException e) {
+      assertEquals("Invalid item index", e.getMessage());
+    }
+  }
+}
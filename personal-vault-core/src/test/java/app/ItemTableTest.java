@@ -0,0 +1,117 @@
+package app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import app.core.ItemTable;
+
+public class ItemTableTest {
+
+  private static final int ITEMS = 10000, FILES_PER_DIR = 100;
+
+  @Test
+  public void testPaths() {
+    ItemTable table = new ItemTable();
+    int dir = table.add(ItemTable.ROOT, "encDir", true, "dir");
+    int file = table.add(dir, "encFile", false, null);
+
+    assertEquals(dir, table.find(Path.of("encDir")));
+    assertEquals(file, table.find(Path.of("encDir", "encFile")));
+    assertEquals(ItemTable.NOT_FOUND, table.find(Path.of("encFile")));
+    assertEquals(Path.of("encDir", "encFile"), table.getPath(file));
+    assertTrue(table.isDirectory(dir));
+    assertFalse(table.isDirectory(file));
+
+    // The clear name of the file is unknown until it is set
+    assertNull(table.getClearPath(file));
+    assertEquals(ItemTable.NOT_FOUND, table.findClear(Path.of("dir", "file")));
+    table.setClearName(file, "file");
+    assertEquals(Path.of("dir", "file"), table.getClearPath(file));
+    assertEquals(file, table.findClear(Path.of("dir", "file")));
+    assertEquals(Path.of(""), table.getClearPath(ItemTable.ROOT));
+  }
+
+  @Test
+  public void testSameNames() {
+    ItemTable table = new ItemTable();
+    int a = table.add(ItemTable.ROOT, "encA", true, "a");
+    int b = table.add(ItemTable.ROOT, "encB", true, "b");
+    int ax = table.add(a, "encX1", true, "x");
+    int bx = table.add(b, "encX2", true, "x");
+    assertEquals(ax, table.findClear(Path.of("a", "x")));
+    assertEquals(bx, table.findClear(Path.of("b", "x")));
+
+    // Siblings with the same clear name: the last one added wins until it is removed
+    int ax2 = table.add(a, "encX3", true, "x");
+    assertEquals(ax2, table.findClear(Path.of("a", "x")));
+    table.remove(ax2);
+    assertEquals(ax, table.findClear(Path.of("a", "x")));
+    assertEquals(ItemTable.NOT_FOUND, table.find(Path.of("encA", "encX3")));
+  }
+
+  @Test
+  public void testRemoveAndGrow() {
+    ItemTable table = new ItemTable();
+    for (int i = 0; i < ITEMS; i++) { table.add(ItemTable.ROOT, "enc" + i, false, "clear" + i); }
+    for (int i = 0; i < ITEMS; i += 2) { table.remove(table.find(Path.of("enc" + i))); }
+
+    assertEquals(ITEMS / 2, table.size());
+    assertEquals(ITEMS / 2, table.ids().length);
+    for (int i = 0; i < ITEMS; i++) {
+      int id = table.findClear(Path.of("clear" + i));
+      assertEquals(i % 2 == 0, id == ItemTable.NOT_FOUND);
+      if (id != ItemTable.NOT_FOUND) { assertEquals("enc" + i, table.getEncName(id)); }
+    }
+
+    // Ids keep the insertion order
+    int[] ids = table.ids();
+    int[] sorted = ids.clone();
+    Arrays.sort(sorted);
+    assertArrayEquals(sorted, ids);
+
+    table.clear();
+    assertEquals(0, table.size());
+    assertEquals(ItemTable.NOT_FOUND, table.find(Path.of("enc1")));
+  }
+
+  @Test
+  public void testFootprint() throws Exception {
+    Path storage = Path.of("/home/user/vaults/Vault");
+    ItemTable table = new ItemTable();
+    int dir = ItemTable.ROOT;
+    for (int i = 0; i < ITEMS; i++) {
+      String encName = "QmFzZTY0RW5jb2" + i;
+      if (i % FILES_PER_DIR == 0) {
+        dir = table.add(ItemTable.ROOT, encName, true, "directory" + i);
+      } else {
+        table.add(dir, encName, false, "file" + i + ".txt");
+      }
+    }
+    long perItem = GraphLayout.parseInstance(table).totalSize() / ITEMS;
+
+    // Objects held for every item before the columnar table: the index key, the item paths and names, its cipher state.
+    // They are measured together so that the state shared by the ciphers is counted once
+    Object[] legacy = new Object[ITEMS / 10];
+    for (int i = 0; i < legacy.length; i++) {
+      Path relPath = Path.of("QmFzZTY0RW5jb2" + (i / FILES_PER_DIR), "QmFzZTY0RW5jb2" + i);
+      Path absPath = storage.resolve(relPath);
+      legacy[i] = new Object[] { relPath, absPath, absPath.getParent(), absPath.getFileName().toString(), "file" + i + ".txt",
+                                 Cipher.getInstance("AES/GCM/NoPadding"), new SecureRandom(), new byte[12] };
+    }
+    long legacyPerItem = GraphLayout.parseInstance((Object) legacy).totalSize() / legacy.length;
+
+    assertTrue("Table: " + perItem + " bytes/item, legacy: " + legacyPerItem + " bytes/item", perItem * 10 <= legacyPerItem);
+  }
+}
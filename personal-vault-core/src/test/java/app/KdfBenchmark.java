@@ -0,0 +1,40 @@
+package app;
+
+import java.util.Arrays;
+
+import app.core.JcaKdf;
+import app.core.Kdf;
+import app.core.Pbkdf2Sha512;
+
+/**
+ * Microbenchmark of the PBKDF2-HMAC-SHA512 implementations: the in-house one and the SunJCE one derive
+ * the vault master key with the same parameters; the best time of some rounds is reported after a warm up.
+ * <p>
+ * Run with: mvn test-compile && java -cp target/classes:target/test-classes app.KdfBenchmark [iterations]
+ */
+public class KdfBenchmark {
+
+  private static final char[] PSW = "SecretP@ssword1234".toCharArray();
+  private static final int ITERATIONS = 210000, KEY_LENGTH = 512, WARMUP = 3, ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : ITERATIONS;
+    byte[] salt = new byte[16];
+
+    Kdf[] kdfs = { new JcaKdf("PBKDF2WithHmacSHA512"), new Pbkdf2Sha512() };
+    byte[][] keys = new byte[kdfs.length][];
+    for (int i = 0; i < kdfs.length; i++) {
+      for (int r = 0; r < WARMUP; r++) { kdfs[i].derive(PSW, salt, iterations, KEY_LENGTH); }
+
+      long best = Long.MAX_VALUE;
+      for (int r = 0; r < ROUNDS; r++) {
+        long start = System.nanoTime();
+        keys[i] = kdfs[i].derive(PSW, salt, iterations, KEY_LENGTH);
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.printf("%-14s %8d iterations: %8.1f ms%n", kdfs[i].getClass().getSimpleName(), iterations, best / 1e6);
+    }
+
+    if (!Arrays.equals(keys[0], keys[1])) { throw new IllegalStateException("Different derived keys"); }
+  }
+}
@@ -11,6 +11,9 @@ import java.util.Random;
 import app.core.KeyDerivator;
 import app.core.KeyDerivator.InvalidPasswordException;
 import app.core.KeyDerivator.InvalidSaltException;
+import static app.core.Constants.KDF_ALGORITHM;
+import static app.core.Constants.KDF_MAX_ITERATIONS;
+import static app.core.Constants.KDF_MIN_ITERATIONS;
 import static app.core.Constants.SALT_LENGTH;
 import static org.junit.Assert.*;
 
@@ -132,6 +135,26 @@ public class KeyDerivatorTest{
     assertEquals(new SecretKeySpec(hashedBytes, "AES"), new SecretKeySpec(hashedBytes2, "AES"));
   }
 
+  @Test
+  public void testCost() throws Exception {
+    String password = "SecretP@ssword1234";
+    kd.setPsw(password);
+    byte[] hashedBytes = kd.getMasterKey();
+
+    // A different number of iterations derives a different key
+    KeyDerivator kd2 = new KeyDerivator(kd.getSalt(), KDF_ALGORITHM, 1000);
+    kd2.setPsw(password);
+    assertNotEquals(new SecretKeySpec(hashedBytes, "AES"), new SecretKeySpec(kd2.getMasterKey(), "AES"));
+
+    assertEquals(KDF_MIN_ITERATIONS, KeyDerivator.calibrate(KDF_ALGORITHM, 1));
+    assertEquals(KDF_MAX_ITERATIONS, KeyDerivator.calibrate(KDF_ALGORITHM, 1000000));
+
+    try {
+      kd.setCost("PBKDF2WithHmacMD5", 1000);
+      Assert.fail("IllegalArgumentException not thrown");
+    } catch (IllegalArgumentException e) {}
+  }
+
   @Test
   public void testIsBreachedPassword() {
     String password = "ciao";
@@ -0,0 +1,65 @@
+package app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import app.core.MacService;
+
+public class MacServiceTest {
+
+  private static final String ALG = "HmacSHA512";
+  private final SecretKeySpec key = new SecretKeySpec(new byte[32], ALG);
+
+  @Test
+  public void testMac() throws Exception {
+    MacService service = new MacService(ALG, this.key);
+    Mac mac = Mac.getInstance(ALG);
+    mac.init(this.key);
+
+    // The engine is reused: each result depends only on its message
+    assertArrayEquals(mac.doFinal("a".getBytes()), service.mac("a".getBytes()));
+    assertArrayEquals(mac.doFinal("b".getBytes()), service.mac("b".getBytes()));
+    assertArrayEquals(mac.doFinal("a".getBytes()), service.mac("a".getBytes()));
+  }
+
+  @Test
+  public void testMacAll() throws Exception {
+    MacService service = new MacService(ALG, this.key);
+    Mac mac = Mac.getInstance(ALG);
+    mac.init(this.key);
+
+    // Large enough to run in parallel
+    List<byte[]> messages = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) { messages.add(("dir/file" + i).getBytes()); }
+    List<byte[]> macs = service.macAll(messages);
+
+    assertEquals(messages.size(), macs.size());
+    for (int i = 0; i < messages.size(); i++) {
+      assertArrayEquals(mac.doFinal(messages.get(i)), macs.get(i));
+    }
+    assertEquals(0, service.macAll(new ArrayList<>()).size());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    MacService service = new MacService(ALG, this.key);
+    Mac mac = Mac.getInstance(ALG);
+    mac.init(this.key);
+
+    List<byte[]> messages = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) { messages.add(("dir/file" + i).getBytes()); }
+    service.macAll(messages);
+
+    // The pooled Macs are dropped: a message still gets its own Mac
+    service.close();
+    assertArrayEquals(mac.doFinal("a".getBytes()), service.mac("a".getBytes()));
+  }
+}
@@ -0,0 +1,75 @@
+package app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import app.core.ItemTable;
+import app.core.MerkleTree;
+
+public class MerkleTreeTest {
+
+  private static final int DIRS = 50, FILES_PER_DIR = 20;
+
+  private static ItemTable createTable() {
+    ItemTable table = new ItemTable();
+    int parent = ItemTable.ROOT;
+    for (int d = 0; d < DIRS; d++) {
+      // Every tenth directory starts a new branch from the root
+      parent = table.add(d % 10 == 0 ? ItemTable.ROOT : parent, "dir" + d, true, null);
+      for (int f = 0; f < FILES_PER_DIR; f++) { table.add(parent, "file" + d + "-" + f, false, null); }
+    }
+    return table;
+  }
+
+  @Test
+  public void testParallelAndSerial() {
+    ItemTable table = createTable();
+    MerkleTree tree = new MerkleTree(table);
+    tree.computeAll();
+    assertArrayEquals(MerkleTree.computeSerial(table), tree.getRootHash());
+
+    // The hash does not depend on the insertion order of the siblings
+    ItemTable reversed = new ItemTable();
+    int dir = reversed.add(ItemTable.ROOT, "dir", true, null);
+    reversed.add(dir, "b", false, null);
+    reversed.add(dir, "a", false, null);
+    ItemTable ordered = new ItemTable();
+    dir = ordered.add(ItemTable.ROOT, "dir", true, null);
+    ordered.add(dir, "a", false, null);
+    ordered.add(dir, "b", false, null);
+    assertArrayEquals(MerkleTree.computeSerial(ordered), MerkleTree.computeSerial(reversed));
+  }
+
+  @Test
+  public void testIncrementalUpdates() {
+    ItemTable table = createTable();
+    MerkleTree tree = new MerkleTree(table);
+    tree.computeAll();
+    byte[] initial = tree.getRootHash();
+
+    // Add a file deep in the tree
+    int parent = table.find(Path.of("dir0", "dir1", "dir2"));
+    int file = table.add(parent, "new", false, null);
+    tree.markDirty(parent);
+    byte[] added = tree.getRootHash();
+    assertFalse(Arrays.equals(initial, added));
+    assertArrayEquals(MerkleTree.computeSerial(table), added);
+
+    // Removing it restores the initial hash
+    table.remove(file);
+    tree.markDirty(parent);
+    assertArrayEquals(initial, tree.getRootHash());
+
+    // Remove a subtree
+    int subtree = table.find(Path.of("dir10", "dir11"));
+    table.remove(subtree);
+    tree.markDirty(table.getParent(subtree));
+    assertFalse(Arrays.equals(initial, tree.getRootHash()));
+    assertArrayEquals(MerkleTree.computeSerial(table), tree.getRootHash());
+  }
+}
@@ -0,0 +1,93 @@
+package app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import app.core.ItemTable;
+import app.core.NameIndex;
+
+public class NameIndexTest {
+
+  @Test
+  public void testSearch() {
+    NameIndex index = new NameIndex();
+    index.add(0, ItemTable.ROOT, "Documents");
+    index.add(1, 0, "Report 2024.pdf");
+    index.add(2, 0, "report-draft.txt");
+    index.add(3, ItemTable.ROOT, "Photos");
+
+    // Substrings anywhere in the name, ignoring the case
+    assertEquals(List.of(Path.of("Documents", "Report 2024.pdf"), Path.of("Documents", "report-draft.txt")), index.search("REPORT", 10));
+    assertEquals(List.of(Path.of("Documents", "Report 2024.pdf")), index.search("t 20", 10));
+    assertEquals(List.of(Path.of("Photos")), index.search("pho", 10));
+
+    // Short queries scan the names
+    assertEquals(List.of(Path.of("Photos")), index.search("Ph", 10));
+    assertEquals(List.of(Path.of("Documents"), Path.of("Documents", "Report 2024.pdf")), index.search("o", 2));
+
+    // Not contained in any name
+    assertTrue(index.search("ortrep", 10).isEmpty());
+    assertTrue(index.search("missing", 10).isEmpty());
+    assertTrue(index.search("", 10).isEmpty());
+  }
+
+  @Test
+  public void testUpdate() {
+    NameIndex index = new NameIndex();
+    index.add(0, ItemTable.ROOT, "dir");
+    index.add(1, 0, "old name");
+    index.add(2, 0, "other");
+
+    index.add(1, 0, "new name");
+    assertTrue(index.search("old", 10).isEmpty());
+    assertEquals(List.of(Path.of("dir", "new name")), index.search("name", 10));
+
+    index.remove(2);
+    assertTrue(index.search("other", 10).isEmpty());
+    assertEquals(2, index.size());
+
+    // The items are found through the parents indexed later
+    index.add(5, 4, "child");
+    assertTrue(index.search("child", 10).isEmpty());
+    index.add(4, 0, "sub");
+    assertEquals(List.of(Path.of("dir", "sub", "child")), index.search("chi", 10));
+
+    index.clear();
+    assertTrue(index.search("dir", 10).isEmpty());
+  }
+
+  @Test
+  public void testItemTable() {
+    ItemTable table = new ItemTable();
+    int dir = table.add(ItemTable.ROOT, "encDir", true, "dir");
+    int file = table.add(dir, "encFile", false, null);
+
+    // The names already known are indexed when the index is enabled
+    NameIndex index = table.enableNameIndex();
+    assertEquals(List.of(Path.of("dir")), index.search("dir", 10));
+
+    table.setClearName(file, "file.txt");
+    assertEquals(List.of(Path.of("dir", "file.txt")), index.search("file", 10));
+
+    table.remove(file);
+    assertTrue(index.search("file", 10).isEmpty());
+  }
+
+  @Test
+  public void testCompaction() {
+    NameIndex index = new NameIndex();
+    for (int i = 0; i < 5000; i++) { index.add(i, ItemTable.ROOT, "file" + i); }
+    for (int i = 0; i < 5000; i += 2) { index.remove(i); }
+    for (int i = 1; i < 5000; i += 2) { index.add(i, ItemTable.ROOT, "renamed" + i); }
+
+    assertEquals(2500, index.size());
+    assertTrue(index.search("file", 10000).isEmpty());
+    assertEquals(2500, index.search("renamed", 10000).size());
+    assertEquals(List.of(Path.of("renamed4999")), index.search("d4999", 10));
+  }
+}
@@ -0,0 +1,60 @@
+package app;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import app.core.ItemTable;
+import app.core.NameIndex;
+
+/**
+ * Microbenchmark of NameIndex.search: the index holds 1M synthetic names, and every prefix of some queries
+ * is searched as if typed in the search box. Every search must answer within a few milliseconds.
+ * <p>
+ * Run with: mvn test-compile && java -cp target/classes:target/test-classes app.NameSearchBenchmark [items]
+ */
+public class NameSearchBenchmark {
+
+  private static final int ITEMS = 1000000, FILES_PER_DIR = 1000, LIMIT = 10000, VISIBLE_ROWS = 30, ROUNDS = 5;
+  private static final String[] WORDS = { "report", "invoice", "photo", "holiday", "contract", "draft", "scan", "backup", "notes", "budget" };
+  private static final String[] QUERIES = { "holiday 2023", "invoice_4711", "budget_42 final", "zzz" };
+
+  public static void main(String[] args) {
+    int items = args.length > 0 ? Integer.parseInt(args[0]) : ITEMS;
+    Random random = new Random(42);
+
+    long start = System.nanoTime();
+    NameIndex index = new NameIndex();
+    int dir = -1;
+    for (int id = 0; id < items; id++) {
+      if (id % (FILES_PER_DIR + 1) == 0) {
+        dir = id;
+        index.add(id, ItemTable.ROOT, "folder " + id);
+      } else {
+        String name = WORDS[random.nextInt(WORDS.length)] + (random.nextBoolean() ? " " : "_") + random.nextInt(10000)
+                    + (random.nextBoolean() ? " final" : "") + ".pdf";
+        index.add(id, dir, name);
+      }
+    }
+    System.out.printf("%d items indexed in %.0f ms%n", items, (System.nanoTime() - start) / 1e6);
+
+    for (String query : QUERIES) {
+      // The paths of the visible rows are composed, as by the list view
+      for (int length = 1; length <= query.length(); length++) {
+        String prefix = query.substring(0, length);
+        long[] times = new long[ROUNDS];
+        int results = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+          long t = System.nanoTime();
+          List<Path> found = index.search(prefix, LIMIT);
+          for (int i = 0; i < Math.min(VISIBLE_ROWS, found.size()); i++) { found.get(i); }
+          results = found.size();
+          times[r] = System.nanoTime() - t;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-14s %6d results %8.3f ms%n", "\"" + prefix + "\"", results, times[ROUNDS / 2] / 1e6);
+      }
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package app;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.Test;
+
+import app.core.JcaKdf;
+import app.core.Kdf;
+import app.core.Pbkdf2Sha512;
+
+public class Pbkdf2Sha512Test {
+
+  private final Kdf kdf = new Pbkdf2Sha512();
+  private final Kdf reference = new JcaKdf("PBKDF2WithHmacSHA512");
+
+  @Test
+  public void testVector() {
+    // P = "password", S = "salt", c = 1, dkLen = 64
+    byte[] expected = HexFormat.of().parseHex(
+        "867f70cf1ade02cff3752599a3a53dc4af34c7a669815ae5d513554e1c8cf252" +
+        "c02d470a285a0501bad999bfe943c08f050235d7d68b1da55e63f73b60a57fce");
+    assertArrayEquals(expected, kdf.derive("password".toCharArray(), "salt".getBytes(), 1, 512));
+  }
+
+  @Test
+  public void testSameAsProvider() {
+    Random random = new Random(42);
+    // Short, block-sized, hashed (longer than a block) and non ASCII passwords
+    String[] passwords = { "SecretP@ssword1234", "x".repeat(128), "y".repeat(129), "pässwörd€漢字" };
+    int[] saltLengths = { 16, 1, 107, 200 };
+    int[] keyLengths = { 512, 256, 1024, 520 };
+
+    for (int i = 0; i < passwords.length; i++) {
+      byte[] salt = new byte[saltLengths[i]];
+      random.nextBytes(salt);
+      for (int iterations : new int[] { 1, 2, 1000 }) {
+        char[] password = passwords[i].toCharArray();
+        assertArrayEquals(reference.derive(password, salt, iterations, keyLengths[i]),
+                          kdf.derive(password, salt, iterations, keyLengths[i]));
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import app.core.TreeChecksumFile;
+
+public class TreeChecksumFileTest {
+
+  private static final int MAC_LENGTH = 64;
+
+  private final Path log = Path.of("./checksum-test.mac");
+  private final Path bin = Path.of("./checksum-test.mac.bin");
+
+  @After
+  public void deleteFiles() throws IOException {
+    Files.deleteIfExists(log);
+    Files.deleteIfExists(bin);
+  }
+
+  private static byte[] mac(String path) {
+    byte[] mac = new byte[MAC_LENGTH];
+    mac[0] = (byte) path.hashCode();
+    mac[MAC_LENGTH - 1] = (byte) path.length();
+    return mac;
+  }
+
+  private static String line(String path) {
+    return path + "." + Base64.getEncoder().withoutPadding().encodeToString(mac(path));
+  }
+
+  @Test
+  public void testConvert() throws Exception {
+    // Lines in non sorted order, with a removed path and a path removed and added again
+    List<String> lines = new ArrayList<>();
+    for (int i = 99; i >= 0; i--) { lines.add(line("dir" + (i % 10) + "/file" + i)); }
+    lines.add("!" + line("dir0/file10"));
+    lines.add("!" + line("dir1/file11"));
+    lines.add(line("dir1/file11"));
+    Files.write(log, lines);
+
+    assertEquals(99, TreeChecksumFile.convert(log, bin, MAC_LENGTH));
+    TreeChecksumFile file = TreeChecksumFile.open(bin);
+    assertEquals(99, file.size());
+    assertEquals(-1, file.find("dir0/file10".getBytes(StandardCharsets.UTF_8)));
+    for (int i = 0; i < 100; i++) {
+      String path = "dir" + (i % 10) + "/file" + i;
+      int index = file.find(path.getBytes(StandardCharsets.UTF_8));
+      if (i == 10) { continue; }
+      assertArrayEquals(path.getBytes(StandardCharsets.UTF_8), file.getPath(index));
+      assertTrue(file.macEquals(index, mac(path)));
+      assertFalse(file.macEquals(index, mac(path + "x")));
+    }
+    assertEquals(-1, file.find("a".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(-1, file.find("z".getBytes(StandardCharsets.UTF_8)));
+
+    // Sorted by path
+    for (int i = 1; i < file.size(); i++) {
+      assertTrue(new String(file.getPath(i - 1)).compareTo(new String(file.getPath(i))) < 0);
+    }
+    file.close();
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    Files.write(log, List.of(line("a"), line("c")));
+    TreeChecksumFile.convert(log, bin, MAC_LENGTH);
+
+    // The log removes a path of the binary file and adds new ones
+    Files.write(log, List.of(line("b"), "!" + line("c"), line("d")));
+    assertEquals(2, TreeChecksumFile.compact(bin, log, bin, MAC_LENGTH, path -> !path.equals("d")));
+
+    TreeChecksumFile file = TreeChecksumFile.open(bin);
+    assertEquals(2, file.size());
+    assertEquals(0, file.find("a".getBytes()));
+    assertEquals(1, file.find("b".getBytes()));
+    assertEquals(-1, file.find("c".getBytes()));
+    assertArrayEquals(mac("b"), file.getMac(1));
+    file.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidLog() throws Exception {
+    Files.write(log, List.of(line("a"), "invalid"));
+    TreeChecksumFile.convert(log, bin, MAC_LENGTH);
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidFile() throws Exception {
+    Files.write(bin, new byte[100]);
+    TreeChecksumFile.open(bin);
+  }
+}
@@ -0,0 +1,72 @@
+package app;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import app.core.TreeChecksumWriter;
+import app.core.TreeChecksumWriter.SyncPolicy;
+
+public class TreeChecksumWriterTest {
+
+  private final Path file = Path.of("./checksum-test.mac");
+
+  @After
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullPolicy() throws Exception {
+    new TreeChecksumWriter(file, null, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidBatchSize() throws Exception {
+    new TreeChecksumWriter(file, SyncPolicy.PER_BATCH, 0);
+  }
+
+  @Test
+  public void testPerItem() throws Exception {
+    TreeChecksumWriter writer = new TreeChecksumWriter(file, SyncPolicy.PER_ITEM, 10);
+    writer.append("a.mac".getBytes());
+    assertEquals(List.of("a.mac"), Files.readAllLines(file));
+    writer.close();
+  }
+
+  @Test
+  public void testBatches() throws Exception {
+    for (SyncPolicy policy : List.of(SyncPolicy.PER_BATCH, SyncPolicy.PER_OPERATION)) {
+      TreeChecksumWriter writer = new TreeChecksumWriter(file, policy, 2);
+
+      // Lines are written only when the batch is full
+      writer.append("a.mac".getBytes());
+      assertEquals(0, Files.size(file));
+      writer.append("b.mac".getBytes());
+      assertEquals(List.of("a.mac", "b.mac"), Files.readAllLines(file));
+
+      // Closing commits the last partial batch
+      writer.append("c.mac".getBytes());
+      writer.close();
+      assertEquals(List.of("a.mac", "b.mac", "c.mac"), Files.readAllLines(file));
+
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testAppendToExisting() throws Exception {
+    Files.write(file, List.of("a.mac"));
+
+    TreeChecksumWriter writer = new TreeChecksumWriter(file, SyncPolicy.PER_OPERATION, 10);
+    writer.append("b.mac".getBytes());
+    writer.close();
+    assertEquals(List.of("a.mac", "b.mac"), Files.readAllLines(file));
+  }
+}
@@ -0,0 +1,108 @@
+package app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import app.core.VaultConfiguration;
+
+import static app.core.Constants.KDF_ALGORITHM;
+
+public class VaultConfigurationTest {
+
+  private static final UUID VID = UUID.fromString("6be94f85-5f89-41dd-930a-3fd9b1258a07");
+
+  private static VaultConfiguration newConfiguration() {
+    return new VaultConfiguration(VID, new byte[] { 1, 2, 3 }, new byte[40], new byte[] { 9, 8 }, KDF_ALGORITHM, 420000);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    VaultConfiguration conf = VaultConfiguration.deserialize(VaultConfiguration.serialize(newConfiguration()));
+
+    assertArrayEquals(new byte[] { 1, 2, 3 }, conf.getSalt());
+    assertArrayEquals(new byte[40], conf.getEncKey());
+    assertArrayEquals(new byte[] { 9, 8 }, conf.getAuthKey());
+    assertEquals(KDF_ALGORITHM, conf.getKdfAlgorithm());
+    assertEquals(420000, conf.getKdfIterations());
+    assertFalse(conf.isLegacyFormat());
+    assertFalse(conf.hasTreeRoot());
+    assertArrayEquals(VaultConfiguration.serialize(newConfiguration()), VaultConfiguration.serialize(conf));
+
+    conf.setTreeRoot(true);
+    assertTrue(VaultConfiguration.deserialize(VaultConfiguration.serialize(conf)).hasTreeRoot());
+  }
+
+  @Test
+  public void testUnknownFieldsSkipped() throws Exception {
+    // A newer version appends a field
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bos);
+    out.write(VaultConfiguration.serialize(newConfiguration()));
+    out.writeByte(200);
+    out.writeShort(3);
+    out.write(new byte[] { 7, 7, 7 });
+
+    VaultConfiguration conf = VaultConfiguration.deserialize(bos.toByteArray());
+    assertEquals(420000, conf.getKdfIterations());
+    assertArrayEquals(new byte[] { 9, 8 }, conf.getAuthKey());
+  }
+
+  @Test
+  public void testInvalidConfiguration() throws Exception {
+    byte[] serialized = VaultConfiguration.serialize(newConfiguration());
+
+    // Truncated
+    try {
+      VaultConfiguration.deserialize(Arrays.copyOf(serialized, serialized.length - 1));
+      fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    // Wrong magic
+    serialized[0] ^= 1;
+    try {
+      VaultConfiguration.deserialize(serialized);
+      fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    // Missing fields
+    try {
+      VaultConfiguration.deserialize(Arrays.copyOf(VaultConfiguration.serialize(newConfiguration()), 6));
+      fail("IOException not thrown");
+    } catch (IOException e) {}
+  }
+
+  @Test
+  public void testLegacyFormat() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(newConfiguration());
+    }
+
+    VaultConfiguration conf = VaultConfiguration.deserialize(bos.toByteArray());
+    assertEquals(420000, conf.getKdfIterations());
+    assertTrue(conf.isLegacyFormat());
+
+    // Other serialized classes are rejected
+    bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(new ArrayList<>(Arrays.asList("a")));
+    }
+    try {
+      VaultConfiguration.deserialize(bos.toByteArray());
+      fail("IOException not thrown");
+    } catch (IOException e) {}
+  }
+}
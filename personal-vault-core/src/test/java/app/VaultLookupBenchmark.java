@@ -0,0 +1,77 @@
+package app;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import app.core.Vault;
+import app.core.VaultItem;
+
+/**
+ * Microbenchmark of Vault.getVaultFile: the items of vaults of growing size are looked up in random order.
+ * Every round makes the same number of lookups after warm-up rounds, so the times per lookup of the sizes
+ * can be compared: with the hash index they stay in the same range, while with a scan of the items
+ * they would grow with the size of the vault.
+ * <p>
+ * Run with: mvn test-compile && java -cp target/classes:target/test-classes app.VaultLookupBenchmark [sizes...]
+ */
+public class VaultLookupBenchmark {
+
+  private static final String PSW = "SecretP@ssword1234", NAME = "Bench";
+  private static final int[] SIZES = { 1000, 10000, 100000 };
+  private static final int FILES_PER_DIR = 1000, LOOKUPS = 1000000, WARMUP_ROUNDS = 5, ROUNDS = 15;
+
+  public static void main(String[] args) throws Exception {
+    int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : SIZES;
+    Path tmp = Files.createTempDirectory("vault-bench");
+    Path storage = new Vault(NAME, tmp, PSW).getStoragePath();
+    Vault v = null;
+
+    try {
+      int n = 0;
+      for (int size : sizes) {
+        // Fill the storage with fake encrypted items: the lookup does not read their content
+        for (; n < size; n++) {
+          Path dir = storage.resolve("d" + (n / FILES_PER_DIR));
+          Files.createDirectories(dir);
+          Files.createFile(dir.resolve("f" + n));
+        }
+        v = Vault.importVault(storage.toFile());
+
+        // Look up fresh Path objects, as when they are parsed from the tree checksum file
+        List<Path> paths = new ArrayList<>();
+        for (VaultItem item : v.getVaultItems()) {
+          paths.add(Path.of(item.getRelPath(v.getStoragePath()).toString()));
+        }
+        Collections.shuffle(paths);
+
+        for (int r = 0; r < WARMUP_ROUNDS; r++) { lookup(v, paths); }
+        long[] times = new long[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) { times[r] = lookup(v, paths); }
+        Arrays.sort(times);
+
+        System.out.printf("%8d items: %8.1f ns/lookup median %8.1f ns/lookup min%n", paths.size(), 
+                          (double) times[ROUNDS / 2] / LOOKUPS, (double) times[0] / LOOKUPS);
+      }
+    } finally {
+      Files.walk(tmp).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  /**
+   * @return the time in nanoseconds of LOOKUPS lookups, cycling over the given paths
+   */
+  private static long lookup(Vault v, List<Path> paths) {
+    long start = System.nanoTime();
+    for (int i = 0; i < LOOKUPS; i++) {
+      Path path = paths.get(i % paths.size());
+      if (v.getVaultFile(path) == null) { throw new IllegalStateException("Item not found " + path); }
+    }
+    return System.nanoTime() - start;
+  }
+}
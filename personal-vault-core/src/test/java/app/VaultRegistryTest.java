@@ -0,0 +1,129 @@
+package app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import app.core.Vault;
+import app.core.VaultRegistry;
+
+public class VaultRegistryTest {
+
+  private static final String PSW = "SecretP@ssword1234";
+
+  private final Path file = Path.of("./registry-test");
+  private final Path legacyFile = Path.of("./registry-test.conf");
+  private final Path dir = Path.of("./registryDir");
+  private Vault vault;
+
+  @After
+  public void deleteFiles() throws IOException {
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(legacyFile);
+    if (vault != null) { VaultTest.deleteConfig(vault); }
+    if (Files.exists(dir)) { VaultTest.deleteDirectory(dir); }
+  }
+
+  private Vault newVault() throws Exception {
+    Files.createDirectories(dir);
+    Files.write(dir.resolve("file1"), new byte[1000]);
+    vault = new Vault("Registry", Path.of("."), PSW);
+    vault.addDirectory(dir);
+    return vault;
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    Vault v = newVault();
+    VaultRegistry registry = VaultRegistry.load(file, null);
+    registry.retain(List.of(v));
+    assertFalse(registry.get(v.getStoragePath()).hasStats());
+
+    assertTrue(registry.revalidate());
+    VaultRegistry.Entry entry = registry.get(v.getStoragePath());
+    assertEquals(2, entry.getItems());
+    assertTrue(entry.getBytes() > 1000);
+    registry.markVerified(v, 1234);
+    registry.save();
+
+    // The snapshot is read back without walking the vault
+    registry = VaultRegistry.load(file, null);
+    entry = registry.get(v.getStoragePath());
+    assertEquals(v.getVid(), entry.getVid());
+    assertEquals(2, entry.getItems());
+    assertEquals(1234, entry.getLastVerified());
+    assertFalse(registry.revalidate());
+
+    // A vault operation makes it stale
+    Files.write(dir.resolve("file2"), new byte[10]);
+    v.addFile(dir.resolve("file2"));
+    Path checksums = v.getStoragePath().resolve(v.getVid() + ".mac");
+    Files.setLastModifiedTime(checksums, FileTime.fromMillis(Files.getLastModifiedTime(checksums).toMillis() + 2000));
+    assertTrue(registry.revalidate());
+    assertEquals(3, registry.get(v.getStoragePath()).getItems());
+    assertEquals(1234, registry.get(v.getStoragePath()).getLastVerified());
+
+    // Unregistered vaults are dropped
+    registry.retain(List.of());
+    assertNull(registry.get(v.getStoragePath()));
+  }
+
+  @Test
+  public void testLegacyList() throws Exception {
+    Vault v = newVault();
+    Files.writeString(legacyFile, v.getStoragePath().toAbsolutePath() + "\n" + dir.toAbsolutePath() + "\n");
+
+    // The directory without a configuration is skipped
+    VaultRegistry registry = VaultRegistry.load(file, legacyFile);
+    assertEquals(1, registry.getEntries().size());
+    assertEquals(v.getVid(), registry.getEntries().get(0).getVid());
+    assertFalse(registry.getEntries().get(0).hasStats());
+  }
+
+  @Test
+  public void testInvalidRegistry() throws Exception {
+    Files.writeString(file, "not a registry\n");
+    try {
+      VaultRegistry.load(file, null);
+      fail("IOException not thrown");
+    } catch (IOException e) {}
+  }
+
+  @Test
+  public void testConcurrentSave() throws Exception {
+    Vault v = newVault();
+    VaultRegistry registry = VaultRegistry.load(file, null);
+    registry.retain(List.of(v));
+
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          for (int i = 0; i < 50; i++) { registry.save(); }
+        } catch (Throwable e) {
+          errors.add(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) { thread.join(); }
+
+    assertEquals(List.of(), errors);
+    assertEquals(v.getVid(), VaultRegistry.load(file, null).get(v.getStoragePath()).getVid());
+  }
+}
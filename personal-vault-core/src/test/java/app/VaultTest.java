@@ -0,0 +1,1043 @@
+package app;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import app.core.CancellationToken;
+import app.core.OperationProgress;
+import app.core.ScrubReport;
+import app.core.TreeChecksumFile;
+import app.core.Vault;
+import app.core.VaultConfiguration;
+import app.core.VaultDirectory;
+import app.core.VaultFile;
+import app.core.VaultItem;
+import app.core.TreeChecksumWriter.SyncPolicy;
+import app.core.KeyDerivator.InvalidPasswordException;
+import app.core.Vault.InvalidConfigurationException;
+import app.core.Vault.InvalidMacException;
+import app.core.Vault.OperationCancelledException;
+import app.core.Vault.VaultLockedException;
+import app.core.Vault.WrongPasswordException;
+import junit.framework.TestCase;
+
+import static app.core.Constants.ITERATIONS;
+import static app.core.Constants.KDF_ALGORITHM;
+import static app.core.Constants.KDF_MIN_ITERATIONS;
+
+public class VaultTest extends TestCase{
+  
+  private Vault v;
+  private static final String PSW = "SecretP@ssword1234";
+  private static final String PATH = ".";
+  private static final String NAME = "Vault";
+  
+  private static final String DIR = PATH + "/tmpDir", 
+                              SUBDIR = "subDir",
+                              FILE1 = "file1", 
+                              FILE2 = "file2",
+                              INVDIR = "/home/app/";
+
+  private static final Path PLOCAL = Path.of("."),
+                            PDIR = Path.of(DIR), 
+                            PSUBDIR = Path.of(DIR, SUBDIR), 
+                            PFILE1 = Path.of(DIR, FILE1), 
+                            PFILE2 = Path.of(DIR, SUBDIR, FILE2), 
+                            PINV = Path.of(INVDIR);
+
+  public static void swap(byte[] array, int idx1, int idx2) {
+    if (array[idx1] == array[idx2]) {
+      if (array[idx1] != '0')
+        array[idx1] = '0';
+      else 
+        array[idx1] = '1';
+    }
+    
+    byte tmp = array[idx1];
+    array[idx1] = array[idx2];
+    array[idx2] = tmp;
+  }
+
+  
+
+  public static void createTmpDir() throws IOException {
+    Files.createDirectories(PSUBDIR);
+    Files.createFile(PFILE1);
+    Files.createFile(PFILE2);
+  }
+
+  public static void deleteDirectory(Path path) throws IOException {
+    Files.walk(path)
+      .sorted(Comparator.reverseOrder())
+      .map(Path::toFile)
+      .forEach(File::delete);
+  }
+
+  public static void deleteConfig(Vault v) throws IOException {
+    if (v == null) { return; }
+    
+    File vaultDir = v.getStoragePath().toFile(); 
+    if (vaultDir != null) {
+      deleteDirectory(v.getStoragePath());
+      vaultDir.delete(); 
+    }
+  }
+
+  // @Test
+  public void testCreateVault() throws Exception {
+    v = new Vault(NAME, PLOCAL, PSW);
+    assertNotNull(v);
+    deleteConfig(v);
+  }
+
+  @Test
+  public void testImportVault() throws Exception {
+    v = new Vault(new Vault(NAME, PLOCAL, PSW).getVid(), NAME, PLOCAL);
+    assertNotNull(v);
+    deleteConfig(v);
+  }
+
+  @Test
+  public void testImportDamagedVault() throws Exception {   
+    final char PERIOD = '.';
+
+    try {
+      v = new Vault(NAME, PLOCAL, PSW);
+
+      // Tamper header
+      Path path = VaultConfiguration.getPath(v.getStoragePath(), v.getVid());
+      byte[] token = Files.readAllBytes(path);
+      token = Arrays.copyOfRange(token, new String(token).indexOf(PERIOD), token.length);
+      Files.write(path, token);
+
+      // Import vault
+      v = new Vault(v.getVid(), NAME, PLOCAL);
+      
+      Assert.fail("InvalidConfigurationException not thrown");
+    } catch (InvalidConfigurationException e) {
+      deleteConfig(v);
+    }
+
+    try {
+      v = new Vault(NAME, PLOCAL, PSW);
+
+      // Tamper header
+      Path path = VaultConfiguration.getPath(v.getStoragePath(), v.getVid());
+      byte[] token = Files.readAllBytes(path);
+      swap(token, 0, 1);
+      Files.write(path, token);
+
+      // Import vault
+      v = new Vault(v.getVid(), NAME, PLOCAL);
+      
+      Assert.fail("InvalidConfigurationException not thrown");
+    } catch (InvalidConfigurationException e) {
+      deleteConfig(v);
+    }
+
+    try {
+      v = new Vault(NAME, PLOCAL, PSW);
+
+      // Tamper serialization
+      Path path = VaultConfiguration.getPath(v.getStoragePath(), v.getVid());
+      byte[] token = Files.readAllBytes(path);
+      int idx = new String(token).indexOf(PERIOD);
+      swap(token, idx + 1, idx + 2);
+      Files.write(path, token);
+
+      // Import vault
+      v = new Vault(v.getVid(), NAME, PLOCAL);
+      
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {
+      deleteConfig(v);
+    }
+    
+    try {
+      v = new Vault(NAME, PLOCAL, PSW);
+
+      // Tamper HMAC
+      Path path = VaultConfiguration.getPath(v.getStoragePath(), v.getVid());
+      byte[] token = Files.readAllBytes(path);
+      int idx = new String(token).lastIndexOf(PERIOD);
+      swap(token, idx + 1, idx + 2);
+      Files.write(path, token);
+
+      // Import vault and unlock
+      v = new Vault(v.getVid(), NAME, PLOCAL);
+      deleteDirectory(v.unlock(PSW, PLOCAL));
+      
+      Assert.fail("InvalidConfigurationException not thrown");
+    } catch (InvalidConfigurationException e) {
+      deleteConfig(v);
+    }
+  }
+
+  @Test
+  public void testNullArgument() throws Exception {
+    try {
+      new Vault(NAME, null, PSW);
+      Assert.fail("NullPointerException not thrown");
+    } catch (NullPointerException e) {}
+    
+    try {
+      new Vault(NAME, PLOCAL, null);
+      Assert.fail("NullPointerException not thrown");
+    } catch (NullPointerException e) {}
+
+    try {
+      new Vault(v.getVid(), NAME, null);
+      Assert.fail("NullPointerException not thrown");
+    } catch (NullPointerException e) {}
+    try {
+      UUID vid = null;
+      new Vault(vid, NAME, PLOCAL);
+      Assert.fail("NullPointerException not thrown");
+    } catch (NullPointerException e) {}
+  }
+
+  @Test
+  public void testInvalidParams() throws Exception {
+    try {
+      new Vault(NAME, PINV, PSW);
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    try {
+      v = new Vault(NAME, PLOCAL, PSW);
+      new Vault(v.getVid(), NAME, PINV);
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {
+      deleteConfig(v);
+    }
+
+    try {
+      new Vault(NAME, PLOCAL, "password");
+      Assert.fail("InvalidPasswordException not thrown");
+    } catch (InvalidPasswordException e) {}
+
+    try {
+      new Vault("../Vault", PLOCAL, "password");
+      Assert.fail("IllegalArgumentException not thrown");
+    } catch (IllegalArgumentException e) {}
+
+    String name = null;
+    deleteConfig(new Vault(name, PLOCAL, PSW));
+
+    deleteConfig(new Vault("", PLOCAL, PSW));
+  }
+
+  @Test
+  public void testWrongPsw() throws Exception {   
+    try {
+      v = new Vault(NAME, PLOCAL, PSW);
+      deleteDirectory(v.unlock(PSW + "!", PLOCAL));
+      Assert.fail("WrongPasswordException not thrown");
+    } catch (WrongPasswordException e) {
+      deleteConfig(v);
+    }
+  }
+
+  @Test
+  public void testChangePsw() throws Exception {   
+    v = new Vault(NAME, PLOCAL, PSW);
+
+    // Wrong old password
+    try {
+      v.changePsw(PSW + "!", PSW + "!");
+      Assert.fail("WrongPasswordException not thrown");
+    } catch (WrongPasswordException e) {}
+
+    // Invalid new password
+    try { 
+      v.changePsw(PSW, "password");
+      Assert.fail("InvalidPasswordException not thrown");
+    } catch (InvalidPasswordException e) {}
+    
+    // Valid change
+    v.changePsw(PSW, PSW + "!");
+
+    // Import and change psw
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    v.changePsw(PSW + "!", PSW + "!!");
+
+    // The re-tuned cost is stored with the configuration
+    v.changePsw(PSW + "!!", PSW, 1);
+    assertEquals(KDF_MIN_ITERATIONS, v.getVaultConfiguration().getKdfIterations());
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    assertEquals(KDF_MIN_ITERATIONS, v.getVaultConfiguration().getKdfIterations());
+    assertEquals(KDF_ALGORITHM, v.getVaultConfiguration().getKdfAlgorithm());
+    v.unlock(PSW);
+      
+    deleteConfig(v);
+  }
+
+  @Test
+  public void testLegacyConfiguration() throws Exception {
+    // Configuration written before the key derivation cost was stored
+    String vid = "6be94f85-5f89-41dd-930a-3fd9b1258a07";
+    String token = "SG1hY1NIQTUxMg.rO0ABXNyABthcHAuY29yZS5WYXVsdENvbmZpZ3VyYXRpb26oAb4V4aJroQIABFsAB2F1dGhLZXl0AAJbQlsABmVuY0tleXEAfgABWwAEc2FsdHEAfgABTAADdmlkdAASTGphdmEvbGFuZy9TdHJpbmc7eHB1cgACW0Ks8xf4BghU4AIAAHhwAAAAKMmbwXctyD6KwhJK7/3WdVamCuVsDgu1OUinv0lcgXkCQGkVSWwxkM91cQB+AAQAAAAomEmWgV0EzGCmJao9X/XSiDRlUkEC/nIJrmU88xM+0K9wWSuVdbxNE3VxAH4ABAAAABCy9Cn9oC1fxq1A3DVqI9AXdAAkNmJlOTRmODUtNWY4OS00MWRkLTkzMGEtM2ZkOWIxMjU4YTA3.b7Rt21YVL2AuKt7+edIe3IQu/izkaXC0jLcKGG8JhdfAJ0wvZxQZAMcEYZ/6+U0vm1GRF+pfooe/LW41cpGtmw";
+    Path dir = Files.createDirectory(PLOCAL.resolve(NAME));
+    Files.writeString(dir.resolve(vid + ".vault"), token);
+
+    v = new Vault(UUID.fromString(vid), NAME, PLOCAL);
+    assertEquals(ITERATIONS, v.getVaultConfiguration().getKdfIterations());
+    assertTrue(v.getVaultConfiguration().isLegacyFormat());
+    v.unlock(PSW);
+
+    // The configuration is migrated to the current format on unlock
+    assertFalse(Files.readString(dir.resolve(vid + ".vault")).equals(token));
+    v = new Vault(UUID.fromString(vid), NAME, PLOCAL);
+    assertFalse(v.getVaultConfiguration().isLegacyFormat());
+    assertEquals(ITERATIONS, v.getVaultConfiguration().getKdfIterations());
+    // The tree root written on the first unlock is required from now on
+    assertTrue(v.getVaultConfiguration().hasTreeRoot());
+    v.unlock(PSW);
+
+    // Changing the password stores the cost
+    v.changePsw(PSW, PSW + "!", 1);
+    v = new Vault(UUID.fromString(vid), NAME, PLOCAL);
+    assertEquals(KDF_MIN_ITERATIONS, v.getVaultConfiguration().getKdfIterations());
+    v.unlock(PSW + "!");
+
+    deleteConfig(v);
+  }
+
+  @Test
+  public void testFillVault() throws Exception {   
+    createTmpDir();
+    
+    // New vault and add directory and file
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    v.addFile(PFILE2);     
+
+    // Import vault and add subdirectory to vault root
+    // v = new Vault(v.getVid(), NAME, PLOCAL);
+    // deleteDirectory(v.unlock(PSW, PLOCAL));
+    // v.addDirectory(PSUBDIR);
+
+    try {
+      v.addDirectory(null); 
+      Assert.fail("IllegalArgumentException not thrown");
+    } catch (IllegalArgumentException e) {}
+
+    try {
+      v.addFile(null); 
+      Assert.fail("IllegalArgumentException not thrown");
+    } catch (IllegalArgumentException e) {}
+
+    deleteConfig(v);
+    
+    // Try to add non-existing directory
+    try {
+      v = new Vault(NAME, PLOCAL, PSW);
+      v.addDirectory(PINV); 
+      Assert.fail("IllegalArgumentException not thrown");
+    } catch (IllegalArgumentException e) {
+      deleteConfig(v);
+    }
+
+    // Try to add already existing directory
+    // try {
+    //   v = new Vault(NAME, PLOCAL, PSW);
+    //   v.addDirectory(PDIR); 
+    //   v.addDirectory(PDIR); 
+    //   Assert.fail("IOException not thrown");
+    // } catch (IOException e) {
+    //   deleteConfig(v);
+    // }
+
+    // Try to edit a locked vault
+    try {
+      v = new Vault(new Vault(NAME, PLOCAL, PSW).getVid(), NAME, PLOCAL);
+      v.addDirectory(PDIR); 
+      Assert.fail("VaultLockedException not thrown");
+    } catch (VaultLockedException e) {
+      deleteConfig(v);
+    }
+
+    deleteDirectory(PDIR);
+  }  
+
+  @Test
+  public void testProgress() throws Exception {
+    createTmpDir();
+    Files.write(PFILE1, new byte[100000]);
+    List<OperationProgress> events = new ArrayList<>();
+
+    // Add directory: 4 items (tmpDir, subDir, file1, file2)
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR, events::add, null);
+    OperationProgress last = events.get(events.size() - 1);
+    assertEquals(4, last.getItemsTotal());
+    assertEquals(4, last.getItemsDone());
+    assertEquals(100000, last.getBytesTotal());
+    assertEquals(100000, last.getBytesDone());
+    assertEquals(1.0, last.getFraction());
+
+    // Unlock: the bytes are the ciphertext sizes
+    events.clear();
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    deleteDirectory(v.unlock(PSW, PLOCAL, events::add, null));
+    last = events.get(events.size() - 1);
+    assertEquals(4, last.getItemsDone());
+    assertEquals(last.getBytesTotal(), last.getBytesDone());
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    createTmpDir();
+    Files.write(PFILE1, new byte[200000]);
+    
+    // Cancel while file1 is being encrypted
+    v = new Vault(NAME, PLOCAL, PSW);
+    CancellationToken token = new CancellationToken();
+    try {
+      v.addDirectory(PDIR, p -> { if (p.getBytesDone() > 0) token.cancel(); }, token);
+      Assert.fail("OperationCancelledException not thrown");
+    } catch (OperationCancelledException e) {}
+
+    // The partial item has been rolled back and the vault is still consistent
+    long stored = Files.walk(v.getStoragePath())
+      .filter(p -> !(Vault.isConfFile(p) || Vault.isMacFile(p) || Vault.isDirFile(p) || Vault.isTreeRootFile(p) || p.equals(v.getStoragePath())))
+      .count();
+    assertEquals(v.getVaultItems().size(), stored);
+    assertTrue(v.getVaultItems().size() < 4);
+
+    // Cancel a single file: it is not added
+    int items = v.getVaultItems().size();
+    CancellationToken fileToken = new CancellationToken();
+    try {
+      v.addFile(PFILE1, p -> { if (p.getBytesDone() > 0) fileToken.cancel(); }, fileToken);
+      Assert.fail("OperationCancelledException not thrown");
+    } catch (OperationCancelledException e) {}
+    assertEquals(items, v.getVaultItems().size());
+
+    // Cancel the unlock: nothing is revealed and the vault stays locked
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    CancellationToken unlockToken = new CancellationToken();
+    unlockToken.cancel();
+    try {
+      v.unlock(PSW, PLOCAL, null, unlockToken);
+      Assert.fail("OperationCancelledException not thrown");
+    } catch (OperationCancelledException e) {}
+    assertTrue(v.isLocked());
+    assertFalse(Files.exists(PLOCAL.resolve(NAME + "-unlocked")));
+
+    // A complete unlock passes the file tree integrity check
+    deleteDirectory(v.unlock(PSW, PLOCAL));
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testSameNameDirectories() throws Exception {
+    // Directories with the same name in different places: tmpDir/a/x/file1 and tmpDir/b/x/file2
+    Files.createDirectories(PDIR.resolve("a").resolve("x"));
+    Files.createDirectories(PDIR.resolve("b").resolve("x"));
+    Files.createFile(PDIR.resolve("a").resolve("x").resolve(FILE1));
+    Files.createFile(PDIR.resolve("b").resolve("x").resolve(FILE2));
+
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+
+    // Every file is revealed in its own directory
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    Path reveal = v.unlock(PSW, PLOCAL).resolve(PDIR.getFileName());
+    assertTrue(Files.exists(reveal.resolve("a").resolve("x").resolve(FILE1)));
+    assertTrue(Files.exists(reveal.resolve("b").resolve("x").resolve(FILE2)));
+    deleteDirectory(reveal.getParent());
+
+    // Remove only the selected directory
+    v.remove(PDIR.getFileName().resolve("b").resolve("x"));
+    assertEquals(5, v.getVaultItems().size());
+    try {
+      v.remove(PDIR.getFileName().resolve("b").resolve("x"));
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    // The removed items are recorded as tombstones
+    Path macFile = v.getStoragePath().resolve(v.getVid() + ".mac");
+    assertEquals(2, Files.readAllLines(macFile).stream().filter(l -> l.startsWith("!")).count());
+
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    reveal = v.unlock(PSW, PLOCAL).resolve(PDIR.getFileName());
+    assertTrue(Files.exists(reveal.resolve("a").resolve("x").resolve(FILE1)));
+    assertFalse(Files.exists(reveal.resolve("b").resolve("x")));
+    deleteDirectory(reveal.getParent());
+
+    // The compaction merges the log in the binary file, dropping the tombstones and the lines they cancel
+    v.compactTreeChecksumFile();
+    assertFalse(Files.exists(macFile));
+    TreeChecksumFile checksums = TreeChecksumFile.open(v.getStoragePath().resolve(v.getVid() + ".mac.bin"));
+    assertEquals(5, checksums.size());
+    checksums.close();
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    deleteDirectory(v.unlock(PSW, PLOCAL));
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testEmptyDirectory() throws Exception {
+    // tmpDir/empty has no content, so its hash comes only from the tree update
+    createTmpDir();
+    Files.createDirectory(PDIR.resolve("empty"));
+
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    assertFalse(v.hasPendingOperation());
+
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    Path reveal = v.unlock(PSW, PLOCAL).resolve(PDIR.getFileName());
+    assertTrue(Files.isDirectory(reveal.resolve("empty")));
+    deleteDirectory(reveal.getParent());
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testRemovedItemDetected() throws Exception {
+    createTmpDir();
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    assertTrue(Files.exists(v.getStoragePath().resolve(v.getVid() + ".root")));
+
+    // Delete an encrypted file together with its tree checksum line: the checksum file alone is consistent
+    Path filePath = null;
+    for (VaultItem item : v.getVaultItems()) {
+      if (item instanceof VaultFile) { filePath = item.getRelPath(v.getStoragePath()); }
+    }
+    Files.delete(v.getStoragePath().resolve(filePath));
+    Path macFile = v.getStoragePath().resolve(v.getVid() + ".mac");
+    String removedLine = filePath + ".";
+    Files.write(macFile, Files.readAllLines(macFile).stream().filter(l -> !l.startsWith(removedLine)).toList());
+
+    // The tree root does not match anymore
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    try {
+      v.unlock(PSW, PLOCAL);
+      Assert.fail("InvalidMacException not thrown");
+    } catch (InvalidMacException e) {}
+    // The integrity is checked before revealing
+    assertFalse(Files.exists(PLOCAL.resolve(NAME + "-unlocked")));
+
+    // A planted journal does not skip the tree root
+    Path journalFile = v.getStoragePath().resolve(v.getVid() + ".journal");
+    String source = Base64.getEncoder().withoutPadding().encodeToString(PDIR.toAbsolutePath().toString().getBytes());
+    Files.writeString(journalFile, "BEGIN\tQUREX0RJUkVDVE9SWQ\t" + source + "\n");
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    assertTrue(v.hasPendingOperation());
+    try {
+      v.unlock(PSW);
+      Assert.fail("InvalidMacException not thrown");
+    } catch (InvalidMacException e) {}
+
+    // A garbled journal is reported as invalid
+    Files.writeString(journalFile, "BEGIN\tQUREX0RJUkVDVE9SWQ\t" + source + "\nDONE\t!!!\tfile\n");
+    try {
+      new Vault(v.getVid(), NAME, PLOCAL);
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {
+      assertEquals("Invalid operation journal", e.getMessage());
+    }
+    Files.delete(journalFile);
+
+    // Nor a garbled tree root
+    Files.writeString(v.getStoragePath().resolve(v.getVid() + ".root"), "not base64!");
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    try {
+      v.unlock(PSW);
+      Assert.fail("InvalidMacException not thrown");
+    } catch (InvalidMacException e) {}
+
+    // Neither does a deleted tree root, once the configuration requires it
+    Files.delete(v.getStoragePath().resolve(v.getVid() + ".root"));
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    try {
+      v.unlock(PSW);
+      Assert.fail("InvalidMacException not thrown");
+    } catch (InvalidMacException e) {}
+
+    // The keys are dropped: the tampered vault cannot be revealed
+    assertTrue(v.isLocked());
+    try {
+      v.reveal(PLOCAL, null, null);
+      Assert.fail("VaultLockedException not thrown");
+    } catch (VaultLockedException e) {}
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testScrub() throws Exception {
+    createTmpDir();
+    Files.write(PFILE1, new byte[200000]);
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+
+    // Scrub the locked vault: nothing is revealed
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    List<OperationProgress> events = new ArrayList<>();
+    ScrubReport report = v.scrub(PSW, 2, 0, events::add, null);
+    assertTrue(report.isClean());
+    assertEquals(4, report.getItemsChecked());
+    assertEquals(4, events.get(events.size() - 1).getItemsDone());
+    assertTrue(v.isLocked());
+    assertFalse(Files.exists(PLOCAL.resolve(NAME + "-unlocked")));
+
+    // Flip a byte in the second chunk of file1 and in the header of a directory
+    Path file = null, dirFile = null;
+    for (VaultItem item : v.getVaultItems()) {
+      if (item instanceof VaultFile && Files.size(item.getAbsPath()) > 200000) { file = item.getAbsPath(); }
+      if (item instanceof VaultDirectory) { dirFile = ((VaultDirectory) item).getEncDirFile(); }
+    }
+    byte[] content = Files.readAllBytes(file);
+    content[317 + 65564 + 100] ^= 1;
+    Files.write(file, content);
+    content = Files.readAllBytes(dirFile);
+    content[20] ^= 1;
+    Files.write(dirFile, content);
+
+    report = v.scrub(PSW, 1, 1024 * 1024, null, null);
+    assertEquals(2, report.getCorruptItems().size());
+    for (ScrubReport.CorruptItem item : report.getCorruptItems()) {
+      if (item.isHeaderCorrupt()) {
+        assertEquals(dirFile.getParent().normalize(), v.getStoragePath().resolve(item.getPath()).normalize());
+      } else {
+        assertEquals(file.normalize(), v.getStoragePath().resolve(item.getPath()).normalize());
+        assertEquals(List.of(1), item.getChunks());
+      }
+    }
+
+    try {
+      v.scrub("WrongP@ssword1234", null, null);
+      Assert.fail("WrongPasswordException not thrown");
+    } catch (WrongPasswordException e) {}
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testIndexedImport() throws Exception {
+    createTmpDir();
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    Path dirPath = v.getVaultItems().iterator().next().getRelPath(v.getStoragePath());
+
+    // The items are queried through the index without loading them
+    v = new Vault(v.getVid(), NAME, PLOCAL, true);
+    assertTrue(Files.exists(v.getStoragePath().resolve(v.getVid() + ".idx")));
+    assertFalse(v.isEmpty());
+    assertNotNull(v.getVaultFile(dirPath));
+    assertNull(v.getVaultFile(Path.of("missing")));
+    try {
+      v.getVaultItems();
+      Assert.fail("IllegalStateException not thrown");
+    } catch (IllegalStateException e) {}
+
+    // The items are loaded on unlock and the index is not taken for a vault item
+    deleteDirectory(v.unlock(PSW, PLOCAL));
+    assertEquals(4, v.getVaultItems().size());
+
+    // A stale index is rebuilt
+    v.addFile(PFILE1);
+    Path filePath = new ArrayList<>(v.getVaultItems()).get(4).getRelPath(v.getStoragePath());
+    v = new Vault(v.getVid(), NAME, PLOCAL, true);
+    assertNotNull(v.getVaultFile(filePath));
+    v.loadItems();
+    assertEquals(5, v.getVaultItems().size());
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testDeferredImport() throws Exception {
+    createTmpDir();
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    Path dirPath = v.getVaultItems().iterator().next().getRelPath(v.getStoragePath());
+    Path indexFile = v.getStoragePath().resolve(v.getVid() + ".idx");
+    Files.deleteIfExists(indexFile);
+
+    // Only the configuration is read
+    v = Vault.importVault(v.getStoragePath().toAbsolutePath().toFile(), true);
+    assertFalse(v.isItemsOpen());
+    assertFalse(Files.exists(indexFile));
+
+    // The items are opened on first use
+    assertNotNull(v.getVaultFile(dirPath));
+    assertTrue(v.isItemsOpen());
+    assertTrue(Files.exists(indexFile));
+
+    v = Vault.openDeferred(v.getVid(), NAME, PLOCAL);
+    v.openItems();
+    assertFalse(v.isEmpty());
+    deleteDirectory(v.unlock(PSW, PLOCAL));
+    assertEquals(4, v.getVaultItems().size());
+
+    // Clear path lookup
+    assertEquals(dirPath, v.getVaultFileByClearPath(PDIR.getFileName()).getRelPath(v.getStoragePath()));
+    assertNotNull(v.getVaultFileByClearPath(PDIR.getFileName().resolve(SUBDIR).resolve(FILE2)));
+    assertNull(v.getVaultFileByClearPath(Path.of("missing")));
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  /**
+   * Simulate a crash after two items of the directory have been added, with an orphan 
+   * encrypted file and a missing tree checksum line
+   */
+  private void crashDuringAddDirectory() throws Exception {
+    createTmpDir();
+    Files.write(PFILE1, new byte[200000]);
+    
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.setChecksumSyncPolicy(SyncPolicy.PER_ITEM);
+    try {
+      v.addDirectory(PDIR, p -> { if (p.getItemsDone() == 2) throw new Error("Simulated crash"); }, null);
+      Assert.fail("Error not thrown");
+    } catch (Error e) {}
+
+    Files.write(v.getStoragePath().resolve("orphan"), new byte[10]);
+    Path macFile = v.getStoragePath().resolve(v.getVid() + ".mac");
+    List<String> lines = Files.readAllLines(macFile);
+    Files.write(macFile, lines.subList(0, lines.size() - 1));
+  }
+
+  @Test
+  public void testListItems() throws Exception {
+    createTmpDir();
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+
+    // Only the headers are decrypted: nothing is revealed
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    v.unlock(PSW);
+    Path dir = PDIR.getFileName();
+    assertEquals(Set.of(dir, dir.resolve(FILE1), dir.resolve(SUBDIR), dir.resolve(SUBDIR).resolve(FILE2)), v.listItems(null, null).keySet());
+    assertTrue(v.listItems(null, null).get(dir.resolve(SUBDIR)) instanceof VaultDirectory);
+    assertFalse(Files.exists(PLOCAL.resolve(NAME + "-unlocked")));
+
+    // The names are now searchable
+    assertEquals(List.of(dir.resolve(SUBDIR).resolve(FILE2)), v.searchItems(FILE2, 10));
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testSearchItems() throws Exception {
+    createTmpDir();
+
+    // The names of the added items are searchable at once
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    assertEquals(Set.of(PDIR.getFileName().resolve(FILE1), PDIR.getFileName().resolve(SUBDIR).resolve(FILE2)), Set.copyOf(v.searchItems("FILE", 10)));
+
+    // After the unlock the names are indexed as they are decrypted
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    try {
+      v.searchItems("file", 10);
+      Assert.fail("VaultLockedException not thrown");
+    } catch (VaultLockedException e) {}
+    deleteDirectory(v.unlock(PSW, PLOCAL));
+    assertEquals(List.of(PDIR.getFileName().resolve(SUBDIR)), v.searchItems("sub", 10));
+
+    v.remove(PDIR.getFileName().resolve(SUBDIR));
+    assertEquals(List.of(PDIR.getFileName().resolve(FILE1)), v.searchItems("file", 10));
+
+    v.lock();
+    try {
+      v.searchItems("file", 10);
+      Assert.fail("VaultLockedException not thrown");
+    } catch (VaultLockedException e) {}
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testStreams() throws Exception {
+    createTmpDir();
+    byte[] content = new byte[200000];   // Four chunks, the last one partial
+    new Random(1).nextBytes(content);
+
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    Path dir = PDIR.getFileName();
+    v.addStream(dir.resolve(SUBDIR), "stream", new ByteArrayInputStream(content));
+    v.addStream(Path.of(""), "empty", new ByteArrayInputStream(new byte[0]));
+
+    // The stream is recorded in the tree checksums
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    v.unlock(PSW);
+    v.listItems(null, null);
+    assertEquals(Set.of(FILE2, "stream"), v.getChildren(dir.resolve(SUBDIR)).stream().map(VaultItem::getName).collect(Collectors.toSet()));
+    assertEquals(Set.of(dir.getFileName().toString(), "empty"), v.getChildren(Path.of("")).stream().map(VaultItem::getName).collect(Collectors.toSet()));
+    assertNull(v.getChildren(dir.resolve(FILE1)));
+
+    VaultFile file = (VaultFile) v.getVaultFileByClearPath(dir.resolve(SUBDIR).resolve("stream"));
+    assertEquals(content.length, file.getPlainSize());
+    assertEquals(0, ((VaultFile) v.getVaultFileByClearPath(Path.of("empty"))).getPlainSize());
+
+    // Ranges inside a chunk, across a chunk boundary and up to the end
+    long[][] ranges = { { 0, content.length }, { 10, 100 }, { 65530, 70000 }, { 131072, 65536 }, { 199990, 10 } };
+    for (long[] range : ranges) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      v.readFile(file, range[0], range[1], out);
+      assertTrue(Arrays.equals(Arrays.copyOfRange(content, (int) range[0], (int) (range[0] + range[1])), out.toByteArray()));
+    }
+    try {
+      v.readFile(file, 199990, 20, new ByteArrayOutputStream());
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    try {
+      v.addStream(Path.of("missing"), "stream", new ByteArrayInputStream(content));
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testStreamCrash() throws Exception {
+    createTmpDir();
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    InputStream crashing = new InputStream() {
+      private int count = 0;
+      @Override
+      public int read() {
+        if (count++ == 100000) { throw new Error("Simulated crash"); }
+        return 0;
+      }
+    };
+    try {
+      v.addStream(Path.of(""), "stream", crashing);
+      Assert.fail("Error not thrown");
+    } catch (Error e) {}
+    assertTrue(v.hasPendingOperation());
+
+    // The partial ciphertext is an orphan, not a tampering: the vault opens without it
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    v.unlock(PSW);
+    assertFalse(v.hasPendingOperation());
+    assertNull(v.getVaultFileByClearPath(Path.of("stream")));
+    assertEquals(4, v.listItems(null, null).size());
+
+    // A failed upload leaves the vault consistent
+    InputStream failing = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new IOException("Connection reset");
+      }
+    };
+    try {
+      v.addStream(Path.of(""), "stream", failing);
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {}
+    assertFalse(v.hasPendingOperation());
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    v.unlock(PSW);
+    assertEquals(4, v.listItems(null, null).size());
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testResumePendingOperation() throws Exception {
+    crashDuringAddDirectory();
+
+    // Reopen the vault: the operation is pending and the vault is repaired on unlock
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    assertTrue(v.hasPendingOperation());
+    deleteDirectory(v.unlock(PSW, PLOCAL));
+    assertFalse(Files.exists(v.getStoragePath().resolve("orphan")));
+    
+    try {
+      v.addFile(PFILE2);
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    v.resumePendingOperation(null, null);
+    assertFalse(v.hasPendingOperation());
+    assertEquals(4, v.getVaultItems().size());
+
+    // All the content is there and the file tree is consistent
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    Path reveal = v.unlock(PSW, PLOCAL);
+    assertEquals(200000, Files.size(reveal.resolve(PDIR.getFileName()).resolve(FILE1)));
+    deleteDirectory(reveal);
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testRollbackPendingOperation() throws Exception {
+    crashDuringAddDirectory();
+
+    // Roll back while the vault is still locked
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    v.rollbackPendingOperation();
+    assertFalse(v.hasPendingOperation());
+    assertTrue(v.isEmpty());
+    assertFalse(Files.exists(v.getStoragePath().resolve("orphan")));
+    
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    assertTrue(v.isEmpty());
+    assertNull(v.unlock(PSW, PLOCAL));
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testRotateKeys() throws Exception {
+    createTmpDir();
+    byte[] content = new byte[200000];
+    new Random(1).nextBytes(content);
+    Files.write(PFILE1, content);
+
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    byte[] oldEncKey = v.getVaultConfiguration().getEncKey();
+    Map<Path, byte[]> chunks = new HashMap<>();
+    for (VaultItem item : v.getVaultItems()) {
+      if (item instanceof VaultFile) {
+        byte[] bytes = Files.readAllBytes(item.getAbsPath());
+        chunks.put(item.getAbsPath(), Arrays.copyOfRange(bytes, 317, bytes.length));
+      }
+    }
+
+    v.rotateKeys(null);
+    assertFalse(Arrays.equals(oldEncKey, v.getVaultConfiguration().getEncKey()));
+    assertFalse(Files.exists(v.getStoragePath().resolve(v.getVid() + ".rekey")));
+    assertFalse(Files.exists(v.getStoragePath().resolve(v.getVid() + ".rekey.hdr")));
+
+    // Only the headers have been rewritten
+    for (Map.Entry<Path, byte[]> entry : chunks.entrySet()) {
+      byte[] bytes = Files.readAllBytes(entry.getKey());
+      assertTrue(Arrays.equals(entry.getValue(), Arrays.copyOfRange(bytes, 317, bytes.length)));
+    }
+
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    Path reveal = v.unlock(PSW, PLOCAL);
+    assertTrue(Arrays.equals(content, Files.readAllBytes(reveal.resolve(PDIR.getFileName()).resolve(FILE1))));
+    deleteDirectory(reveal);
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testResumeKeyRotation() throws Exception {
+    createTmpDir();
+    Files.write(PFILE1, new byte[200000]);
+
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    Path confFile = VaultConfiguration.getPath(v.getStoragePath(), v.getVid());
+    byte[] oldConf = Files.readAllBytes(confFile);
+    v.rotateKeys(null);
+
+    // Crash after the headers have been rewritten, before the new keys are saved
+    VaultConfiguration conf = v.getVaultConfiguration();
+    Files.writeString(v.getStoragePath().resolve(v.getVid() + ".rekey"), 
+        Base64.getEncoder().encodeToString(conf.getEncKey()) + "\n" + Base64.getEncoder().encodeToString(conf.getAuthKey()) + "\n");
+    Files.write(confFile, oldConf);
+
+    // The password cannot be changed before: the pending keys would stay wrapped with the old one
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    try {
+      v.changePsw(PSW, "NewSecretP@ssword1234", 0);
+      Assert.fail("IOException not thrown");
+    } catch (IOException e) {}
+
+    // The rotation is completed on unlock
+    Path reveal = v.unlock(PSW, PLOCAL);
+    assertEquals(200000, Files.size(reveal.resolve(PDIR.getFileName()).resolve(FILE1)));
+    deleteDirectory(reveal);
+    assertFalse(Files.exists(v.getStoragePath().resolve(v.getVid() + ".rekey")));
+    assertTrue(Arrays.equals(conf.getEncKey(), v.getVaultConfiguration().getEncKey()));
+
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    deleteDirectory(v.unlock(PSW, PLOCAL));
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+
+  @Test
+  public void testTornHeaderDuringKeyRotation() throws Exception {
+    createTmpDir();
+    byte[] content = new byte[200000];
+    new Random(1).nextBytes(content);
+    Files.write(PFILE1, content);
+
+    v = new Vault(NAME, PLOCAL, PSW);
+    v.addDirectory(PDIR);
+    Path file = null;
+    for (VaultItem item : v.getVaultItems()) {
+      if (item instanceof VaultFile && Files.size(item.getAbsPath()) > 200000) { file = item.getAbsPath(); }
+    }
+
+    // Crash after the first header has been rewritten, while the header of file1 is half written
+    try {
+      v.rotateKeys(p -> { if (p.getItemsDone() == 1) throw new Error("Simulated crash"); });
+      Assert.fail("Error not thrown");
+    } catch (Error e) {}
+    ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+    assertTrue(Files.exists(v.getStoragePath().resolve(v.getVid() + ".rekey.hdr")));
+    byte[] bytes = Files.readAllBytes(file);
+    Arrays.fill(bytes, 12 + 100, 12 + 140, (byte) 0);
+    Files.write(file, bytes);
+
+    // The old header is restored from its copy and the rotation is completed on unlock
+    v = new Vault(v.getVid(), NAME, PLOCAL);
+    Path reveal = v.unlock(PSW, PLOCAL);
+    assertTrue(Arrays.equals(content, Files.readAllBytes(reveal.resolve(PDIR.getFileName()).resolve(FILE1))));
+    deleteDirectory(reveal);
+    assertFalse(Files.exists(v.getStoragePath().resolve(v.getVid() + ".rekey")));
+    assertFalse(Files.exists(v.getStoragePath().resolve(v.getVid() + ".rekey.hdr")));
+
+    deleteConfig(v);
+    deleteDirectory(PDIR);
+  }
+}
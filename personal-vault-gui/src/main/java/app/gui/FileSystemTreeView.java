@@ -0,0 +1,229 @@
+package app.gui;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import app.core.Vault;
+import app.core.VaultItem;
+import javafx.concurrent.Task;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+public class FileSystemTreeView extends TreeView<String> {
+
+  private static final Image folderImage = loadIcon("folder.png");
+  private static final Image fileImage = loadIcon("file.png");
+
+  // Directories are listed off the FX thread, one at a time
+  private static final ExecutorService LISTING_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "tree-listing");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private Vault vault;
+
+  public FileSystemTreeView(Vault vault) {
+    super();
+
+    this.vault = vault;
+    VaultTreeItem root = new VaultTreeItem(vault.getStoragePath().getFileName().toString(), vault.getStoragePath(), true);
+
+    this.setRoot(root);
+    this.setShowRoot(false);
+    this.setCellFactory(view -> new IconCell());
+    root.setExpanded(true);
+  }
+
+  private static Image loadIcon(String name) {
+    try {
+      return new Image(ClassLoader.getSystemResourceAsStream(name), 20, 20, false, false);
+    } catch (RuntimeException e) {
+      System.err.println("Icons not found...");
+      return null;
+    }
+  }
+
+  /**
+   * Tree item of a file or folder of the vault; the content of a folder is listed
+   * the first time it is expanded
+   */
+  private class VaultTreeItem extends TreeItem<String> {
+
+    private final Path path;
+    private final boolean directory;
+    private boolean listed;     // The listing has been started
+    private boolean listing;    // The listing is running
+    private boolean stale;      // An item has been added while listing
+
+    VaultTreeItem(String name, Path path, boolean directory) {
+      super(name);
+      this.path = path;
+      this.directory = directory;
+
+      if (directory) {
+        expandedProperty().addListener((observable, wasExpanded, expanded) -> {
+          if (expanded) { list(); }
+        });
+      }
+    }
+
+    @Override
+    public boolean isLeaf() {
+      return !this.directory;
+    }
+
+    /**
+     * List the folder content in the background, showing a placeholder in the meantime
+     */
+    private void list() {
+      if (this.listed) { return; }
+      this.listed = true;
+      this.listing = true;
+      getChildren().setAll(List.of(new TreeItem<>("Loading...")));
+
+      Task<Map<Path, Boolean>> task = new Task<>() {
+        @Override
+        protected Map<Path, Boolean> call() throws IOException {
+          Map<Path, Boolean> files = new LinkedHashMap<>();
+          try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path file : stream) {
+              // Avoid to display the vault configuration
+              if (!Vault.isMetadataFile(file)) { files.put(file, Files.isDirectory(file)); }
+            }
+          }
+          return files;
+        }
+      };
+      task.setOnSucceeded(event -> {
+        if (!ManageVaultBox.isRunning(vault)) {
+          show(task.getValue());
+          return;
+        }
+        // A running operation changes the item table and can change the folder: list again once it ends
+        ManageVaultBox.runWhenIdle(vault, () -> {
+          this.stale = true;
+          show(task.getValue());
+        });
+      });
+      task.setOnFailed(event -> {
+        this.listing = false;
+        this.listed = false;
+        getChildren().clear();
+        setExpanded(false);
+        System.err.println("Error while reading directory content");
+        new Alert(AlertType.ERROR, "Cannot display the content of the directory", ButtonType.OK).show();
+      });
+
+      LISTING_EXECUTOR.submit(task);
+    }
+
+    /**
+     * Show the listed folder content; called while the vault has no operation running
+     */
+    private void show(Map<Path, Boolean> files) {
+      this.listing = false;
+      if (this.stale) {
+        this.stale = false;
+        this.listed = false;
+        list();
+        return;
+      }
+
+      // The clear names are known since the unlock: no decryption is needed
+      List<VaultTreeItem> items = new ArrayList<>();
+      for (Map.Entry<Path, Boolean> file : files.entrySet()) {
+        items.add(new VaultTreeItem(getClearName(file.getKey()), file.getKey(), file.getValue()));
+      }
+      items.sort(Comparator.comparing((VaultTreeItem item) -> !item.directory).thenComparing(TreeItem::getValue, String.CASE_INSENSITIVE_ORDER));
+      getChildren().setAll(items);
+    }
+  }
+
+  private static class IconCell extends TreeCell<String> {
+
+    private final ImageView folderIcon = folderImage != null ? new ImageView(folderImage) : null;
+    private final ImageView fileIcon = fileImage != null ? new ImageView(fileImage) : null;
+
+    @Override
+    protected void updateItem(String item, boolean empty) {
+      super.updateItem(item, empty);
+
+      if (empty || item == null) {
+        setText(null);
+        setGraphic(null);
+        return;
+      }
+
+      // One icon of each kind per cell, not per item
+      setText(item);
+      TreeItem<String> treeItem = getTreeItem();
+      setGraphic(treeItem instanceof VaultTreeItem ? (((VaultTreeItem) treeItem).directory ? folderIcon : fileIcon) : null);
+    }
+  }
+
+  /**
+   * Get the clear name of an encrypted file or folder
+   *
+   * @param file Path to file/folder in the vault
+   *
+   * @return the clear name, the file name if it is not a vault item
+   */
+  private String getClearName(Path file) {
+    Path relPath = file.subpath(this.vault.getStoragePath().getNameCount(), file.getNameCount());
+    VaultItem vaultFile = this.vault.getVaultFile(relPath);
+    return vaultFile != null && vaultFile.getName() != null ? vaultFile.getName() : file.getFileName().toString();
+  }
+
+  /**
+   * Add file or folder to the directory tree
+   *
+   * @param path Path to the file/folder added to the vault root
+   */
+  public void add(Path path) {
+    if (path == null) { return; }
+
+    VaultTreeItem root = (VaultTreeItem) this.getRoot();
+    if (root.listing) {
+      root.stale = true;
+      return;
+    }
+
+    VaultItem item = this.vault.getVaultFileByClearPath(path.getFileName());
+    if (item == null) { return; }
+    root.getChildren().add(new VaultTreeItem(item.getName(), item.getAbsPath(), Files.isDirectory(item.getAbsPath())));
+  }
+
+  /**
+   * Remove file or folder from the directory tree
+   *
+   * @param item The item to remove
+   */
+  public void remove(TreeItem<String> item) {
+    if (item == null) { return; }
+
+    item.getParent().getChildren().remove(item);
+  }
+
+  /**
+   * Remove all the directory content
+   */
+  public void clear() {
+    this.getRoot().getChildren().clear();
+  }
+}
@@ -0,0 +1,646 @@
+package app.gui;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import app.core.CancellationToken;
+import app.core.OperationProgress;
+import app.core.Vault;
+import app.core.Vault.InternalException;
+import app.core.Vault.InvalidConfigurationException;
+import app.core.Vault.InvalidMacException;
+import app.core.Vault.OperationCancelledException;
+import app.core.Vault.VaultLockedException;
+import app.core.Vault.WrongPasswordException;
+import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.MenuButton;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.PasswordField;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TreeItem;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+
+public class ManageVaultBox extends VBox {
+
+  private static final double WIDTH = 300, HEIGHT = 250, SPACING = 10, PADDING = 10;
+  private static final int SEARCH_LIMIT = 10000;    // Results shown by the search
+
+  // Dedicated thread of the vault operations: they never run on the FX thread and never overlap
+  static final ExecutorService OPERATION_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "vault-operation");
+    t.setDaemon(true);
+    return t;
+  });
+
+  // Operation running on each vault; the FX thread does not read the items of a vault while it runs.
+  // Accessed on the FX thread only
+  private static final Map<Vault, VaultTask<?>> RUNNING = new HashMap<>();
+  
+  private Vault vault;
+
+  private Stage primaryStage;
+  private ListView<Vault> listView;
+  private FileSystemTreeView treeView;
+  private TreeItem<String> selectedItem;
+  private TextField searchFld;
+  private ListView<Path> resultsView;
+  private Path unlockPath;
+
+  public ManageVaultBox(Stage stage, ListView<Vault> listView, Vault vault) {
+    super();
+    
+    this.primaryStage = stage;
+    this.listView = listView;
+    this.vault = vault;
+    this.selectedItem = null;
+
+    setPane();
+    // The vault can have been selected again while an operation of another box is running
+    VaultTask<?> running = RUNNING.get(vault);
+    if (running != null) {
+      showTask(running, () -> {
+        this.getChildren().clear();
+        setPane();
+      });
+    }
+
+    this.setAlignment(Pos.CENTER);
+    this.setBackground(PersonalVault.BACKGROUND);
+  }
+
+  private void setPane() {
+    if (this.vault.isLocked()) { 
+      setLockedPane(); 
+    } else { 
+      setUnlockedPane(); 
+    }
+  }
+
+  /**
+   * @return true if an operation is running on the vault
+   */
+  static boolean isRunning(Vault vault) {
+    return RUNNING.containsKey(vault);
+  }
+
+  /**
+   * Run the given action on the FX thread once the vault has no operation running
+   *
+   * @param vault  The vault
+   * @param action The action reading the vault items
+   */
+  static void runWhenIdle(Vault vault, Runnable action) {
+    VaultTask<?> running = RUNNING.get(vault);
+    if (running == null) {
+      action.run();
+      return;
+    }
+    running.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, e -> runWhenIdle(vault, action));
+    running.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, e -> runWhenIdle(vault, action));
+  }
+
+  private void setLockedPane() {
+
+    final Button unlockBtn = new Button("Unlock");
+
+    unlockBtn.setOnAction(event -> {
+      final Stage unlockStage = new Stage();
+
+      // Center box with psw field
+      final VBox centerBox = new VBox(SPACING);
+      
+      final Label pswLbl = new Label("Enter password for " + vault.getName());
+      final PasswordField pswFld = new PasswordField(); 
+
+      centerBox.getChildren().addAll(pswLbl, pswFld);
+      centerBox.setAlignment(Pos.CENTER);
+      centerBox.setPadding(new Insets(PADDING));
+      
+      // Top box with directory chooser
+      final VBox topBox = new VBox(SPACING);
+
+      final Label lbl  = new Label("Choose a location where to unlock your vault");
+      final Label lbl2 = new Label("You selected the following location:");
+      final Label location = new Label(this.unlockPath != null ? this.unlockPath.toString() : "");
+      
+      final DirectoryChooser directoryChooser = new DirectoryChooser();
+      directoryChooser.setTitle("Choose Unlock Location");
+      directoryChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+
+      final Button locationBtn = new Button("Choose Location");
+      locationBtn.setOnAction(eventLoc -> {
+        // Get selected directory
+        File dir = directoryChooser.showDialog(unlockStage);
+        if (dir == null) { 
+          System.out.println("No location selected.");
+          return;
+        }
+        // Set location label
+        this.unlockPath = dir.toPath();
+        location.setText(this.unlockPath != null ? this.unlockPath.toString() : "");
+      });
+
+      topBox.getChildren().addAll(lbl, locationBtn, lbl2, location);
+      topBox.setAlignment(Pos.CENTER);
+      topBox.setPadding(new Insets(PADDING));
+      
+      // Bottom box with buttons
+      final HBox bottomBox = new HBox(SPACING);
+      
+      final Button cancelBtn = new Button("Cancel");
+      cancelBtn.setOnAction(e -> {
+        unlockStage.close();
+      });
+
+      final Button confirmBtn = new Button("Unlock");
+      confirmBtn.setOnAction(e -> {
+        if (this.unlockPath == null) {
+          new Alert(AlertType.WARNING, "The entered location is not valid", ButtonType.OK).show();
+          return;
+        }
+        final String psw = pswFld.getText();
+        final Path dest = this.unlockPath;   // Get Path from directory chooser
+        confirmBtn.setDisable(true);
+
+        VaultTask<Void> task = new VaultTask<>("Unlocking") {
+          @Override
+          protected Void call() throws Exception {
+            vault.unlock(psw, dest, this::onProgress, this.token);
+            return null;
+          }
+        };
+        task.setOnSucceeded(ev -> {
+          PersonalVault.markVerified(this.vault);
+          unlockStage.close();
+          this.getChildren().clear();
+          setUnlockedPane();
+          handlePendingOperation();
+        });
+        task.setOnFailed(ev -> {
+          confirmBtn.setDisable(false);
+          Throwable exc = task.getException();
+          if (exc instanceof WrongPasswordException) {
+            new Alert(AlertType.WARNING, "The entered password is not valid", ButtonType.OK).show();
+          } else if (exc instanceof InvalidConfigurationException) {
+            new Alert(AlertType.ERROR, "Cannot unlock vault: configuration file tampered", ButtonType.OK).show();
+          } else if (exc instanceof InvalidMacException) {
+            new Alert(AlertType.WARNING, "Failed file integrity tree check", ButtonType.OK).show();
+          } else if (exc instanceof OperationCancelledException) {
+            new Alert(AlertType.INFORMATION, "Unlock cancelled: the files already revealed have been kept", ButtonType.OK).show();
+          } else {
+            new Alert(AlertType.ERROR, "Cannot unlock vault: internal error", ButtonType.OK).show();
+          }
+        });
+        runTask(task, true);
+      });
+      
+      bottomBox.getChildren().addAll(cancelBtn, confirmBtn);
+      bottomBox.setAlignment(Pos.CENTER);
+        
+      
+      // Main layout
+      final BorderPane borderPaneNew = new BorderPane();
+      borderPaneNew.setTop(topBox);
+      borderPaneNew.setCenter(centerBox);
+      borderPaneNew.setBottom(bottomBox);
+
+      unlockStage.setTitle("Unlock Vault");
+      unlockStage.setResizable(false);
+      unlockStage.setScene(new Scene(borderPaneNew, WIDTH, HEIGHT));
+      unlockStage.show();
+    });
+
+    this.getChildren().addAll(unlockBtn);
+  }
+
+  /**
+   * Ask whether to resume or roll back the bulk operation interrupted in a previous session
+   */
+  private void handlePendingOperation() {
+    if (!this.vault.hasPendingOperation()) { return; }
+
+    final ButtonType resume = new ButtonType("Resume"), rollback = new ButtonType("Roll back");
+    final String msg = "The import of " + this.vault.getPendingOperationSource() + " has been interrupted.\nResume it or roll back the files already added?";
+    Optional<ButtonType> response = new Alert(AlertType.CONFIRMATION, msg, resume, rollback).showAndWait();
+    if (response.isEmpty()) { return; }
+    
+    final boolean resumed = response.get() == resume;
+    VaultTask<Void> task = new VaultTask<>(resumed ? "Resuming" : "Rolling back") {
+      @Override
+      protected Void call() throws Exception {
+        if (resumed) {
+          vault.resumePendingOperation(this::onProgress, this.token);
+        } else {
+          vault.rollbackPendingOperation();
+        }
+        return null;
+      }
+    };
+    task.setOnSucceeded(e -> refreshTree());
+    task.setOnFailed(e -> {
+      Throwable exc = task.getException();
+      if (exc instanceof VaultLockedException) {
+        new Alert(AlertType.WARNING, "Cannot complete the operation: the vault is locked", ButtonType.OK).show();
+      } else {
+        new Alert(AlertType.ERROR, "Cannot complete the operation: " + exc.getMessage(), ButtonType.OK).show();
+      }
+      refreshTree();
+    });
+    runTask(task, resumed);
+  }
+
+  private void setUnlockedPane() {
+    this.treeView = new FileSystemTreeView(vault);
+    this.treeView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+      this.selectedItem = (TreeItem<String>) newValue;
+    });
+    
+    final Label nameLbl = new Label(vault.getName());
+    nameLbl.setFont(new Font("Arial Bold", 20));
+    nameLbl.setPadding(new Insets(5));
+    
+    final HBox topBox = new HBox();
+    
+    final Button revealBtn = new Button("Reveal Content");
+    revealBtn.setOnAction(e -> {
+      try {
+        //Desktop.getDesktop().browseFileDirectory(new File(this.vault.getStoragePath()));
+        final String EXPLORER_EXE = "explorer.exe";
+        final String command = EXPLORER_EXE + " /SELECT,\"" + this.vault.getStoragePath() + "\\\"";
+        Runtime.getRuntime().exec(command);
+      } catch (IOException exc) {
+        System.err.println("Unsupported feature");
+        new Alert(AlertType.WARNING, "Cannot reveal content: feature not supported on this platform", ButtonType.OK).show();
+      }
+    });
+
+    final Button settingsBtn = new Button("Settings");
+    settingsBtn.setOnAction(e -> {
+      new SettingsStage(this.vault);
+    });
+
+    final Region region = new Region();
+    HBox.setHgrow(region, Priority.ALWAYS);
+    topBox.getChildren().addAll(revealBtn, region, settingsBtn);
+    topBox.setAlignment(Pos.CENTER);
+    topBox.setPadding(new Insets(10));
+
+    // The results replace the tree while searching; the list only renders the visible rows
+    this.resultsView = new ListView<>();
+    this.resultsView.setVisible(false);
+    this.resultsView.setCellFactory(view -> new ListCell<>() {
+      @Override
+      protected void updateItem(Path item, boolean empty) {
+        super.updateItem(item, empty);
+        setText(empty || item == null ? null : item.toString());
+      }
+    });
+    this.searchFld = new TextField();
+    this.searchFld.setPromptText("Search");
+    this.searchFld.textProperty().addListener((observable, oldValue, newValue) -> search());
+    final StackPane contentPane = new StackPane(this.treeView, this.resultsView);
+    VBox.setVgrow(contentPane, Priority.ALWAYS);
+
+    final MenuButton addBtn  = new MenuButton("Add");
+    final MenuItem   addDir  = addDirectoryBtn();
+    final MenuItem   addFile = addFileBtn();
+   
+    addBtn.getItems().addAll(addDir, addFile);
+    
+    final Button removeBtn = new Button("Remove");
+    removeBtn.setOnAction(e -> {
+      if (this.selectedItem == null) { return; } 
+
+      Optional<ButtonType> response = new Alert(AlertType.CONFIRMATION, "Are you sure to remove " + this.selectedItem.getValue() + "?", ButtonType.CANCEL, ButtonType.OK).showAndWait();
+      if (response.get() != ButtonType.OK) { return; }
+      
+      String file = ""; 
+      TreeItem<String> parent = this.selectedItem;
+      while (!parent.equals(this.treeView.getRoot())) {
+        file = parent.getValue() + (file.length() == 0 ? "" : (System.getProperty("file.separator") + file));
+        parent = parent.getParent();
+      }
+      
+      final Path toRemove = Path.of(file);
+      final TreeItem<String> removedItem = this.selectedItem;
+      VaultTask<Void> task = new VaultTask<>("Removing") {
+        @Override
+        protected Void call() throws Exception {
+          vault.remove(toRemove);
+          return null;
+        }
+      };
+      task.setOnSucceeded(ev -> {
+        this.treeView.remove(removedItem);
+        PersonalVault.updateRegistry();
+      });
+      task.setOnFailed(ev -> {
+        if (task.getException() instanceof VaultLockedException) {
+          System.err.println("Locked Vault");
+          new Alert(AlertType.WARNING, "Cannot clear vault: the vault is locked", ButtonType.OK).show();
+        } else {
+          System.err.println("Error while deleting vault");
+          new Alert(AlertType.ERROR, "Cannot clear vault: error while deleting files", ButtonType.OK).show();
+        }
+      });
+      runTask(task, false);
+    });
+
+    final Button clearBtn = new Button("Clear");
+    clearBtn.setOnAction(e -> {
+      Optional<ButtonType> response = new Alert(AlertType.CONFIRMATION, "Are you sure to delete the vault content?", ButtonType.CANCEL, ButtonType.OK).showAndWait();
+      if (response.get() != ButtonType.OK) { return; }
+      
+      VaultTask<Void> task = new VaultTask<>("Clearing") {
+        @Override
+        protected Void call() throws Exception {
+          vault.clear();
+          return null;
+        }
+      };
+      task.setOnSucceeded(ev -> {
+        this.treeView.clear();
+        PersonalVault.updateRegistry();
+      });
+      task.setOnFailed(ev -> {
+        if (task.getException() instanceof VaultLockedException) {
+          System.err.println("Locked Vault");
+          new Alert(AlertType.WARNING, "Cannot clear vault: the vault is locked", ButtonType.OK).show();
+        } else {
+          System.err.println("Error while deleting vault");
+          new Alert(AlertType.ERROR, "Cannot clear vault: error while deleting files", ButtonType.OK).show();
+        }
+        refreshTree();
+      });
+      runTask(task, false);
+    });
+
+    final Button deleteBtn = new Button("Delete Vault");
+    deleteBtn.setOnAction(e -> {
+      Optional<ButtonType> response = new Alert(AlertType.CONFIRMATION, "Are you sure to delete the vault " + this.vault.getName() +"?", ButtonType.CANCEL, ButtonType.OK).showAndWait();
+      if (response.get() != ButtonType.OK) { return; }
+      
+      VaultTask<Void> task = new VaultTask<>("Deleting") {
+        @Override
+        protected Void call() throws Exception {
+          vault.delete();
+          return null;
+        }
+      };
+      task.setOnSucceeded(ev -> {
+        this.listView.getItems().remove(this.vault);
+        PersonalVault.saveStoredVaults(this.listView.getItems());
+      });
+      task.setOnFailed(ev -> {
+        if (task.getException() instanceof VaultLockedException) {
+          System.err.println("Locked Vault");
+          new Alert(AlertType.WARNING, "Cannot delete vault: the vault is locked", ButtonType.OK).show();
+        } else {
+          System.err.println("Error while deleting vault");
+          new Alert(AlertType.ERROR, "Cannot delete vault: error while deleting", ButtonType.OK).show();
+        }
+      });
+      runTask(task, false);
+    });
+
+    final HBox bottomBox = new HBox(SPACING, addBtn, removeBtn, clearBtn, deleteBtn);
+    bottomBox.setPadding(new Insets(10));
+    bottomBox.setAlignment(Pos.CENTER);
+
+    this.getChildren().addAll(nameLbl, topBox, this.searchFld, contentPane, bottomBox);
+  }
+
+  private MenuItem addDirectoryBtn() {
+    final MenuItem addDir = new MenuItem("Directory");
+    
+    DirectoryChooser dirChooser = new DirectoryChooser();
+    dirChooser.setTitle("Select Directory to add");
+    dirChooser.setInitialDirectory(new File(PersonalVault.SRC));
+    addDir.setOnAction(e -> {
+      File dirChosen = dirChooser.showDialog(primaryStage);
+      if (dirChosen == null) { return; }
+      
+      final Path dir = dirChosen.toPath();
+      VaultTask<Void> task = new VaultTask<>("Adding " + dir.getFileName()) {
+        @Override
+        protected Void call() throws Exception {
+          vault.addDirectory(dir, this::onProgress, this.token);
+          return null;
+        }
+      };
+      // The tree is updated once, with the whole directory
+      task.setOnSucceeded(ev -> {
+        this.treeView.add(dir);
+        PersonalVault.updateRegistry();
+      });
+      task.setOnFailed(ev -> {
+        Throwable exc = task.getException();
+        if (exc instanceof VaultLockedException) {
+          new Alert(AlertType.WARNING, "Cannot add directory: the vault is locked", ButtonType.OK).show();
+        } else if (exc instanceof OperationCancelledException) {
+          new Alert(AlertType.INFORMATION, "Import cancelled: the files already added have been kept", ButtonType.OK).show();
+        } else {
+          new Alert(AlertType.ERROR, "Cannot add directory: error while encrypting", ButtonType.OK).show();
+        }
+        // Part of the directory can have been added
+        this.treeView.add(dir);
+        PersonalVault.updateRegistry();
+      });
+      runTask(task, true);
+    });
+
+    return addDir;
+  }
+
+  private MenuItem addFileBtn() {
+    final MenuItem addFile = new MenuItem("File");
+
+    FileChooser fileChooser = new FileChooser();
+    fileChooser.setTitle("Select File to add");
+    fileChooser.setInitialDirectory(new File(PersonalVault.SRC));
+    addFile.setOnAction(e -> {
+      File fileChosen = fileChooser.showOpenDialog(primaryStage);
+      if (fileChosen == null) { return; }
+
+      final Path file = fileChosen.toPath();
+      VaultTask<Void> task = new VaultTask<>("Adding " + file.getFileName()) {
+        @Override
+        protected Void call() throws Exception {
+          vault.addFile(file, this::onProgress, this.token);
+          return null;
+        }
+      };
+      task.setOnSucceeded(ev -> {
+        this.treeView.add(file);
+        PersonalVault.updateRegistry();
+      });
+      task.setOnFailed(ev -> {
+        Throwable exc = task.getException();
+        if (exc instanceof VaultLockedException) {
+          new Alert(AlertType.WARNING, "Cannot add file: the vault is locked", ButtonType.OK).show();
+        } else if (exc instanceof OperationCancelledException) {
+          new Alert(AlertType.INFORMATION, "Import cancelled", ButtonType.OK).show();
+        } else {
+          new Alert(AlertType.ERROR, "Cannot add file: error while encrypting", ButtonType.OK).show();
+        }
+      });
+      runTask(task, true);
+    });
+
+    return addFile;
+  }
+
+
+  /**
+   * Vault operation run on the operation executor; the vault reports its progress through onProgress()
+   * and checks the token between chunks
+   */
+  private abstract static class VaultTask<V> extends Task<V> {
+
+    protected final CancellationToken token = new CancellationToken();
+    private final String title;
+    private boolean cancellable;
+
+    VaultTask(String title) {
+      this.title = title;
+      updateMessage(title + "...");
+    }
+
+    /**
+     * Progress listener of the vault operation; the updates are coalesced by the task 
+     * and applied on the FX thread at most once per pulse
+     */
+    protected void onProgress(OperationProgress progress) {
+      updateProgress(progress.getFraction(), 1.0);
+      updateMessage(this.title + ": " + progress.getItemsDone() + "/" + progress.getItemsTotal() + " items");
+    }
+  }
+
+  /**
+   * Run a vault operation off the FX thread, showing its progress at the bottom of the box
+   * and disabling the other controls until it ends
+   *
+   * @param task        The operation
+   * @param cancellable true to show a cancel button; the vault stops at the next chunk or item
+   */
+  private void runTask(VaultTask<?> task, boolean cancellable) {
+    task.cancellable = cancellable;
+    RUNNING.put(this.vault, task);
+    // Registered first: the other handlers see the vault idle
+    task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, e -> RUNNING.remove(this.vault, task));
+    task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, e -> RUNNING.remove(this.vault, task));
+
+    final List<Node> controls = new ArrayList<>(this.getChildren());
+    showTask(task, () -> endTask(controls));
+    OPERATION_EXECUTOR.submit(task);
+  }
+
+  /**
+   * Show the progress of a vault operation at the bottom of the box, disabling the other controls
+   *
+   * @param task  The operation
+   * @param onEnd Run on the FX thread when the operation ends, after the progress has been removed
+   */
+  private void showTask(VaultTask<?> task, Runnable onEnd) {
+    final List<Node> controls = new ArrayList<>(this.getChildren());
+    controls.forEach(node -> node.setDisable(true));
+
+    final Label msgLbl = new Label();
+    msgLbl.textProperty().bind(task.messageProperty());
+    final ProgressBar progressBar = new ProgressBar();
+    progressBar.progressProperty().bind(task.progressProperty());
+    final Button cancelBtn = new Button("Cancel");
+    cancelBtn.setVisible(task.cancellable);
+    cancelBtn.setDisable(task.token.isCancelled());
+    cancelBtn.setOnAction(e -> {
+      // The task is not cancelled itself: it ends when the vault has stopped
+      task.token.cancel();
+      cancelBtn.setDisable(true);
+    });
+
+    final HBox progressBox = new HBox(SPACING, msgLbl, progressBar, cancelBtn);
+    progressBox.setAlignment(Pos.CENTER);
+    progressBox.setPadding(new Insets(PADDING));
+    this.getChildren().add(progressBox);
+
+    task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, e -> {
+      this.getChildren().remove(progressBox);
+      onEnd.run();
+    });
+    task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, e -> {
+      this.getChildren().remove(progressBox);
+      onEnd.run();
+    });
+  }
+
+  private void endTask(List<Node> controls) {
+    controls.forEach(node -> node.setDisable(false));
+    search();
+  }
+
+  /**
+   * Show the items whose name contains the text of the search field; the index answers 
+   * in a few milliseconds, so it runs at every key
+   */
+  private void search() {
+    if (this.searchFld == null) { return; }
+
+    String query = this.searchFld.getText().strip();
+    boolean searching = !query.isEmpty() && !this.vault.isLocked();
+    this.treeView.setVisible(!searching);
+    this.resultsView.setVisible(searching);
+    if (!searching) {
+      this.resultsView.setItems(FXCollections.observableArrayList());
+      return;
+    }
+
+    try {
+      // Wrap the results without copying them: only the paths of the visible rows are composed
+      this.resultsView.setItems(FXCollections.observableList(this.vault.searchItems(query, SEARCH_LIMIT)));
+    } catch (VaultLockedException e) {
+      this.resultsView.setItems(FXCollections.observableArrayList());
+    }
+  }
+
+  /**
+   * Rebuild the tree after an operation that changed the vault content only in part
+   */
+  private void refreshTree() {
+    if (this.vault.isLocked() || this.treeView == null) { return; }
+
+    this.getChildren().clear();
+    setUnlockedPane();
+    PersonalVault.updateRegistry();
+  }
+}
@@ -8,8 +8,8 @@ import java.nio.file.Path;
 import java.util.List;
 
 import app.core.Vault;
-import app.core.Vault.InternalException;
 import app.core.KeyDerivator.InvalidPasswordException;
+import javafx.concurrent.Task;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
@@ -176,19 +176,33 @@ public class NewVaultStage extends Stage {
 
       this.vaultPsw = pswBox.getPsw();
       
-      // Create vault and add to the listview
-      try {
-        Vault v = new Vault(this.vaultName, this.vaultPath, this.vaultPsw);
-        this.listVault.add(v);
+      // Create vault and add to the listview; the key derivation runs in the background
+      final String name = this.vaultName, psw = this.vaultPsw;
+      final Path path = this.vaultPath;
+      Task<Vault> task = new Task<>() {
+        @Override
+        protected Vault call() throws Exception {
+          return new Vault(name, path, psw);
+        }
+      };
+      task.setOnSucceeded(e -> {
+        this.listVault.add(task.getValue());
         PersonalVault.saveStoredVaults(this.listVault);
         this.close();
-      } catch (InvalidPasswordException e) {
-        new Alert(AlertType.WARNING, "Invalid Password", ButtonType.OK).show();
-      } catch (IOException e) {
-        new Alert(AlertType.ERROR, "Cannot create vault: a vault with same name already exists", ButtonType.OK).show();
-      } catch (InternalException e) {
-        new Alert(AlertType.ERROR, "Cannot create vault: internal error", ButtonType.OK).show();
-      }
+      });
+      task.setOnFailed(e -> {
+        createBtn.setDisable(false);
+        Throwable exc = task.getException();
+        if (exc instanceof InvalidPasswordException) {
+          new Alert(AlertType.WARNING, "Invalid Password", ButtonType.OK).show();
+        } else if (exc instanceof IOException) {
+          new Alert(AlertType.ERROR, "Cannot create vault: a vault with same name already exists", ButtonType.OK).show();
+        } else {
+          new Alert(AlertType.ERROR, "Cannot create vault: internal error", ButtonType.OK).show();
+        }
+      });
+      createBtn.setDisable(true);
+      ManageVaultBox.OPERATION_EXECUTOR.submit(task);
     });
 
     bottomBox.getChildren().addAll(backBtn, createBtn);
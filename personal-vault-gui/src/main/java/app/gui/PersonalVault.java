@@ -1,10 +1,12 @@
 package app.gui;
 
 import app.core.Vault;
+import app.core.VaultRegistry;
 import app.core.Vault.InternalException;
 import app.core.Vault.InvalidConfigurationException;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
@@ -17,6 +19,7 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
@@ -39,27 +42,40 @@ import javafx.stage.Screen;
 import javafx.stage.Stage;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Scanner;
 import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static app.core.Constants.APP_USER_DIR;
+import static app.core.Constants.REGISTRY_FILE;
 
 
 public class PersonalVault extends Application {
 
-  private final static Path CONF = Paths.get(System.getProperty("user.home"), "personal-vault.conf");
+  private final static Path CONF = Paths.get(System.getProperty("user.home"), "personal-vault.conf");   // Vault list of the older versions
+  private final static Path REGISTRY = Paths.get(System.getProperty("user.home"), APP_USER_DIR, REGISTRY_FILE);
   protected final static String SRC = System.getProperty("user.home");
   
   private final static double WIDTH = 1000, HEIGHT = 800, SPACING = 10;
   protected final static Border BORDER = new Border(new BorderStroke(Color.valueOf("#9E9E9E"), BorderStrokeStyle.SOLID, CornerRadii.EMPTY, BorderWidths.DEFAULT));
   protected final static Background BACKGROUND = new Background(new BackgroundFill(Color.WHITE, CornerRadii.EMPTY, Insets.EMPTY));
   
+  private static VaultRegistry registry;
+  private static final ExecutorService REGISTRY_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "vault-registry");
+    t.setDaemon(true);
+    return t;
+  });
+
   private ListView<Vault> listVaultView;
   private List<File> errorOnImport;
 
@@ -136,6 +152,7 @@ public class PersonalVault extends Application {
   public static class RemovableCell extends ListCell<Vault> {
     
     private static final double FONT_SIZE = 14;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
     
     private HBox box;
     private Label lbl;
@@ -175,10 +192,19 @@ public class PersonalVault extends Application {
         setGraphic(null);
       } else {
         lbl.setFont(Font.font(FONT_SIZE));
-        lbl.setText(item.toString());
+        lbl.setText(item.toString() + '\n' + getStats(item));
         setGraphic(box);
       }
     }
+
+    private static String getStats(Vault vault) {
+      VaultRegistry.Entry entry = registry != null ? registry.get(vault.getStoragePath()) : null;
+      if (entry == null || !entry.hasStats()) { return "Reading vault..."; }
+
+      String stats = entry.getItems() + " items, " + String.format("%.1f MB", entry.getBytes() / (1024.0 * 1024));
+      if (entry.getLastVerified() > 0) { stats += ", verified " + DATE_FORMAT.format(Instant.ofEpochMilli(entry.getLastVerified())); }
+      return stats;
+    }
   }
 
   /**
@@ -198,22 +224,32 @@ public class PersonalVault extends Application {
         this.mainPane.setCenter(this.emptyManageVault);
         return;
       }
-      this.mainPane.setCenter(new ManageVaultBox(this.primaryStage, this.listVaultView, newValue));
+      if (newValue.isItemsOpen()) {
+        this.mainPane.setCenter(new ManageVaultBox(this.primaryStage, this.listVaultView, newValue));
+      } else {
+        openVaultItems(newValue);
+      }
     });
     
 
-    // Add all already imported vaults
-    List<String> paths = getStoredVaults();
-    for(String path : paths){
-      File dir = new File(path);
+    // Add all already imported vaults from the registry reading only their configuration: 
+    // the statistics come from the registry snapshot and the items are opened when selected
+    try {
+      registry = VaultRegistry.load(REGISTRY, CONF);
+    } catch (IOException e) {
+      System.err.println("Cannot read the vault registry");
+      registry = VaultRegistry.create(REGISTRY);
+    }
+    for (VaultRegistry.Entry entry : registry.getEntries()) {
+      Path storagePath = entry.getStoragePath();
       try {
-        Vault v = Vault.importVault(dir);
-        this.listVaultView.getItems().add(v);
-      } catch (IOException | InvalidConfigurationException | InternalException e) {
-        errorOnImport.add(dir);
+        this.listVaultView.getItems().add(Vault.openDeferred(entry.getVid(), storagePath.getFileName().toString(), storagePath.getParent()));
+      } catch (IOException | InvalidConfigurationException | InternalException | RuntimeException e) {
+        errorOnImport.add(storagePath.toFile());
       }
-      saveStoredVaults(this.listVaultView.getItems());
     }
+    registry.setListener(() -> Platform.runLater(this.listVaultView::refresh));
+    saveStoredVaults(this.listVaultView.getItems());
 
     VBox leftPanel = new VBox(this.listVaultView);
     leftPanel.setBorder(BORDER);
@@ -221,6 +257,45 @@ public class PersonalVault extends Application {
     return leftPanel;
   }
 
+  /**
+   * Open the items of a selected vault in the background, showing a placeholder in the meantime
+   * 
+   * @param vault The vault opened with only its configuration
+   */
+  private void openVaultItems(Vault vault) {
+    ProgressIndicator indicator = new ProgressIndicator();
+    VBox placeholder = new VBox(SPACING, indicator, new Label("Loading " + vault.getName() + "..."));
+    placeholder.setAlignment(Pos.CENTER);
+    placeholder.setPrefSize(WIDTH * 0.6, HEIGHT * 0.9);
+    placeholder.setBorder(BORDER);
+    placeholder.setBackground(BACKGROUND);
+    this.mainPane.setCenter(placeholder);
+
+    Task<Void> task = new Task<>() {
+      @Override
+      protected Void call() throws IOException {
+        vault.openItems();
+        return null;
+      }
+    };
+    task.setOnSucceeded(event -> {
+      // Another vault can have been selected in the meantime
+      if (this.listVaultView.getSelectionModel().getSelectedItem() == vault) {
+        this.mainPane.setCenter(new ManageVaultBox(this.primaryStage, this.listVaultView, vault));
+      }
+    });
+    task.setOnFailed(event -> {
+      if (this.listVaultView.getSelectionModel().getSelectedItem() == vault) {
+        this.mainPane.setCenter(this.emptyManageVault);
+      }
+      new Alert(AlertType.ERROR, "Cannot open " + vault.getName() + ": error while reading the vault", ButtonType.OK).show();
+    });
+
+    Thread thread = new Thread(task, "open-" + vault.getName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
   /**
    * Create and set the new vault button
    */
@@ -251,65 +326,91 @@ public class PersonalVault extends Application {
         return; 
       }
       
-      try {
-        Vault v = Vault.importVault(dir);
+      // The import walks the whole vault: it runs in the background like the opening of the items
+      Task<Vault> task = new Task<>() {
+        @Override
+        protected Vault call() throws Exception {
+          return Vault.importVault(dir);
+        }
+      };
+      task.setOnSucceeded(ev -> {
+        Vault v = task.getValue();
         if(this.listVaultView.getItems().contains(v)){
           new Alert(AlertType.ERROR, "Cannot import " + dir + ": the folder has already been imported", ButtonType.OK).show();
         } else {
           this.listVaultView.getItems().add(v);
           saveStoredVaults(this.listVaultView.getItems());
         }
-      } catch (IOException e) {
-        new Alert(AlertType.ERROR, "Cannot import " + dir + ": error while reading configuration file", ButtonType.OK).show();
-      } catch (InvalidConfigurationException e) {
-        new Alert(AlertType.ERROR, "Cannot import " + dir + ": configuration file invalid or absent",   ButtonType.OK).show();
-      } catch (InternalException e) {
-        new Alert(AlertType.ERROR, "Cannot import " + dir + ": internal error",   ButtonType.OK).show();
-      }
+      });
+      task.setOnFailed(ev -> {
+        Throwable exc = task.getException();
+        if (exc instanceof IOException) {
+          new Alert(AlertType.ERROR, "Cannot import " + dir + ": error while reading the vault: " + exc.getMessage(), ButtonType.OK).show();
+        } else if (exc instanceof InvalidConfigurationException) {
+          new Alert(AlertType.ERROR, "Cannot import " + dir + ": configuration file invalid or absent",   ButtonType.OK).show();
+        } else {
+          new Alert(AlertType.ERROR, "Cannot import " + dir + ": internal error",   ButtonType.OK).show();
+        }
+      });
+
+      Thread thread = new Thread(task, "import-" + dir.getName());
+      thread.setDaemon(true);
+      thread.start();
     });
 
     return importBtn;
   } 
 
   /**
-   * Save vault paths into configuration file
+   * Save the vault list into the registry in the background, then refresh the stale statistics
    */
   public static void saveStoredVaults(List<Vault> vaultList) {
-    if (vaultList.isEmpty()) {
-      try { Files.delete(CONF); } 
-      catch (IOException e) {
-        System.err.println("Cannot delete configuration file");
+    if (registry == null) { return; }
+
+    registry.retain(vaultList);
+    REGISTRY_EXECUTOR.submit(new Task<Void>() {
+      @Override
+      protected Void call() {
+        try {
+          registry.save();
+        } catch (IOException e) {
+          System.err.println("Cannot write the vault registry");
+        }
+        return null;
       }
-      return;
-    }    
-    StringJoiner paths = new StringJoiner("\n");
-    for(Vault v : vaultList) {
-      paths.add(v.getStoragePath().toString());
-    }
-    try {
-      Files.write(CONF, paths.toString().getBytes());
-    } catch (IOException e) {
-      System.err.println("Cannot write configuration file");
-    }
+    });
+    updateRegistry();
   }
 
   /**
-   * Read vault paths from configuration file
+   * Refresh in the background the registry statistics of the vaults whose files changed; 
+   * called after every operation on the vault items
    */
-  private static List<String> getStoredVaults() {
-    List<String> paths = new ArrayList<>();
+  public static void updateRegistry() {
+    if (registry == null) { return; }
 
-    try {
-      Scanner scan = new Scanner(CONF.toFile());
-      while (scan.hasNextLine()) {
-        paths.add(scan.nextLine());
+    REGISTRY_EXECUTOR.submit(new Task<Void>() {
+      @Override
+      protected Void call() throws IOException {
+        if (registry.revalidate()) { registry.save(); }
+        return null;
       }
-      scan.close();
-    } catch (FileNotFoundException e) {
-      System.out.println("Configuration file absent");
-      return paths;
-    }
+    });
+  }
 
-    return paths;
+  /**
+   * Record in the registry the successful integrity check of an unlocked vault
+   */
+  public static void markVerified(Vault vault) {
+    if (registry == null) { return; }
+
+    registry.markVerified(vault, System.currentTimeMillis());
+    REGISTRY_EXECUTOR.submit(new Task<Void>() {
+      @Override
+      protected Void call() throws IOException {
+        registry.save();
+        return null;
+      }
+    });
   }
 }
\ No newline at end of file
@@ -4,8 +4,8 @@ import java.io.IOException;
 
 import app.core.KeyDerivator.InvalidPasswordException;
 import app.core.Vault;
-import app.core.Vault.InternalException;
 import app.core.Vault.WrongPasswordException;
+import javafx.concurrent.Task;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
@@ -72,19 +72,34 @@ public class SettingsStage extends Stage {
           return;
         }
         
-        try {
-          this.vault.changePsw(oldPswFld.getText(), pswBox.getPsw());
+        // The key derivation takes about a second: it runs with the other vault operations
+        final String oldPsw = oldPswFld.getText(), newPsw = pswBox.getPsw();
+        Task<Void> task = new Task<>() {
+          @Override
+          protected Void call() throws Exception {
+            vault.changePsw(oldPsw, newPsw);
+            return null;
+          }
+        };
+        task.setOnSucceeded(ev -> {
           this.settingsStage.close();
           new Alert(AlertType.INFORMATION, "The password has been succesfully changed", ButtonType.OK).show();
-        } catch (IOException e1) {
-          new Alert(AlertType.ERROR, "Cannot change password: error while saving configuration file", ButtonType.OK).show();
-        } catch (InvalidPasswordException e1) {
-          new Alert(AlertType.WARNING, "Invalid new password", ButtonType.OK).show();
-        } catch (WrongPasswordException e1) {
-          new Alert(AlertType.ERROR, "The old password entered is wrong", ButtonType.OK).show();
-        } catch (InternalException e1) {
-          new Alert(AlertType.ERROR, "Cannot create vault: internal error", ButtonType.OK).show();
-        }
+        });
+        task.setOnFailed(ev -> {
+          confirmBtn.setDisable(false);
+          Throwable exc = task.getException();
+          if (exc instanceof IOException) {
+            new Alert(AlertType.ERROR, "Cannot change password: error while saving configuration file", ButtonType.OK).show();
+          } else if (exc instanceof InvalidPasswordException) {
+            new Alert(AlertType.WARNING, "Invalid new password", ButtonType.OK).show();
+          } else if (exc instanceof WrongPasswordException) {
+            new Alert(AlertType.ERROR, "The old password entered is wrong", ButtonType.OK).show();
+          } else {
+            new Alert(AlertType.ERROR, "Cannot create vault: internal error", ButtonType.OK).show();
+          }
+        });
+        confirmBtn.setDisable(true);
+        ManageVaultBox.OPERATION_EXECUTOR.submit(task);
       });
       
       final VBox centerBox = new VBox(oldBox, pswBox);